@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package com.saplo.api.client.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, and always with the gc profiler,
+ * so the allocation rate (gc.alloc.rate.norm, in bytes per op) is reported next to the throughput.
+ * <pre>
+ *	java -jar target/benchmarks.jar                     # all of them
+ *	java -jar target/benchmarks.jar Response -p tags=50 # some of them, with one param value
+ * </pre>
+ *
+ * @author progre55
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+		if (cmd.shouldList()) {
+			new Runner(cmd).list();
+			return;
+		}
+
+		Options options = new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
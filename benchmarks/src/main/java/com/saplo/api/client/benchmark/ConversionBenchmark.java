@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package com.saplo.api.client.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploGroup;
+import com.saplo.api.client.entity.SaploTag;
+import com.saplo.api.client.entity.SaploText;
+import com.saplo.api.client.session.ListResultReader;
+import com.saplo.api.client.session.impl.JSONRPCResponseDecoder;
+
+/**
+ * Binding results to the entities: from the org.json trees with the convertFromJSONTo* methods,
+ * and for the lists also straight off the response stream with the readers the managers use.
+ *
+ * @author progre55
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionBenchmark {
+
+	private static final ListResultReader<SaploTag> TAGS_READER = new ListResultReader<SaploTag>("tags") {
+		protected SaploTag readItem(JsonParser parser) throws IOException {
+			return SaploTag.readFromJSON(parser);
+		}
+	};
+
+	private static final ListResultReader<SaploGroup> GROUPS_READER = new ListResultReader<SaploGroup>("related_groups") {
+		protected SaploGroup readItem(JsonParser parser) throws IOException {
+			return SaploGroup.readFromJSON(parser);
+		}
+	};
+
+	// the number of tags or groups in a result
+	@Param({"10", "100"})
+	public int count;
+
+	private JSONObject text;
+	private JSONArray tags;
+	private JSONArray groups;
+	private byte[] tagsResponse;
+	private byte[] groupsResponse;
+
+	@Setup
+	public void setUp() throws JSONException {
+		Charset utf8 = Charset.forName("UTF-8");
+		text = Payloads.text(1, 4096);
+		tags = Payloads.tags(count);
+		groups = Payloads.groups(count);
+		tagsResponse = Payloads.response(1, new JSONObject().put("tags", tags)).toString().getBytes(utf8);
+		groupsResponse = Payloads.response(1, new JSONObject().put("related_groups", groups)).toString().getBytes(utf8);
+	}
+
+	@Benchmark
+	public SaploText convertText() {
+		return SaploText.convertFromJSONToText(text);
+	}
+
+	@Benchmark
+	public List<SaploTag> convertTags() {
+		List<SaploTag> result = new ArrayList<SaploTag>(tags.length());
+		for (int i = 0; i < tags.length(); i++)
+			result.add(SaploTag.convertFromJSONToTag(tags.optJSONObject(i)));
+		return result;
+	}
+
+	@Benchmark
+	public List<SaploGroup> convertGroups() {
+		List<SaploGroup> result = new ArrayList<SaploGroup>(groups.length());
+		for (int i = 0; i < groups.length(); i++)
+			result.add(SaploGroup.convertFromJSONToGroup(groups.optJSONObject(i)));
+		return result;
+	}
+
+	@Benchmark
+	public JSONRPCResponseObject readTags() throws SaploClientException {
+		return JSONRPCResponseDecoder.decode(new ByteArrayInputStream(tagsResponse), TAGS_READER, false);
+	}
+
+	@Benchmark
+	public JSONRPCResponseObject readGroups() throws SaploClientException {
+		return JSONRPCResponseDecoder.decode(new ByteArrayInputStream(groupsResponse), GROUPS_READER, false);
+	}
+}
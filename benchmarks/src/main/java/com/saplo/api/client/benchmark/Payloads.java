@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package com.saplo.api.client.benchmark;
+
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.saplo.api.client.entity.SaploTag.TagCategory;
+
+/**
+ * Builds API payloads the size and shape of the real ones, from a fixed seed
+ * so every run measures the same bytes.
+ *
+ * @author progre55
+ */
+final class Payloads {
+
+	private static final String[] WORDS = {
+		"the", "of", "and", "Stockholm", "market", "reported", "quarter", "growth", "company",
+		"government", "analysts", "said", "on", "Tuesday", "shares", "rose", "percent", "after",
+		"Ericsson", "Volvo", "announced", "new", "investment", "in", "Gothenburg", "räntan", "höjdes",
+		"\"quoted\"", "line\nbreak", "tab\tseparated", "Malmö", "Uppsala", "research", "students"
+	};
+
+	private static final TagCategory[] CATEGORIES = {
+		TagCategory.PERSON, TagCategory.ORGANIZATION, TagCategory.LOCATION, TagCategory.URL
+	};
+
+	private Payloads() {
+	}
+
+	/**
+	 * @param length - the length of the text in characters, roughly
+	 * @return a text body of news-like words, with some characters that need escaping
+	 */
+	static String body(int length) {
+		Random random = new Random(42);
+		StringBuilder body = new StringBuilder(length + 16);
+		while (body.length() < length) {
+			body.append(WORDS[random.nextInt(WORDS.length)]);
+			body.append(random.nextInt(12) == 0 ? ". " : " ");
+		}
+		return body.toString();
+	}
+
+	/**
+	 * @return a text as text.get returns it
+	 */
+	static JSONObject text(int id, int bodyLength) throws JSONException {
+		return new JSONObject()
+				.put("collection_id", 12)
+				.put("text_id", id)
+				.put("headline", "Swedish markets rally as the central bank holds the rate")
+				.put("body", body(bodyLength))
+				.put("publish_date", "2012-11-05T14:22:10")
+				.put("url", "http://www.example.com/news/2012/11/05/markets-" + id + ".html")
+				.put("authors", "Anna Andersson, Erik Lind")
+				.put("ext_text_id", "ext-" + id)
+				.put("relevance", 0.87);
+	}
+
+	/**
+	 * @return the tags array of a text.tags result
+	 */
+	static JSONArray tags(int count) throws JSONException {
+		Random random = new Random(42);
+		JSONArray tags = new JSONArray();
+		for (int i = 0; i < count; i++) {
+			tags.put(new JSONObject()
+					.put("category", CATEGORIES[i % CATEGORIES.length].name().toLowerCase())
+					.put("tag", WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)])
+					.put("relevance", random.nextDouble()));
+		}
+		return tags;
+	}
+
+	/**
+	 * @return the groups array of a text.relatedGroups or group.list result
+	 */
+	static JSONArray groups(int count) throws JSONException {
+		Random random = new Random(42);
+		JSONArray groups = new JSONArray();
+		for (int i = 0; i < count; i++) {
+			groups.put(new JSONObject()
+					.put("group_id", 100 + i)
+					.put("name", "Group " + WORDS[random.nextInt(WORDS.length)] + " " + i)
+					.put("description", body(120))
+					.put("language", "en")
+					.put("date_created", "2012-10-01T08:00:00")
+					.put("date_updated", "2012-11-05T14:22:10")
+					.put("relevance", random.nextDouble()));
+		}
+		return groups;
+	}
+
+	/**
+	 * @return a whole JSON-RPC response with the given result
+	 */
+	static JSONObject response(int id, Object result) throws JSONException {
+		return new JSONObject()
+				.put("jsonrpc", "2.0")
+				.put("id", id)
+				.put("result", result);
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package com.saplo.api.client.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.session.impl.JSONRPCRequestEntity;
+
+/**
+ * Serializing a text.create request, the biggest one the client sends, with
+ * the org.json envelope the async session sends and the streaming entity the blocking one does.
+ *
+ * @author progre55
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+
+	@Param({"1024", "16384", "131072"})
+	public int bodyLength;
+
+	private JSONRPCRequestObject request;
+	private JSONRPCRequestEntity entity;
+	private final CountingSink sink = new CountingSink();
+
+	@Setup
+	public void setUp() throws JSONException {
+		JSONObject params = new JSONObject()
+				.put("collection_id", 12)
+				.put("headline", "Swedish markets rally as the central bank holds the rate")
+				.put("body", Payloads.body(bodyLength))
+				.put("publish_date", "2012-11-05T14:22:10")
+				.put("url", "http://www.example.com/news/2012/11/05/markets.html")
+				.put("authors", "Anna Andersson, Erik Lind")
+				.put("ext_text_id", "ext-1");
+		request = new JSONRPCRequestObject(1, "text.create", params);
+		entity = new JSONRPCRequestEntity(request);
+	}
+
+	@Benchmark
+	public JSONObject getJSONObject() {
+		return request.getJSONObject();
+	}
+
+	@Benchmark
+	public String requestToString() {
+		return request.toString();
+	}
+
+	@Benchmark
+	public long entityWriteTo() throws IOException {
+		entity.writeTo(sink);
+		return sink.count;
+	}
+
+	/*
+	 * a connection stream that only counts the bytes, so the write itself is not optimized away
+	 */
+	private static class CountingSink extends OutputStream {
+		long count;
+
+		public void write(int b) {
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ *
+ */
+package com.saplo.api.client.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.session.impl.JSONRPCResponseDecoder;
+
+/**
+ * Reading a text.get response into a {@link JSONRPCResponseObject}: from an org.json tree,
+ * from a string through org.json as the async session does, and straight off the stream as the blocking one does.
+ *
+ * @author progre55
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+	@Param({"1024", "16384", "131072"})
+	public int bodyLength;
+
+	private JSONObject json;
+	private String raw;
+	private byte[] bytes;
+
+	@Setup
+	public void setUp() throws JSONException {
+		json = Payloads.response(1, Payloads.text(1, bodyLength));
+		raw = json.toString();
+		bytes = raw.getBytes(Charset.forName("UTF-8"));
+	}
+
+	@Benchmark
+	public JSONRPCResponseObject fromJSONObject() {
+		return new JSONRPCResponseObject(json);
+	}
+
+	@Benchmark
+	public JSONRPCResponseObject parseString() throws JSONException {
+		return new JSONRPCResponseObject(new JSONObject(raw));
+	}
+
+	@Benchmark
+	public JSONRPCResponseObject decodeStream() throws SaploClientException {
+		return JSONRPCResponseDecoder.decode(new ByteArrayInputStream(bytes), null, false);
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The settings of a load test run, read from the command line by {@link #parse(String[])}
+ *
+ * @author progre55
+ */
+public class LoadConfig {
+
+	/**
+	 * How the calls are sent
+	 */
+	public enum Mode {
+		/** at the target rate whatever the latency, as independent users would */
+		OPEN,
+		/** by a fixed number of workers, each sending its next call once the last one is done */
+		CLOSED
+	}
+
+	static final String USAGE =
+			"java -cp target/benchmarks.jar com.saplo.api.client.load.LoadGenerator [options]\n"
+			+ "\n"
+			+ "  --endpoint <url>            the API to load, default a fake server started in this process\n"
+			+ "  --api-key <key>             default key\n"
+			+ "  --secret-key <key>          default secret\n"
+			+ "  --mode open|closed          default open\n"
+			+ "  --rate <calls/s>            the target rate, needed for open, optional for closed, default 100\n"
+			+ "  --threads <n>               the calls in flight at most (open) or the workers (closed), default 64\n"
+			+ "  --duration <s>              how long to measure, default 60\n"
+			+ "  --warmup <s>                how long to run before measuring, default 10\n"
+			+ "  --mix <method=weight,...>   default text.create=10,text.tags=40,text.relatedTexts=30,group.listTexts=20\n"
+			+ "  --texts <n>                 the texts created before the run for the reads, default 100\n"
+			+ "  --body-length <chars>       the length of the texts created, default 2000\n"
+			+ "  --collection-id <id>        use this collection instead of creating one\n"
+			+ "  --keep                      do not delete the collection and group created for the run\n"
+			+ "  --transport apache|async    default apache\n"
+			+ "  --max-connections <n>       the connection pool size, default the threads\n"
+			+ "  --label <text>              a name for the run in the reports, default the client settings\n"
+			+ "  --out <path>                write <path>.json and add a row per method to <path>.csv\n"
+			+ "  --server-latency <min-max>  the latency of the fake server in ms, default 5-20\n"
+			+ "  --server-error-rate <0..1>  the share of the calls the fake server fails, default 0\n"
+			+ "  --server-processing <n>     how often the fake server answers processing first, default 0\n";
+
+	private String endpoint;
+	private String apiKey = "key";
+	private String secretKey = "secret";
+	private Mode mode = Mode.OPEN;
+	private double rate = 100;
+	private int threads = 64;
+	private int duration = 60;
+	private int warmup = 10;
+	private Map<Operation, Integer> mix = defaultMix();
+	private int texts = 100;
+	private int bodyLength = 2000;
+	private int collectionId = -1;
+	private boolean keep = false;
+	private String transport = "apache";
+	private int maxConnections = -1;
+	private String label;
+	private String out;
+	private long serverMinLatency = 5;
+	private long serverMaxLatency = 20;
+	private double serverErrorRate = 0;
+	private int serverProcessing = 0;
+
+	/**
+	 * @param args - the command line, see {@link #USAGE}
+	 * @return the settings
+	 * @throws IllegalArgumentException if an option is unknown or its value is not valid
+	 */
+	public static LoadConfig parse(String[] args) {
+		LoadConfig config = new LoadConfig();
+		boolean rateGiven = false;
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if ("--keep".equals(option)) {
+				config.keep = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("no value for " + option);
+			String value = args[++i];
+
+			if ("--endpoint".equals(option))
+				config.endpoint = value;
+			else if ("--api-key".equals(option))
+				config.apiKey = value;
+			else if ("--secret-key".equals(option))
+				config.secretKey = value;
+			else if ("--mode".equals(option))
+				config.mode = Mode.valueOf(value.toUpperCase());
+			else if ("--rate".equals(option)) {
+				config.rate = Double.parseDouble(value);
+				rateGiven = true;
+			} else if ("--threads".equals(option))
+				config.threads = positive(option, Integer.parseInt(value));
+			else if ("--duration".equals(option))
+				config.duration = positive(option, Integer.parseInt(value));
+			else if ("--warmup".equals(option))
+				config.warmup = Integer.parseInt(value);
+			else if ("--mix".equals(option))
+				config.mix = parseMix(value);
+			else if ("--texts".equals(option))
+				config.texts = positive(option, Integer.parseInt(value));
+			else if ("--body-length".equals(option))
+				config.bodyLength = positive(option, Integer.parseInt(value));
+			else if ("--collection-id".equals(option))
+				config.collectionId = Integer.parseInt(value);
+			else if ("--transport".equals(option)) {
+				if (!"apache".equals(value) && !"async".equals(value))
+					throw new IllegalArgumentException("unknown transport " + value);
+				config.transport = value;
+			} else if ("--max-connections".equals(option))
+				config.maxConnections = positive(option, Integer.parseInt(value));
+			else if ("--label".equals(option))
+				config.label = value;
+			else if ("--out".equals(option))
+				config.out = value;
+			else if ("--server-latency".equals(option)) {
+				String[] range = value.split("-");
+				config.serverMinLatency = Long.parseLong(range[0]);
+				config.serverMaxLatency = Long.parseLong(range[range.length - 1]);
+			} else if ("--server-error-rate".equals(option))
+				config.serverErrorRate = Double.parseDouble(value);
+			else if ("--server-processing".equals(option))
+				config.serverProcessing = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+
+		// a closed loop runs flat out unless it is given a rate
+		if (config.mode == Mode.CLOSED && !rateGiven)
+			config.rate = 0;
+		if (config.mode == Mode.OPEN && config.rate <= 0)
+			throw new IllegalArgumentException("an open loop needs a --rate");
+		return config;
+	}
+
+	private static Map<Operation, Integer> parseMix(String value) {
+		Map<Operation, Integer> mix = new LinkedHashMap<Operation, Integer>();
+		for (String entry : value.split(",")) {
+			String[] parts = entry.trim().split("=");
+			Operation operation = Operation.forMethod(parts[0].trim());
+			int weight = (parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+			if (weight > 0)
+				mix.put(operation, weight);
+		}
+		if (mix.isEmpty())
+			throw new IllegalArgumentException("the mix has no methods");
+		return mix;
+	}
+
+	private static Map<Operation, Integer> defaultMix() {
+		Map<Operation, Integer> mix = new LinkedHashMap<Operation, Integer>();
+		mix.put(Operation.TEXT_CREATE, 10);
+		mix.put(Operation.TEXT_TAGS, 40);
+		mix.put(Operation.TEXT_RELATED_TEXTS, 30);
+		mix.put(Operation.GROUP_LIST_TEXTS, 20);
+		return mix;
+	}
+
+	private static int positive(String option, int value) {
+		if (value < 1)
+			throw new IllegalArgumentException(option + " should be positive");
+		return value;
+	}
+
+	/**
+	 * @return the API to load, or null for a fake server in this process
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	public String getSecretKey() {
+		return secretKey;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the target rate in calls per second, 0 for a closed loop that runs flat out
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return how long to measure, in seconds
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return how long to run before measuring, in seconds
+	 */
+	public int getWarmup() {
+		return warmup;
+	}
+
+	/**
+	 * @return the weight of each method in the calls
+	 */
+	public Map<Operation, Integer> getMix() {
+		return Collections.unmodifiableMap(mix);
+	}
+
+	public int getTexts() {
+		return texts;
+	}
+
+	public int getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * @return the collection to use, or -1 to create one
+	 */
+	public int getCollectionId() {
+		return collectionId;
+	}
+
+	public boolean isKeep() {
+		return keep;
+	}
+
+	public String getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @return the connection pool size, by default as many as the threads
+	 */
+	public int getMaxConnections() {
+		return (maxConnections > 0 ? maxConnections : threads);
+	}
+
+	/**
+	 * @return the name of the run, by default made up of its settings
+	 */
+	public String getLabel() {
+		if (label != null)
+			return label;
+		return transport + "-" + mode.toString().toLowerCase() + "-" + (rate > 0 ? (long)rate + "rps" : "max")
+				+ "-" + threads + "t";
+	}
+
+	/**
+	 * @return the path to write the reports to, without the extension, or null for none
+	 */
+	public String getOut() {
+		return out;
+	}
+
+	public long getServerMinLatency() {
+		return serverMinLatency;
+	}
+
+	public long getServerMaxLatency() {
+		return serverMaxLatency;
+	}
+
+	public double getServerErrorRate() {
+		return serverErrorRate;
+	}
+
+	public int getServerProcessing() {
+		return serverProcessing;
+	}
+}
@@ -0,0 +1,280 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.TransportConfig;
+import com.saplo.api.client.server.FakeSaploServer;
+import com.saplo.api.client.session.TransportRegistry;
+import com.saplo.api.client.session.impl.HTTPSessionApache;
+import com.saplo.api.client.session.impl.HTTPSessionAsync;
+
+/**
+ * Loads an endpoint with a mix of text.create, text.tags, text.relatedTexts and group.listTexts calls
+ * through a {@link SaploClient}, and reports the throughput, latency percentiles and errors of each.
+ * Without an endpoint it starts a {@link FakeSaploServer} in the process and loads that, so the client
+ * alone can be measured on one box.
+ *
+ * In an open loop the calls are scheduled at the target rate and handed to up to --threads
+ * threads, whether the ones before them have finished or not. In a closed loop each of the
+ * --threads workers sends its next call once the last one is done, paced to its share of the rate
+ * if there is one. Either way the latency of a call is counted from when the schedule meant it to start,
+ * so the calls held up behind a slow one are not left out of the percentiles. A closed loop
+ * without a rate has no schedule, and only measures the service time.
+ * The calls of an open loop still queued {@value #TERMINATION_TIMEOUT} seconds after the schedule
+ * has ended are dropped, and counted as failed with {@value #CODE_DROPPED} when they are dropped.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.saplo.api.client.load.LoadGenerator --rate 200 --duration 60 --out results/run
+ * </pre>
+ *
+ * @author progre55
+ */
+public class LoadGenerator {
+
+	private static final long TERMINATION_TIMEOUT = 60;
+	// the error code of the calls dropped from the queue at the end of an open loop
+	private static final int CODE_DROPPED = -1;
+
+	private static final ThreadLocal<Random> CALL_RANDOM = new ThreadLocal<Random>() {
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	private final LoadConfig config;
+	private final Workload workload;
+	private final Map<Operation, OperationStats> stats = new LinkedHashMap<Operation, OperationStats>();
+	private final OperationStats total = new OperationStats();
+
+	// the calls meant to start in between are measured
+	private volatile long measureFrom;
+	private volatile long measureUntil;
+
+	public LoadGenerator(LoadConfig config, Workload workload) {
+		this.config = config;
+		this.workload = workload;
+		for (Operation operation : config.getMix().keySet())
+			stats.put(operation, new OperationStats());
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadConfig config;
+		try {
+			if (args.length > 0 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+				System.out.println(LoadConfig.USAGE);
+				return;
+			}
+			config = LoadConfig.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(LoadConfig.USAGE);
+			System.exit(2);
+			return;
+		}
+
+		FakeSaploServer server = null;
+		String endpoint = config.getEndpoint();
+		if (endpoint == null) {
+			server = new FakeSaploServer(config.getApiKey(), config.getSecretKey());
+			server.setLatency(config.getServerMinLatency(), config.getServerMaxLatency());
+			server.start();
+			endpoint = server.getEndpoint();
+		}
+
+		SaploClient client = null;
+		try {
+			client = newClient(config, endpoint);
+			Workload workload = new Workload(client, config);
+			workload.setUp();
+			// the faults are injected into the run only, not into its set up
+			if (server != null) {
+				server.setErrorRate(config.getServerErrorRate());
+				server.setProcessingCount(config.getServerProcessing());
+			}
+
+			LoadReport report;
+			try {
+				report = new LoadGenerator(config, workload).run(endpoint);
+			} finally {
+				if (server != null) {
+					server.setErrorRate(0);
+					server.setProcessingCount(0);
+				}
+				workload.tearDown();
+			}
+
+			report.print(System.out);
+			if (config.getOut() != null) {
+				File json = new File(config.getOut() + ".json");
+				File csv = new File(config.getOut() + ".csv");
+				if (json.getAbsoluteFile().getParentFile() != null)
+					json.getAbsoluteFile().getParentFile().mkdirs();
+				report.writeJSON(json);
+				report.appendCSV(csv);
+				System.out.println("Wrote " + json + " and " + csv);
+			}
+		} finally {
+			if (client != null)
+				client.shutdown();
+			if (server != null)
+				server.stop();
+		}
+	}
+
+	private static SaploClient newClient(LoadConfig config, String endpoint) throws SaploClientException {
+		TransportRegistry registry = TransportRegistry.getTransportRegistryInstance();
+		if ("async".equals(config.getTransport()))
+			HTTPSessionAsync.register(registry);
+		else
+			HTTPSessionApache.register(registry);
+
+		TransportConfig transport = new TransportConfig();
+		transport.setMaxTotalConnections(config.getMaxConnections());
+		transport.setMaxConnectionsPerRoute(config.getMaxConnections());
+		transport.setMaxEndpointConnections(config.getMaxConnections());
+		return new SaploClient(config.getApiKey(), config.getSecretKey(), "", endpoint,
+				endpoint.startsWith("https"), null, null, transport);
+	}
+
+	/**
+	 * Run the warm up and the measured part, and report on the latter
+	 *
+	 * @param endpoint - the API loaded, for the report
+	 * @return the report
+	 * @throws InterruptedException if interrupted while waiting for the calls to finish
+	 */
+	public LoadReport run(String endpoint) throws InterruptedException {
+		long start = System.nanoTime();
+		measureFrom = start + TimeUnit.SECONDS.toNanos(config.getWarmup());
+		measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(config.getDuration());
+		Date started = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getWarmup()));
+
+		if (config.getMode() == LoadConfig.Mode.OPEN)
+			runOpen(start);
+		else
+			runClosed(start);
+
+		Map<String, OperationStats> results = new LinkedHashMap<String, OperationStats>();
+		for (Map.Entry<Operation, OperationStats> entry : stats.entrySet())
+			results.put(entry.getKey().getMethod(), entry.getValue());
+		results.put(LoadReport.TOTAL, total);
+		return new LoadReport(config, endpoint, started, config.getDuration(), results);
+	}
+
+	/*
+	 * schedule the calls at the rate on this thread, and make them on the pool; a call that
+	 * waits in the queue for a thread is late by the schedule, and its latency shows it
+	 */
+	private void runOpen(long start) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(config.getThreads());
+		Random random = new Random();
+		double interval = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+		try {
+			for (long i = 0; ; i++) {
+				final long intended = start + (long)(i * interval);
+				if (intended >= measureUntil)
+					break;
+				sleepUntil(intended);
+				pool.execute(new ScheduledCall(workload.nextOperation(random), intended));
+			}
+		} finally {
+			pool.shutdown();
+			if (!pool.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+				// the calls that never got a thread failed, and were late by at least this much
+				for (Runnable dropped : pool.shutdownNow()) {
+					ScheduledCall call = (ScheduledCall)dropped;
+					long now = System.nanoTime();
+					record(call.operation, call.intended, now, now, CODE_DROPPED);
+				}
+			}
+		}
+	}
+
+	/*
+	 * a call of an open loop, waiting in the queue for a thread
+	 */
+	private class ScheduledCall implements Runnable {
+		final Operation operation;
+		final long intended;
+
+		ScheduledCall(Operation operation, long intended) {
+			this.operation = operation;
+			this.intended = intended;
+		}
+
+		public void run() {
+			call(operation, intended, CALL_RANDOM.get());
+		}
+	}
+
+	/*
+	 * each worker makes its next call once the last one is done, on its own schedule if there is a rate
+	 */
+	private void runClosed(final long start) throws InterruptedException {
+		final int threads = config.getThreads();
+		final double interval = (config.getRate() > 0 ? TimeUnit.SECONDS.toNanos(1) * threads / config.getRate() : 0);
+		List<Thread> workers = new ArrayList<Thread>(threads);
+		for (int w = 0; w < threads; w++) {
+			// spread the schedules of the workers out over one interval
+			final long offset = (long)(interval * w / threads);
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random();
+					for (long i = 0; ; i++) {
+						long intended = (interval > 0 ? start + offset + (long)(i * interval) : System.nanoTime());
+						if (intended >= measureUntil)
+							break;
+						sleepUntil(intended);
+						call(workload.nextOperation(random), intended, random);
+					}
+				}
+			}, "load-worker-" + w);
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers)
+			worker.join();
+	}
+
+	private void call(Operation operation, long intended, Random random) {
+		long started = System.nanoTime();
+		int code = 0;
+		try {
+			operation.call(workload, random);
+		} catch (SaploClientException e) {
+			code = e.getErrorCode();
+		} catch (RuntimeException e) {
+			code = ResponseCodes.CODE_UNKNOWN_EXCEPTION;
+		}
+		record(operation, intended, started, System.nanoTime(), code);
+	}
+
+	private void record(Operation operation, long intended, long started, long finished, int code) {
+		if (intended < measureFrom || intended >= measureUntil)
+			return;
+		stats.get(operation).record(intended, started, finished, code);
+		total.record(intended, started, finished, code);
+	}
+
+	private static void sleepUntil(long deadline) {
+		long wait;
+		while ((wait = deadline - System.nanoTime()) > 0)
+			LockSupport.parkNanos(wait);
+	}
+}
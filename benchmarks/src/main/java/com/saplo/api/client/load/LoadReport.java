@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.saplo.api.client.util.LatencyHistogram;
+
+/**
+ * The results of a load test run: the throughput, latency percentiles and errors of each method
+ * and of all of them together, written as JSON, as CSV rows that add up over the runs
+ * to compare clients and settings, or as a table to the console.
+ * The latencies are in milliseconds.
+ *
+ * @author progre55
+ */
+public class LoadReport {
+
+	static final String TOTAL = "total";
+
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	private static final String CSV_HEADER = "label,started,mode,target_rate,threads,method,count,errors,throughput,"
+			+ "latency_mean_ms,latency_p50_ms,latency_p90_ms,latency_p99_ms,latency_p999_ms,latency_max_ms,"
+			+ "service_p50_ms,service_p99_ms,errors_by_code";
+
+	private final LoadConfig config;
+	private final String endpoint;
+	private final Date started;
+	private final double seconds;
+	private final Map<String, OperationStats> stats;
+
+	/**
+	 * @param config - the settings of the run
+	 * @param endpoint - the API that was loaded
+	 * @param started - when the measuring started
+	 * @param seconds - how long it was measured
+	 * @param stats - the stats of each method, and of all of them under {@value #TOTAL}
+	 */
+	LoadReport(LoadConfig config, String endpoint, Date started, double seconds, Map<String, OperationStats> stats) {
+		this.config = config;
+		this.endpoint = endpoint;
+		this.started = started;
+		this.seconds = seconds;
+		this.stats = stats;
+	}
+
+	/**
+	 * @return the report as JSON
+	 */
+	public JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("label", config.getLabel());
+		json.put("started", timestamp());
+		json.put("endpoint", endpoint);
+		json.put("mode", config.getMode().toString().toLowerCase());
+		json.put("target_rate", config.getRate());
+		json.put("threads", config.getThreads());
+		json.put("transport", config.getTransport());
+		json.put("max_connections", config.getMaxConnections());
+		json.put("duration", seconds);
+		json.put("warmup", config.getWarmup());
+		JSONObject mix = new JSONObject();
+		for (Map.Entry<Operation, Integer> entry : config.getMix().entrySet())
+			mix.put(entry.getKey().getMethod(), entry.getValue());
+		json.put("mix", mix);
+
+		JSONObject methods = new JSONObject();
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			OperationStats s = entry.getValue();
+			JSONObject method = new JSONObject();
+			method.put("count", s.getCount());
+			method.put("errors", s.getErrorCount());
+			method.put("throughput", throughput(s));
+			method.put("latency", percentiles(s.getLatency()));
+			method.put("service_time", percentiles(s.getServiceTime()));
+			JSONObject errors = new JSONObject();
+			for (Map.Entry<Integer, Long> error : s.getErrors().entrySet())
+				errors.put(String.valueOf(error.getKey()), error.getValue());
+			method.put("errors_by_code", errors);
+			methods.put(entry.getKey(), method);
+		}
+		json.put("methods", methods);
+		return json;
+	}
+
+	/**
+	 * Write the report as JSON to the given file
+	 */
+	public void writeJSON(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(toJSON().toString(2));
+			out.write('\n');
+		} catch (JSONException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Add a row for every method to the given CSV file, with the header first if the file is new
+	 */
+	public void appendCSV(File file) throws IOException {
+		boolean exists = file.exists() && file.length() > 0;
+		Writer out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		try {
+			if (!exists)
+				out.write(CSV_HEADER + "\n");
+			for (Map.Entry<String, OperationStats> entry : stats.entrySet())
+				out.write(csvRow(entry.getKey(), entry.getValue()) + "\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Print the report as a table
+	 */
+	public void print(PrintStream out) {
+		out.println(String.format(Locale.US, "%s: %.0f s against %s", config.getLabel(), seconds, endpoint));
+		out.println(String.format(Locale.US, "%-18s %9s %7s %9s %9s %9s %9s %9s %9s  %s",
+				"method", "count", "errors", "calls/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms", "errors by code"));
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			OperationStats s = entry.getValue();
+			LatencyHistogram latency = s.getLatency();
+			out.println(String.format(Locale.US, "%-18s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s",
+					entry.getKey(), s.getCount(), s.getErrorCount(), throughput(s),
+					millis(latency.getValueAtPercentile(0.5)), millis(latency.getValueAtPercentile(0.9)),
+					millis(latency.getValueAtPercentile(0.99)), millis(latency.getValueAtPercentile(0.999)),
+					millis(latency.getMax()), errorsByCode(s)));
+		}
+	}
+
+	private String csvRow(String method, OperationStats s) {
+		LatencyHistogram latency = s.getLatency();
+		LatencyHistogram service = s.getServiceTime();
+		return String.format(Locale.US, "%s,%s,%s,%.1f,%d,%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%s",
+				csv(config.getLabel()), timestamp(), config.getMode().toString().toLowerCase(), config.getRate(),
+				config.getThreads(), method, s.getCount(), s.getErrorCount(), throughput(s),
+				millis(latency.getMean()), millis(latency.getValueAtPercentile(0.5)),
+				millis(latency.getValueAtPercentile(0.9)), millis(latency.getValueAtPercentile(0.99)),
+				millis(latency.getValueAtPercentile(0.999)), millis(latency.getMax()),
+				millis(service.getValueAtPercentile(0.5)), millis(service.getValueAtPercentile(0.99)),
+				csv(errorsByCode(s)));
+	}
+
+	private JSONObject percentiles(LatencyHistogram histogram) throws JSONException {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		values.put("mean", millis(histogram.getMean()));
+		for (int i = 0; i < PERCENTILES.length; i++)
+			values.put(PERCENTILE_NAMES[i], millis(histogram.getValueAtPercentile(PERCENTILES[i])));
+		values.put("max", millis(histogram.getMax()));
+
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Double> value : values.entrySet())
+			json.put(value.getKey(), value.getValue());
+		return json;
+	}
+
+	private double throughput(OperationStats s) {
+		return (seconds > 0 ? s.getCount() / seconds : 0);
+	}
+
+	private String timestamp() {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(started);
+	}
+
+	/*
+	 * e.g. 897:12 898:3
+	 */
+	private static String errorsByCode(OperationStats s) {
+		StringBuilder errors = new StringBuilder();
+		for (Map.Entry<Integer, Long> error : s.getErrors().entrySet()) {
+			if (errors.length() > 0)
+				errors.append(' ');
+			errors.append(error.getKey()).append(':').append(error.getValue());
+		}
+		return errors.toString();
+	}
+
+	private static double millis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
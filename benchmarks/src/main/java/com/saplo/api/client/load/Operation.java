@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.util.Random;
+
+import com.saplo.api.client.SaploClientException;
+
+/**
+ * The API methods a load test can call
+ *
+ * @author progre55
+ */
+public enum Operation {
+
+	TEXT_CREATE("text.create") {
+		void call(Workload workload, Random random) throws SaploClientException {
+			workload.getClient().getTextManager().create(workload.newText(random));
+		}
+	},
+	TEXT_TAGS("text.tags") {
+		void call(Workload workload, Random random) throws SaploClientException {
+			workload.getClient().getTextManager().tags(workload.randomText(random));
+		}
+	},
+	TEXT_RELATED_TEXTS("text.relatedTexts") {
+		void call(Workload workload, Random random) throws SaploClientException {
+			workload.getClient().getTextManager().relatedTexts(workload.randomText(random));
+		}
+	},
+	GROUP_LIST_TEXTS("group.listTexts") {
+		void call(Workload workload, Random random) throws SaploClientException {
+			workload.getClient().getGroupManager().listTexts(workload.getGroup());
+		}
+	};
+
+	private final String method;
+
+	private Operation(String method) {
+		this.method = method;
+	}
+
+	/**
+	 * @return the API method, e.g. text.tags
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Make one call, on the texts and group of the workload
+	 */
+	abstract void call(Workload workload, Random random) throws SaploClientException;
+
+	/**
+	 * @param method - the API method, e.g. text.tags
+	 * @return the operation that calls it
+	 * @throws IllegalArgumentException if no operation does
+	 */
+	public static Operation forMethod(String method) {
+		for (Operation operation : values()) {
+			if (operation.method.equals(method))
+				return operation;
+		}
+		throw new IllegalArgumentException("unknown method " + method);
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.saplo.api.client.util.LatencyHistogram;
+
+/**
+ * The outcome of the calls of one method during a load test.
+ *
+ * The latency of a call is counted from when it was meant to start by the schedule,
+ * so a call that waited for a thread or a connection because the ones before it were slow
+ * shows that wait too, i.e. the results do not suffer from coordinated omission.
+ * The service time is counted from when it actually started, and is what the client alone
+ * would have reported.
+ *
+ * @author progre55
+ */
+public class OperationStats {
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram serviceTime = new LatencyHistogram();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final ConcurrentHashMap<Integer, AtomicLong> errors = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	/**
+	 * Count a call
+	 *
+	 * @param intended - when the call was meant to start, in System.nanoTime() terms
+	 * @param started - when it started
+	 * @param finished - when it finished
+	 * @param code - 0, or the code of the error it failed with
+	 */
+	void record(long intended, long started, long finished, int code) {
+		latency.record(finished - intended);
+		serviceTime.record(finished - started);
+		if (code == 0)
+			return;
+		errorCount.incrementAndGet();
+		AtomicLong counter = errors.get(code);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = errors.putIfAbsent(code, created);
+			if (counter == null)
+				counter = created;
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * @return the latencies from the intended start, in nano seconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the latencies from the actual start, in nano seconds
+	 */
+	public LatencyHistogram getServiceTime() {
+		return serviceTime;
+	}
+
+	/**
+	 * @return the number of calls, including the failed ones
+	 */
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * @return the number of failed calls
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * @return the number of failed calls by the code of their error, in the order of the codes
+	 */
+	public Map<Integer, Long> getErrors() {
+		Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet())
+			counts.put(entry.getKey(), entry.getValue().get());
+		return counts;
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ *
+ */
+package com.saplo.api.client.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.SaploBulkResult;
+import com.saplo.api.client.entity.SaploCollection;
+import com.saplo.api.client.entity.SaploCollection.Language;
+import com.saplo.api.client.entity.SaploGroup;
+import com.saplo.api.client.entity.SaploText;
+import com.saplo.api.client.manager.SaploTextManager;
+
+/**
+ * The data a load test runs on: a collection with texts for the reads, a group with a few of them,
+ * and a mix to pick the next method from. The texts are made up of a fixed vocabulary,
+ * with a few names in each so they have tags.
+ *
+ * @author progre55
+ */
+public class Workload {
+
+	private static final String[] WORDS = {
+		"the", "market", "rose", "after", "bank", "said", "rate", "would", "stay", "while",
+		"investors", "waited", "for", "news", "about", "growth", "and", "new", "jobs", "in",
+		"region", "company", "reported", "higher", "sales", "than", "expected", "last", "quarter", "of"
+	};
+	private static final String[] NAMES = {
+		"Stockholm", "Gothenburg", "Malmo", "Ericsson", "Volvo", "Saab", "Anna", "Erik", "Riksbank", "Uppsala"
+	};
+	private static final int GROUP_TEXTS = 10;
+
+	private final SaploClient client;
+	private final LoadConfig config;
+
+	private SaploCollection collection;
+	private boolean ownCollection;
+	private SaploGroup group;
+	private int[] textIds;
+
+	private final Operation[] operations;
+	private final int[] cumulativeWeights;
+
+	public Workload(SaploClient client, LoadConfig config) {
+		this.client = client;
+		this.config = config;
+
+		Map<Operation, Integer> mix = config.getMix();
+		operations = mix.keySet().toArray(new Operation[mix.size()]);
+		cumulativeWeights = new int[operations.length];
+		int total = 0;
+		for (int i = 0; i < operations.length; i++) {
+			total += mix.get(operations[i]);
+			cumulativeWeights[i] = total;
+		}
+	}
+
+	/**
+	 * Create the collection, unless one is given, the texts and the group the calls run on
+	 *
+	 * @throws SaploClientException if any of them could not be created
+	 */
+	public void setUp() throws SaploClientException {
+		Random random = new Random(42);
+		if (config.getCollectionId() > 0) {
+			collection = client.getCollectionManager().get(config.getCollectionId());
+		} else {
+			collection = new SaploCollection("load-test-" + System.currentTimeMillis(), Language.en);
+			client.getCollectionManager().create(collection);
+			ownCollection = true;
+		}
+
+		List<SaploText> texts = new ArrayList<SaploText>(config.getTexts());
+		for (int i = 0; i < config.getTexts(); i++)
+			texts.add(newText(random));
+		SaploBulkResult<SaploText> result = client.getTextManager().createAll(texts);
+		// the reads run on the texts that were created, e.g. all but a few against a flaky endpoint
+		texts.removeAll(result.getFailures().keySet());
+		if (texts.isEmpty())
+			throw result.getFailures().values().iterator().next();
+		textIds = new int[texts.size()];
+		for (int i = 0; i < textIds.length; i++)
+			textIds[i] = texts.get(i).getId();
+
+		if (config.getMix().containsKey(Operation.GROUP_LIST_TEXTS)) {
+			group = new SaploGroup("load-test", Language.en);
+			client.getGroupManager().create(group);
+			for (int i = 0; i < Math.min(GROUP_TEXTS, texts.size()); i++)
+				client.getGroupManager().addText(group, texts.get(i));
+		}
+	}
+
+	/**
+	 * Delete the group and the collection created for the run, unless asked to keep them
+	 */
+	public void tearDown() {
+		if (config.isKeep())
+			return;
+		try {
+			if (group != null)
+				client.getGroupManager().delete(group);
+			if (ownCollection)
+				client.getCollectionManager().delete(collection);
+		} catch (SaploClientException e) {
+			System.err.println("Could not clean up after the run: " + e.getMessage());
+		}
+	}
+
+	public SaploClient getClient() {
+		return client;
+	}
+
+	public SaploGroup getGroup() {
+		return group;
+	}
+
+	/**
+	 * @return the method to call next, picked by the weights of the mix
+	 */
+	public Operation nextOperation(Random random) {
+		int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (pick < cumulativeWeights[i])
+				return operations[i];
+		}
+		return operations[operations.length - 1];
+	}
+
+	/**
+	 * @return a new text, not created yet, of about the configured length
+	 */
+	public SaploText newText(Random random) {
+		StringBuilder body = new StringBuilder(config.getBodyLength() + 16);
+		while (body.length() < config.getBodyLength()) {
+			if (random.nextInt(8) == 0)
+				body.append(NAMES[random.nextInt(NAMES.length)]);
+			else
+				body.append(WORDS[random.nextInt(WORDS.length)]);
+			body.append(random.nextInt(12) == 0 ? ". " : " ");
+		}
+		SaploText text = new SaploText(collection, body.toString());
+		text.setHeadline(NAMES[random.nextInt(NAMES.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+		return text;
+	}
+
+	/**
+	 * @return one of the texts created for the run, as a new object so the calls do not share it
+	 */
+	public SaploText randomText(Random random) {
+		return SaploTextManager.getTextObject(collection.getId(), textIds[random.nextInt(textIds.length)]);
+	}
+}
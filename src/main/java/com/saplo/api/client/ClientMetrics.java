@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package com.saplo.api.client;
+
+/**
+ * Gets told about every API call a client makes, to bridge them to a monitoring system.
+ * Set one with {@link TransportConfig#setMetrics(ClientMetrics)}, or use
+ * {@link com.saplo.api.client.util.HistogramClientMetrics} which keeps latency histograms
+ * and counters per method in memory.
+ *
+ * The methods are called on the calling threads, and on the I/O threads for the async calls,
+ * so they should be thread safe and quick, i.e. just count and never block.
+ *
+ * @author progre55
+ */
+public interface ClientMetrics {
+
+	/**
+	 * The method name the bytes of a JSON-RPC batch are counted under
+	 */
+	String BATCH = "batch";
+
+	/**
+	 * The code a call that succeeded finishes with
+	 */
+	int OK = 0;
+
+	/**
+	 * A call has started, and is in flight until {@link #callFinished(String, long, int)}
+	 *
+	 * @param method - the API method, e.g. text.tags
+	 */
+	void callStarted(String method);
+
+	/**
+	 * A call has finished, including its retries and hedges
+	 *
+	 * @param method - the API method
+	 * @param latency - how long the call took, in nano seconds
+	 * @param code - {@link #OK}, or the code of the error it finished with, see {@link ResponseCodes}
+	 */
+	void callFinished(String method, long latency, int code);
+
+	/**
+	 * A request body has been sent
+	 *
+	 * @param method - the API method, or {@link #BATCH}
+	 * @param bytes - the size of the JSON body, before compression
+	 */
+	void requestSent(String method, long bytes);
+
+	/**
+	 * A response body has been received
+	 *
+	 * @param method - the API method, or {@link #BATCH}
+	 * @param bytes - the size of the JSON body, after decompression
+	 */
+	void responseReceived(String method, long bytes);
+}
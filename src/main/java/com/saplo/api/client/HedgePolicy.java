@@ -0,0 +1,261 @@
+/**
+ *
+ */
+package com.saplo.api.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class to hold when a slow call should be hedged, i.e. sent a second time while
+ * the first one is still in flight, so whichever response comes first is used and
+ * the other call is cancelled. Only the idempotent methods should be hedged, and only
+ * the calls of an AsyncSession are, as those can be cancelled while in flight.
+ *
+ * A call is hedged once it has taken longer than the given percentile of the latencies
+ * of its method, e.g. the p95, so only the slowest few calls are sent twice. The latencies
+ * of the last sampleSize calls of each method are kept, and no call is hedged before
+ * minSamples of them are known.
+ *
+ * A hedge budget keeps the hedges from adding much load: every call adds budgetRatio to
+ * the budget, up to maxBudget, and every hedge takes 1 from it.
+ * A policy can be shared by the clients of an endpoint, so they share the budget too.
+ *
+ * @author progre55
+ */
+public class HedgePolicy {
+
+	private static final Set<String> DEFAULT_METHODS = new HashSet<String>(Arrays.asList(
+			"collection.get", "group.get", "text.get", "text.tags", "text.relatedTexts", "text.relatedGroups"));
+
+	private volatile Set<String> methods = DEFAULT_METHODS;
+	private double percentile = 0.95;
+	private long minDelay = 10;
+	private int sampleSize = 1000;
+	private int minSamples = 20;
+	private double budgetRatio = 0.05;
+	private double maxBudget = 10;
+
+	private double budget = maxBudget;
+	private final ConcurrentHashMap<String, Latencies> latencies = new ConcurrentHashMap<String, Latencies>();
+	private final AtomicLong hedgeCount = new AtomicLong();
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+	private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+	/**
+	 * A policy with the default settings
+	 */
+	public HedgePolicy() {
+	}
+
+	/**
+	 * @return the methods that are hedged
+	 */
+	public Set<String> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * @param methods the methods to hedge to set, they should all be idempotent.
+	 * By default collection.get, group.get, text.get, text.tags, text.relatedTexts and text.relatedGroups
+	 */
+	public void setMethods(Set<String> methods) {
+		this.methods = Collections.unmodifiableSet(new HashSet<String>(methods));
+	}
+
+	/**
+	 * @return the latency percentile after which a call is hedged
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * @param percentile the latency percentile after which a call is hedged to set, between 0 and 1, default 0.95
+	 */
+	public void setPercentile(double percentile) {
+		if (percentile <= 0 || percentile >= 1)
+			throw new IllegalArgumentException("percentile should be between 0 and 1");
+		this.percentile = percentile;
+	}
+
+	/**
+	 * @return the least time a call waits before it is hedged, in milliseconds
+	 */
+	public long getMinDelay() {
+		return minDelay;
+	}
+
+	/**
+	 * @param minDelay the least time a call waits before it is hedged to set, in milliseconds, default 10
+	 */
+	public void setMinDelay(long minDelay) {
+		this.minDelay = minDelay;
+	}
+
+	/**
+	 * @param sampleSize the number of latencies kept for each method to set, default 1000
+	 */
+	public void setSampleSize(int sampleSize) {
+		if (sampleSize < 1)
+			throw new IllegalArgumentException("sampleSize should be positive");
+		this.sampleSize = sampleSize;
+		latencies.clear();
+	}
+
+	/**
+	 * @param minSamples the number of latencies of a method needed before its calls are hedged to set, default 20
+	 */
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * @param budgetRatio the share of the calls that may be hedged to set, default 0.05
+	 */
+	public synchronized void setBudgetRatio(double budgetRatio) {
+		if (budgetRatio < 0)
+			throw new IllegalArgumentException("budgetRatio should not be negative");
+		this.budgetRatio = budgetRatio;
+	}
+
+	/**
+	 * @param maxBudget the max number of hedges saved up in the budget to set, default 10
+	 */
+	public synchronized void setMaxBudget(double maxBudget) {
+		this.maxBudget = maxBudget;
+		this.budget = Math.min(budget, maxBudget);
+	}
+
+	/**
+	 * @return the number of hedges sent
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * @return the number of hedges that answered before the call they hedged
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * @return the number of hedges not sent because the budget was empty
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount.get();
+	}
+
+	/**
+	 * @param method - the API method
+	 * @return how long its calls wait before they are hedged in milliseconds, or -1 if they are not hedged
+	 */
+	public long getDelay(String method) {
+		if (!methods.contains(method))
+			return -1;
+		Latencies methodLatencies = latencies.get(method);
+		if (methodLatencies == null)
+			return -1;
+		long delay = methodLatencies.percentile(percentile, minSamples);
+		if (delay < 0)
+			return -1;
+		return Math.max(minDelay, TimeUnit.NANOSECONDS.toMillis(delay));
+	}
+
+	/**
+	 * Keep the latency of a call
+	 *
+	 * @param method - the API method
+	 * @param latency - how long the call took, in nano seconds
+	 */
+	void onResponse(String method, long latency) {
+		if (!methods.contains(method))
+			return;
+		Latencies methodLatencies = latencies.get(method);
+		if (methodLatencies == null) {
+			Latencies created = new Latencies(sampleSize);
+			methodLatencies = latencies.putIfAbsent(method, created);
+			if (methodLatencies == null)
+				methodLatencies = created;
+		}
+		methodLatencies.add(latency);
+	}
+
+	/**
+	 * Add to the budget for a new call
+	 */
+	synchronized void onCall() {
+		budget = Math.min(maxBudget, budget + budgetRatio);
+	}
+
+	/**
+	 * Take a hedge from the budget
+	 *
+	 * @return false if the budget is empty
+	 */
+	boolean tryHedge() {
+		synchronized (this) {
+			if (budget < 1) {
+				budgetExhaustedCount.incrementAndGet();
+				return false;
+			}
+			budget -= 1;
+		}
+		hedgeCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Count a hedge that answered first
+	 */
+	void onHedgeWin() {
+		hedgeWinCount.incrementAndGet();
+	}
+
+	/*
+	 * the last latencies of a method, in a ring
+	 */
+	private static class Latencies {
+		// the percentile is sorted out again after this many new latencies
+		private static final int RECALCULATE_EVERY = 32;
+
+		private final long[] ring;
+		private int count = 0;
+		private int next = 0;
+		private int sinceCalculated = 0;
+		private double calculatedFor = -1;
+		private long calculated = -1;
+
+		Latencies(int size) {
+			this.ring = new long[size];
+		}
+
+		synchronized void add(long latency) {
+			ring[next] = latency;
+			next = (next + 1) % ring.length;
+			if (count < ring.length)
+				count++;
+			sinceCalculated++;
+		}
+
+		synchronized long percentile(double percentile, int minSamples) {
+			if (count < minSamples || count == 0)
+				return -1;
+			if (calculated < 0 || sinceCalculated >= RECALCULATE_EVERY || calculatedFor != percentile) {
+				long[] sorted = Arrays.copyOf(ring, count);
+				Arrays.sort(sorted);
+				calculated = sorted[Math.min(count - 1, (int)Math.ceil(percentile * count) - 1)];
+				calculatedFor = percentile;
+				sinceCalculated = 0;
+			}
+			return calculated;
+		}
+	}
+}
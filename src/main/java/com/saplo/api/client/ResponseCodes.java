@@ -32,6 +32,9 @@ public class ResponseCodes {
 	public static final int CODE_JSON_EXCEPTION = 894;
 	public static final String MSG_JSON_EXCEPTION = "JSONException";
 
+	public static final int CODE_CIRCUIT_OPEN = 893;
+	public static final String MSG_CIRCUIT_OPEN = "The API has been failing, so it is not called for a while";
+
 	/*
 	 * GENERAL RPC ERROR CODES
 	 */
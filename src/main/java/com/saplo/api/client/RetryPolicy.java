@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package com.saplo.api.client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * A class to hold when and how often a failed call should be sent again.
+ * Only the calls that failed in the transport are retried, i.e. the API could not be
+ * reached or did not answer with a 200, never the ones the API answered with an error.
+ * The idempotent methods are retried on any such failure, the other ones only when
+ * the connection could not be made at all, so the request was surely not sent.
+ *
+ * The tries are spaced by an exponential backoff with full jitter: before the n-th retry,
+ * a random time between 0 and min(maxDelay, baseDelay * 2^(n-1)) is waited.
+ *
+ * A retry budget keeps the retries from piling up on an API that is down: every call
+ * adds budgetRatio to the budget, up to maxBudget, and every retry takes 1 from it.
+ * When the budget is empty, the calls fail right away, so the retries stay under
+ * budgetRatio of the calls, plus maxBudget for a quiet client.
+ * A policy can be shared by the clients of an endpoint, so they share the budget too.
+ *
+ * @author progre55
+ */
+public class RetryPolicy {
+
+	private static final Set<String> DEFAULT_IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList(
+			"account.get", "auth.accessToken", "ping.ping", "saplo.listMethods",
+			"collection.get", "collection.list",
+			"group.get", "group.list", "group.listTexts", "group.relatedGroups", "group.relatedTexts",
+			"text.get", "text.tags", "text.relatedTexts", "text.relatedGroups"));
+
+	private static final Random random = new Random();
+
+	private int maxAttempts = 3;
+	private long baseDelay = 100;
+	private long maxDelay = 5 * 1000;
+	private double budgetRatio = 0.1;
+	private double maxBudget = 10;
+	private volatile Set<String> idempotentMethods = DEFAULT_IDEMPOTENT_METHODS;
+
+	private double budget = maxBudget;
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+	/**
+	 * A policy with the default settings
+	 */
+	public RetryPolicy() {
+	}
+
+	/**
+	 * @return the max number of tries of a call, including the first one
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts the max number of tries of a call to set, including the first one, default 3
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("maxAttempts should be at least 1");
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @return the backoff before the first retry, in milliseconds
+	 */
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * @param baseDelay the backoff before the first retry to set, in milliseconds, default 100
+	 */
+	public void setBaseDelay(long baseDelay) {
+		this.baseDelay = baseDelay;
+	}
+
+	/**
+	 * @return the max backoff between two tries, in milliseconds
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * @param maxDelay the max backoff between two tries to set, in milliseconds, default 5000
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * @return the share of the calls that may be retried
+	 */
+	public synchronized double getBudgetRatio() {
+		return budgetRatio;
+	}
+
+	/**
+	 * @param budgetRatio the share of the calls that may be retried to set, default 0.1
+	 */
+	public synchronized void setBudgetRatio(double budgetRatio) {
+		if (budgetRatio < 0)
+			throw new IllegalArgumentException("budgetRatio should not be negative");
+		this.budgetRatio = budgetRatio;
+	}
+
+	/**
+	 * @return the max number of retries saved up in the budget
+	 */
+	public synchronized double getMaxBudget() {
+		return maxBudget;
+	}
+
+	/**
+	 * @param maxBudget the max number of retries saved up in the budget to set, default 10
+	 */
+	public synchronized void setMaxBudget(double maxBudget) {
+		this.maxBudget = maxBudget;
+		this.budget = Math.min(budget, maxBudget);
+	}
+
+	/**
+	 * @return the methods retried on any transport failure
+	 */
+	public Set<String> getIdempotentMethods() {
+		return idempotentMethods;
+	}
+
+	/**
+	 * @param idempotentMethods the methods to retry on any transport failure,
+	 * by default the ones that only read
+	 */
+	public void setIdempotentMethods(Set<String> idempotentMethods) {
+		this.idempotentMethods = Collections.unmodifiableSet(new HashSet<String>(idempotentMethods));
+	}
+
+	/**
+	 * @return the number of retries made
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @return the number of retries not made because the budget was empty
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount.get();
+	}
+
+	/**
+	 * @return the number of retries left in the budget
+	 */
+	public synchronized double getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Add to the budget for a new call
+	 */
+	synchronized void onCall() {
+		budget = Math.min(maxBudget, budget + budgetRatio);
+	}
+
+	/**
+	 * Decide whether a failed call should be tried again, and take the retry from the budget if so
+	 *
+	 * @param methods - the methods of the call, more than one for a batch
+	 * @param e - the failure
+	 * @param attempt - the number of tries made so far
+	 * @return how long to wait before the retry in milliseconds, or -1 for no retry
+	 */
+	long retryDelay(Iterable<String> methods, SaploClientException e, int attempt) {
+		if (attempt >= maxAttempts || !isRetryable(methods, e))
+			return -1;
+
+		synchronized (this) {
+			if (budget < 1) {
+				budgetExhaustedCount.incrementAndGet();
+				return -1;
+			}
+			budget -= 1;
+		}
+		retryCount.incrementAndGet();
+
+		long cap = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+		if (cap <= 0)
+			return 0;
+		synchronized (random) {
+			return (long)(random.nextDouble() * cap);
+		}
+	}
+
+	/*
+	 * whether the call failed in the transport, and may be sent again
+	 */
+	private boolean isRetryable(Iterable<String> methods, SaploClientException e) {
+		if (notConnected(e))
+			return true;
+		if (e.getErrorCode() != ResponseCodes.CODE_API_DOWN_EXCEPTION && !(e.getCause() instanceof IOException))
+			return false;
+
+		Set<String> idempotent = idempotentMethods;
+		for (String method : methods) {
+			if (!idempotent.contains(method))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * whether the connection could not be made, so nothing was sent
+	 */
+	private static boolean notConnected(SaploClientException e) {
+		Throwable cause = e.getCause();
+		return cause instanceof ConnectException || cause instanceof ConnectTimeoutException;
+	}
+}
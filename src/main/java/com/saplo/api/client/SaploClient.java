@@ -1,32 +1,68 @@
 package com.saplo.api.client;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.saplo.api.client.entity.JSONRPCErrorObject;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
 import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploAccount;
+import com.saplo.api.client.entity.SaploCallback;
+import com.saplo.api.client.entity.SaploFunction;
 import com.saplo.api.client.entity.SaploFuture;
+import com.saplo.api.client.jmx.ClientMonitor;
+import com.saplo.api.client.jmx.ConnectionPoolMonitor;
 import com.saplo.api.client.manager.SaploAccountManager;
 import com.saplo.api.client.manager.SaploAuthManager;
 import com.saplo.api.client.manager.SaploCollectionManager;
 import com.saplo.api.client.manager.SaploGroupManager;
 import com.saplo.api.client.manager.SaploTextManager;
+import com.saplo.api.client.session.AsyncSession;
+import com.saplo.api.client.session.CircuitBreaker;
+import com.saplo.api.client.session.PooledSession;
+import com.saplo.api.client.session.RecordingResultReader;
+import com.saplo.api.client.session.ResultReader;
 import com.saplo.api.client.session.Session;
+import com.saplo.api.client.session.StreamingSession;
 import com.saplo.api.client.session.TransportRegistry;
 import com.saplo.api.client.session.impl.HTTPSSession;
 import com.saplo.api.client.session.impl.HTTPSessionApache;
+import com.saplo.api.client.session.impl.JSONRPCResponseDecoder;
 import com.saplo.api.client.util.ClientUtil;
+import com.saplo.api.client.util.HashedWheelTimer;
+import com.saplo.api.client.util.MeteredExecutorService;
+import com.saplo.api.client.util.PersistentCache;
+import com.saplo.api.client.util.QuotaRateLimiter;
+import com.saplo.api.client.util.ResponseCache;
+import com.saplo.api.client.util.TagCache;
 
 /**
  * A Saplo-API client class.
@@ -39,20 +75,42 @@ public class SaploClient implements Serializable {
 
 	private static final Logger logger = LoggerFactory.getLogger(SaploClient.class);
 
-	private static Session session;
+	// owned by this client only, with its own connection pool and access_token
+	private transient Session session;
 
 	private final boolean ssl;
 	private final String endpoint;
 	private final String apiKey;
 	private final String secretKey;
-	private String accessToken;
+	private volatile String accessToken;
+	// pool sizes, timeouts and keep-alive for the session, null for the transport defaults
+	private final TransportConfig transportConfig;
+	// get results cache, null if they are not cached
+	private transient volatile ResponseCache responseCache;
+	// text.tags results cache, null if they are not cached
+	private transient volatile TagCache tagCache;
+	// tags and related results cache on disk, null if they are not kept
+	private transient volatile PersistentCache persistentCache;
+	// keeps the calls within the account's quota, null for no limit
+	private transient volatile QuotaRateLimiter rateLimiter;
+	// whether the calls over the rate wait for their turn, or fail right away
+	private volatile boolean rateLimitBlocking = true;
+	// when to send the calls failed in the transport again, null to never
+	private transient volatile RetryPolicy retryPolicy;
+	// when to send a second call for a slow one, null to never
+	private transient volatile HedgePolicy hedgePolicy;
 
 	// an ES for handling "async" methods
-	private ExecutorService es;
+	private MeteredExecutorService es;
+	// whether the ES was created by (and so should be shut down with) this client
+	private final boolean ownExecutor;
 
 	private static final String DEFAULT_ENDPOINT = "http://api.saplo.com/rpc/json";
 	private static final String DEFAULT_SSL_ENDPOINT = "https://api.saplo.com/rpc/json";
 
+	private static final int DEFAULT_ASYNC_THREADS = 20;
+	private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+
 
 	/**
 	 * A constructor that uses a default endpoint - {@value SaploClient#DEFAULT_ENDPOINT}
@@ -74,6 +132,32 @@ public class SaploClient implements Serializable {
 		this(apiKey, secretKey, "", DEFAULT_ENDPOINT, false, proxy);
 	}
 
+	/**
+	 * A constructor that uses a default endpoint and runs the async methods on the given executor
+	 *
+	 * @param apiKey - your API-KEY
+	 * @param secretKey - your SECRET-KEY
+	 * @param executor - the executor to run async tasks on, see {@link #SaploClient(String, String, String, String, boolean, ClientProxy, ExecutorService)}
+	 *
+	 * @throws SaploClientException
+	 */
+	public SaploClient(String apiKey, String secretKey, ExecutorService executor) throws SaploClientException {
+		this(apiKey, secretKey, "", DEFAULT_ENDPOINT, false, null, executor);
+	}
+
+	/**
+	 * A constructor that uses a default endpoint and the given connection pool settings
+	 *
+	 * @param apiKey - your API-KEY
+	 * @param secretKey - your SECRET-KEY
+	 * @param transportConfig - pool sizes, timeouts and keep-alive policy for the transport
+	 *
+	 * @throws SaploClientException
+	 */
+	public SaploClient(String apiKey, String secretKey, TransportConfig transportConfig) throws SaploClientException {
+		this(apiKey, secretKey, "", DEFAULT_ENDPOINT, false, null, null, transportConfig);
+	}
+
 	/**
 	 * A constructor to use the default endpoint
 	 *
@@ -160,6 +244,52 @@ public class SaploClient implements Serializable {
 	 */
 	public SaploClient(String apiKey, String secretKey, String accessToken, String endpoint, 
 			boolean ssl, ClientProxy proxy) throws SaploClientException {
+		this(apiKey, secretKey, accessToken, endpoint, ssl, proxy, null);
+	}
+
+	/**
+	 * The main constructor, with a custom executor for the async methods. 
+	 * The executor could be e.g. a {@link ThreadPoolExecutor} with a bounded queue and 
+	 * a rejection policy of your choice, or a work-stealing pool. It is not shut down 
+	 * by {@link #shutdown()}, as it belongs to the caller.
+	 * If no executor is given, a pool of {@value #DEFAULT_ASYNC_THREADS} threads with a queue of
+	 * {@value #DEFAULT_ASYNC_QUEUE_SIZE} tasks is used, which runs the overflowing tasks in the 
+	 * submitting thread, thus slowing down the producer.
+	 *
+	 * @param apiKey - your API-KEY
+	 * @param secretKey - your SECRET-KEY
+	 * @param accessToken - a valid accessToken
+	 * @param endpoint - the endpoint URL for the client to connect to
+	 * @param ssl - should use SSL?
+	 * @param proxy - should this transport use proxy
+	 * @param executor - the executor to run async tasks on, or null for the default one
+	 *
+	 * @throws SaploClientException
+	 */
+	public SaploClient(String apiKey, String secretKey, String accessToken, String endpoint, 
+			boolean ssl, ClientProxy proxy, ExecutorService executor) throws SaploClientException {
+		this(apiKey, secretKey, accessToken, endpoint, ssl, proxy, executor, null);
+	}
+
+	/**
+	 * The main constructor, with a custom executor and transport settings.
+	 * See {@link #SaploClient(String, String, String, String, boolean, ClientProxy, ExecutorService)}
+	 * for the executor, and {@link TransportConfig} for the connection pool sizes, timeouts
+	 * and keep-alive policy. The config is read once, when the session is created.
+	 *
+	 * @param apiKey - your API-KEY
+	 * @param secretKey - your SECRET-KEY
+	 * @param accessToken - a valid accessToken
+	 * @param endpoint - the endpoint URL for the client to connect to
+	 * @param ssl - should use SSL?
+	 * @param proxy - should this transport use proxy
+	 * @param executor - the executor to run async tasks on, or null for the default one
+	 * @param transportConfig - the transport settings, or null for the defaults
+	 *
+	 * @throws SaploClientException
+	 */
+	public SaploClient(String apiKey, String secretKey, String accessToken, String endpoint, 
+			boolean ssl, ClientProxy proxy, ExecutorService executor, TransportConfig transportConfig) throws SaploClientException {
 
 		if(endpoint == null || !endpoint.startsWith("http"))
 			throw new SaploClientException("Invalid endpoint!");
@@ -172,13 +302,16 @@ public class SaploClient implements Serializable {
 		this.secretKey = secretKey;
 		this.ssl = ssl;
 		this.endpoint = endpoint;
+		this.transportConfig = transportConfig;
 
-		es = Executors.newFixedThreadPool(20);
+		ownExecutor = (executor == null);
+		if(ownExecutor)
+			executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(DEFAULT_ASYNC_QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+		es = new MeteredExecutorService(executor);
 
 		this.setupServerEnvironment();
 		createSession(accessToken, proxy);
-		lock = new ReentrantLock();
-		sleeping = lock.newCondition();
 
 		// create the managers
 		collectionMgr = new SaploCollectionManager(this);
@@ -213,14 +346,45 @@ public class SaploClient implements Serializable {
 		return accountMgr;
 	}
 
-	private long lastReconnectAttempt = 0;
-	private long lastSuccessfulReconnect = 0;
+	private volatile long lastReconnectAttempt = 0;
+	private volatile long lastSuccessfulReconnect = 0;
 	private final long reconnectTimeout = 3 * 1000; // 3 seconds
-	private long reconnectCount = 0;
+	private volatile long reconnectCount = 0;
 	private long maxReconnectCount = 10;
 
-	private final Lock lock;
-	private final Condition sleeping;
+	// the read methods whose concurrent identical calls may share one response
+	private static final Set<String> COALESCED_METHODS = new HashSet<String>(Arrays.asList(
+			"account.get", "collection.get", "collection.list", 
+			"group.list", "group.listTexts", "group.relatedGroups", "group.relatedTexts", 
+			"text.get", "text.tags", "text.relatedTexts", "text.relatedGroups"));
+
+	// the read calls in flight, by method and params
+	private final ConcurrentHashMap<String, SaploFuture<RecordedResponse>> inFlightReads = 
+			new ConcurrentHashMap<String, SaploFuture<RecordedResponse>>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	// the calls sent that might change something, a read never shares one sent before the last of them
+	private final AtomicLong writeCount = new AtomicLong();
+	private volatile boolean coalesceReads = false;
+
+	// delays the polls, the rate limited async calls, the retries and the hedges, shared by all the clients
+	private static final HashedWheelTimer timer = new HashedWheelTimer("saplo-client-timer", 10, TimeUnit.MILLISECONDS, 512);
+	private static final long FIRST_POLL_DELAY = 500; // ms
+	private static final long MAX_POLL_DELAY = 10 * 1000; // 10 seconds
+	private static final long DEFAULT_MAX_POLL_TIME = 10 * 60 * 1000; // 10 minutes
+	// the polls of this client waiting on the timer
+	private final Set<Poll> pendingPolls = Collections.newSetFromMap(new ConcurrentHashMap<Poll, Boolean>());
+
+	private static final long RATE_LIMITER_MAX_AGE = 5 * 60 * 1000; // 5 minutes
+	private static final long RATE_LIMITER_RETRY = 60 * 1000; // 1 minute
+	private final AtomicBoolean rateLimiterUpdating = new AtomicBoolean();
+	private volatile long lastRateLimiterUpdate = 0;
+
+	// the token refresh in flight, or the last failed one while backing off
+	private final AtomicReference<SaploFuture<String>> tokenRefresh = new AtomicReference<SaploFuture<String>>();
+
+	private static final String MBEAN_DOMAIN = "com.saplo.api.client";
+	// the MBeans registered for this client
+	private transient List<ObjectName> mbeans = new ArrayList<ObjectName>();
 
 	/**
 	 * Set a proxy for the client to communicate with the API
@@ -237,7 +401,7 @@ public class SaploClient implements Serializable {
 	 */
 	private synchronized void createSession(String accToken, ClientProxy proxy) throws SaploClientException {
 		session = TransportRegistry.getTransportRegistryInstance()
-				.createSession(endpoint, "access_token=" + accToken, proxy);
+				.createSession(endpoint, "access_token=" + accToken, proxy, transportConfig);
 
 		if(accToken != null && accToken.length() > 0) {
 			this.accessToken = accToken;
@@ -247,51 +411,86 @@ public class SaploClient implements Serializable {
 	}
 
 	/*
-	 * FIXME fix, it's too complicated
+	 * Get a new access token, unless the one a request was sent with has already been replaced.
+	 * All the callers share a single auth.accessToken call, and no lock is held while it is 
+	 * in flight. After a failed refresh, the callers get the same failure without a new attempt
+	 * for (failures * reconnectTimeout) ms, up to maxReconnectCount * reconnectTimeout.
 	 */
-	private synchronized boolean reAuthenticateSession() throws SaploClientException {
-
-		lock.lock();
-		try  {
-			long now = System.currentTimeMillis();
-			if((now - lastReconnectAttempt) < reconnectTimeout * maxReconnectCount 
-					|| reconnectCount > maxReconnectCount)
-				return false;
-
-			// if have successfully reconnected during the last 10 seconds, return true
-			if((now - lastSuccessfulReconnect) < 10000 && reconnectCount == 0)
-				return true;
-
-			logger.info("Trying to reconnect to the API..");
-			while(reconnectCount <= maxReconnectCount) {
+	private SaploFuture<String> refreshAccessToken(String staleToken) {
+		String current = accessToken;
+		if(current != null && !current.equals(staleToken))
+			return SaploFuture.completed(current);
+
+		final SaploFuture<String> refresh = new SaploFuture<String>();
+		while(true) {
+			SaploFuture<String> inFlight = tokenRefresh.get();
+			if(inFlight != null) {
+				long backoff = Math.min(reconnectCount, maxReconnectCount) * reconnectTimeout;
+				if(!inFlight.isDone() || System.currentTimeMillis() - lastReconnectAttempt < backoff)
+					return inFlight;
+			}
+			if(tokenRefresh.compareAndSet(inFlight, refresh))
+				break;
+		}
 
-				try {
-					// wait a bit before attempting to reconnect
-					long toSleep = (reconnectCount + 1) * reconnectTimeout;
+		logger.info("Trying to reconnect to the API..");
+		if(session instanceof AsyncSession) {
+			authMgr.accessTokenAsync(apiKey, secretKey).addCallback(new SaploCallback<String>() {
+				public void onSuccess(String token) {
+					tokenRefreshed(refresh, token);
+				}
+				public void onFailure(SaploClientException e) {
+					tokenRefreshFailed(refresh, e);
+				}
+			});
+		} else {
+			// the winner does the call itself, the others wait on the future
+			try {
+				tokenRefreshed(refresh, authMgr.accessToken(apiKey, secretKey));
+			} catch (SaploClientException e) {
+				tokenRefreshFailed(refresh, e);
+			}
+		}
+		return refresh;
+	}
 
-					sleeping.await(toSleep, TimeUnit.MILLISECONDS);
+	private void tokenRefreshed(SaploFuture<String> refresh, String token) {
+		accessToken = token;
+		session.setParams("access_token=" + token);
+		reconnectCount = 0;
+		lastSuccessfulReconnect = System.currentTimeMillis();
+		tokenRefresh.compareAndSet(refresh, null);
+		logger.info("Successfully reconnected to the API..");
+		refresh.complete(token);
+	}
 
-					authenticateSession();
+	private void tokenRefreshFailed(SaploFuture<String> refresh, SaploClientException e) {
+		reconnectCount++;
+		lastReconnectAttempt = System.currentTimeMillis();
+		logger.warn("Could not reconnect to the API after {} attempts.", reconnectCount);
+		refresh.fail(e);
+	}
 
-					// if haven't got an exception so far, then assume connected
-					reconnectCount = 0;
-					lastReconnectAttempt = 0;
-					lastSuccessfulReconnect = System.currentTimeMillis();
-					logger.info("Successfully reconnected to the API..");
+	/*
+	 * whether the response says the token the request was sent with has expired. 
+	 * An API down error is taken the same way, as the API answers with it when it has lost the session
+	 */
+	private static boolean needsNewToken(JSONRPCRequestObject request, JSONRPCResponseObject response) {
+		if(response.isSuccess() || response.getError() == null || request.getMethod().startsWith("auth."))
+			return false;
+		int code = response.getError().getCode();
+		return code == ResponseCodes.CODE_ERR_NOSESSION || code == ResponseCodes.CODE_API_DOWN_EXCEPTION;
+	}
 
-					return true;
-				} catch (SaploClientException e) {
-					reconnectCount++;
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-					return false;
-				}
-			}
-			lastReconnectAttempt = System.currentTimeMillis();
-			logger.warn("Could not reconnect to the API after {} attempts.", reconnectCount);
-			throw new SaploClientException(ResponseCodes.MSG_ERR_NOSESSION, ResponseCodes.CODE_ERR_NOSESSION);
-		} finally {
-			lock.unlock();
+	/*
+	 * wait for a new token after a request was refused, false if none could be got
+	 */
+	private boolean awaitNewToken(String staleToken) {
+		try {
+			refreshAccessToken(staleToken).get();
+			return true;
+		} catch (SaploClientException e) {
+			return false;
 		}
 	}
 
@@ -313,6 +512,72 @@ public class SaploClient implements Serializable {
 		return lastSuccessfulReconnect;
 	}
 
+	/**
+	 * @return when getting a new access token last failed, in milliseconds, 0 if never
+	 */
+	public long getLastReconnectAttempt() {
+		return lastReconnectAttempt;
+	}
+
+	/**
+	 * @return the number of failed attempts to get a new access token since the last one that worked
+	 */
+	public long getReconnectCount() {
+		return reconnectCount;
+	}
+
+	/**
+	 * @return whether a new access token is being got right now
+	 */
+	public boolean isTokenRefreshing() {
+		SaploFuture<String> refresh = tokenRefresh.get();
+		return (refresh != null && !refresh.isDone());
+	}
+
+	/**
+	 * Register the JMX MBeans of this client with the platform MBean server: 
+	 * com.saplo.api.client:type=SaploClient,name=... for its async executor and access token, and 
+	 * com.saplo.api.client:type=ConnectionPool,name=... for the connection pool of its session, 
+	 * whose limits and timeouts can be changed from there while the client is in use.
+	 * They are unregistered by {@link #shutdown()}, or {@link #unregisterMBeans()}.
+	 * 
+	 * @param name - the name to show this client under, unique among the registered clients
+	 * @throws SaploClientException - if the MBeans could not be registered, e.g. the name is taken
+	 */
+	public synchronized void registerMBeans(String name) throws SaploClientException {
+		unregisterMBeans();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName clientName = new ObjectName(MBEAN_DOMAIN + ":type=SaploClient,name=" + ObjectName.quote(name));
+			server.registerMBean(new ClientMonitor(this, es), clientName);
+			mbeans.add(clientName);
+
+			if(session instanceof PooledSession) {
+				ObjectName poolName = new ObjectName(MBEAN_DOMAIN + ":type=ConnectionPool,name=" + ObjectName.quote(name));
+				server.registerMBean(new ConnectionPoolMonitor((PooledSession)session), poolName);
+				mbeans.add(poolName);
+			}
+		} catch(JMException e) {
+			unregisterMBeans();
+			throw new SaploClientException(e);
+		}
+	}
+
+	/**
+	 * Unregister the JMX MBeans of this client, if any
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(ObjectName name : mbeans) {
+			try {
+				server.unregisterMBean(name);
+			} catch(JMException e) {
+				logger.warn("Could not unregister the MBean {}", name, e);
+			}
+		}
+		mbeans.clear();
+	}
+
 	/**
 	 * Get the next incremental JSON-RPC id
 	 * 
@@ -363,27 +628,31 @@ public class SaploClient implements Serializable {
 
 		sendAndReceive(new JSONRPCRequestObject(getNextId(), "auth.invalidateToken", params));
 
+		// the transports stay registered for the other clients
 		if (session != null)
 			session.close();
 
-		if(ssl)
-			HTTPSSession.deregister(TransportRegistry.getTransportRegistryInstance());
-		else
-			HTTPSessionApache.deregister(TransportRegistry.getTransportRegistryInstance());
+		if(ownExecutor)
+			es.shutdownNow();
+
+		for(Poll poll : pendingPolls)
+			poll.abandon();
 
-		es.shutdownNow();
+		unregisterMBeans();
 
 		return true;
 	}
 
 	/*
-	 * Register a Session instance with the TransportRegistry
+	 * Register a Session instance with the TransportRegistry, 
+	 * unless a transport (e.g. HTTPSessionAsync) has already been registered for the scheme
 	 */
 	private void setupServerEnvironment() {
-		if(ssl)
-			HTTPSSession.register(TransportRegistry.getTransportRegistryInstance());
-		else
-			HTTPSessionApache.register(TransportRegistry.getTransportRegistryInstance());
+		TransportRegistry registry = TransportRegistry.getTransportRegistryInstance();
+		if(ssl && !registry.isRegistered("https"))
+			HTTPSSession.register(registry);
+		else if(!ssl && !registry.isRegistered("http"))
+			HTTPSessionApache.register(registry);
 
 	}
 
@@ -396,24 +665,1177 @@ public class SaploClient implements Serializable {
 	 * @throws SaploClientException 
 	 */
 	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject request) throws SaploClientException {
-		logger.debug(">>>>>>Sending request: " + request);
-		JSONRPCResponseObject response = (JSONRPCResponseObject)session.sendAndReceive(request);
-		logger.debug("<<<<<<Got response: " + response);
+		return sendAndReceive(request, (ResultReader<?>)null);
+	}
+
+	/**
+	 * Send a message to the server and bind the result of the response with the given reader.
+	 * If the session is a {@link StreamingSession}, the result is bound straight off the 
+	 * connection stream, otherwise it is bound from the parsed JSON result.
+	 * 
+	 * @param request - JSONRPCRequestObject to send to the server (API)
+	 * @param reader - the reader to bind the result with
+	 * @return response - a JSONRPCResponseObject whose result is the one returned by the reader
+	 * 
+	 * @throws SaploClientException
+	 */
+	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		ClientMetrics metrics = getMetrics();
+		if(null == metrics)
+			return dispatch(request, reader);
+
+		metrics.callStarted(request.getMethod());
+		long start = System.nanoTime();
+		int code = ResponseCodes.CODE_UNKNOWN_EXCEPTION;
+		try {
+			JSONRPCResponseObject response = dispatch(request, reader);
+			code = codeOf(response);
+			return response;
+		} catch(SaploClientException e) {
+			code = e.getErrorCode();
+			throw e;
+		} finally {
+			metrics.callFinished(request.getMethod(), System.nanoTime() - start, code);
+		}
+	}
+
+	private JSONRPCResponseObject dispatch(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		if(coalesceReads && COALESCED_METHODS.contains(request.getMethod()))
+			return sendCoalesced(request, reader);
+		countWrite(request);
+		return sendWithRetry(request, reader);
+	}
+
+	/*
+	 * count a call that is not a read, so the reads sent after it do not share the ones sent before
+	 */
+	private void countWrite(JSONRPCRequestObject request) {
+		if(!COALESCED_METHODS.contains(request.getMethod()))
+			writeCount.incrementAndGet();
+	}
+
+	private void countWrites(List<JSONRPCRequestObject> requests) {
+		for(JSONRPCRequestObject request : requests)
+			countWrite(request);
+	}
+
+	/*
+	 * the code a call finished with, for the metrics
+	 */
+	private static int codeOf(JSONRPCResponseObject response) {
+		if(response.isSuccess())
+			return ClientMetrics.OK;
+		return (response.getError() != null ? response.getError().getCode() : ResponseCodes.CODE_UNKNOWN_EXCEPTION);
+	}
+
+	/*
+	 * tell the metrics when an async call finishes
+	 */
+	private static SaploFuture<JSONRPCResponseObject> metered(final ClientMetrics metrics, final String method, 
+			final long start, SaploFuture<JSONRPCResponseObject> future) {
+		future.addCallback(new SaploCallback<JSONRPCResponseObject>() {
+			public void onSuccess(JSONRPCResponseObject response) {
+				metrics.callFinished(method, System.nanoTime() - start, codeOf(response));
+			}
+			public void onFailure(SaploClientException e) {
+				metrics.callFinished(method, System.nanoTime() - start, e.getErrorCode());
+			}
+		});
+		return future;
+	}
+
+	/*
+	 * tell the metrics a batch has started, as a call of each of its methods
+	 */
+	private static void batchStarted(ClientMetrics metrics, List<JSONRPCRequestObject> requests) {
+		for(JSONRPCRequestObject request : requests)
+			metrics.callStarted(request.getMethod());
+	}
+
+	/*
+	 * tell the metrics a batch has finished, with the code of each of its responses, or the failure of the whole batch
+	 */
+	private static void batchFinished(ClientMetrics metrics, List<JSONRPCRequestObject> requests, long start, 
+			List<JSONRPCResponseObject> responses, int failure) {
+		long latency = System.nanoTime() - start;
+		for(int i = 0; i < requests.size(); i++) {
+			int code = (responses != null && i < responses.size() ? codeOf(responses.get(i)) : failure);
+			metrics.callFinished(requests.get(i).getMethod(), latency, code);
+		}
+	}
+
+	/*
+	 * send a request, and once more if its token had expired
+	 */
+	private JSONRPCResponseObject sendWithRetry(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		String token = accessToken;
+		JSONRPCResponseObject response = send(request, reader);
+
+		// the token has expired, send it again once a new one is set
+		if(needsNewToken(request, response) && awaitNewToken(token))
+			response = send(request, reader);
+
 		return response;
 	}
 
+	/*
+	 * send a read request, unless the same one is in flight already, and then share its response.
+	 * The result JSON is recorded by the sending thread, and each of the waiting ones binds its own
+	 * copy of it with its own reader, so no bound objects are shared between callers.
+	 * The key holds the number of writes sent so far, so a read made after a write never gets 
+	 * the response of one sent before it.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private JSONRPCResponseObject sendCoalesced(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		ResultReader<?> resultReader = (reader != null ? reader : JSONRPCResponseDecoder.JSON_READER);
+		String key = writeCount.get() + "/" + request.getMethod() + canonicalJSON(request.getParams());
+
+		SaploFuture<RecordedResponse> mine = new SaploFuture<RecordedResponse>();
+		SaploFuture<RecordedResponse> inFlight = inFlightReads.putIfAbsent(key, mine);
+		if(inFlight == null) {
+			try {
+				RecordingResultReader<?> recorder = new RecordingResultReader(resultReader);
+				JSONRPCResponseObject response = sendWithRetry(request, recorder);
+				mine.complete(new RecordedResponse(response, recorder.getRecorded()));
+				return response;
+			} catch(SaploClientException e) {
+				mine.fail(e);
+				throw e;
+			} catch(RuntimeException e) {
+				mine.fail(new SaploClientException(e));
+				throw e;
+			} finally {
+				inFlightReads.remove(key, mine);
+			}
+		}
+
+		coalescedCount.incrementAndGet();
+		RecordedResponse shared = inFlight.get();
+		Object result = null;
+		if(shared.result != null) {
+			try {
+				result = RecordingResultReader.replay(shared.result, resultReader);
+			} catch(IOException e) {
+				throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE, e);
+			}
+		}
+		return new JSONRPCResponseObject(request.getId(), shared.response.getVersion(), result, shared.response.getError(), null);
+	}
+
+	/*
+	 * JSON with the object keys sorted, so equal params give equal strings
+	 */
+	private static String canonicalJSON(Object value) {
+		if(value instanceof JSONObject) {
+			JSONObject object = (JSONObject)value;
+			StringBuilder json = new StringBuilder("{");
+			Iterator<?> keys = object.keys();
+			Set<String> sorted = new TreeSet<String>();
+			while(keys.hasNext())
+				sorted.add(keys.next().toString());
+			for(String key : sorted) {
+				if(json.length() > 1)
+					json.append(',');
+				json.append(JSONObject.quote(key)).append(':').append(canonicalJSON(object.opt(key)));
+			}
+			return json.append('}').toString();
+		}
+		if(value instanceof JSONArray) {
+			JSONArray array = (JSONArray)value;
+			StringBuilder json = new StringBuilder("[");
+			for(int i = 0; i < array.length(); i++) {
+				if(i > 0)
+					json.append(',');
+				json.append(canonicalJSON(array.opt(i)));
+			}
+			return json.append(']').toString();
+		}
+		if(value instanceof String)
+			return JSONObject.quote((String)value);
+		return String.valueOf(value);
+	}
+
+	/*
+	 * the response to a coalesced read, with the result JSON to bind again for each caller
+	 */
+	private static class RecordedResponse {
+		final JSONRPCResponseObject response;
+		final byte[] result;
+
+		RecordedResponse(JSONRPCResponseObject response, byte[] result) {
+			this.response = response;
+			this.result = result;
+		}
+	}
+
 	/**
-	 * An Async version of {@link #sendAndReceive(JSONRPCRequestObject)}
+	 * Whether concurrent identical read calls (such as text.get, text.tags or collection.list
+	 * with the same params) should share a single API call. Off by default.
+	 * Calls that change anything are never shared, and a read made after such a call 
+	 * never shares a read sent before it, so it sees what the write changed.
+	 * 
+	 * @param coalesceReads
+	 */
+	public void setCoalesceReads(boolean coalesceReads) {
+		this.coalesceReads = coalesceReads;
+	}
+
+	/**
+	 * @return the number of read calls that were answered by sharing another one in flight
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/*
+	 * send a request, and again as the retry policy allows if it fails in the transport
+	 */
+	private JSONRPCResponseObject send(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		RetryPolicy policy = retryPolicy;
+		if(policy != null)
+			policy.onCall();
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return sendHedged(request, reader);
+			} catch(SaploClientException e) {
+				backOff(policy, Collections.singletonList(request.getMethod()), e, attempt);
+			}
+		}
+	}
+
+	/*
+	 * send a request, and a hedge for it if the hedge policy says it is taking too long. 
+	 * Only the calls of an async session are hedged, as a blocking read of the other sessions 
+	 * can not be stopped once the other call has won
+	 */
+	private JSONRPCResponseObject sendHedged(final JSONRPCRequestObject request, final ResultReader<?> reader) throws SaploClientException {
+		HedgePolicy policy = hedgePolicy;
+		if(null == policy || !policy.getMethods().contains(request.getMethod()) || !(session instanceof AsyncSession))
+			return sendOnce(request, reader);
+
+		JSONRPCResponseObject response = sendHedgedAsync((AsyncSession)session, request).get();
+		checkQuota(response);
+		return (reader != null ? bind(response, reader) : response);
+	}
+
+	private JSONRPCResponseObject sendOnce(JSONRPCRequestObject request, ResultReader<?> reader) throws SaploClientException {
+		throttle(weightOf(request));
+		logger.debug(">>>>>>Sending request: {}", request);
+		JSONRPCResponseObject response;
+		if(reader == null) {
+			response = session.sendAndReceive(request);
+		} else if(session instanceof StreamingSession) {
+			response = ((StreamingSession)session).sendAndReceive(request, reader);
+		} else {
+			response = bind(session.sendAndReceive(request), reader);
+		}
+		logger.debug("<<<<<<Got response: {}", response);
+		checkQuota(response);
+		return response;
+	}
+
+	/*
+	 * wait before the next try of a failed call, or rethrow the failure if it should not be tried again
+	 */
+	private void backOff(RetryPolicy policy, Iterable<String> methods, SaploClientException e, int attempt) 
+			throws SaploClientException {
+		long delay = (policy != null ? policy.retryDelay(methods, e, attempt) : -1);
+		if(delay < 0)
+			throw e;
+
+		logger.info("Call failed ({}), trying again in {} ms", e.getMessage(), delay);
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	/*
+	 * bind the result of a response parsed into JSON with a reader
+	 */
+	private static JSONRPCResponseObject bind(JSONRPCResponseObject response, ResultReader<?> reader) throws SaploClientException {
+		if(!response.isSuccess())
+			return response;
+		Object result = JSONRPCResponseDecoder.bind(response.getResult(), reader);
+		return new JSONRPCResponseObject(response.getId(), response.getVersion(), result, null, null);
+	}
+
+	/**
+	 * Whether the session should keep the raw JSON of each response, 
+	 * as returned by {@link JSONRPCResponseObject#toString()}. 
+	 * Off by default, turn it on for debugging.
+	 * 
+	 * @param keepRawMessages
+	 */
+	public void setKeepRawMessages(boolean keepRawMessages) {
+		if(session instanceof StreamingSession)
+			((StreamingSession)session).setKeepRawMessages(keepRawMessages);
+	}
+
+	/**
+	 * An Async version of {@link #sendAndReceive(JSONRPCRequestObject)}. 
+	 * If the session is an {@link AsyncSession}, no thread is held while the call is in flight.
 	 * 
 	 * @param request
 	 * @return
 	 */
 	public SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(final JSONRPCRequestObject request) {
-		return new SaploFuture<JSONRPCResponseObject>(es.submit(new Callable<JSONRPCResponseObject>() {
+		if(session instanceof AsyncSession) {
+			ClientMetrics metrics = getMetrics();
+			if(null == metrics)
+				return sendAndReceiveAsync((AsyncSession)session, request);
+
+			metrics.callStarted(request.getMethod());
+			return metered(metrics, request.getMethod(), System.nanoTime(), sendAndReceiveAsync((AsyncSession)session, request));
+		}
+
+		return SaploFuture.submit(es, new Callable<JSONRPCResponseObject>() {
 			public JSONRPCResponseObject call() throws SaploClientException {
 				return sendAndReceive(request);
 			}
-		}));
+		});
+	}
+
+	/*
+	 * send a request through an async session, and once more if its token had expired
+	 */
+	private SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(final AsyncSession asyncSession, final JSONRPCRequestObject request) {
+		countWrite(request);
+		final String token = accessToken;
+		RetryPolicy policy = retryPolicy;
+		if(policy != null)
+			policy.onCall();
+		return sendAsync(asyncSession, request, 1).thenCompose(new SaploFunction<JSONRPCResponseObject, SaploFuture<JSONRPCResponseObject>>() {
+			public SaploFuture<JSONRPCResponseObject> apply(final JSONRPCResponseObject response) {
+				checkQuota(response);
+				if(!needsNewToken(request, response))
+					return SaploFuture.completed(response);
+
+				// the token has expired, send it again once a new one is set
+				final SaploFuture<JSONRPCResponseObject> retried = new SaploFuture<JSONRPCResponseObject>();
+				refreshAccessToken(token).addCallback(new SaploCallback<String>() {
+					public void onSuccess(String newToken) {
+						// sent the same way as the first try, so it is throttled, hedged and retried alike
+						sendAsync(asyncSession, request, 1).addCallback(new SaploCallback<JSONRPCResponseObject>() {
+							public void onSuccess(JSONRPCResponseObject again) {
+								checkQuota(again);
+								retried.complete(again);
+							}
+							public void onFailure(SaploClientException e) {
+								retried.fail(e);
+							}
+						});
+					}
+					public void onFailure(SaploClientException e) {
+						retried.complete(response);
+					}
+				});
+				return retried;
+			}
+		});
+	}
+
+	/*
+	 * send a request through an async session, and again on the timer as the retry policy allows 
+	 * if it fails in the transport
+	 */
+	private SaploFuture<JSONRPCResponseObject> sendAsync(final AsyncSession asyncSession, 
+			final JSONRPCRequestObject request, final int attempt) {
+		final SaploFuture<JSONRPCResponseObject> result = new SaploFuture<JSONRPCResponseObject>();
+		sendHedgedAsync(asyncSession, request).addCallback(new SaploCallback<JSONRPCResponseObject>() {
+			public void onSuccess(JSONRPCResponseObject response) {
+				result.complete(response);
+			}
+			public void onFailure(SaploClientException e) {
+				RetryPolicy policy = retryPolicy;
+				long delay = (policy != null ? policy.retryDelay(Collections.singletonList(request.getMethod()), e, attempt) : -1);
+				if(delay < 0) {
+					result.fail(e);
+					return;
+				}
+
+				logger.info("Call failed ({}), trying again in {} ms", e.getMessage(), delay);
+				timer.newTimeout(new Runnable() {
+					public void run() {
+						sendAsync(asyncSession, request, attempt + 1).addCallback(completing(result));
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * send a request through an async session, and a hedge for it if the hedge policy says it is taking too long
+	 */
+	private SaploFuture<JSONRPCResponseObject> sendHedgedAsync(final AsyncSession asyncSession, final JSONRPCRequestObject request) {
+		HedgePolicy policy = hedgePolicy;
+		if(null == policy || !policy.getMethods().contains(request.getMethod()))
+			return sendOnceAsync(asyncSession, request);
+
+		return hedge(policy, request.getMethod(), new Attempt() {
+			public SaploFuture<JSONRPCResponseObject> start() {
+				return sendOnceAsync(asyncSession, request);
+			}
+		});
+	}
+
+	/*
+	 * send a request through an async session once the rate limiter permits. 
+	 * Nothing else waits for the call, so it is cancelled along with the returned future
+	 */
+	private SaploFuture<JSONRPCResponseObject> sendOnceAsync(final AsyncSession asyncSession, final JSONRPCRequestObject request) {
+		final SaploFuture<JSONRPCResponseObject> result = new SaploFuture<JSONRPCResponseObject>();
+		throttleAsync(weightOf(request)).addCallback(new SaploCallback<Boolean>() {
+			public void onSuccess(Boolean permitted) {
+				// cancelled while waiting for the rate limiter
+				if(result.isDone())
+					return;
+				final SaploFuture<JSONRPCResponseObject> call = asyncSession.sendAndReceiveAsync(request);
+				result.addCallback(new SaploCallback<JSONRPCResponseObject>() {
+					public void onSuccess(JSONRPCResponseObject response) {
+					}
+					public void onFailure(SaploClientException e) {
+						if(result.isCancelled())
+							call.cancel(true);
+					}
+				});
+				call.addCallback(completing(result));
+			}
+			public void onFailure(SaploClientException e) {
+				result.fail(e);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * make a call, and a second identical one once the first has taken longer than the hedge delay
+	 * of its method, as long as the hedge budget allows. The first response wins and the other call is cancelled.
+	 */
+	private SaploFuture<JSONRPCResponseObject> hedge(HedgePolicy policy, String method, Attempt attempt) {
+		policy.onCall();
+		Hedged hedged = new Hedged(policy, method, attempt);
+		hedged.start();
+		return hedged.result;
+	}
+
+	/*
+	 * starts one try of a hedged call, without waiting for it: the hedges are started on the timer thread
+	 */
+	private interface Attempt {
+		SaploFuture<JSONRPCResponseObject> start();
+	}
+
+	/*
+	 * the calls of a hedged request, the first one and maybe its hedge
+	 */
+	private class Hedged {
+		final SaploFuture<JSONRPCResponseObject> result = new SaploFuture<JSONRPCResponseObject>();
+		private final HedgePolicy policy;
+		private final String method;
+		private final Attempt attempt;
+		private final long start = System.nanoTime();
+
+		// guarded by this
+		private final List<SaploFuture<JSONRPCResponseObject>> calls = new ArrayList<SaploFuture<JSONRPCResponseObject>>(2);
+		private int running = 0;
+		private boolean finished = false;
+		private boolean primaryTimed = false;
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		Hedged(HedgePolicy policy, String method, Attempt attempt) {
+			this.policy = policy;
+			this.method = method;
+			this.attempt = attempt;
+		}
+
+		void start() {
+			result.addCallback(new SaploCallback<JSONRPCResponseObject>() {
+				public void onSuccess(JSONRPCResponseObject response) {
+					finish();
+				}
+				public void onFailure(SaploClientException e) {
+					finish();
+				}
+			});
+
+			launch(false);
+			long delay = policy.getDelay(method);
+			if(delay >= 0 && !result.isDone()) {
+				timeout = timer.newTimeout(new Runnable() {
+					public void run() {
+						if(!result.isDone() && policy.tryHedge())
+							launch(true);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void launch(final boolean hedge) {
+			synchronized (this) {
+				if(finished)
+					return;
+				running++;
+			}
+			final long launched = System.nanoTime();
+			SaploFuture<JSONRPCResponseObject> call = attempt.start();
+			boolean late;
+			synchronized (this) {
+				calls.add(call);
+				late = finished;
+			}
+			if(late)
+				call.cancel(true);
+
+			call.addCallback(new SaploCallback<JSONRPCResponseObject>() {
+				public void onSuccess(JSONRPCResponseObject response) {
+					// every call is timed from its own start, counted before the caller is woken up, 
+					// so its next call sees them
+					if(hedge)
+						policy.onResponse(method, System.nanoTime() - launched);
+					else
+						timePrimary();
+					if(result.isDone())
+						return;
+					if(hedge) {
+						timePrimary();
+						policy.onHedgeWin();
+					}
+					result.complete(response);
+				}
+				public void onFailure(SaploClientException e) {
+					// the other call may still make it, a failed first call is not timed
+					boolean last;
+					synchronized (Hedged.this) {
+						last = (--running == 0);
+						if(!hedge)
+							primaryTimed = true;
+					}
+					if(last)
+						result.fail(e);
+				}
+			});
+		}
+
+		/*
+		 * keep how long the first call has taken, once. Also done when it lost, as it took at least 
+		 * that long, so the slow calls the hedges were sent for are not left out of the latencies
+		 */
+		private void timePrimary() {
+			synchronized (this) {
+				if(primaryTimed)
+					return;
+				primaryTimed = true;
+			}
+			policy.onResponse(method, System.nanoTime() - start);
+		}
+
+		/*
+		 * drop the hedge not sent yet and cancel the call that lost
+		 */
+		private void finish() {
+			HashedWheelTimer.Timeout t = timeout;
+			if(t != null)
+				t.cancel();
+			timePrimary();
+
+			List<SaploFuture<JSONRPCResponseObject>> toCancel;
+			synchronized (this) {
+				finished = true;
+				toCancel = new ArrayList<SaploFuture<JSONRPCResponseObject>>(calls);
+			}
+			for(SaploFuture<JSONRPCResponseObject> call : toCancel) {
+				if(!call.isDone())
+					call.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * An Async version of {@link #sendAndReceive(JSONRPCRequestObject, ResultReader)}. 
+	 * If the session is an {@link AsyncSession}, no thread is held while the call is in flight, 
+	 * and the result is bound from the parsed JSON once it is back.
+	 * 
+	 * @param request
+	 * @param reader - the reader to bind the result with, or null to keep the parsed JSON
+	 * @return
+	 */
+	public SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(final JSONRPCRequestObject request, final ResultReader<?> reader) {
+		if(reader == null)
+			return sendAndReceiveAsync(request);
+
+		if(session instanceof AsyncSession) {
+			return sendAndReceiveAsync(request).thenApply(new SaploFunction<JSONRPCResponseObject, JSONRPCResponseObject>() {
+				public JSONRPCResponseObject apply(JSONRPCResponseObject response) throws SaploClientException {
+					return bind(response, reader);
+				}
+			});
+		}
+
+		return SaploFuture.submit(es, new Callable<JSONRPCResponseObject>() {
+			public JSONRPCResponseObject call() throws SaploClientException {
+				return sendAndReceive(request, reader);
+			}
+		});
+	}
+
+	/**
+	 * Send a request for a result the API might still be calculating, such as text.tags, 
+	 * text.relatedTexts or text.relatedGroups, and poll for it until it is ready. 
+	 * The request should have wait=0, so the API answers right away with 
+	 * {@link ResponseCodes#CODE_PROCESSING} or {@link ResponseCodes#CODE_STILL_PROCESSING} while 
+	 * it is calculating. It is then sent again on a shared timer, first after {@value #FIRST_POLL_DELAY} ms 
+	 * and then twice as late each time, up to {@value #MAX_POLL_DELAY} ms between the tries. 
+	 * No thread is held between the tries, and with an {@link AsyncSession} not during them either, 
+	 * so a lot of results can be waited for at once.
+	 * 
+	 * @param request - the request, with wait=0
+	 * @param reader - the reader to bind the result with, or null to keep the parsed JSON
+	 * @param maxPollTime - how long to keep trying, after which the future fails with {@link ResponseCodes#CODE_MAX_WAIT}
+	 * @param unit - the unit of maxPollTime
+	 * @return a future of the first response that is not a processing one, either the result or another error
+	 */
+	public SaploFuture<JSONRPCResponseObject> sendAndPoll(JSONRPCRequestObject request, ResultReader<?> reader, 
+			long maxPollTime, TimeUnit unit) {
+		final Poll poll = new Poll(request, reader, System.currentTimeMillis() + unit.toMillis(maxPollTime));
+		// take a cancelled poll off the timer right away
+		poll.future.addCallback(new SaploCallback<JSONRPCResponseObject>() {
+			public void onSuccess(JSONRPCResponseObject response) {
+			}
+			public void onFailure(SaploClientException e) {
+				poll.abandon();
+			}
+		});
+		poll.run();
+		return poll.future;
+	}
+
+	/**
+	 * Send a request for a result the API might still be calculating and poll for it for up to 10 minutes, 
+	 * see {@link #sendAndPoll(JSONRPCRequestObject, ResultReader, long, TimeUnit)}
+	 * 
+	 * @param request - the request, with wait=0
+	 * @param reader - the reader to bind the result with, or null to keep the parsed JSON
+	 * @return a future of the first response that is not a processing one, either the result or another error
+	 */
+	public SaploFuture<JSONRPCResponseObject> sendAndPoll(JSONRPCRequestObject request, ResultReader<?> reader) {
+		return sendAndPoll(request, reader, DEFAULT_MAX_POLL_TIME, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of polled requests of this client waiting for their next try
+	 */
+	public int getPendingPollCount() {
+		return pendingPolls.size();
+	}
+
+	/*
+	 * whether the API is still calculating the result
+	 */
+	private static boolean isProcessing(JSONRPCResponseObject response) {
+		if(response.isSuccess() || response.getError() == null)
+			return false;
+		int code = response.getError().getCode();
+		return code == ResponseCodes.CODE_PROCESSING || code == ResponseCodes.CODE_STILL_PROCESSING;
+	}
+
+	/*
+	 * a request sent again and again until its result is ready
+	 */
+	private class Poll implements Runnable {
+		final SaploFuture<JSONRPCResponseObject> future = new SaploFuture<JSONRPCResponseObject>();
+		private final JSONRPCRequestObject request;
+		private final ResultReader<?> reader;
+		private final long deadline;
+		// only changed by one try at a time
+		private long delay = FIRST_POLL_DELAY;
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		Poll(JSONRPCRequestObject request, ResultReader<?> reader, long deadline) {
+			this.request = request;
+			this.reader = reader;
+			this.deadline = deadline;
+		}
+
+		public void run() {
+			pendingPolls.remove(this);
+			if(future.isDone())
+				return;
+
+			sendAndReceiveAsync(request, reader).addCallback(new SaploCallback<JSONRPCResponseObject>() {
+				public void onSuccess(JSONRPCResponseObject response) {
+					if(!isProcessing(response)) {
+						future.complete(response);
+						return;
+					}
+
+					long left = deadline - System.currentTimeMillis();
+					if(left <= 0) {
+						future.fail(new SaploClientException(ResponseCodes.MSG_MAX_WAIT, ResponseCodes.CODE_MAX_WAIT));
+						return;
+					}
+					long next = Math.min(delay, left);
+					delay = Math.min(delay * 2, MAX_POLL_DELAY);
+					schedule(next);
+				}
+				public void onFailure(SaploClientException e) {
+					future.fail(e);
+				}
+			});
+		}
+
+		private void schedule(long next) {
+			pendingPolls.add(this);
+			try {
+				timeout = timer.newTimeout(this, next, TimeUnit.MILLISECONDS);
+			} catch(IllegalStateException e) {
+				abandon();
+				return;
+			}
+			// cancelled or shut down meanwhile
+			if(future.isDone())
+				abandon();
+		}
+
+		/*
+		 * stop polling, failing the future if it is still pending
+		 */
+		void abandon() {
+			pendingPolls.remove(this);
+			HashedWheelTimer.Timeout t = timeout;
+			if(t != null)
+				t.cancel();
+			future.fail(new SaploClientException(ResponseCodes.MSG_STILL_PROCESSING, ResponseCodes.CODE_STILL_PROCESSING));
+		}
+	}
+
+	/**
+	 * Send several messages to the server in a single JSON-RPC batch call.
+	 * The responses are matched back to the requests by id, and each of them should 
+	 * be checked on its own with {@link #parseResponse(JSONRPCResponseObject)}, 
+	 * as some entries might succeed while others fail.
+	 * 
+	 * Here is an example usage:
+	 * <pre>
+	 *	List<JSONRPCRequestObject> requests = new ArrayList<JSONRPCRequestObject>();
+	 *	requests.add(new JSONRPCRequestObject(client.getNextId(), "collection.get", colParams1));
+	 *	requests.add(new JSONRPCRequestObject(client.getNextId(), "collection.get", colParams2));
+	 *
+	 *	List<JSONRPCResponseObject> responses = client.sendAndReceiveBatch(requests);
+	 *	for(JSONRPCResponseObject response : responses) {
+	 *		if(response.isSuccess()) {
+	 *			JSONObject result = (JSONObject)response.getResult();
+	 *			// do whatever you want with the result
+	 *		} else {
+	 *			SaploClientException error = response.getError().getClientException();
+	 *		}
+	 *	}
+	 * </pre>
+	 * 
+	 * @param requests - JSONRPCRequestObjects to send to the server (API), each with a unique id
+	 * @return responses - one JSONRPCResponseObject per request, in the same order as the requests
+	 * 
+	 * @throws SaploClientException - if the batch as a whole failed
+	 */
+	public List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> requests) throws SaploClientException {
+		ClientMetrics metrics = getMetrics();
+		if(null == metrics)
+			return sendBatchWithRetry(requests);
+
+		batchStarted(metrics, requests);
+		long start = System.nanoTime();
+		List<JSONRPCResponseObject> responses = null;
+		int failure = ResponseCodes.CODE_UNKNOWN_EXCEPTION;
+		try {
+			responses = sendBatchWithRetry(requests);
+			return responses;
+		} catch(SaploClientException e) {
+			failure = e.getErrorCode();
+			throw e;
+		} finally {
+			batchFinished(metrics, requests, start, responses, failure);
+		}
+	}
+
+	/*
+	 * send a batch, and once more the entries refused for an expired token
+	 */
+	private List<JSONRPCResponseObject> sendBatchWithRetry(List<JSONRPCRequestObject> requests) throws SaploClientException {
+		countWrites(requests);
+		String token = accessToken;
+		List<JSONRPCResponseObject> responses = sendBatch(requests);
+
+		// send the entries refused for an expired token again, once a new one is set
+		List<Integer> expired = expiredEntries(requests, responses);
+		if(!expired.isEmpty() && awaitNewToken(token))
+			responses = merge(responses, expired, sendBatch(select(requests, expired)));
+
+		return responses;
+	}
+
+	private List<JSONRPCResponseObject> sendBatch(List<JSONRPCRequestObject> requests) throws SaploClientException {
+		RetryPolicy policy = retryPolicy;
+		if(policy != null)
+			policy.onCall();
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return sendBatchOnce(requests);
+			} catch(SaploClientException e) {
+				List<String> methods = new ArrayList<String>(requests.size());
+				for(JSONRPCRequestObject request : requests)
+					methods.add(request.getMethod());
+				backOff(policy, methods, e, attempt);
+			}
+		}
+	}
+
+	private List<JSONRPCResponseObject> sendBatchOnce(List<JSONRPCRequestObject> requests) throws SaploClientException {
+		throttle(weightOf(requests));
+		logger.debug(">>>>>>Sending batch of {} requests", requests.size());
+		List<JSONRPCResponseObject> responses = session.sendAndReceiveBatch(requests);
+		logger.debug("<<<<<<Got batch of {} responses", responses.size());
+		for(JSONRPCResponseObject response : responses)
+			checkQuota(response);
+		return responses;
+	}
+
+	/**
+	 * An Async version of {@link #sendAndReceiveBatch(List)}
+	 * 
+	 * @param requests
+	 * @return
+	 */
+	public SaploFuture<List<JSONRPCResponseObject>> sendAndReceiveBatchAsync(final List<JSONRPCRequestObject> requests) {
+		if(session instanceof AsyncSession) {
+			final ClientMetrics metrics = getMetrics();
+			if(null == metrics)
+				return sendBatchAsync((AsyncSession)session, requests);
+
+			batchStarted(metrics, requests);
+			final long start = System.nanoTime();
+			SaploFuture<List<JSONRPCResponseObject>> responses = sendBatchAsync((AsyncSession)session, requests);
+			responses.addCallback(new SaploCallback<List<JSONRPCResponseObject>>() {
+				public void onSuccess(List<JSONRPCResponseObject> result) {
+					batchFinished(metrics, requests, start, result, ClientMetrics.OK);
+				}
+				public void onFailure(SaploClientException e) {
+					batchFinished(metrics, requests, start, null, e.getErrorCode());
+				}
+			});
+			return responses;
+		}
+
+		return SaploFuture.submit(es, new Callable<List<JSONRPCResponseObject>>() {
+			public List<JSONRPCResponseObject> call() throws SaploClientException {
+				return sendAndReceiveBatch(requests);
+			}
+		});
+	}
+
+	/*
+	 * send a batch through an async session, and once more the entries refused for an expired token
+	 */
+	private SaploFuture<List<JSONRPCResponseObject>> sendBatchAsync(final AsyncSession asyncSession, final List<JSONRPCRequestObject> requests) {
+		countWrites(requests);
+		final String token = accessToken;
+		return sendBatchOnceAsync(asyncSession, requests).thenCompose(new SaploFunction<List<JSONRPCResponseObject>, SaploFuture<List<JSONRPCResponseObject>>>() {
+			public SaploFuture<List<JSONRPCResponseObject>> apply(final List<JSONRPCResponseObject> responses) {
+				for(JSONRPCResponseObject response : responses)
+					checkQuota(response);
+				final List<Integer> expired = expiredEntries(requests, responses);
+				if(expired.isEmpty())
+					return SaploFuture.completed(responses);
+
+				// send the entries refused for an expired token again, once a new one is set
+				final SaploFuture<List<JSONRPCResponseObject>> retried = new SaploFuture<List<JSONRPCResponseObject>>();
+				refreshAccessToken(token).addCallback(new SaploCallback<String>() {
+					public void onSuccess(String newToken) {
+						sendBatchOnceAsync(asyncSession, select(requests, expired)).thenApply(
+								new SaploFunction<List<JSONRPCResponseObject>, List<JSONRPCResponseObject>>() {
+							public List<JSONRPCResponseObject> apply(List<JSONRPCResponseObject> again) {
+								return merge(responses, expired, again);
+							}
+						}).addCallback(completing(retried));
+					}
+					public void onFailure(SaploClientException e) {
+						retried.complete(responses);
+					}
+				});
+				return retried;
+			}
+		});
+	}
+
+	private SaploFuture<List<JSONRPCResponseObject>> sendBatchOnceAsync(final AsyncSession asyncSession, 
+			final List<JSONRPCRequestObject> requests) {
+		return throttleAsync(weightOf(requests)).thenCompose(new SaploFunction<Boolean, SaploFuture<List<JSONRPCResponseObject>>>() {
+			public SaploFuture<List<JSONRPCResponseObject>> apply(Boolean permitted) {
+				return asyncSession.sendAndReceiveBatchAsync(requests);
+			}
+		});
+	}
+
+	/**
+	 * Set a cache for the text.get and collection.get results, or null to not cache them (default).
+	 * The cache is read through by the managers of this client, and their update and delete 
+	 * calls drop the matching results. Changes made through other clients are only seen 
+	 * once the cached results expire.
+	 * 
+	 * @param responseCache - a {@link ResponseCache}, not to be shared with clients of other accounts
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * @return the cache for the text.get and collection.get results, or null if they are not cached
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Set a cache for the text.tags results, addressed by the text bodies, or null to 
+	 * not cache them (default). See {@link SaploTextManager#tags(com.saplo.api.client.entity.SaploText, int, boolean)}
+	 * 
+	 * @param tagCache - a {@link TagCache}, not to be shared with clients of other accounts
+	 */
+	public void setTagCache(TagCache tagCache) {
+		this.tagCache = tagCache;
+	}
+
+	/**
+	 * @return the cache for the text.tags results, or null if they are not cached
+	 */
+	public TagCache getTagCache() {
+		return tagCache;
+	}
+
+	/**
+	 * Set a cache on disk for the text.tags, text.relatedTexts and text.relatedGroups results, 
+	 * or null to not keep them (default). The tags are found by the text body, as in {@link #setTagCache(TagCache)}, 
+	 * the related texts and groups by the text id and the call params. The related results are 
+	 * only dropped when they expire or their collection is reset or deleted through this client.
+	 * The cache is not closed by {@link #shutdown()}, as it could outlive the client.
+	 * 
+	 * @param persistentCache - a {@link PersistentCache}, not to be shared with clients of other accounts
+	 */
+	public void setPersistentCache(PersistentCache persistentCache) {
+		this.persistentCache = persistentCache;
+	}
+
+	/**
+	 * @return the cache on disk for the tags and related results, or null if they are not kept
+	 */
+	public PersistentCache getPersistentCache() {
+		return persistentCache;
+	}
+
+	/**
+	 * Set when to send the calls that failed in the transport again, or null to never retry them (default).
+	 * The sync calls wait for their retries in the calling thread, the async calls of an {@link AsyncSession} 
+	 * on a timer. The async batches of an {@link AsyncSession} are not retried.
+	 * 
+	 * @param retryPolicy - a {@link RetryPolicy}
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @return when the calls failed in the transport are sent again, or null if never
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Set when a slow call of an idempotent method should be sent a second time, 
+	 * or null to never hedge (default). The first response is used and the other call is cancelled. 
+	 * Only the calls of an {@link AsyncSession} are hedged, and no thread waits for them. 
+	 * The calls of the other sessions are sent once, as their blocking reads can not be stopped.
+	 * 
+	 * @param hedgePolicy - a {@link HedgePolicy}
+	 */
+	public void setHedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+	}
+
+	/**
+	 * @return when a second call is sent for a slow one, or null if never
+	 */
+	public HedgePolicy getHedgePolicy() {
+		return hedgePolicy;
+	}
+
+	/**
+	 * @return the metrics told about every call, or null if there are none. 
+	 * See {@link TransportConfig#setMetrics(ClientMetrics)}
+	 */
+	public ClientMetrics getMetrics() {
+		return (transportConfig != null ? transportConfig.getMetrics() : null);
+	}
+
+	/**
+	 * @return the circuit breaker of the transport, to see its state, or null if it has none. 
+	 * See {@link TransportConfig#setCircuitBreaker(CircuitBreaker)}
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return (transportConfig != null ? transportConfig.getCircuitBreaker() : null);
+	}
+
+	/**
+	 * Set a limiter to keep the calls within the account's API call quota, or null to not limit them (default).
+	 * The limiter is updated from {@link SaploAccountManager#get()} in the background every 5 minutes, 
+	 * and right after the API says the limit has been reached. The auth.* and account.get calls are 
+	 * not limited. Batch calls take the permits of all their entries.
+	 * 
+	 * @param rateLimiter - a {@link QuotaRateLimiter}, not to be shared with clients of other accounts
+	 * @param blocking - whether a call over the rate waits for its turn, or fails right away with 
+	 * {@link ResponseCodes#CODE_API_LIMIT_REACHED}. The async calls of an {@link AsyncSession} wait on a timer, 
+	 * without holding a thread.
+	 */
+	public void setRateLimiter(QuotaRateLimiter rateLimiter, boolean blocking) {
+		this.rateLimitBlocking = blocking;
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * @return the limiter of the API calls, or null if they are not limited
+	 */
+	public QuotaRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Update the rate limiter from the API calls the account has left now.
+	 * It is done in the background from time to time anyway, call this to seed the limiter right away.
+	 * 
+	 * @throws SaploClientException
+	 */
+	public void updateRateLimiter() throws SaploClientException {
+		QuotaRateLimiter limiter = rateLimiter;
+		if(null == limiter)
+			return;
+
+		lastRateLimiterUpdate = System.currentTimeMillis();
+		SaploAccount account = accountMgr.get();
+		if(account.getApiCalls() != null)
+			limiter.update(account.getApiCalls());
+	}
+
+	/*
+	 * the permits a request takes, 0 for the ones not limited
+	 */
+	private int weightOf(JSONRPCRequestObject request) {
+		QuotaRateLimiter limiter = rateLimiter;
+		if(null == limiter)
+			return 0;
+		String method = request.getMethod();
+		if(method.startsWith("auth.") || "account.get".equals(method))
+			return 0;
+		return limiter.getWeight(method);
+	}
+
+	private int weightOf(List<JSONRPCRequestObject> requests) {
+		int weight = 0;
+		for(JSONRPCRequestObject request : requests)
+			weight += weightOf(request);
+		return weight;
+	}
+
+	/*
+	 * take the permits for a call, waiting for them if blocking
+	 */
+	private void throttle(int permits) throws SaploClientException {
+		QuotaRateLimiter limiter = rateLimiter;
+		if(null == limiter || permits == 0)
+			return;
+
+		updateRateLimiterIfStale(limiter);
+		if(!rateLimitBlocking) {
+			if(!limiter.tryAcquire(permits))
+				throw new SaploClientException(ResponseCodes.MSG_API_LIMIT_REACHED, ResponseCodes.CODE_API_LIMIT_REACHED);
+			return;
+		}
+		try {
+			limiter.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SaploClientException(ResponseCodes.MSG_UNKNOWN_EXCEPTION, ResponseCodes.CODE_UNKNOWN_EXCEPTION, e);
+		}
+	}
+
+	/*
+	 * take the permits for an async call, completing the future once it may be sent
+	 */
+	private SaploFuture<Boolean> throttleAsync(int permits) {
+		QuotaRateLimiter limiter = rateLimiter;
+		if(null == limiter || permits == 0)
+			return SaploFuture.completed(true);
+
+		updateRateLimiterIfStale(limiter);
+		if(!rateLimitBlocking) {
+			if(!limiter.tryAcquire(permits))
+				return SaploFuture.failed(new SaploClientException(ResponseCodes.MSG_API_LIMIT_REACHED, ResponseCodes.CODE_API_LIMIT_REACHED));
+			return SaploFuture.completed(true);
+		}
+
+		long wait = limiter.reserve(permits);
+		if(wait <= 0)
+			return SaploFuture.completed(true);
+
+		final SaploFuture<Boolean> permitted = new SaploFuture<Boolean>();
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				permitted.complete(true);
+			}
+		}, wait, TimeUnit.NANOSECONDS);
+		return permitted;
+	}
+
+	/*
+	 * update the limiter in the background if it is too old, and it has not been tried just now
+	 */
+	private void updateRateLimiterIfStale(QuotaRateLimiter limiter) {
+		if(!limiter.needsUpdate(RATE_LIMITER_MAX_AGE, TimeUnit.MILLISECONDS)
+				|| System.currentTimeMillis() - lastRateLimiterUpdate < RATE_LIMITER_RETRY
+				|| !rateLimiterUpdating.compareAndSet(false, true))
+			return;
+
+		try {
+			es.execute(new Runnable() {
+				public void run() {
+					try {
+						updateRateLimiter();
+					} catch (SaploClientException e) {
+						logger.warn("Could not update the rate limiter: {}", e.getMessage());
+					} finally {
+						rateLimiterUpdating.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rateLimiterUpdating.set(false);
+		}
+	}
+
+	/*
+	 * let the limiter know if the API says the limit has been reached
+	 */
+	private void checkQuota(JSONRPCResponseObject response) {
+		QuotaRateLimiter limiter = rateLimiter;
+		if(null == limiter || response.isSuccess() || response.getError() == null)
+			return;
+		int code = response.getError().getCode();
+		if(code == ResponseCodes.CODE_API_LIMIT_REACHED || code == ResponseCodes.CODE_NO_API_CALLS) {
+			logger.warn("The API call limit has been reached, slowing down");
+			limiter.drain();
+			lastRateLimiterUpdate = 0;
+		}
 	}
 
 	/**
@@ -425,6 +1847,24 @@ public class SaploClient implements Serializable {
 		return es;
 	}
 
+	/**
+	 * Get the number of async tasks waiting to be run by the executor
+	 * 
+	 * @return queue depth
+	 */
+	public int getAsyncQueueDepth() {
+		return es.getQueueDepth();
+	}
+
+	/**
+	 * Get the number of async tasks being run by the executor right now
+	 * 
+	 * @return active count
+	 */
+	public int getAsyncActiveCount() {
+		return es.getActiveCount();
+	}
+
 	/**
 	 * Parse the response for result or error.
 	 * 
@@ -453,12 +1893,51 @@ public class SaploClient implements Serializable {
 	 */
 	private void processException(JSONRPCErrorObject error)
 			throws SaploClientException {
-		if(error.getClientException().getErrorCode() == ResponseCodes.CODE_ERR_NOSESSION
-				|| error.getClientException().getErrorCode() == ResponseCodes.CODE_API_DOWN_EXCEPTION) {
-			boolean reconnected = reAuthenticateSession();
-			if(reconnected)
-				throw new SaploClientException(ResponseCodes.MSG_RECONNECTED, ResponseCodes.CODE_RECONNECTED);
-		}
+		// an expired token has already been refreshed and the request re-sent by sendAndReceive
 		throw error.getClientException();
 	}
+
+	/*
+	 * the indexes of the batch entries refused for an expired token
+	 */
+	private static List<Integer> expiredEntries(List<JSONRPCRequestObject> requests, List<JSONRPCResponseObject> responses) {
+		List<Integer> expired = new ArrayList<Integer>();
+		for(int i = 0; i < requests.size(); i++) {
+			if(needsNewToken(requests.get(i), responses.get(i)))
+				expired.add(i);
+		}
+		return expired;
+	}
+
+	private static List<JSONRPCRequestObject> select(List<JSONRPCRequestObject> requests, List<Integer> indexes) {
+		List<JSONRPCRequestObject> selected = new ArrayList<JSONRPCRequestObject>(indexes.size());
+		for(Integer i : indexes)
+			selected.add(requests.get(i));
+		return selected;
+	}
+
+	/*
+	 * put the responses of the re-sent entries in place of the refused ones
+	 */
+	private static List<JSONRPCResponseObject> merge(List<JSONRPCResponseObject> responses, 
+			List<Integer> indexes, List<JSONRPCResponseObject> again) {
+		List<JSONRPCResponseObject> merged = new ArrayList<JSONRPCResponseObject>(responses);
+		for(int i = 0; i < indexes.size(); i++)
+			merged.set(indexes.get(i), again.get(i));
+		return merged;
+	}
+
+	/*
+	 * a callback that hands the outcome over to the given future
+	 */
+	private static <V> SaploCallback<V> completing(final SaploFuture<V> future) {
+		return new SaploCallback<V>() {
+			public void onSuccess(V result) {
+				future.complete(result);
+			}
+			public void onFailure(SaploClientException e) {
+				future.fail(e);
+			}
+		};
+	}
 }
@@ -0,0 +1,244 @@
+/**
+ * 
+ */
+package com.saplo.api.client;
+
+import java.util.zip.Deflater;
+
+import com.saplo.api.client.session.CircuitBreaker;
+
+/**
+ * A class to hold the connection pool and timeout settings of a client transport.
+ * The defaults are the same pool sizes the transports have always used, 
+ * plus a keep-alive policy and an idle connection evictor, so connections 
+ * the server has already dropped are not handed out of the pool.
+ * 
+ * @author progre55
+ */
+public class TransportConfig {
+
+	private int maxTotalConnections = 50;
+	private int maxConnectionsPerRoute = 20;
+	private int maxEndpointConnections = 40;
+	private int connectTimeout = 0;
+	private int socketTimeout = 0;
+	private long keepAlive = 30 * 1000;
+	private long maxIdleTime = 30 * 1000;
+	private long evictionInterval = 5 * 1000;
+	private int compressionThreshold = -1;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean acceptCompressedResponses = true;
+	private CircuitBreaker circuitBreaker = null;
+	private ClientMetrics metrics = null;
+
+	/**
+	 * A config with the default settings
+	 */
+	public TransportConfig() {
+	}
+
+	/**
+	 * @return the max number of pooled connections
+	 */
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/**
+	 * @param maxTotalConnections the max number of pooled connections to set, default 50
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	/**
+	 * @return the max number of pooled connections to any host
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute the max number of pooled connections to any host to set, default 20
+	 */
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @return the max number of pooled connections to the API endpoint
+	 */
+	public int getMaxEndpointConnections() {
+		return maxEndpointConnections;
+	}
+
+	/**
+	 * @param maxEndpointConnections the max number of pooled connections to the API endpoint to set, default 40
+	 */
+	public void setMaxEndpointConnections(int maxEndpointConnections) {
+		this.maxEndpointConnections = maxEndpointConnections;
+	}
+
+	/**
+	 * @return the connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout the connect timeout in milliseconds to set, 0 (default) for no timeout
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the socket read timeout in milliseconds
+	 */
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	/**
+	 * Keep in mind that calls with a "wait" param are answered only after 
+	 * that many seconds at most, so the timeout should be longer than that.
+	 * 
+	 * @param socketTimeout the socket read timeout in milliseconds to set, 0 (default) for no timeout
+	 */
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	/**
+	 * @return how long an idle connection is kept alive, if the server does not say
+	 */
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @param keepAlive how long in milliseconds an idle connection is kept alive, 
+	 * if the server does not say with a Keep-Alive header. Default 30 seconds, -1 for ever.
+	 */
+	public void setKeepAlive(long keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * @return how long a connection may sit idle in the pool before it is closed
+	 */
+	public long getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	/**
+	 * @param maxIdleTime how long in milliseconds a connection may sit idle in the pool 
+	 * before it is closed. Default 30 seconds, 0 to only close the expired ones.
+	 */
+	public void setMaxIdleTime(long maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+
+	/**
+	 * @return how often the pool is checked for expired and idle connections
+	 */
+	public long getEvictionInterval() {
+		return evictionInterval;
+	}
+
+	/**
+	 * @param evictionInterval how often in milliseconds the pool is checked for 
+	 * expired and idle connections. Default 5 seconds, 0 to not check at all.
+	 */
+	public void setEvictionInterval(long evictionInterval) {
+		this.evictionInterval = evictionInterval;
+	}
+
+	/**
+	 * @return the request size from which request bodies are gzipped, -1 if never
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Request bodies of about this many characters or more are sent with 
+	 * "Content-Encoding: gzip". The endpoint has to accept compressed requests, 
+	 * so it is off by default.
+	 * 
+	 * @param compressionThreshold the request size in characters to set, 0 to gzip every request, -1 (default) for never
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * @return the gzip level of compressed request bodies
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * @param compressionLevel the gzip level to set, 1 (fastest) to 9 (smallest), 
+	 * default {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if (compressionLevel != Deflater.DEFAULT_COMPRESSION 
+				&& (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return whether gzip and deflate responses are asked for
+	 */
+	public boolean isAcceptCompressedResponses() {
+		return acceptCompressedResponses;
+	}
+
+	/**
+	 * @param acceptCompressedResponses whether to send "Accept-Encoding: gzip,deflate" 
+	 * and decompress the responses while they are read, default true
+	 */
+	public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+		this.acceptCompressedResponses = acceptCompressedResponses;
+	}
+
+	/**
+	 * @return the breaker that stops the calls while the endpoint keeps failing, or null if there is none
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * While the breaker is open, the calls fail right away with {@link ResponseCodes#CODE_CIRCUIT_OPEN} 
+	 * rather than each waiting for the endpoint to time out. The breaker is shared by all the sessions 
+	 * created with this config.
+	 * 
+	 * @param circuitBreaker the breaker to set, default null for none
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * @return the metrics told about every call, or null if there are none
+	 */
+	public ClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The metrics are told about the latency and the outcome of every call of the clients 
+	 * created with this config, and about the bytes of every request and response of their sessions.
+	 * 
+	 * @param metrics the metrics to set, e.g. a {@link com.saplo.api.client.util.HistogramClientMetrics}, 
+	 * default null for none
+	 */
+	public void setMetrics(ClientMetrics metrics) {
+		this.metrics = metrics;
+	}
+}
@@ -3,6 +3,8 @@
  */
 package com.saplo.api.client.entity;
 
+import java.util.List;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -61,6 +63,20 @@ public class JSONRPCRequestObject {
 		return object;
 	}
 
+	/**
+	 * Constructs a JSON-RPC batch, a JSONArray of the given requests
+	 * 
+	 * @param requests - the requests to put in the batch
+	 * @return the JSONArray
+	 */
+	public static JSONArray getJSONArray(List<JSONRPCRequestObject> requests) {
+		JSONArray array = new JSONArray();
+		for(JSONRPCRequestObject request : requests)
+			array.put(request.getJSONObject());
+
+		return array;
+	}
+
 	/**
 	 * @return the id
 	 */
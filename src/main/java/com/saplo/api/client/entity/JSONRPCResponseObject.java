@@ -3,8 +3,17 @@
  */
 package com.saplo.api.client.entity;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.saplo.api.client.ResponseCodes;
+
 /**
  * A wrapper for JSON-RPC v2.0 JSONRPC-Response
  * as specified here http://groups.google.com/group/json-rpc/web/json-rpc-2-0
@@ -19,6 +28,7 @@ public class JSONRPCResponseObject {
 	private String version;
 	private boolean success = false;
 	private String rawMessage;
+	private JSONObject source;
 	
 	/**
 	 * A constructor that takes in a JSON-RPC response and parses the fields
@@ -40,7 +50,26 @@ public class JSONRPCResponseObject {
 		}
 		id = response.optInt("id");
 		version = response.optString("jsonrpc");
-		rawMessage = response.toString();
+		// serialized only if asked for, see toString()
+		source = response;
+	}
+
+	/**
+	 * A constructor for responses that were decoded without building a {@link JSONObject}
+	 * 
+	 * @param id - the response id
+	 * @param version - the JSON-RPC version
+	 * @param result - the result, or null on FAILURE
+	 * @param error - the error, or null on SUCCESS
+	 * @param rawMessage - the raw JSON message received from the server, if it was kept
+	 */
+	public JSONRPCResponseObject(Integer id, String version, Object result, JSONRPCErrorObject error, String rawMessage) {
+		this.id = id;
+		this.version = version;
+		this.result = result;
+		this.success = (result != null);
+		this.error = (success ? null : error);
+		this.rawMessage = rawMessage;
 	}
 	
 	/**
@@ -79,10 +108,73 @@ public class JSONRPCResponseObject {
 	}
 
 	/**
-	 * Returns the raw JSON message received from the server.
+	 * Returns the raw JSON message received from the server, 
+	 * or a summary of the response if the raw message was not kept.
 	 */
 	public String toString() {
-		return rawMessage;
+		if(rawMessage != null)
+			return rawMessage;
+		if(source != null)
+			return source.toString();
+		return "{\"jsonrpc\":\"" + version + "\",\"id\":" + id 
+				+ (success ? ",\"result\":" + result : ",\"error\":" + error) + "}";
+	}
+
+	/**
+	 * Match the responses of a batch call back to their requests by id.
+	 * A response that is missing from the batch is replaced by an error response, and
+	 * if the API answered the whole batch with a single error object, that error 
+	 * is given to every request.
+	 * 
+	 * @param requests - the requests that were sent in the batch
+	 * @param rawResponse - a {@link JSONArray} or a {@link JSONObject} received from the API
+	 * @return responses - one per request, in the same order as the requests
+	 */
+	public static List<JSONRPCResponseObject> fromBatch(List<JSONRPCRequestObject> requests, Object rawResponse) {
+		Map<Integer, JSONObject> byId = new HashMap<Integer, JSONObject>();
+		JSONObject batchError = null;
+
+		if(rawResponse instanceof JSONArray) {
+			JSONArray array = (JSONArray)rawResponse;
+			for(int i = 0; i < array.length(); i++) {
+				JSONObject item = array.optJSONObject(i);
+				if(item != null && item.has("id") && !item.isNull("id"))
+					byId.put(item.optInt("id"), item);
+			}
+		} else if(rawResponse instanceof JSONObject) {
+			batchError = (JSONObject)rawResponse;
+		}
+
+		List<JSONRPCResponseObject> responses = new ArrayList<JSONRPCResponseObject>(requests.size());
+		for(JSONRPCRequestObject request : requests) {
+			JSONObject item = byId.get(request.getId());
+			if(item == null)
+				item = errorFor(request.getId(), batchError);
+			responses.add(new JSONRPCResponseObject(item));
+		}
+		return responses;
+	}
+
+	/*
+	 * build an error response for a request that got no response of its own
+	 */
+	private static JSONObject errorFor(Integer id, JSONObject batchError) {
+		JSONObject item = new JSONObject();
+		try {
+			item.put("jsonrpc", "2.0");
+			item.put("id", id);
+			if(batchError != null && batchError.has("error")) {
+				item.put("error", batchError.opt("error"));
+			} else {
+				JSONObject error = new JSONObject();
+				error.put("code", ResponseCodes.CODE_MALFORMED_RESPONSE);
+				error.put("msg", ResponseCodes.MSG_MALFORMED_RESPONSE);
+				item.put("error", error);
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		return item;
 	}
 
 	/*
@@ -216,7 +216,7 @@ public class SaploAccount {
 	 * 
 	 * @author progre55
 	 */
-	static class ApiCalls {
+	public static class ApiCalls {
 		private int limitMonth;
 		private int leftMonth;
 		private Date resetMonth;
@@ -0,0 +1,68 @@
+/**
+ * 
+ */
+package com.saplo.api.client.entity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.saplo.api.client.SaploClientException;
+
+/**
+ * The outcome of a bulk operation, e.g. 
+ * {@link com.saplo.api.client.manager.SaploTextManager#createAll(Iterable)}.
+ * Items that went through are only counted, as they are updated in place, 
+ * while each failed item is kept together with its error.
+ * 
+ * @author progre55
+ */
+public class SaploBulkResult<T> {
+
+	private int succeeded = 0;
+	private final Map<T, SaploClientException> failures = new LinkedHashMap<T, SaploClientException>();
+
+	/**
+	 * Count an item that went through
+	 */
+	public synchronized void addSuccess() {
+		succeeded++;
+	}
+
+	/**
+	 * Record an item that failed
+	 * 
+	 * @param item - the failed item
+	 * @param error - why it failed
+	 */
+	public synchronized void addFailure(T item, SaploClientException error) {
+		failures.put(item, error);
+	}
+
+	/**
+	 * @return the number of items that went through
+	 */
+	public synchronized int getSucceededCount() {
+		return succeeded;
+	}
+
+	/**
+	 * @return the number of items that failed
+	 */
+	public synchronized int getFailedCount() {
+		return failures.size();
+	}
+
+	/**
+	 * @return the failed items with their errors, in the order they failed
+	 */
+	public synchronized Map<T, SaploClientException> getFailures() {
+		return new LinkedHashMap<T, SaploClientException>(failures);
+	}
+
+	/**
+	 * @return true if no item failed
+	 */
+	public synchronized boolean isSuccess() {
+		return failures.isEmpty();
+	}
+}
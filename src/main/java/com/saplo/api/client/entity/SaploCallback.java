@@ -0,0 +1,28 @@
+/**
+ * 
+ */
+package com.saplo.api.client.entity;
+
+import com.saplo.api.client.SaploClientException;
+
+/**
+ * A callback to be notified when a {@link SaploFuture} completes
+ * 
+ * @author progre55
+ */
+public interface SaploCallback<V> {
+
+	/**
+	 * Called with the result when the future completes successfully
+	 * 
+	 * @param result
+	 */
+	void onSuccess(V result);
+
+	/**
+	 * Called when the future fails or is cancelled
+	 * 
+	 * @param e - the failure, in the same form as {@link SaploFuture#get()} would throw it
+	 */
+	void onFailure(SaploClientException e);
+}
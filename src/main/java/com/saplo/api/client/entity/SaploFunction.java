@@ -0,0 +1,22 @@
+/**
+ * 
+ */
+package com.saplo.api.client.entity;
+
+import com.saplo.api.client.SaploClientException;
+
+/**
+ * A function to transform the result of a {@link SaploFuture}, 
+ * see {@link SaploFuture#thenApply(SaploFunction)} and {@link SaploFuture#thenCompose(SaploFunction)}
+ * 
+ * @author progre55
+ */
+public interface SaploFunction<I, O> {
+
+	/**
+	 * @param input - the result of the previous stage
+	 * @return the result of this stage
+	 * @throws SaploClientException - fails the resulting future
+	 */
+	O apply(I input) throws SaploClientException;
+}
@@ -1,5 +1,5 @@
 /**
- * 
+ *
  */
 package com.saplo.api.client.entity;
 
@@ -8,82 +8,386 @@ import static com.saplo.api.client.ResponseCodes.CODE_UNKNOWN_EXCEPTION;
 import static com.saplo.api.client.ResponseCodes.MSG_STILL_PROCESSING;
 import static com.saplo.api.client.ResponseCodes.MSG_UNKNOWN_EXCEPTION;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.saplo.api.client.SaploClientException;
 
 /**
- * A class to wrap around {@link Future} objects and convert {@link ExecutionException}s to {@link SaploClientException}
- * 
+ * The result of an asynchronous operation.
+ * Converts the failures into {@link SaploClientException}s, and allows to register
+ * callbacks and chain further operations without blocking a thread:
+ * <pre>
+ *	textMgr.createAsync(myText)
+ *		.thenCompose(new SaploFunction<Boolean, SaploFuture<List<SaploTag>>>() {
+ *			public SaploFuture<List<SaploTag>> apply(Boolean created) {
+ *				return textMgr.tagsAsync(myText);
+ *			}
+ *		})
+ *		.addCallback(new SaploCallback<List<SaploTag>>() {
+ *			public void onSuccess(List<SaploTag> tags) {
+ *				// do whatever you want with the tags
+ *			}
+ *			public void onFailure(SaploClientException e) {
+ *				// something went wrong
+ *			}
+ *		});
+ * </pre>
+ *
+ * Callbacks and functions are run by the thread that completes the future,
+ * or by the calling thread if the future is already done.
+ *
  * @author progre55
  */
 public class SaploFuture<V> {
 
+	private static final Logger logger = LoggerFactory.getLogger(SaploFuture.class);
+
+	private static final int PENDING = 0;
+	private static final int SUCCESS = 1;
+	private static final int FAILURE = 2;
+	private static final int CANCELLED = 3;
+
+	private int state = PENDING;
+	private V result;
+	private SaploClientException failure;
+	private List<SaploCallback<? super V>> callbacks = new ArrayList<SaploCallback<? super V>>();
+
+	// a wrapped plain future, see SaploFuture(Future)
 	private Future<V> future;
-	
+	// the work behind this future, cancelled together with it
+	private volatile Future<?> task;
+
+	/**
+	 * Create a pending future, to be completed by {@link #complete(Object)} or {@link #fail(Throwable)}
+	 */
+	public SaploFuture() {
+	}
+
+	/**
+	 * Wrap a plain {@link Future}.
+	 * NOTE: as a plain future gives no notification, callbacks registered on the wrapper
+	 * only run once the result has been observed through {@link #get()}.
+	 * Prefer {@link #submit(Executor, Callable)} for new code.
+	 *
+	 * @param future
+	 */
 	public SaploFuture(Future<V> future) {
 		this.future = future;
+		this.task = future;
 	}
-	
+
+	/**
+	 * Run the given task on the given executor, and return a future of its result
+	 *
+	 * @param executor - the executor to run the task on
+	 * @param callable - the task
+	 * @return a {@link SaploFuture} completed when the task is done
+	 */
+	public static <V> SaploFuture<V> submit(Executor executor, Callable<V> callable) {
+		final SaploFuture<V> saploFuture = new SaploFuture<V>();
+		FutureTask<V> futureTask = new FutureTask<V>(callable) {
+			@Override
+			protected void done() {
+				if(isCancelled()) {
+					saploFuture.cancel(false);
+					return;
+				}
+				try {
+					saploFuture.complete(get());
+				} catch (ExecutionException ee) {
+					saploFuture.fail(ee);
+				} catch (InterruptedException ie) {
+					saploFuture.fail(ie);
+				}
+			}
+		};
+		saploFuture.task = futureTask;
+		executor.execute(futureTask);
+
+		return saploFuture;
+	}
+
+	/**
+	 * @param value
+	 * @return an already completed future with the given value
+	 */
+	public static <V> SaploFuture<V> completed(V value) {
+		SaploFuture<V> saploFuture = new SaploFuture<V>();
+		saploFuture.complete(value);
+		return saploFuture;
+	}
+
+	/**
+	 * @param e
+	 * @return an already failed future with the given exception
+	 */
+	public static <V> SaploFuture<V> failed(SaploClientException e) {
+		SaploFuture<V> saploFuture = new SaploFuture<V>();
+		saploFuture.fail(e);
+		return saploFuture;
+	}
+
+	/**
+	 * Get a future that completes when all the given futures have completed,
+	 * with their results in the same order. It fails as soon as any of them fails.
+	 *
+	 * @param futures
+	 * @return a future of all the results
+	 */
+	public static <V> SaploFuture<List<V>> allOf(final List<SaploFuture<V>> futures) {
+		final SaploFuture<List<V>> all = new SaploFuture<List<V>>();
+		if(futures.isEmpty()) {
+			all.complete(new ArrayList<V>());
+			return all;
+		}
+
+		final Object[] results = new Object[futures.size()];
+		final AtomicInteger remaining = new AtomicInteger(futures.size());
+		for(int i = 0; i < futures.size(); i++) {
+			final int index = i;
+			futures.get(i).addCallback(new SaploCallback<V>() {
+				@SuppressWarnings("unchecked")
+				public void onSuccess(V result) {
+					results[index] = result;
+					if(remaining.decrementAndGet() == 0) {
+						List<V> list = new ArrayList<V>(results.length);
+						for(Object o : results)
+							list.add((V)o);
+						all.complete(list);
+					}
+				}
+				public void onFailure(SaploClientException e) {
+					all.fail(e);
+				}
+			});
+		}
+		return all;
+	}
+
+	/**
+	 * Complete this future with the given value, if it is not done yet
+	 *
+	 * @param value
+	 * @return true if this call completed the future
+	 */
+	public boolean complete(V value) {
+		List<SaploCallback<? super V>> toRun;
+		synchronized (this) {
+			if(state != PENDING)
+				return false;
+			result = value;
+			state = SUCCESS;
+			toRun = takeCallbacks();
+		}
+		for(SaploCallback<? super V> callback : toRun)
+			runCallback(callback);
+		return true;
+	}
+
+	/**
+	 * Fail this future with the given exception, if it is not done yet.
+	 * Any exception other than a {@link SaploClientException} is wrapped into one.
+	 *
+	 * @param t
+	 * @return true if this call completed the future
+	 */
+	public boolean fail(Throwable t) {
+		return finish(FAILURE, toClientException(t));
+	}
+
 	/**
 	 * @see Future#get()
-	 * 
+	 *
 	 * @return
 	 * @throws SaploClientException - converts the {@link Future#get()} exceptions into a SaploClientException
 	 */
 	public V get() throws SaploClientException {
+		if(future != null)
+			return observe(future, 0, null);
+
 		try {
-			return future.get();
-		} catch (ExecutionException ee) {
-			if(ee.getCause() instanceof SaploClientException)
-				throw (SaploClientException)ee.getCause();
-			else
-				throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, ee);
+			synchronized (this) {
+				while(state == PENDING)
+					wait();
+			}
 		} catch (InterruptedException ie) {
 			throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, ie);
 		}
+		return report();
 	}
-	
+
 	/**
 	 * @see Future#get(long, TimeUnit)
-	 * 
+	 *
 	 * @param timeout
 	 * @param unit
 	 * @return
 	 * @throws SaploClientException - converts the {@link Future#get(long, TimeUnit)} exceptions into a SaploClientException
 	 */
 	public V get(long timeout, TimeUnit unit) throws SaploClientException {
+		if(future != null)
+			return observe(future, timeout, unit);
+
 		try {
-			return future.get(timeout, unit);
-		} catch (ExecutionException ee) {
-			if(ee.getCause() instanceof SaploClientException)
-				throw (SaploClientException)ee.getCause();
-			else
-				throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, ee);
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			synchronized (this) {
+				while(state == PENDING) {
+					long left = deadline - System.nanoTime();
+					if(left <= 0)
+						throw new SaploClientException(MSG_STILL_PROCESSING, CODE_STILL_PROCESSING, new TimeoutException());
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				}
+			}
 		} catch (InterruptedException ie) {
 			throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, ie);
-		} catch (TimeoutException te) {
-			throw new SaploClientException(MSG_STILL_PROCESSING, CODE_STILL_PROCESSING, te);
 		}
+		return report();
 	}
-	
+
+	/**
+	 * Register a callback to be run when this future completes.
+	 * If it is already done, the callback is run right away.
+	 *
+	 * @param callback
+	 * @return this future
+	 */
+	public SaploFuture<V> addCallback(SaploCallback<? super V> callback) {
+		synchronized (this) {
+			if(state == PENDING) {
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		runCallback(callback);
+		return this;
+	}
+
 	/**
+	 * Register a callback to be run on the given executor when this future completes.
+	 *
+	 * @param callback
+	 * @param executor
+	 * @return this future
+	 */
+	public SaploFuture<V> addCallback(final SaploCallback<? super V> callback, final Executor executor) {
+		return addCallback(new SaploCallback<V>() {
+			public void onSuccess(final V result) {
+				executor.execute(new Runnable() {
+					public void run() {
+						callback.onSuccess(result);
+					}
+				});
+			}
+			public void onFailure(final SaploClientException e) {
+				executor.execute(new Runnable() {
+					public void run() {
+						callback.onFailure(e);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Get a future of the given function applied to the result of this one.
+	 * A failure of this future (or of the function) fails the returned one.
+	 *
+	 * @param function
+	 * @return a future of the function result
+	 */
+	public <O> SaploFuture<O> thenApply(final SaploFunction<? super V, ? extends O> function) {
+		final SaploFuture<O> next = new SaploFuture<O>();
+		addCallback(new SaploCallback<V>() {
+			public void onSuccess(V result) {
+				try {
+					next.complete(function.apply(result));
+				} catch (SaploClientException e) {
+					next.fail(e);
+				} catch (RuntimeException e) {
+					next.fail(e);
+				}
+			}
+			public void onFailure(SaploClientException e) {
+				next.fail(e);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Get a future of the asynchronous operation started by the given function
+	 * with the result of this one.
+	 *
+	 * @param function - returns the future of the next operation
+	 * @return a future of the next operation result
+	 */
+	public <O> SaploFuture<O> thenCompose(final SaploFunction<? super V, SaploFuture<O>> function) {
+		final SaploFuture<O> next = new SaploFuture<O>();
+		addCallback(new SaploCallback<V>() {
+			public void onSuccess(V result) {
+				SaploFuture<O> inner;
+				try {
+					inner = function.apply(result);
+				} catch (SaploClientException e) {
+					next.fail(e);
+					return;
+				} catch (RuntimeException e) {
+					next.fail(e);
+					return;
+				}
+				inner.addCallback(new SaploCallback<O>() {
+					public void onSuccess(O innerResult) {
+						next.complete(innerResult);
+					}
+					public void onFailure(SaploClientException e) {
+						next.fail(e);
+					}
+				});
+			}
+			public void onFailure(SaploClientException e) {
+				next.fail(e);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Cancel this future, along with the task behind it if still running.
+	 * The future it was chained from is left alone, as it may have other dependents.
+	 *
 	 * @see Future#cancel(boolean)
 	 * @param mayInterruptIfRunning
 	 */
 	public void cancel(boolean mayInterruptIfRunning) {
-		future.cancel(mayInterruptIfRunning);
+		boolean cancelled = finish(CANCELLED,
+				new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, new CancellationException()));
+		if(!cancelled)
+			return;
+
+		Future<?> t = task;
+		if(t != null)
+			t.cancel(mayInterruptIfRunning);
 	}
-	
+
 	/**
 	 * @see Future#isCancelled()
 	 * @return
 	 */
-	public boolean isCancelled() {
-		return future.isCancelled();
+	public synchronized boolean isCancelled() {
+		return state == CANCELLED;
 	}
 
 	/**
@@ -91,8 +395,89 @@ public class SaploFuture<V> {
 	 * @return
 	 */
 	public boolean isDone() {
-		return future.isDone();
+		synchronized (this) {
+			if(state != PENDING)
+				return true;
+		}
+		return future != null && future.isDone();
+	}
+
+	/*
+	 * move to a final state and run the callbacks
+	 */
+	private boolean finish(int finalState, SaploClientException e) {
+		List<SaploCallback<? super V>> toRun;
+		synchronized (this) {
+			if(state != PENDING)
+				return false;
+			failure = e;
+			state = finalState;
+			toRun = takeCallbacks();
+		}
+		for(SaploCallback<? super V> callback : toRun)
+			runCallback(callback);
+		return true;
+	}
+
+	private List<SaploCallback<? super V>> takeCallbacks() {
+		List<SaploCallback<? super V>> toRun = callbacks;
+		callbacks = new ArrayList<SaploCallback<? super V>>(0);
+		notifyAll();
+		return toRun;
+	}
+
+	private void runCallback(SaploCallback<? super V> callback) {
+		V value;
+		SaploClientException e;
+		synchronized (this) {
+			value = result;
+			e = failure;
+		}
+		try {
+			if(e == null)
+				callback.onSuccess(value);
+			else
+				callback.onFailure(e);
+		} catch (RuntimeException re) {
+			logger.warn("A SaploFuture callback has thrown an exception", re);
+		}
+	}
+
+	private synchronized V report() throws SaploClientException {
+		if(state == CANCELLED)
+			throw new CancellationException();
+		if(state == FAILURE)
+			throw failure;
+		return result;
+	}
+
+	/*
+	 * get the result of a wrapped plain future, and complete this one with it
+	 */
+	private V observe(Future<V> f, long timeout, TimeUnit unit) throws SaploClientException {
+		try {
+			V value = unit == null ? f.get() : f.get(timeout, unit);
+			complete(value);
+			return value;
+		} catch (ExecutionException ee) {
+			SaploClientException e = toClientException(ee);
+			fail(e);
+			throw e;
+		} catch (InterruptedException ie) {
+			throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, ie);
+		} catch (TimeoutException te) {
+			throw new SaploClientException(MSG_STILL_PROCESSING, CODE_STILL_PROCESSING, te);
+		}
+	}
+
+	/*
+	 * the same conversion as get() has always done for ExecutionExceptions
+	 */
+	private static SaploClientException toClientException(Throwable t) {
+		if(t instanceof ExecutionException && t.getCause() instanceof SaploClientException)
+			t = t.getCause();
+		if(t instanceof SaploClientException)
+			return (SaploClientException)t;
+		return new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, t);
 	}
-	
-	
 }
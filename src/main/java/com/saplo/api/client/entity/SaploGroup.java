@@ -3,12 +3,16 @@
  */
 package com.saplo.api.client.entity;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.List;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import com.saplo.api.client.entity.SaploCollection.Language;
 import com.saplo.api.client.util.ClientUtil;
 import com.saplo.api.client.util.ThreadSafeSimpleDateFormat;
@@ -241,4 +245,59 @@ public class SaploGroup {
 		convertFromJSONToGroup(json, saploGroup);
 		return saploGroup;
 	}
+
+	/**
+	 * Read the fields of a {@link SaploGroup} straight from a JSON parser, 
+	 * the same way as {@link #convertFromJSONToGroup(JSONObject, SaploGroup)}
+	 * 
+	 * @param parser - the parser, positioned on the START_OBJECT of the group
+	 * @param saploGroup - the {@link SaploGroup} object to fill in
+	 * @throws IOException
+	 */
+	public static void readFromJSON(JsonParser parser, SaploGroup saploGroup) throws IOException {
+
+		saploGroup.setId(0);
+		saploGroup.setName("");
+		saploGroup.setDescription("");
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if(token == JsonToken.VALUE_NULL)
+				continue;
+
+			try {
+				if("group_id".equals(field))
+					saploGroup.setId(parser.getValueAsInt());
+				else if("name".equals(field))
+					saploGroup.setName(parser.getValueAsString());
+				else if("description".equals(field))
+					saploGroup.setDescription(parser.getValueAsString());
+				else if("language".equals(field))
+					saploGroup.setLanguage(SaploCollection.Language.valueOf(parser.getValueAsString()));
+				else if("date_created".equals(field))
+					saploGroup.setDateCreated(sf.parse(parser.getValueAsString()));
+				else if("date_updated".equals(field))
+					saploGroup.setDateUpdated(sf.parse(parser.getValueAsString()));
+				else if("relevance".equals(field))
+					saploGroup.setRelatedRelevance(parser.getValueAsDouble());
+				else
+					parser.skipChildren();
+			} catch (ParseException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Read a {@link SaploGroup} object straight from a JSON parser
+	 * 
+	 * @param parser - the parser, positioned on the START_OBJECT of the group
+	 * @return group - the {@link SaploGroup} that was read
+	 * @throws IOException
+	 */
+	public static SaploGroup readFromJSON(JsonParser parser) throws IOException {
+		SaploGroup saploGroup = new SaploGroup();
+		readFromJSON(parser, saploGroup);
+		return saploGroup;
+	}
 }
@@ -3,8 +3,13 @@
  */
 package com.saplo.api.client.entity;
 
+import java.io.IOException;
+
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import com.saplo.api.client.util.ClientUtil;
 
 /**
@@ -91,4 +96,34 @@ public class SaploTag {
 
 		return saploTag;
 	}
+
+	/**
+	 * Read a {@link SaploTag} object straight from a JSON parser, 
+	 * the same way as {@link #convertFromJSONToTag(JSONObject)}
+	 * 
+	 * @param parser - the parser, positioned on the START_OBJECT of the tag
+	 * @return tag - the {@link SaploTag} that was read
+	 * @throws IOException
+	 */
+	public static SaploTag readFromJSON(JsonParser parser) throws IOException {
+		SaploTag saploTag = new SaploTag();
+
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if(token == JsonToken.VALUE_NULL)
+				continue;
+
+			if("tag".equals(field))
+				saploTag.setTagWord(parser.getValueAsString());
+			else if("category".equals(field))
+				saploTag.setCategory(SaploTag.TagCategory.valueOf(parser.getValueAsString().toUpperCase()));
+			else if("relevance".equals(field))
+				saploTag.setRelevance(parser.getValueAsDouble());
+			else
+				parser.skipChildren();
+		}
+
+		return saploTag;
+	}
 }
@@ -3,6 +3,7 @@
  */
 package com.saplo.api.client.entity;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
@@ -11,6 +12,9 @@ import java.util.List;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import com.saplo.api.client.util.ClientUtil;
 import com.saplo.api.client.util.ThreadSafeSimpleDateFormat;
 
@@ -366,4 +370,68 @@ public class SaploText {
 		convertFromJSONToText(json, saploText);
 		return saploText;
 	}
+
+	/**
+	 * Read the fields of a {@link SaploText} straight from a JSON parser, 
+	 * the same way as {@link #convertFromJSONToText(JSONObject, SaploText)}
+	 * 
+	 * @param parser - the parser, positioned on the START_OBJECT of the text
+	 * @param saploText - the {@link SaploText} object to fill in
+	 * @throws IOException
+	 */
+	public static void readFromJSON(JsonParser parser, SaploText saploText) throws IOException {
+
+		saploText.setId(-1);
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if(token == JsonToken.VALUE_NULL)
+				continue;
+
+			if("text_id".equals(field))
+				saploText.setId(parser.getValueAsInt(-1));
+			else if("headline".equals(field))
+				saploText.setHeadline(parser.getValueAsString());
+			else if("body".equals(field))
+				saploText.setBody(parser.getValueAsString());
+			else if("publish_date".equals(field))
+				try {
+					saploText.setPublishDate(sf.parse(parser.getValueAsString()));
+				} catch (ParseException e) {
+					//
+				}
+			else if("url".equals(field))
+				try {
+					saploText.setUrl(new URI(parser.getValueAsString()));
+				} catch (URISyntaxException e) {
+					//
+				}
+			else if("authors".equals(field))
+				saploText.setAuthors(parser.getValueAsString());
+			else if("collection_id".equals(field)) {
+				SaploCollection saploCollection = new SaploCollection();
+				saploCollection.setId(parser.getValueAsInt());
+				saploText.setCollection(saploCollection);
+			}
+			else if("ext_text_id".equals(field))
+				saploText.setExtId(parser.getValueAsString());
+			else if("relevance".equals(field))
+				saploText.setRelatedRelevance(parser.getValueAsDouble());
+			else
+				parser.skipChildren();
+		}
+	}
+
+	/**
+	 * Read a {@link SaploText} object straight from a JSON parser
+	 * 
+	 * @param parser - the parser, positioned on the START_OBJECT of the text
+	 * @return text - the {@link SaploText} that was read
+	 * @throws IOException
+	 */
+	public static SaploText readFromJSON(JsonParser parser) throws IOException {
+		SaploText saploText = new SaploText();
+		readFromJSON(parser, saploText);
+		return saploText;
+	}
 }
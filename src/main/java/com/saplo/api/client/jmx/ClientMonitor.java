@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package com.saplo.api.client.jmx;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.util.MeteredExecutorService;
+
+/**
+ * Shows a {@link SaploClient} in JMX, see {@link SaploClient#registerMBeans(String)}
+ *
+ * @author progre55
+ */
+public class ClientMonitor implements ClientMonitorMBean {
+
+	private final SaploClient client;
+	private final MeteredExecutorService executor;
+
+	/**
+	 * @param client - the client to show
+	 * @param executor - the async executor of the client
+	 */
+	public ClientMonitor(SaploClient client, MeteredExecutorService executor) {
+		this.client = client;
+		this.executor = executor;
+	}
+
+	public int getAsyncQueueDepth() {
+		return executor.getQueueDepth();
+	}
+
+	public int getAsyncActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public long getAsyncCompletedCount() {
+		return executor.getCompletedCount();
+	}
+
+	public long getAsyncRejectedCount() {
+		return executor.getRejectedCount();
+	}
+
+	public int getAsyncThreads() {
+		if (!(executor.getDelegate() instanceof ThreadPoolExecutor))
+			return -1;
+		return ((ThreadPoolExecutor)executor.getDelegate()).getMaximumPoolSize();
+	}
+
+	public void setAsyncThreads(int threads) {
+		if (!(executor.getDelegate() instanceof ThreadPoolExecutor))
+			throw new UnsupportedOperationException("the async executor is not a ThreadPoolExecutor");
+		if (threads < 1)
+			throw new IllegalArgumentException("threads should be at least 1");
+
+		ThreadPoolExecutor pool = (ThreadPoolExecutor)executor.getDelegate();
+		// the core size may never go over the max size
+		synchronized (pool) {
+			if (threads > pool.getMaximumPoolSize()) {
+				pool.setMaximumPoolSize(threads);
+				pool.setCorePoolSize(threads);
+			} else {
+				pool.setCorePoolSize(threads);
+				pool.setMaximumPoolSize(threads);
+			}
+		}
+	}
+
+	public long getReconnectCount() {
+		return client.getReconnectCount();
+	}
+
+	public long getLastSuccessfulReconnect() {
+		return client.getLastSuccessfulReconnect();
+	}
+
+	public long getLastReconnectAttempt() {
+		return client.getLastReconnectAttempt();
+	}
+
+	public boolean isTokenRefreshing() {
+		return client.isTokenRefreshing();
+	}
+
+	public long getCoalescedCount() {
+		return client.getCoalescedCount();
+	}
+
+	public int getPendingPollCount() {
+		return client.getPendingPollCount();
+	}
+}
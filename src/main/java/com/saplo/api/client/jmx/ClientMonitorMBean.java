@@ -0,0 +1,73 @@
+/**
+ *
+ */
+package com.saplo.api.client.jmx;
+
+/**
+ * The live state of a {@link com.saplo.api.client.SaploClient}: its async executor and its access token.
+ * The number of async threads can be changed while the client is in use.
+ *
+ * @author progre55
+ */
+public interface ClientMonitorMBean {
+
+	/**
+	 * @return the number of async tasks waiting to be run by the executor
+	 */
+	int getAsyncQueueDepth();
+
+	/**
+	 * @return the number of async tasks being run by the executor right now
+	 */
+	int getAsyncActiveCount();
+
+	/**
+	 * @return the number of async tasks finished so far
+	 */
+	long getAsyncCompletedCount();
+
+	/**
+	 * @return the number of async tasks the executor has refused so far
+	 */
+	long getAsyncRejectedCount();
+
+	/**
+	 * @return the number of threads of the executor, or -1 if it is not a ThreadPoolExecutor
+	 */
+	int getAsyncThreads();
+
+	/**
+	 * @param threads the number of threads of the executor to set, only for a ThreadPoolExecutor
+	 */
+	void setAsyncThreads(int threads);
+
+	/**
+	 * @return the number of failed attempts to get a new access token since the last one that worked
+	 */
+	long getReconnectCount();
+
+	/**
+	 * @return when a new access token was last got, in milliseconds since the epoch, 0 if never
+	 */
+	long getLastSuccessfulReconnect();
+
+	/**
+	 * @return when getting a new access token last failed, in milliseconds since the epoch, 0 if never
+	 */
+	long getLastReconnectAttempt();
+
+	/**
+	 * @return whether a new access token is being got right now
+	 */
+	boolean isTokenRefreshing();
+
+	/**
+	 * @return the number of read calls answered by sharing another one in flight
+	 */
+	long getCoalescedCount();
+
+	/**
+	 * @return the number of results waiting on the timer to be polled again
+	 */
+	int getPendingPollCount();
+}
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package com.saplo.api.client.jmx;
+
+import com.saplo.api.client.session.PooledSession;
+
+/**
+ * Shows the connection pool of a {@link PooledSession} in JMX, 
+ * see {@link com.saplo.api.client.SaploClient#registerMBeans(String)}
+ *
+ * @author progre55
+ */
+public class ConnectionPoolMonitor implements ConnectionPoolMonitorMBean {
+
+	private final PooledSession session;
+
+	/**
+	 * @param session - the session whose pool to show
+	 */
+	public ConnectionPoolMonitor(PooledSession session) {
+		this.session = session;
+	}
+
+	public int getLeasedConnections() {
+		return session.getLeasedConnections();
+	}
+
+	public int getAvailableConnections() {
+		return session.getAvailableConnections();
+	}
+
+	public int getPendingConnections() {
+		return session.getPendingConnections();
+	}
+
+	public int getMaxTotalConnections() {
+		return session.getMaxTotalConnections();
+	}
+
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		if (maxTotalConnections < 1)
+			throw new IllegalArgumentException("maxTotalConnections should be at least 1");
+		session.setMaxTotalConnections(maxTotalConnections);
+	}
+
+	public int getMaxEndpointConnections() {
+		return session.getMaxEndpointConnections();
+	}
+
+	public void setMaxEndpointConnections(int maxEndpointConnections) {
+		if (maxEndpointConnections < 1)
+			throw new IllegalArgumentException("maxEndpointConnections should be at least 1");
+		session.setMaxEndpointConnections(maxEndpointConnections);
+	}
+
+	public int getConnectTimeout() {
+		return session.getConnectTimeout();
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout < 0)
+			throw new IllegalArgumentException("connectTimeout should not be negative");
+		session.setConnectTimeout(connectTimeout);
+	}
+
+	public int getSocketTimeout() {
+		return session.getSocketTimeout();
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		if (socketTimeout < 0)
+			throw new IllegalArgumentException("socketTimeout should not be negative");
+		session.setSocketTimeout(socketTimeout);
+	}
+}
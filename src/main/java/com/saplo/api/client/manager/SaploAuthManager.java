@@ -12,6 +12,8 @@ import com.saplo.api.client.SaploClient;
 import com.saplo.api.client.SaploClientException;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
 import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploFunction;
+import com.saplo.api.client.entity.SaploFuture;
 
 /**
  * A manager class for Authorization methods
@@ -29,7 +31,37 @@ public class SaploAuthManager {
 	
 	public String accessToken(String apiKey, String secretKey) throws SaploClientException {
 		
-		String accessToken;
+		JSONRPCRequestObject message = accessTokenRequest(apiKey, secretKey);
+		JSONRPCResponseObject responseMessage = client.sendAndReceive(message);
+		
+		return parseAccessToken(client.parseResponse(responseMessage));
+	}
+
+	/**
+	 * Asynchronously get a new access token.
+	 * If the client session is an {@link com.saplo.api.client.session.AsyncSession}, 
+	 * no thread is held while the call is in flight.
+	 * 
+	 * @param apiKey
+	 * @param secretKey
+	 * @return a {@link SaploFuture} of the access token
+	 */
+	public SaploFuture<String> accessTokenAsync(String apiKey, String secretKey) {
+		JSONRPCRequestObject message;
+		try {
+			message = accessTokenRequest(apiKey, secretKey);
+		} catch(SaploClientException e) {
+			return SaploFuture.failed(e);
+		}
+
+		return client.sendAndReceiveAsync(message).thenApply(new SaploFunction<JSONRPCResponseObject, String>() {
+			public String apply(JSONRPCResponseObject responseMessage) throws SaploClientException {
+				return parseAccessToken(client.parseResponse(responseMessage));
+			}
+		});
+	}
+
+	private JSONRPCRequestObject accessTokenRequest(String apiKey, String secretKey) throws SaploClientException {
 		JSONObject params = new JSONObject();
 		try {
 		params.put("api_key", apiKey);
@@ -38,17 +70,14 @@ public class SaploAuthManager {
 			throw new SaploClientException(ResponseCodes.CODE_JSON_EXCEPTION, je);
 		}
 		
-		JSONRPCRequestObject message = new JSONRPCRequestObject(client.getNextId(), "auth.accessToken", params);
-		JSONRPCResponseObject responseMessage = client.sendAndReceive(message);
-		
-		Object rawResult = client.parseResponse(responseMessage);
+		return new JSONRPCRequestObject(client.getNextId(), "auth.accessToken", params);
+	}
 
+	private static String parseAccessToken(Object rawResult) {
 		if(rawResult instanceof JSONObject)
-			accessToken = ((JSONObject) rawResult).opt("access_token").toString();
+			return ((JSONObject) rawResult).opt("access_token").toString();
 		else
-			accessToken = rawResult.toString();
-		
-		return accessToken;
+			return rawResult.toString();
 	}
 	
 	public boolean invalidateToken() throws SaploClientException {
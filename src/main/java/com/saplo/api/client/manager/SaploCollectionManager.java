@@ -22,6 +22,8 @@ import com.saplo.api.client.entity.SaploCollection;
 import com.saplo.api.client.entity.SaploFuture;
 import com.saplo.api.client.entity.SaploText;
 import com.saplo.api.client.util.ClientUtil;
+import com.saplo.api.client.util.PersistentCache;
+import com.saplo.api.client.util.ResponseCache;
 
 /**
  * A manager class for operations on {@link SaploCollection} objects
@@ -114,12 +116,12 @@ public class SaploCollectionManager {
 	 * @return a {@link SaploFuture}<{@link Boolean}> with success or fail
 	 */
 	public SaploFuture<Boolean> createAsync(final SaploCollection saploCollection) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				create(saploCollection);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -132,19 +134,28 @@ public class SaploCollectionManager {
 	public void get(SaploCollection saploCollection) throws SaploClientException {
 
 		verifyId(saploCollection);
-		
-		JSONObject params = new JSONObject();
-		try {
-			params.put("collection_id", saploCollection.getId());
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
 
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.get", params);
+		ResponseCache cache = client.getResponseCache();
+		JSONObject jsonColl = (cache != null ? cache.get(collectionKey(saploCollection.getId())) : null);
+		if(null == jsonColl) {
+			// taken before the call, so a collection an update dropped meanwhile is not put back
+			long generation = (cache != null ? cache.getGeneration() : 0);
+			JSONObject params = new JSONObject();
+			try {
+				params.put("collection_id", saploCollection.getId());
+			} catch(JSONException je) {
+				throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+			}
+
+			JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.get", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+			JSONRPCResponseObject response = client.sendAndReceive(request);
 
-		JSONObject jsonColl = (JSONObject)client.parseResponse(response);
+			jsonColl = (JSONObject)client.parseResponse(response);
+
+			if(cache != null)
+				cache.put(collectionKey(saploCollection.getId()), jsonColl, generation);
+		}
 
 		SaploCollection.convertFromJSONToCollection(jsonColl, saploCollection);
 	}
@@ -158,12 +169,12 @@ public class SaploCollectionManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> getAsync(final SaploCollection saploCollection) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 					get(saploCollection);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -207,7 +218,12 @@ public class SaploCollectionManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.update", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidate(saploCollection.getId(), false);
+		}
 
 		JSONObject jsonColl = (JSONObject)client.parseResponse(response);
 
@@ -223,12 +239,12 @@ public class SaploCollectionManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> updateAsync(final SaploCollection saploCollection) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				update(saploCollection);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -251,7 +267,12 @@ public class SaploCollectionManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.delete", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidate(saploCollection.getId(), true);
+		}
 
 		JSONObject jsonColl = (JSONObject)client.parseResponse(response);
 
@@ -267,12 +288,12 @@ public class SaploCollectionManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> deleteAsync(final SaploCollection saploCollection) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				delete(saploCollection);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -332,13 +353,13 @@ public class SaploCollectionManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<List<SaploCollection>> listAsync() {
-		return new SaploFuture<List<SaploCollection>>(es.submit(new Callable<List<SaploCollection>>() {
+		return SaploFuture.submit(es, new Callable<List<SaploCollection>>() {
 			public List<SaploCollection> call() throws SaploClientException {
 				List<SaploCollection> collectionList = null;
 				collectionList = list();
 				return collectionList;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -362,7 +383,12 @@ public class SaploCollectionManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.reset", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidate(saploCollection.getId(), true);
+		}
 
 		JSONObject jsonColl = (JSONObject)client.parseResponse(response);
 
@@ -378,14 +404,38 @@ public class SaploCollectionManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> resetAsync(final SaploCollection saploCollection) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				reset(saploCollection);
 				return true;
 			}
-		}));
+		});
 	}
 	
+	/*
+	 * drop the cached collection, and its cached texts too if they are gone
+	 */
+	private void invalidate(int collectionId, boolean withTexts) {
+		ResponseCache cache = client.getResponseCache();
+		if(cache != null) {
+			cache.invalidate(collectionKey(collectionId));
+			if(withTexts)
+				cache.invalidateAll(SaploTextManager.collectionTextsKey(collectionId));
+		}
+
+		// the text ids may be given out again, and the disk cache only finds results by exact keys
+		PersistentCache diskCache = client.getPersistentCache();
+		if(withTexts && diskCache != null)
+			diskCache.clear();
+	}
+
+	/*
+	 * the response cache key of a collection
+	 */
+	static String collectionKey(int collectionId) {
+		return "collection.get/" + collectionId;
+	}
+
 	/*
 	 * ensure the given text has id
 	 */
@@ -8,6 +8,7 @@ import static com.saplo.api.client.ResponseCodes.CODE_JSON_EXCEPTION;
 import static com.saplo.api.client.ResponseCodes.CODE_MALFORMED_RESPONSE;
 import static com.saplo.api.client.ResponseCodes.MSG_CLIENT_FIELD;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -17,6 +18,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.saplo.api.client.SaploClient;
 import com.saplo.api.client.SaploClientException;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
@@ -25,6 +27,7 @@ import com.saplo.api.client.entity.SaploCollection;
 import com.saplo.api.client.entity.SaploFuture;
 import com.saplo.api.client.entity.SaploGroup;
 import com.saplo.api.client.entity.SaploText;
+import com.saplo.api.client.session.ListResultReader;
 import com.saplo.api.client.util.ClientUtil;
 
 /**
@@ -39,6 +42,25 @@ public class SaploGroupManager {
 	private SaploClient client;
 	private ExecutorService es;
 
+	// binds the group.listTexts result straight to SaploText objects
+	private static final ListResultReader<SaploText> TEXTS_READER = new ListResultReader<SaploText>("texts") {
+		protected SaploText readItem(JsonParser parser) throws IOException {
+			return SaploText.readFromJSON(parser);
+		}
+	};
+	// binds the group.relatedTexts result straight to SaploText objects
+	private static final ListResultReader<SaploText> RELATED_TEXTS_READER = new ListResultReader<SaploText>("related_texts") {
+		protected SaploText readItem(JsonParser parser) throws IOException {
+			return SaploText.readFromJSON(parser);
+		}
+	};
+	// binds the group.relatedGroups result straight to SaploGroup objects
+	private static final ListResultReader<SaploGroup> RELATED_GROUPS_READER = new ListResultReader<SaploGroup>("related_groups") {
+		protected SaploGroup readItem(JsonParser parser) throws IOException {
+			return SaploGroup.readFromJSON(parser);
+		}
+	};
+
 	/**
 	 * The default and only constructor.
 	 * 
@@ -57,8 +79,8 @@ public class SaploGroupManager {
 	 * @throws SaploClientException 
 	 */
 	public void create(SaploGroup saploGroup) throws SaploClientException {
-		verifyId(saploGroup);
-		
+		if(ClientUtil.NULL_STRING.equals(saploGroup.getName()))
+			throw new SaploClientException(MSG_CLIENT_FIELD, CODE_CLIENT_FIELD, "group.name");
 		if(saploGroup.getLanguage() == null)
 			throw new SaploClientException(MSG_CLIENT_FIELD, CODE_CLIENT_FIELD, "group.language");
 
@@ -121,12 +143,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> createAsync(final SaploGroup saploGroup) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				create(saploGroup);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -168,12 +190,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> updateAsync(final SaploGroup saploGroup) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				update(saploGroup);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -211,12 +233,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> resetAsync(final SaploGroup saploGroup) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				reset(saploGroup);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -256,11 +278,11 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */	
 	public SaploFuture<Boolean> deleteAsync(final SaploGroup saploGroup) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				return delete(saploGroup);
 			}
-		}));
+		});
 	}
 
 	/**
@@ -301,11 +323,11 @@ public class SaploGroupManager {
 	 * @throws
 	 */
 	public SaploFuture<List<SaploGroup>> listAsync() {
-		return new SaploFuture<List<SaploGroup>>(es.submit(new Callable<List<SaploGroup>>() {
+		return SaploFuture.submit(es, new Callable<List<SaploGroup>>() {
 			public List<SaploGroup> call() throws SaploClientException {
 				return list();
 			}
-		}));
+		});
 	}
 
 	/**
@@ -317,9 +339,8 @@ public class SaploGroupManager {
 	 * 
 	 * @throws SaploClientException 
 	 */
+	@SuppressWarnings("unchecked")
 	public List<SaploText> listTexts(SaploGroup saploGroup) throws SaploClientException {
-		List<SaploText> textList = new ArrayList<SaploText>();
-
 		verifyId(saploGroup);
 		
 		JSONObject params = new JSONObject();
@@ -331,22 +352,9 @@ public class SaploGroupManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "group.listTexts", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response = client.sendAndReceive(request, TEXTS_READER);
 
-		JSONObject rawJson = (JSONObject)client.parseResponse(response);
-
-		try {
-			JSONArray texts = rawJson.getJSONArray("texts");
-			for(int i = 0; i < texts.length(); i++) {
-				JSONObject jsonText = texts.getJSONObject(i);
-				SaploText saploText = SaploText.convertFromJSONToText(jsonText);
-				textList.add(saploText);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_MALFORMED_RESPONSE, je);
-		}
-		
-		return textList;
+		return (List<SaploText>)client.parseResponse(response);
 	}
 
 	/**
@@ -359,11 +367,11 @@ public class SaploGroupManager {
 	 * @throws
 	 */
 	public SaploFuture<List<SaploText>> listTextsAsync(final SaploGroup saploGroup) {
-		return new SaploFuture<List<SaploText>>(es.submit(new Callable<List<SaploText>>() {
+		return SaploFuture.submit(es, new Callable<List<SaploText>>() {
 			public List<SaploText> call() throws SaploClientException {
 				return listTexts(saploGroup);
 			}
-		}));
+		});
 	}
 
 	/**
@@ -408,12 +416,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> addTextAsync(final SaploGroup saploGroup, final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				addText(saploGroup, saploText);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -456,12 +464,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> deleteTextAsync(final SaploGroup saploGroup, final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				deleteText(saploGroup, saploText);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -475,11 +483,10 @@ public class SaploGroupManager {
 	 * 
 	 * @throws SaploClientException 
 	 */
+	@SuppressWarnings("unchecked")
 	public void relatedGroups(SaploGroup saploGroup, SaploGroup[] groupScope, int wait) throws SaploClientException {
 		verifyId(saploGroup);
 		
-		List<SaploGroup> relatedGroupsList = new ArrayList<SaploGroup>();
-
 		JSONObject params = new JSONObject();
 		try {
 			params.put("group_id", saploGroup.getId());
@@ -498,21 +505,11 @@ public class SaploGroupManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "group.relatedGroups", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response = client.sendAndReceive(request, RELATED_GROUPS_READER);
 
-		JSONObject rawResult = (JSONObject)client.parseResponse(response);
-
-		try {
-			JSONArray groups = rawResult.getJSONArray("related_groups");
-			for(int i = 0; i < groups.length(); i++) {
-				JSONObject groupJson = groups.getJSONObject(i);
-				SaploGroup relGroup = SaploGroup.convertFromJSONToGroup(groupJson);
-				relGroup.setRelatedToGroup(saploGroup);
-				relatedGroupsList.add(relGroup);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
+		List<SaploGroup> relatedGroupsList = (List<SaploGroup>)client.parseResponse(response);
+		for(SaploGroup relGroup : relatedGroupsList)
+			relGroup.setRelatedToGroup(saploGroup);
 
 		saploGroup.setRelatedGroups(relatedGroupsList);
 	}
@@ -558,12 +555,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> relatedGroupsAsync(final SaploGroup saploGroup, final SaploGroup[] groupScope, final int wait) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedGroups(saploGroup, groupScope, wait);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -576,11 +573,10 @@ public class SaploGroupManager {
 	 * @param limit - the maximum number of related texts in the result. 
 	 * @throws SaploClientException 
 	 */
+	@SuppressWarnings("unchecked")
 	public void relatedTexts(SaploGroup saploGroup, SaploCollection collection, int wait, int limit) throws SaploClientException {
 		verifyId(saploGroup);
 		
-		List<SaploText> relatedTextsList = new ArrayList<SaploText>();
-
 		JSONObject params = new JSONObject();
 		try {
 			params.put("group_id", saploGroup.getId());
@@ -599,22 +595,11 @@ public class SaploGroupManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "group.relatedTexts", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
-
-		JSONObject rawResult = (JSONObject)client.parseResponse(response);
-
-		try {
-			JSONArray texts = rawResult.getJSONArray("related_texts");
+		JSONRPCResponseObject response = client.sendAndReceive(request, RELATED_TEXTS_READER);
 
-			for(int i = 0; i < texts.length(); i++) {
-				JSONObject textJson = texts.getJSONObject(i);
-				SaploText relText = SaploText.convertFromJSONToText(textJson);
-				relText.setRelatedToGroup(saploGroup);
-				relatedTextsList.add(relText);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
+		List<SaploText> relatedTextsList = (List<SaploText>)client.parseResponse(response);
+		for(SaploText relText : relatedTextsList)
+			relText.setRelatedToGroup(saploGroup);
 
 		saploGroup.setRelatedTexts(relatedTextsList);
 	}
@@ -652,12 +637,12 @@ public class SaploGroupManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> relatedTextsAsync(final SaploGroup saploGroup, final SaploCollection collection, final int wait, final int limit) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedTexts(saploGroup, collection, wait, limit);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/*
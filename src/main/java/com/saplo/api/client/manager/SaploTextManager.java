@@ -5,27 +5,40 @@ package com.saplo.api.client.manager;
 
 import static com.saplo.api.client.ResponseCodes.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.saplo.api.client.SaploClient;
 import com.saplo.api.client.SaploClientException;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
 import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploBulkResult;
+import com.saplo.api.client.entity.SaploCallback;
 import com.saplo.api.client.entity.SaploCollection;
+import com.saplo.api.client.entity.SaploFunction;
 import com.saplo.api.client.entity.SaploFuture;
 import com.saplo.api.client.entity.SaploGroup;
 import com.saplo.api.client.entity.SaploTag;
 import com.saplo.api.client.entity.SaploText;
 import com.saplo.api.client.entity.SaploText.RelatedBy;
+import com.saplo.api.client.session.ListResultReader;
+import com.saplo.api.client.session.RecordingResultReader;
 import com.saplo.api.client.util.ClientUtil;
+import com.saplo.api.client.util.PersistentCache;
+import com.saplo.api.client.util.ResponseCache;
+import com.saplo.api.client.util.TagCache;
 import com.saplo.api.client.util.ThreadSafeSimpleDateFormat;
 
 /**
@@ -40,6 +53,28 @@ public class SaploTextManager {
 	private ExecutorService es;
 	private ThreadSafeSimpleDateFormat sf = new ThreadSafeSimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
+	private static final int DEFAULT_BULK_BATCH_SIZE = 50;
+	private static final int DEFAULT_BULK_PARALLELISM = 4;
+
+	// binds the text.tags result straight to SaploTag objects
+	private static final ListResultReader<SaploTag> TAGS_READER = new ListResultReader<SaploTag>("tags") {
+		protected SaploTag readItem(JsonParser parser) throws IOException {
+			return SaploTag.readFromJSON(parser);
+		}
+	};
+	// binds the text.relatedTexts result straight to SaploText objects
+	private static final ListResultReader<SaploText> RELATED_TEXTS_READER = new ListResultReader<SaploText>("related_texts") {
+		protected SaploText readItem(JsonParser parser) throws IOException {
+			return SaploText.readFromJSON(parser);
+		}
+	};
+	// binds the text.relatedGroups result straight to SaploGroup objects
+	private static final ListResultReader<SaploGroup> RELATED_GROUPS_READER = new ListResultReader<SaploGroup>("related_groups") {
+		protected SaploGroup readItem(JsonParser parser) throws IOException {
+			return SaploGroup.readFromJSON(parser);
+		}
+	};
+
 	/**
 	 * A simple constructor 
 	 * 
@@ -60,6 +95,26 @@ public class SaploTextManager {
 	 */
 	public void create(SaploText saploText) throws SaploClientException {
 
+		JSONRPCRequestObject request = createRequest(saploText);
+
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			// the collection's next_id has moved on
+			invalidateCollection(saploText.getCollection().getId());
+		}
+
+		JSONObject jsonText = (JSONObject)client.parseResponse(response);
+
+		SaploText.convertFromJSONToText(jsonText, saploText);
+	}
+
+	/*
+	 * verify the given text and build a text.create request for it
+	 */
+	private JSONRPCRequestObject createRequest(SaploText saploText) throws SaploClientException {
+
 		verifyCollection(saploText);
 		if(ClientUtil.NULL_STRING.equals(saploText.getBody()))
 			throw new SaploClientException(MSG_CLIENT_FIELD, CODE_CLIENT_FIELD, "text.body");
@@ -87,13 +142,7 @@ public class SaploTextManager {
 			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
 		}
 
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.create", params);
-
-		JSONRPCResponseObject response = client.sendAndReceive(request);
-
-		JSONObject jsonText = (JSONObject)client.parseResponse(response);
-
-		SaploText.convertFromJSONToText(jsonText, saploText);
+		return new JSONRPCRequestObject(client.getNextId(), "text.create", params);
 	}
 
 	/**
@@ -134,12 +183,170 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> createAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				create(saploText);
 				return true;
 			}
-		}));
+		});
+	}
+
+	/**
+	 * Add a lot of texts, e.g. when loading a collection. The texts are pulled from 
+	 * the iterator only as fast as the API takes them, sent {@code batchSize} at a time 
+	 * in JSON-RPC batch calls, with at most {@code parallelism} batches in flight.
+	 * <br>
+	 * Each text that is created gets its id (and the rest of the API fields) filled in, 
+	 * the same as with {@link #create(SaploText)}. A text that fails does not stop the run, 
+	 * it is reported in the returned {@link SaploBulkResult} together with its error.
+	 * 
+	 * Here is an example usage:
+	 * <pre>
+	 *	SaploBulkResult&lt;SaploText&gt; result = textMgr.createAll(myTexts.iterator(), 50, 4);
+	 *	for(Map.Entry&lt;SaploText, SaploClientException&gt; failure : result.getFailures().entrySet()) {
+	 *		// retry or log failure.getKey()
+	 *	}
+	 * </pre>
+	 * 
+	 * @param texts - the texts to create, each should contain a 
+	 * {@link SaploText#getCollection()} object of type {@link SaploCollection}
+	 * @param batchSize - how many texts to send in a single call
+	 * @param parallelism - how many calls to have in flight at once
+	 * @return the {@link SaploBulkResult} of the run
+	 * 
+	 * @throws SaploClientException - if the calling thread was interrupted while waiting
+	 */
+	public SaploBulkResult<SaploText> createAll(Iterator<SaploText> texts, int batchSize, int parallelism) 
+			throws SaploClientException {
+
+		if(batchSize < 1 || parallelism < 1)
+			throw new IllegalArgumentException("batchSize and parallelism should be positive");
+
+		SaploBulkResult<SaploText> result = new SaploBulkResult<SaploText>();
+		Semaphore inFlight = new Semaphore(parallelism);
+
+		try {
+			while(texts.hasNext()) {
+				// wait for a free slot before pulling more texts, so a slow API holds the producer back
+				inFlight.acquire();
+
+				List<SaploText> batch = new ArrayList<SaploText>(batchSize);
+				List<JSONRPCRequestObject> requests = new ArrayList<JSONRPCRequestObject>(batchSize);
+				while(batch.size() < batchSize && texts.hasNext()) {
+					SaploText saploText = texts.next();
+					try {
+						requests.add(createRequest(saploText));
+						batch.add(saploText);
+					} catch(SaploClientException e) {
+						result.addFailure(saploText, e);
+					}
+				}
+
+				if(batch.isEmpty())
+					inFlight.release();
+				else
+					createBatch(batch, requests, result, inFlight);
+			}
+
+			// wait for the batches still in flight
+			inFlight.acquire(parallelism);
+			inFlight.release(parallelism);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Add a lot of texts with the default batch size of {@value #DEFAULT_BULK_BATCH_SIZE}
+	 * and parallelism of {@value #DEFAULT_BULK_PARALLELISM}.
+	 * See {@link #createAll(Iterator, int, int)}
+	 * 
+	 * @param texts - the texts to create
+	 * @return the {@link SaploBulkResult} of the run
+	 * 
+	 * @throws SaploClientException
+	 */
+	public SaploBulkResult<SaploText> createAll(Iterable<SaploText> texts) throws SaploClientException {
+		return createAll(texts.iterator(), DEFAULT_BULK_BATCH_SIZE, DEFAULT_BULK_PARALLELISM);
+	}
+
+	/**
+	 * Asynchronously add a lot of texts.
+	 * The texts are read and batched on a thread of their own, not on the client executor, 
+	 * whose threads the batches are sent on.
+	 * See {@link #createAll(Iterator, int, int)}
+	 * 
+	 * @param texts - the texts to create
+	 * @param batchSize - how many texts to send in a single call
+	 * @param parallelism - how many calls to have in flight at once
+	 * @return a {@link SaploFuture} of the {@link SaploBulkResult} of the run
+	 */
+	public SaploFuture<SaploBulkResult<SaploText>> createAllAsync(final Iterator<SaploText> texts, 
+			final int batchSize, final int parallelism) {
+		// waiting for a free slot on an executor thread could take the thread the slot is freed on
+		Executor producer = new Executor() {
+			public void execute(Runnable command) {
+				Thread thread = new Thread(command, "saplo-create-all");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		};
+		return SaploFuture.submit(producer, new Callable<SaploBulkResult<SaploText>>() {
+			public SaploBulkResult<SaploText> call() throws SaploClientException {
+				return createAll(texts, batchSize, parallelism);
+			}
+		});
+	}
+
+	/*
+	 * send a batch of text.create calls, fill in the results and free the slot when done
+	 */
+	private void createBatch(final List<SaploText> batch, List<JSONRPCRequestObject> requests, 
+			final SaploBulkResult<SaploText> result, final Semaphore inFlight) {
+
+		SaploCallback<List<JSONRPCResponseObject>> callback = new SaploCallback<List<JSONRPCResponseObject>>() {
+			public void onSuccess(List<JSONRPCResponseObject> responses) {
+				try {
+					for(int i = 0; i < batch.size(); i++) {
+						SaploText saploText = batch.get(i);
+						try {
+							Object rawResult = client.parseResponse(responses.get(i));
+							if(!(rawResult instanceof JSONObject))
+								throw new SaploClientException(MSG_MALFORMED_RESPONSE, CODE_MALFORMED_RESPONSE);
+
+							SaploText.convertFromJSONToText((JSONObject)rawResult, saploText);
+							result.addSuccess();
+						} catch(SaploClientException e) {
+							result.addFailure(saploText, e);
+						}
+					}
+				} finally {
+					invalidateCollections(batch);
+					inFlight.release();
+				}
+			}
+
+			public void onFailure(SaploClientException e) {
+				for(SaploText saploText : batch)
+					result.addFailure(saploText, e);
+				invalidateCollections(batch);
+				inFlight.release();
+			}
+		};
+
+		// run by the thread that completes the batch, so the slot is freed even if the executor is full
+		SaploFuture<List<JSONRPCResponseObject>> responses;
+		try {
+			responses = client.sendAndReceiveBatchAsync(requests);
+		} catch(RuntimeException e) {
+			// e.g. the executor refused the call
+			callback.onFailure(new SaploClientException(MSG_UNKNOWN_EXCEPTION, CODE_UNKNOWN_EXCEPTION, e));
+			return;
+		}
+		responses.addCallback(callback);
 	}
 
 	/**
@@ -174,22 +381,42 @@ public class SaploTextManager {
 		verifyCollection(saploText);
 		verifyId(saploText);
 
-		JSONObject params = new JSONObject();
-		try {
-			params.put("collection_id", saploText.getCollection().getId());
-			if(saploText.getId() > 0)
-				params.put("text_id", saploText.getId());
-			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
-				params.put("ext_text_id", saploText.getExtId());
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
+		int collectionId = saploText.getCollection().getId();
+		String key = (saploText.getId() > 0 ? textKey(collectionId, saploText.getId()) 
+				: extTextKey(collectionId, saploText.getExtId()));
+
+		ResponseCache cache = client.getResponseCache();
+		JSONObject jsonText = (cache != null ? cache.get(key) : null);
+		if(null == jsonText) {
+			// taken before the call, so a text an update dropped meanwhile is not put back
+			long generation = (cache != null ? cache.getGeneration() : 0);
+			JSONObject params = new JSONObject();
+			try {
+				params.put("collection_id", collectionId);
+				if(saploText.getId() > 0)
+					params.put("text_id", saploText.getId());
+				if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+					params.put("ext_text_id", saploText.getExtId());
+			} catch(JSONException je) {
+				throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+			}
 
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.get", params);
+			JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.get", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+			JSONRPCResponseObject response = client.sendAndReceive(request);
 
-		JSONObject jsonText = (JSONObject)client.parseResponse(response);
+			jsonText = (JSONObject)client.parseResponse(response);
+
+			if(cache != null) {
+				// under both ids, so a text is found whichever one it is asked by
+				if(cache.put(key, jsonText, generation)) {
+					if(jsonText.optInt("text_id", -1) > 0)
+						cache.put(textKey(collectionId, jsonText.optInt("text_id")), jsonText, generation);
+					if(jsonText.optString("ext_text_id", "").length() > 0)
+						cache.put(extTextKey(collectionId, jsonText.optString("ext_text_id")), jsonText, generation);
+				}
+			}
+		}
 
 		SaploText.convertFromJSONToText(jsonText, saploText);
 	}
@@ -203,12 +430,12 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> getAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				get(saploText);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -275,7 +502,12 @@ public class SaploTextManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.update", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidateText(saploText);
+		}
 
 		JSONObject jsonText = (JSONObject)client.parseResponse(response);
 
@@ -291,12 +523,12 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> updateAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				update(saploText);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -326,7 +558,12 @@ public class SaploTextManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.delete", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidateText(saploText);
+		}
 
 		JSONObject result = (JSONObject)client.parseResponse(response);
 
@@ -343,11 +580,11 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> deleteAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>(es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				return delete(saploText);
 			}
-		}));
+		});
 	}
 
 	/** 
@@ -375,6 +612,10 @@ public class SaploTextManager {
 	 * Get all entity tags that exist in the text. 
 	 * Categorized as person, organization, location, url, unknown.
 	 * 
+	 * If the client has a {@link TagCache} or a {@link PersistentCache} and the text has its body set, 
+	 * the tags of a body that has been tagged before are returned without calling the API.
+	 * The body should then be the same as the one the text has in the API.
+	 * 
 	 * @param saploText - the text to extract the {@link SaploTag}s from
 	 * @param wait - how long to wait for the API to return (seconds)
 	 * @param skipCategorization
@@ -384,44 +625,25 @@ public class SaploTextManager {
 	 */
 	public List<SaploTag> tags(SaploText saploText, int wait, boolean skipCategorization) throws SaploClientException {
 
-		List<SaploTag> tagList = new ArrayList<SaploTag>();
-
 		verifyCollection(saploText);
 		verifyId(saploText);
 
-		JSONObject params = new JSONObject();
-		try {
-			params.put("collection_id", saploText.getCollection().getId());
-			if(saploText.getId() > 0)
-				params.put("text_id", saploText.getId());
-			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
-				params.put("ext_text_id", saploText.getExtId());
-
-			if(wait >= 0)
-				params.put("wait", wait);
-			params.put("skip_categorization", skipCategorization);
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+		TagCache tagCache = client.getTagCache();
+		TagCache.Key tagKey = tagKey(saploText, skipCategorization);
+		if(tagCache != null && tagKey != null) {
+			List<SaploTag> cachedTags = tagCache.get(tagKey);
+			if(cachedTags != null)
+				return cachedTags;
 		}
 
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.tags", params);
+		JSONRPCRequestObject request = tagsRequest(saploText, wait, skipCategorization);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		List<SaploTag> tags = sendForList(tagKey != null ? "text.tags/" + tagKey : null, request, TAGS_READER);
 
-		JSONObject rawResult = (JSONObject)client.parseResponse(response);
+		if(tagCache != null && tagKey != null)
+			tagCache.put(tagKey, textIds(saploText), tags);
 
-		try {
-			JSONArray tags = rawResult.getJSONArray("tags");
-			for(int i = 0; i < tags.length(); i++) {
-				JSONObject tagJson = tags.getJSONObject(i);
-				SaploTag saploTag = SaploTag.convertFromJSONToTag(tagJson);
-				tagList.add(saploTag);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_MALFORMED_RESPONSE, je);
-		}
-
-		return tagList;
+		return tags;
 	}
 
 	/**
@@ -435,11 +657,11 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<List<SaploTag>> tagsAsync(final SaploText saploText, final int wait, final boolean skipCategorization) {
-		return new SaploFuture<List<SaploTag>>( es.submit(new Callable<List<SaploTag>>() {
+		return SaploFuture.submit(es, new Callable<List<SaploTag>>() {
 			public List<SaploTag> call() throws SaploClientException {
 				return tags(saploText, wait, skipCategorization);
 			}
-		}));
+		});
 	}
 
 	/**
@@ -486,11 +708,11 @@ public class SaploTextManager {
 	 * @return {@link SaploFuture}<{@link List}<{@link SaploTag}>> containing all the tags extracted
 	 */
 	public SaploFuture<List<SaploTag>> tagsAsync(final SaploText saploText) {
-		return new SaploFuture<List<SaploTag>>( es.submit(new Callable<List<SaploTag>>() {
+		return SaploFuture.submit(es, new Callable<List<SaploTag>>() {
 			public List<SaploTag> call() throws SaploClientException {
 				return tags(saploText);
 			}
-		}));
+		});
 	}
 
 	/**
@@ -538,60 +760,10 @@ public class SaploTextManager {
 		verifyCollection(saploText);
 		verifyId(saploText);
 
-		List<SaploText> relatedTextsList = new ArrayList<SaploText>();
-
-		JSONObject params = new JSONObject();
-		try {
-			params.put("collection_id", saploText.getCollection().getId());
-			if(saploText.getId() > 0)
-				params.put("text_id", saploText.getId());
-			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
-				params.put("ext_text_id", saploText.getExtId());
-			if(relatedBy != null)
-				params.put("related_by", relatedBy);
-
-			JSONArray collectionIds = new JSONArray();
-			if(collectionScope != null && collectionScope.length > 0) {
-				for(int i = 0; i < collectionScope.length; i++) {
-					collectionIds.put(collectionScope[i].getId());
-				}
-			} else {
-				collectionIds.put(saploText.getCollection().getId());
-			}
-			params.put("collection_scope", collectionIds);
-
-			if(wait >= 0)
-				params.put("wait", wait);
-			if(limit > 0)
-				params.put("limit", limit);
-			if(minThreshold >= 0 && minThreshold <= 1)
-				params.put("min_threshold", minThreshold);
-			if(maxThreshold >= 0 && minThreshold <= 1)
-				params.put("max_threshold", maxThreshold);
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
-
-
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.relatedTexts", params);
-
-		JSONRPCResponseObject response = client.sendAndReceive(request);
-
-		JSONObject rawResult = (JSONObject)client.parseResponse(response);
-
-		try {
-			JSONArray texts = rawResult.getJSONArray("related_texts");
-			for(int i = 0; i < texts.length(); i++) {
-				JSONObject textJson = texts.getJSONObject(i);
-				SaploText relText = SaploText.convertFromJSONToText(textJson);
-				relText.setRelatedToText(saploText);
-				relatedTextsList.add(relText);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_MALFORMED_RESPONSE, je);
-		}
+		JSONRPCRequestObject request = relatedTextsRequest(saploText, relatedBy, collectionScope, wait, limit, minThreshold, maxThreshold);
 
-		saploText.setRelatedTexts(relatedTextsList);
+		List<SaploText> relatedTextsList = sendForList(relatedTextsKey(saploText, request), request, RELATED_TEXTS_READER);
+		setRelatedTexts(saploText, relatedTextsList);
 		//		return relatedTextsList;
 	}
 
@@ -643,12 +815,12 @@ public class SaploTextManager {
 	public SaploFuture<Boolean> relatedTextsAsync(final SaploText saploText, final RelatedBy relatedBy, 
 			final SaploCollection[] collectionScope, final int wait, final int limit, 
 			final double minThreshold, final double maxThreshold) {
-		return new SaploFuture<Boolean>( es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedTexts(saploText, relatedBy, collectionScope, wait, limit, minThreshold, maxThreshold);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -675,12 +847,12 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> relatedTextsAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>( es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedTexts(saploText);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -703,55 +875,10 @@ public class SaploTextManager {
 		verifyCollection(saploText);
 		verifyId(saploText);
 
-		List<SaploGroup> relatedGroupsList = new ArrayList<SaploGroup>();
-
-		JSONObject params = new JSONObject();
-		try {
-			params.put("collection_id", saploText.getCollection().getId());
-			if(saploText.getId() > 0)
-				params.put("text_id", saploText.getId());
-			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
-				params.put("ext_text_id", saploText.getExtId());
-
-			if(groupScope != null && groupScope.length > 0) {
-				JSONArray groupIds = new JSONArray();
-				for(int i = 0; i < groupScope.length; i++) {
-					groupIds.put(groupScope[i].getId());
-				}
-				params.put("group_scope", groupIds);
-			}
-
-			if(wait >= 0)
-				params.put("wait", wait);
-			if(minThreshold >= 0 && minThreshold <= 1)
-				params.put("min_threshold", minThreshold);
-			if(maxThreshold >= 0 && minThreshold <= 1)
-				params.put("max_threshold", maxThreshold);
-			if(limit > 0)
-				params.put("limit", limit);
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
-		}
-
-		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.relatedGroups", params);
+		JSONRPCRequestObject request = relatedGroupsRequest(saploText, groupScope, wait, minThreshold, maxThreshold, limit);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
-
-		JSONObject rawResult = (JSONObject)client.parseResponse(response);
-
-		try {
-			JSONArray groups = rawResult.getJSONArray("related_groups");
-			for(int i = 0; i < groups.length(); i++) {
-				JSONObject groupJson = groups.getJSONObject(i);
-				SaploGroup relGroup = SaploGroup.convertFromJSONToGroup(groupJson);
-				relGroup.setRelatedToText(saploText);
-				relatedGroupsList.add(relGroup);
-			}
-		} catch(JSONException je) {
-			throw new SaploClientException(CODE_MALFORMED_RESPONSE, je);
-		}
-
-		saploText.setRelatedGroups(relatedGroupsList);
+		List<SaploGroup> relatedGroupsList = sendForList(relatedGroupsKey(saploText, request), request, RELATED_GROUPS_READER);
+		setRelatedGroups(saploText, relatedGroupsList);
 		//		return relatedGroupsList;
 	}
 
@@ -773,12 +900,12 @@ public class SaploTextManager {
 	public SaploFuture<Boolean> relatedGroupsAsync(final SaploText saploText, 
 			final SaploGroup[] groupScope, final int wait, final double minThreshold, 
 			final double maxThreshold, final int limit) {
-		return new SaploFuture<Boolean>( es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedGroups(saploText, groupScope, wait, minThreshold, maxThreshold, limit);
 				return true;
 			}
-		}));
+		});
 	}
 
 	/**
@@ -804,12 +931,116 @@ public class SaploTextManager {
 	 * @throws SaploClientException
 	 */
 	public SaploFuture<Boolean> relatedGroupsAsync(final SaploText saploText) {
-		return new SaploFuture<Boolean>( es.submit(new Callable<Boolean>() {
+		return SaploFuture.submit(es, new Callable<Boolean>() {
 			public Boolean call() throws SaploClientException {
 				relatedGroups(saploText);
 				return true;
 			}
-		}));
+		});
+	}
+
+	/**
+	 * Get all entity tags that exist in the text, once the API has extracted them. 
+	 * Unlike {@link #tagsAsync(SaploText, int, boolean)}, no thread waits for the API: 
+	 * the request is sent with wait=0 and sent again on a timer while the API is 
+	 * still processing, see {@link SaploClient#sendAndPoll(JSONRPCRequestObject, com.saplo.api.client.session.ResultReader)}.
+	 * The caches are used as in {@link #tags(SaploText, int, boolean)}.
+	 * 
+	 * @param saploText - the text to extract the {@link SaploTag}s from
+	 * @param skipCategorization
+	 * @return {@link SaploFuture}<{@link List}<{@link SaploTag}>> containing all the tags extracted
+	 */
+	public SaploFuture<List<SaploTag>> tagsWhenReady(final SaploText saploText, boolean skipCategorization) {
+		JSONRPCRequestObject request;
+		try {
+			verifyCollection(saploText);
+			verifyId(saploText);
+			request = tagsRequest(saploText, 0, skipCategorization);
+		} catch(SaploClientException e) {
+			return SaploFuture.failed(e);
+		}
+
+		final TagCache tagCache = client.getTagCache();
+		final TagCache.Key tagKey = tagKey(saploText, skipCategorization);
+		if(tagCache != null && tagKey != null) {
+			List<SaploTag> cachedTags = tagCache.get(tagKey);
+			if(cachedTags != null)
+				return SaploFuture.completed(cachedTags);
+		}
+
+		return pollForList(tagKey != null ? "text.tags/" + tagKey : null, request, TAGS_READER).thenApply(
+				new SaploFunction<List<SaploTag>, List<SaploTag>>() {
+			public List<SaploTag> apply(List<SaploTag> tags) {
+				if(tagCache != null && tagKey != null)
+					tagCache.put(tagKey, textIds(saploText), tags);
+				return tags;
+			}
+		});
+	}
+
+	/**
+	 * Search a collection/collections for related texts to a given text, once the API has calculated them, 
+	 * without a thread waiting for it. See {@link #tagsWhenReady(SaploText, boolean)}.
+	 * 
+	 * @param saploText - the {@link SaploText} to compare to
+	 * @param relatedBy - How the texts should be related.
+	 * @param collectionScope - Search the given collections to find related texts.
+	 * @param limit - the maximum number of related texts in the result. Max 50.
+	 * @param minThreshold - the minimum similarity threshold, between 0 and 1 (1 = 100% similar)
+	 * @param maxThreshold - the maximum similarity threshold, between 0 and 1 (1 = 100% similar)
+	 * @return SaploFuture<relatedTextsList> - a {@link List} containing related texts to the given text, 
+	 * which are set on the text too
+	 */
+	public SaploFuture<List<SaploText>> relatedTextsWhenReady(final SaploText saploText, RelatedBy relatedBy, 
+			SaploCollection[] collectionScope, int limit, double minThreshold, double maxThreshold) {
+		JSONRPCRequestObject request;
+		try {
+			verifyCollection(saploText);
+			verifyId(saploText);
+			request = relatedTextsRequest(saploText, relatedBy, collectionScope, 0, limit, minThreshold, maxThreshold);
+		} catch(SaploClientException e) {
+			return SaploFuture.failed(e);
+		}
+
+		return pollForList(relatedTextsKey(saploText, request), request, RELATED_TEXTS_READER).thenApply(
+				new SaploFunction<List<SaploText>, List<SaploText>>() {
+			public List<SaploText> apply(List<SaploText> relatedTextsList) {
+				setRelatedTexts(saploText, relatedTextsList);
+				return relatedTextsList;
+			}
+		});
+	}
+
+	/**
+	 * Search for groups that are related to a given text, once the API has calculated them, 
+	 * without a thread waiting for it. See {@link #tagsWhenReady(SaploText, boolean)}.
+	 * 
+	 * @param saploText - the {@link SaploText} object to compare to
+	 * @param groupScope - the {@link SaploGroup}s the text should be compared to
+	 * @param minThreshold - the minimum similarity threshold, between 0 and 1 (1 = 100% similar)
+	 * @param maxThreshold - the maximum similarity threshold, between 0 and 1 (1 = 100% similar)
+	 * @param limit - set max number of results.
+	 * @return SaploFuture<relatedGroupsList> - a {@link List} containing related groups to the given text, 
+	 * which are set on the text too
+	 */
+	public SaploFuture<List<SaploGroup>> relatedGroupsWhenReady(final SaploText saploText, 
+			SaploGroup[] groupScope, double minThreshold, double maxThreshold, int limit) {
+		JSONRPCRequestObject request;
+		try {
+			verifyCollection(saploText);
+			verifyId(saploText);
+			request = relatedGroupsRequest(saploText, groupScope, 0, minThreshold, maxThreshold, limit);
+		} catch(SaploClientException e) {
+			return SaploFuture.failed(e);
+		}
+
+		return pollForList(relatedGroupsKey(saploText, request), request, RELATED_GROUPS_READER).thenApply(
+				new SaploFunction<List<SaploGroup>, List<SaploGroup>>() {
+			public List<SaploGroup> apply(List<SaploGroup> relatedGroupsList) {
+				setRelatedGroups(saploText, relatedGroupsList);
+				return relatedGroupsList;
+			}
+		});
 	}
 
 	/**
@@ -844,7 +1075,12 @@ public class SaploTextManager {
 
 		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.addTag", params);
 
-		JSONRPCResponseObject response = client.sendAndReceive(request);
+		JSONRPCResponseObject response;
+		try {
+			response = client.sendAndReceive(request);
+		} finally {
+			invalidateTags(saploText);
+		}
 
 		JSONObject rawResult = (JSONObject)client.parseResponse(response);
 
@@ -870,6 +1106,313 @@ public class SaploTextManager {
 		return text;
 	}
 
+	/*
+	 * drop the cached text, under both its ids
+	 */
+	private void invalidateText(SaploText saploText) {
+		ResponseCache cache = client.getResponseCache();
+		if(null == cache)
+			return;
+
+		int collectionId = saploText.getCollection().getId();
+		List<JSONObject> dropped = new ArrayList<JSONObject>();
+		if(saploText.getId() > 0)
+			dropped.add(cache.invalidate(textKey(collectionId, saploText.getId())));
+		if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+			dropped.add(cache.invalidate(extTextKey(collectionId, saploText.getExtId())));
+
+		// and under the other id it was cached with
+		for(JSONObject jsonText : dropped) {
+			if(null == jsonText)
+				continue;
+			if(jsonText.optInt("text_id", -1) > 0)
+				cache.invalidate(textKey(collectionId, jsonText.optInt("text_id")));
+			if(jsonText.optString("ext_text_id", "").length() > 0)
+				cache.invalidate(extTextKey(collectionId, jsonText.optString("ext_text_id")));
+		}
+	}
+
+	/*
+	 * send a call with a list result, through the client's persistent cache if it has one and a key is given
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> sendForList(String cacheKey, JSONRPCRequestObject request, ListResultReader<T> reader) 
+			throws SaploClientException {
+
+		PersistentCache diskCache = (cacheKey != null ? client.getPersistentCache() : null);
+		if(null == diskCache) {
+			JSONRPCResponseObject response = client.sendAndReceive(request, reader);
+			return (List<T>)client.parseResponse(response);
+		}
+
+		byte[] cached = diskCache.get(cacheKey);
+		if(cached != null) {
+			try {
+				return RecordingResultReader.replay(cached, reader);
+			} catch(IOException e) {
+				// written by an older version maybe, get it again
+				diskCache.invalidate(cacheKey);
+			}
+		}
+
+		RecordingResultReader<List<T>> recorder = new RecordingResultReader<List<T>>(reader);
+		JSONRPCResponseObject response = client.sendAndReceive(request, recorder);
+		List<T> result = (List<T>)client.parseResponse(response);
+		if(recorder.getRecorded() != null)
+			diskCache.put(cacheKey, recorder.getRecorded());
+
+		return result;
+	}
+
+	/*
+	 * poll for a result, read through the persistent cache like sendForList
+	 */
+	private <T> SaploFuture<List<T>> pollForList(final String cacheKey, JSONRPCRequestObject request, ListResultReader<T> reader) {
+		final PersistentCache diskCache = (cacheKey != null ? client.getPersistentCache() : null);
+		if(null == diskCache)
+			return client.sendAndPoll(request, reader).thenApply(new SaploFunction<JSONRPCResponseObject, List<T>>() {
+				@SuppressWarnings("unchecked")
+				public List<T> apply(JSONRPCResponseObject response) throws SaploClientException {
+					return (List<T>)client.parseResponse(response);
+				}
+			});
+
+		byte[] cached = diskCache.get(cacheKey);
+		if(cached != null) {
+			try {
+				return SaploFuture.completed(RecordingResultReader.replay(cached, reader));
+			} catch(IOException e) {
+				diskCache.invalidate(cacheKey);
+			}
+		}
+
+		final RecordingResultReader<List<T>> recorder = new RecordingResultReader<List<T>>(reader);
+		return client.sendAndPoll(request, recorder).thenApply(new SaploFunction<JSONRPCResponseObject, List<T>>() {
+			@SuppressWarnings("unchecked")
+			public List<T> apply(JSONRPCResponseObject response) throws SaploClientException {
+				List<T> result = (List<T>)client.parseResponse(response);
+				if(recorder.getRecorded() != null)
+					diskCache.put(cacheKey, recorder.getRecorded());
+				return result;
+			}
+		});
+	}
+
+	private JSONRPCRequestObject tagsRequest(SaploText saploText, int wait, boolean skipCategorization) 
+			throws SaploClientException {
+		JSONObject params = new JSONObject();
+		try {
+			params.put("collection_id", saploText.getCollection().getId());
+			if(saploText.getId() > 0)
+				params.put("text_id", saploText.getId());
+			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+				params.put("ext_text_id", saploText.getExtId());
+
+			if(wait >= 0)
+				params.put("wait", wait);
+			params.put("skip_categorization", skipCategorization);
+		} catch(JSONException je) {
+			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+		}
+
+		return new JSONRPCRequestObject(client.getNextId(), "text.tags", params);
+	}
+
+	private JSONRPCRequestObject relatedTextsRequest(SaploText saploText, RelatedBy relatedBy, 
+			SaploCollection[] collectionScope, int wait, int limit, 
+			double minThreshold, double maxThreshold) throws SaploClientException {
+		JSONObject params = new JSONObject();
+		try {
+			params.put("collection_id", saploText.getCollection().getId());
+			if(saploText.getId() > 0)
+				params.put("text_id", saploText.getId());
+			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+				params.put("ext_text_id", saploText.getExtId());
+			if(relatedBy != null)
+				params.put("related_by", relatedBy);
+
+			JSONArray collectionIds = new JSONArray();
+			if(collectionScope != null && collectionScope.length > 0) {
+				for(int i = 0; i < collectionScope.length; i++) {
+					collectionIds.put(collectionScope[i].getId());
+				}
+			} else {
+				collectionIds.put(saploText.getCollection().getId());
+			}
+			params.put("collection_scope", collectionIds);
+
+			if(wait >= 0)
+				params.put("wait", wait);
+			if(limit > 0)
+				params.put("limit", limit);
+			if(minThreshold >= 0 && minThreshold <= 1)
+				params.put("min_threshold", minThreshold);
+			if(maxThreshold >= 0 && minThreshold <= 1)
+				params.put("max_threshold", maxThreshold);
+		} catch(JSONException je) {
+			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+		}
+
+		return new JSONRPCRequestObject(client.getNextId(), "text.relatedTexts", params);
+	}
+
+	private JSONRPCRequestObject relatedGroupsRequest(SaploText saploText, 
+			SaploGroup[] groupScope, int wait, double minThreshold, 
+			double maxThreshold, int limit) throws SaploClientException {
+		JSONObject params = new JSONObject();
+		try {
+			params.put("collection_id", saploText.getCollection().getId());
+			if(saploText.getId() > 0)
+				params.put("text_id", saploText.getId());
+			if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+				params.put("ext_text_id", saploText.getExtId());
+
+			if(groupScope != null && groupScope.length > 0) {
+				JSONArray groupIds = new JSONArray();
+				for(int i = 0; i < groupScope.length; i++) {
+					groupIds.put(groupScope[i].getId());
+				}
+				params.put("group_scope", groupIds);
+			}
+
+			if(wait >= 0)
+				params.put("wait", wait);
+			if(minThreshold >= 0 && minThreshold <= 1)
+				params.put("min_threshold", minThreshold);
+			if(maxThreshold >= 0 && minThreshold <= 1)
+				params.put("max_threshold", maxThreshold);
+			if(limit > 0)
+				params.put("limit", limit);
+		} catch(JSONException je) {
+			throw new SaploClientException(CODE_JSON_EXCEPTION, je);
+		}
+
+		return new JSONRPCRequestObject(client.getNextId(), "text.relatedGroups", params);
+	}
+
+	/*
+	 * the key of a text body's tags in the caches, or null if there are no caches or no body
+	 */
+	private TagCache.Key tagKey(SaploText saploText, boolean skipCategorization) {
+		if((client.getTagCache() != null || client.getPersistentCache() != null) && hasBody(saploText))
+			return TagCache.key(saploText.getBody(), skipCategorization);
+		return null;
+	}
+
+	private static String relatedTextsKey(SaploText saploText, JSONRPCRequestObject request) {
+		JSONObject params = (JSONObject)request.getParams();
+		return resultKey("text.relatedTexts", saploText, params.opt("related_by"), params.opt("collection_scope"), 
+				params.opt("limit"), params.opt("min_threshold"), params.opt("max_threshold"));
+	}
+
+	private static String relatedGroupsKey(SaploText saploText, JSONRPCRequestObject request) {
+		JSONObject params = (JSONObject)request.getParams();
+		return resultKey("text.relatedGroups", saploText, params.opt("group_scope"), 
+				params.opt("min_threshold"), params.opt("max_threshold"), params.opt("limit"));
+	}
+
+	private static void setRelatedTexts(SaploText saploText, List<SaploText> relatedTextsList) {
+		for(SaploText relText : relatedTextsList)
+			relText.setRelatedToText(saploText);
+		saploText.setRelatedTexts(relatedTextsList);
+	}
+
+	private static void setRelatedGroups(SaploText saploText, List<SaploGroup> relatedGroupsList) {
+		for(SaploGroup relGroup : relatedGroupsList)
+			relGroup.setRelatedToText(saploText);
+		saploText.setRelatedGroups(relatedGroupsList);
+	}
+
+	/*
+	 * the persistent cache key of a text's result with the given params
+	 */
+	private static String resultKey(String method, SaploText saploText, Object... params) {
+		StringBuilder key = new StringBuilder(method).append('/').append(saploText.getCollection().getId()).append('/');
+		if(saploText.getId() > 0)
+			key.append(saploText.getId());
+		else
+			key.append("ext/").append(saploText.getExtId());
+		for(Object param : params)
+			key.append('/').append(param);
+		return key.toString();
+	}
+
+	/*
+	 * drop the cached tags of a text, by its ids and by its body if it is set
+	 */
+	private void invalidateTags(SaploText saploText) {
+		TagCache tagCache = client.getTagCache();
+		if(tagCache != null) {
+			for(String textId : textIds(saploText))
+				tagCache.invalidateText(textId);
+			if(hasBody(saploText))
+				tagCache.invalidate(saploText.getBody());
+		}
+
+		PersistentCache diskCache = client.getPersistentCache();
+		if(diskCache != null && hasBody(saploText)) {
+			diskCache.invalidate("text.tags/" + TagCache.key(saploText.getBody(), false));
+			diskCache.invalidate("text.tags/" + TagCache.key(saploText.getBody(), true));
+		}
+	}
+
+	private static boolean hasBody(SaploText saploText) {
+		return null != saploText.getBody() && !ClientUtil.NULL_STRING.equals(saploText.getBody());
+	}
+
+	/*
+	 * the ids a text is known by in the caches
+	 */
+	private static List<String> textIds(SaploText saploText) {
+		List<String> ids = new ArrayList<String>(2);
+		int collectionId = saploText.getCollection().getId();
+		if(saploText.getId() > 0)
+			ids.add(textKey(collectionId, saploText.getId()));
+		if(!ClientUtil.NULL_STRING.equals(saploText.getExtId()))
+			ids.add(extTextKey(collectionId, saploText.getExtId()));
+		return ids;
+	}
+
+	/*
+	 * drop the cached collection a text was created in
+	 */
+	private void invalidateCollection(int collectionId) {
+		ResponseCache cache = client.getResponseCache();
+		if(cache != null)
+			cache.invalidate(SaploCollectionManager.collectionKey(collectionId));
+	}
+
+	/*
+	 * drop the cached collections a batch of texts was created in
+	 */
+	private void invalidateCollections(List<SaploText> batch) {
+		if(null == client.getResponseCache())
+			return;
+		for(SaploText saploText : batch)
+			invalidateCollection(saploText.getCollection().getId());
+	}
+
+	/*
+	 * the response cache key prefix of all the texts in a collection
+	 */
+	static String collectionTextsKey(int collectionId) {
+		return "text.get/" + collectionId + "/";
+	}
+
+	/*
+	 * the response cache key of a text by its id
+	 */
+	private static String textKey(int collectionId, int textId) {
+		return collectionTextsKey(collectionId) + textId;
+	}
+
+	/*
+	 * the response cache key of a text by its ext_text_id
+	 */
+	private static String extTextKey(int collectionId, String extTextId) {
+		return collectionTextsKey(collectionId) + "ext/" + extTextId;
+	}
+
 	/*
 	 * ensure the given text has collection_id
 	 */
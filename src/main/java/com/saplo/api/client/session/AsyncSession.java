@@ -0,0 +1,32 @@
+package com.saplo.api.client.session;
+
+import java.util.List;
+
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploFuture;
+
+/**
+ * A transport session that can send messages without blocking the calling thread.
+ * The returned futures are completed by the transport itself once the response 
+ * arrives, so no thread is parked while a call is in flight.
+ */
+public interface AsyncSession extends Session {
+
+	/**
+	 * Send JSON message and return a future of the result
+	 * 
+	 * @param message - A JSON message to send
+	 * @return a {@link SaploFuture} completed with the JSON result message
+	 */
+	SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(JSONRPCRequestObject message);
+
+	/**
+	 * Send a batch of JSON messages in a single call and return a future of the results.
+	 * See {@link Session#sendAndReceiveBatch(List)}
+	 * 
+	 * @param messages - JSON messages to send, each with a unique id
+	 * @return a {@link SaploFuture} completed with the JSON result messages, one per sent message
+	 */
+	SaploFuture<List<JSONRPCResponseObject>> sendAndReceiveBatchAsync(List<JSONRPCRequestObject> messages);
+}
@@ -0,0 +1,321 @@
+/**
+ *
+ */
+package com.saplo.api.client.session;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops the calls to an endpoint that keeps failing, so the callers fail right away
+ * instead of each waiting out a connect or socket timeout.
+ *
+ * The outcome of every call over the last rolling window is counted. Once there have been
+ * at least minimumCalls in the window, and the share of the failed calls or of the slow ones
+ * reaches its threshold, the breaker opens and refuses all the calls for openDuration.
+ * It then goes half-open and lets a few probe calls through: if they all succeed in time
+ * the breaker closes again, if any of them fails it opens for another openDuration.
+ *
+ * A failure here is a transport failure, i.e. no response or a status other than 200.
+ * Errors the API answers with are successful calls for the breaker.
+ * A breaker can be shared by the sessions of an endpoint, see {@link com.saplo.api.client.TransportConfig#setCircuitBreaker(CircuitBreaker)}.
+ *
+ * @author progre55
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The states of a breaker
+	 */
+	public enum State {
+		/** the calls go through */
+		CLOSED,
+		/** the calls are refused */
+		OPEN,
+		/** a few probe calls go through */
+		HALF_OPEN
+	}
+
+	private static final int BUCKETS = 10;
+
+	private final long created = System.nanoTime();
+
+	private double failureRateThreshold = 0.5;
+	private double slowCallRateThreshold = 1.0;
+	private long slowCallDuration = 10 * 1000;
+	private int minimumCalls = 20;
+	private long window = 10 * 1000;
+	private long openDuration = 5 * 1000;
+	private int probeCalls = 3;
+
+	// the rolling window, one bucket per tenth of it
+	private final long[] bucketStart = new long[BUCKETS];
+	private final int[] calls = new int[BUCKETS];
+	private final int[] failures = new int[BUCKETS];
+	private final int[] slowCalls = new int[BUCKETS];
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probesInFlight;
+	private int probesSucceeded;
+
+	private long openCount = 0;
+	private long rejectedCount = 0;
+
+	/**
+	 * A breaker with the default settings
+	 */
+	public CircuitBreaker() {
+	}
+
+	/**
+	 * Ask whether a call may be made now. Every call allowed has to be followed
+	 * by one of {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored()}.
+	 *
+	 * @return true if the call may be made, false if it should fail right away
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = now();
+		if (state == State.OPEN && now - openedAt >= openDuration) {
+			state = State.HALF_OPEN;
+			probesInFlight = 0;
+			probesSucceeded = 0;
+		}
+
+		switch (state) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (probesInFlight + probesSucceeded < probeCalls) {
+				probesInFlight++;
+				return true;
+			}
+			break;
+		default:
+			break;
+		}
+		rejectedCount++;
+		return false;
+	}
+
+	/**
+	 * Count a call that got a response
+	 *
+	 * @param latency - how long the call took, in nano seconds
+	 */
+	public synchronized void onSuccess(long latency) {
+		boolean slow = TimeUnit.NANOSECONDS.toMillis(latency) >= slowCallDuration;
+		if (state == State.HALF_OPEN) {
+			probesInFlight = Math.max(0, probesInFlight - 1);
+			if (slow) {
+				open(now());
+			} else if (++probesSucceeded >= probeCalls) {
+				close();
+			}
+			return;
+		}
+		record(false, slow);
+	}
+
+	/**
+	 * Count a call that failed in the transport
+	 *
+	 * @param latency - how long the call took, in nano seconds
+	 */
+	public synchronized void onFailure(long latency) {
+		if (state == State.HALF_OPEN) {
+			probesInFlight = Math.max(0, probesInFlight - 1);
+			open(now());
+			return;
+		}
+		record(true, TimeUnit.NANOSECONDS.toMillis(latency) >= slowCallDuration);
+	}
+
+	/**
+	 * Let go of a call without counting it, e.g. one cancelled by the caller
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN)
+			probesInFlight = Math.max(0, probesInFlight - 1);
+	}
+
+	/**
+	 * @return the current state
+	 */
+	public synchronized State getState() {
+		if (state == State.OPEN && now() - openedAt >= openDuration)
+			return State.HALF_OPEN;
+		return state;
+	}
+
+	/**
+	 * @return the share of the calls in the rolling window that failed, 0 if there were none
+	 */
+	public synchronized double getFailureRate() {
+		int[] totals = totals(now());
+		return (totals[0] > 0 ? (double)totals[1] / totals[0] : 0);
+	}
+
+	/**
+	 * @return the share of the calls in the rolling window that were slow, 0 if there were none
+	 */
+	public synchronized double getSlowCallRate() {
+		int[] totals = totals(now());
+		return (totals[0] > 0 ? (double)totals[2] / totals[0] : 0);
+	}
+
+	/**
+	 * @return the number of calls in the rolling window
+	 */
+	public synchronized int getCallCount() {
+		return totals(now())[0];
+	}
+
+	/**
+	 * @return how many times the breaker has opened
+	 */
+	public synchronized long getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * @return the number of calls refused
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @param failureRateThreshold the share of failed calls that opens the breaker to set, default 0.5
+	 */
+	public synchronized void setFailureRateThreshold(double failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	/**
+	 * @param slowCallRateThreshold the share of slow calls that opens the breaker to set,
+	 * default 1.0, i.e. only when all of them are slow
+	 */
+	public synchronized void setSlowCallRateThreshold(double slowCallRateThreshold) {
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	/**
+	 * @param slowCallDuration the time from which a call is slow to set, in milliseconds, default 10000
+	 */
+	public synchronized void setSlowCallDuration(long slowCallDuration) {
+		this.slowCallDuration = slowCallDuration;
+	}
+
+	/**
+	 * @param minimumCalls the number of calls in the window needed to open the breaker to set, default 20
+	 */
+	public synchronized void setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = minimumCalls;
+	}
+
+	/**
+	 * @param window the length of the rolling window to set, in milliseconds, default 10000
+	 */
+	public synchronized void setWindow(long window) {
+		if (window < BUCKETS)
+			throw new IllegalArgumentException("window should be at least " + BUCKETS + " ms");
+		this.window = window;
+		reset();
+	}
+
+	/**
+	 * @param openDuration how long the calls are refused after the breaker opens to set, in milliseconds, default 5000
+	 */
+	public synchronized void setOpenDuration(long openDuration) {
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * @param probeCalls the number of calls that have to succeed to close the breaker again to set, default 3
+	 */
+	public synchronized void setProbeCalls(int probeCalls) {
+		if (probeCalls < 1)
+			throw new IllegalArgumentException("probeCalls should be at least 1");
+		this.probeCalls = probeCalls;
+	}
+
+	/*
+	 * count a call in its bucket, and open the breaker if the window has gone bad
+	 */
+	private void record(boolean failed, boolean slow) {
+		long now = now();
+		int i = bucket(now);
+		calls[i]++;
+		if (failed)
+			failures[i]++;
+		if (slow)
+			slowCalls[i]++;
+
+		if (state != State.CLOSED)
+			return;
+		int[] totals = totals(now);
+		if (totals[0] < minimumCalls)
+			return;
+		if ((double)totals[1] / totals[0] >= failureRateThreshold
+				|| (double)totals[2] / totals[0] >= slowCallRateThreshold)
+			open(now);
+	}
+
+	/*
+	 * the index of the bucket for the given time, emptied if it was last used a window ago
+	 */
+	private int bucket(long now) {
+		long bucketLength = window / BUCKETS;
+		long start = now - now % bucketLength;
+		int i = (int)((now / bucketLength) % BUCKETS);
+		if (bucketStart[i] != start) {
+			bucketStart[i] = start;
+			calls[i] = 0;
+			failures[i] = 0;
+			slowCalls[i] = 0;
+		}
+		return i;
+	}
+
+	/*
+	 * the calls, failures and slow calls of the buckets still in the window
+	 */
+	private int[] totals(long now) {
+		int[] totals = new int[3];
+		for (int i = 0; i < BUCKETS; i++) {
+			if (now - bucketStart[i] >= window)
+				continue;
+			totals[0] += calls[i];
+			totals[1] += failures[i];
+			totals[2] += slowCalls[i];
+		}
+		return totals;
+	}
+
+	private void open(long now) {
+		state = State.OPEN;
+		openedAt = now;
+		openCount++;
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		reset();
+	}
+
+	private void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			bucketStart[i] = 0;
+			calls[i] = 0;
+			failures[i] = 0;
+			slowCalls[i] = 0;
+		}
+	}
+
+	/*
+	 * the milliseconds since the breaker was created
+	 */
+	private long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - created);
+	}
+}
@@ -0,0 +1,60 @@
+package com.saplo.api.client.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A {@link ResultReader} for the common case of a result object holding a single 
+ * array of items, like <code>{"tags": [...]}</code>. The other fields of the 
+ * result are skipped.
+ * 
+ * @param <T> - the type of the items
+ */
+public abstract class ListResultReader<T> implements ResultReader<List<T>> {
+
+	private final String field;
+
+	/**
+	 * @param field - the name of the array field in the result object
+	 */
+	public ListResultReader(String field) {
+		this.field = field;
+	}
+
+	public List<T> read(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+			throw new JsonParseException("Expected a result object", parser.getCurrentLocation());
+
+		List<T> items = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (field.equals(name) && token == JsonToken.START_ARRAY) {
+				items = new ArrayList<T>();
+				while (parser.nextToken() != JsonToken.END_ARRAY)
+					items.add(readItem(parser));
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (items == null)
+			throw new JsonParseException("No \"" + field + "\" array in the result", parser.getCurrentLocation());
+
+		return items;
+	}
+
+	/**
+	 * Read a single item of the array, the parser is positioned on its first token.
+	 * 
+	 * @param parser - the parser to read from
+	 * @return the bound item
+	 * @throws IOException
+	 */
+	protected abstract T readItem(JsonParser parser) throws IOException;
+}
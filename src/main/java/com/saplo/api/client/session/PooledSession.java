@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package com.saplo.api.client.session;
+
+/**
+ * A {@link Session} that keeps its connections in a pool, whose state can be read and 
+ * whose limits and timeouts can be changed while it is in use, e.g. from JMX.
+ * The changes apply to the connections leased and the requests sent from then on.
+ *
+ * @author progre55
+ */
+public interface PooledSession extends Session {
+
+	/**
+	 * @return the number of connections in use right now
+	 */
+	int getLeasedConnections();
+
+	/**
+	 * @return the number of idle connections kept open in the pool
+	 */
+	int getAvailableConnections();
+
+	/**
+	 * @return the number of requests waiting for a connection
+	 */
+	int getPendingConnections();
+
+	/**
+	 * @return the max number of pooled connections
+	 */
+	int getMaxTotalConnections();
+
+	/**
+	 * @param maxTotalConnections the max number of pooled connections to set
+	 */
+	void setMaxTotalConnections(int maxTotalConnections);
+
+	/**
+	 * @return the max number of connections to the API endpoint
+	 */
+	int getMaxEndpointConnections();
+
+	/**
+	 * @param maxEndpointConnections the max number of connections to the API endpoint to set
+	 */
+	void setMaxEndpointConnections(int maxEndpointConnections);
+
+	/**
+	 * @return the connect timeout in milliseconds, 0 for none
+	 */
+	int getConnectTimeout();
+
+	/**
+	 * @param connectTimeout the connect timeout to set in milliseconds, 0 for none
+	 */
+	void setConnectTimeout(int connectTimeout);
+
+	/**
+	 * @return the socket (read) timeout in milliseconds, 0 for none
+	 */
+	int getSocketTimeout();
+
+	/**
+	 * @param socketTimeout the socket (read) timeout to set in milliseconds, 0 for none
+	 */
+	void setSocketTimeout(int socketTimeout);
+}
@@ -0,0 +1,68 @@
+package com.saplo.api.client.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A {@link ResultReader} that keeps a copy of the result JSON it binds,
+ * so the result can be stored and bound again later with {@link #replay(byte[], ResultReader)}.
+ * A new instance is needed for every call.
+ *
+ * @param <T> - the type the result is bound to
+ */
+public class RecordingResultReader<T> implements ResultReader<T> {
+
+	private static final JsonFactory factory = new JsonFactory();
+
+	private final ResultReader<T> reader;
+	private volatile byte[] recorded;
+
+	/**
+	 * @param reader - the reader to bind the result with
+	 */
+	public RecordingResultReader(ResultReader<T> reader) {
+		this.reader = reader;
+	}
+
+	public T read(JsonParser parser) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonGenerator generator = factory.createGenerator(out);
+		try {
+			generator.copyCurrentStructure(parser);
+		} finally {
+			generator.close();
+		}
+		recorded = out.toByteArray();
+
+		return replay(recorded, reader);
+	}
+
+	/**
+	 * @return the UTF-8 JSON of the last result read, or null if none has been read
+	 */
+	public byte[] getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Bind a recorded result with a reader
+	 *
+	 * @param json - the UTF-8 JSON of the result
+	 * @param reader - the reader to bind the result with
+	 * @return the bound result
+	 * @throws IOException - if the value could not be read or does not look as expected
+	 */
+	public static <T> T replay(byte[] json, ResultReader<T> reader) throws IOException {
+		JsonParser parser = factory.createParser(json);
+		try {
+			parser.nextToken();
+			return reader.read(parser);
+		} finally {
+			parser.close();
+		}
+	}
+}
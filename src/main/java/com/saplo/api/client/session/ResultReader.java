@@ -0,0 +1,24 @@
+package com.saplo.api.client.session;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Binds the "result" of a JSON-RPC response straight from the parser, 
+ * so that no intermediate JSON tree or String is built for it.
+ * 
+ * @param <T> - the type the result is bound to
+ */
+public interface ResultReader<T> {
+
+	/**
+	 * Read a result value. The parser is positioned on the first token of the value,
+	 * and must be left on its last token.
+	 * 
+	 * @param parser - the parser to read from
+	 * @return the bound result
+	 * @throws IOException - if the value could not be read or does not look as expected
+	 */
+	T read(JsonParser parser) throws IOException;
+}
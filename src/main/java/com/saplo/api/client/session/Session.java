@@ -1,5 +1,7 @@
 package com.saplo.api.client.session;
 
+import java.util.List;
+
 import com.saplo.api.client.ClientProxy;
 import com.saplo.api.client.SaploClientException;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
@@ -18,6 +20,18 @@ public interface Session {
 	 */
 	JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message) throws SaploClientException;
 
+	/**
+	 * Send a batch of JSON messages in a single call and receive the results.
+	 * The responses are matched back to the messages by their id, so the returned
+	 * list has the same size and order as the given one. Each entry carries its own
+	 * success or error, see {@link JSONRPCResponseObject#isSuccess()}
+	 * 
+	 * @param messages - JSON messages to send, each with a unique id
+	 * @return the JSON result messages, one per sent message
+	 * @throws SaploClientException - if the batch as a whole could not be sent
+	 */
+	List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> messages) throws SaploClientException;
+
 	/**
 	 * Set a params value to the session (usually the jsessionid 
 	 * or access_token param)
@@ -0,0 +1,33 @@
+package com.saplo.api.client.session;
+
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+
+/**
+ * A transport session that decodes the responses straight off the connection stream,
+ * instead of reading them into a String and parsing that.
+ */
+public interface StreamingSession extends Session {
+
+	/**
+	 * Send JSON message and bind the "result" of the response with the given reader.
+	 * The {@link JSONRPCResponseObject#getResult()} of the returned response is whatever
+	 * the reader returned.
+	 * 
+	 * @param message - A JSON message to send
+	 * @param reader - the reader to bind the result with
+	 * @return the JSON result message
+	 * @throws SaploClientException 
+	 */
+	JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message, ResultReader<?> reader) throws SaploClientException;
+
+	/**
+	 * Whether to keep the raw JSON of each response, as returned by 
+	 * {@link JSONRPCResponseObject#toString()}. Off by default, as it means 
+	 * holding the whole response in memory as a String.
+	 * 
+	 * @param keepRawMessages
+	 */
+	void setKeepRawMessages(boolean keepRawMessages);
+}
@@ -6,6 +6,7 @@ import java.util.HashMap;
 
 import com.saplo.api.client.ClientError;
 import com.saplo.api.client.ClientProxy;
+import com.saplo.api.client.TransportConfig;
 import com.saplo.api.client.session.impl.HTTPSessionApache;
 
 /**
@@ -56,7 +57,26 @@ public class TransportRegistry {
 		registry.remove(scheme);
 	}
 
+	/**
+	 * @param scheme - the URI scheme, e.g. http
+	 * @return true if a SessionFactory is registered for the given scheme
+	 */
+	public boolean isRegistered(String scheme) {
+		return registry.containsKey(scheme);
+	}
+
 	public Session createSession(String uriString, String params, ClientProxy proxy) {
+		return createSession(uriString, params, proxy, null);
+	}
+
+	/**
+	 * @param uriString - the endpoint to open a session to
+	 * @param params - jsessionid or access_token param
+	 * @param proxy - a proxy to use, or null
+	 * @param config - the pool and timeout settings, or null for the defaults.
+	 *  Only used if the transport is a {@link ConfigurableSessionFactory}
+	 */
+	public Session createSession(String uriString, String params, ClientProxy proxy, TransportConfig config) {
 		try {
 			URI uri = new URI(uriString);
 			SessionFactory found = registry.get(uri.getScheme());
@@ -64,6 +84,8 @@ public class TransportRegistry {
 				throw new ClientError("Could not open URI '" + uriString
 						+ "'. Unknown scheme - '" + uri.getScheme() + "'." +
 				"Make sure you have registered your SessionFactory with this transport.");
+			if (found instanceof ConfigurableSessionFactory)
+				return ((ConfigurableSessionFactory)found).newSession(uri, params, proxy, config);
 			return found.newSession(uri, params, proxy);
 		} catch (URISyntaxException e) {
 			throw new ClientError(e);
@@ -78,4 +100,18 @@ public class TransportRegistry {
 		Session newSession(URI uri, String params, ClientProxy proxy);
 	}
 
+	/**
+	 * A {@link SessionFactory} for transports with a connection pool
+	 * and timeouts that can be configured
+	 */
+	public interface ConfigurableSessionFactory extends SessionFactory {
+		/**
+		 * @param uri - URI used to open this session
+		 * @param params - jsessionid or access_token param
+		 * @param proxy - a proxy to use, or null
+		 * @param config - the pool and timeout settings, or null for the defaults
+		 */
+		Session newSession(URI uri, String params, ClientProxy proxy, TransportConfig config);
+	}
+
 }
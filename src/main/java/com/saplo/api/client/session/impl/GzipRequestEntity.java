@@ -0,0 +1,90 @@
+/**
+ * 
+ */
+package com.saplo.api.client.session.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * An {@link HttpEntity} that gzips the wrapped entity while it is written 
+ * to the connection, so the compressed body is never buffered either.
+ * 
+ * @author progre55
+ */
+public class GzipRequestEntity extends HttpEntityWrapper {
+
+	private static final Header GZIP = new BasicHeader("Content-Encoding", "gzip");
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final int level;
+
+	/**
+	 * @param entity - the entity to compress
+	 * @param level - the gzip level, see {@link java.util.zip.Deflater}
+	 */
+	public GzipRequestEntity(HttpEntity entity, int level) {
+		super(entity);
+		this.level = level;
+	}
+
+	public Header getContentEncoding() {
+		return GZIP;
+	}
+
+	public long getContentLength() {
+		return -1;
+	}
+
+	public boolean isChunked() {
+		return true;
+	}
+
+	/**
+	 * Only meant for retries and debugging, as it buffers the whole entity.
+	 */
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+
+		LeveledGZIPOutputStream gzip = new LeveledGZIPOutputStream(outstream, level);
+		try {
+			wrappedEntity.writeTo(gzip);
+			// writes the trailer but leaves the connection stream open
+			gzip.finish();
+		} finally {
+			gzip.end();
+		}
+	}
+
+	/*
+	 * a GZIPOutputStream with a given level, that can free its deflater without closing 
+	 * the underlying stream, which close() would do
+	 */
+	private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+		LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(level);
+		}
+
+		void end() {
+			def.end();
+		}
+	}
+}
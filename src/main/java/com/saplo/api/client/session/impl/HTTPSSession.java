@@ -4,16 +4,16 @@
 package com.saplo.api.client.session.impl;
 
 import java.net.URI;
-import java.util.HashMap;
 
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 
 import com.saplo.api.client.ClientProxy;
+import com.saplo.api.client.TransportConfig;
 import com.saplo.api.client.session.Session;
 import com.saplo.api.client.session.TransportRegistry;
-import com.saplo.api.client.session.TransportRegistry.SessionFactory;
+import com.saplo.api.client.session.TransportRegistry.ConfigurableSessionFactory;
 
 /**
  * @author progre55
@@ -29,6 +29,10 @@ public class HTTPSSession extends HTTPSessionApache {
 		super(uri, params, proxy);
 	}
 
+	public HTTPSSession(URI uri, String params, ClientProxy proxy, TransportConfig config) {
+		super(uri, params, proxy, config);
+	}
+
 	@Override
 	protected SchemeRegistry registerScheme() {
 		SchemeRegistry schemeRegistry = new SchemeRegistry();
@@ -40,24 +44,14 @@ public class HTTPSSession extends HTTPSessionApache {
 	}
 	
 	
-	static class SessionFactoryImpl implements SessionFactory {
-		volatile HashMap<URI, Session> sessionMap = new HashMap<URI, Session>();
-		
+	static class SessionFactoryImpl implements ConfigurableSessionFactory {
 		public Session newSession(URI uri, String params, ClientProxy proxy) {
-			Session session = sessionMap.get(uri);
-			if (session == null) {
-				synchronized (sessionMap) {
-					session = sessionMap.get(uri);
-					if(session == null) {
-						if(null != proxy)
-							session = new HTTPSSession(uri, params, proxy);
-						else
-							session = new HTTPSSession(uri, params);
-						sessionMap.put(uri, session);
-					}
-				}
-			}
-			return session;
+			return newSession(uri, params, proxy, null);
+		}
+
+		public Session newSession(URI uri, String params, ClientProxy proxy, TransportConfig config) {
+			// a new session, with its own connection pool and token, for every client
+			return new HTTPSSession(uri, params, proxy, config);
 		}
 	}
 	
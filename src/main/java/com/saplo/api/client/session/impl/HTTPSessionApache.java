@@ -4,9 +4,12 @@
 package com.saplo.api.client.session.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
@@ -19,43 +22,53 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.util.EntityUtils;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import com.saplo.api.client.ClientError;
+import com.saplo.api.client.ClientMetrics;
 import com.saplo.api.client.ClientProxy;
 import com.saplo.api.client.ResponseCodes;
 import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.TransportConfig;
 import com.saplo.api.client.entity.JSONRPCRequestObject;
 import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.session.CircuitBreaker;
+import com.saplo.api.client.session.PooledSession;
+import com.saplo.api.client.session.ResultReader;
 import com.saplo.api.client.session.Session;
+import com.saplo.api.client.session.StreamingSession;
 import com.saplo.api.client.session.TransportRegistry;
-import com.saplo.api.client.session.TransportRegistry.SessionFactory;
+import com.saplo.api.client.session.TransportRegistry.ConfigurableSessionFactory;
+import com.saplo.api.client.util.CountingInputStream;
 
 /**
  * @author progre55
  *
  */
-public class HTTPSessionApache implements Session {
+public class HTTPSessionApache implements StreamingSession, PooledSession {
 
-	private static final String encoding = "UTF-8";
 	protected URI endpoint;
-	protected String params;
+	protected volatile String params;
 	protected HttpClient httpClient;
 	protected HttpHost proxy;
 	protected ClientProxy clientProxy;
 	protected CredentialsProvider proxyCredentials;
+	protected volatile boolean keepRawMessages = false;
+	protected TransportConfig config;
+	protected ScheduledFuture<?> evictor;
+	protected PoolingClientConnectionManager connectionManager;
+	protected HttpRoute endpointRoute;
 
 	/**
 	 * Main constructor
@@ -64,13 +77,24 @@ public class HTTPSessionApache implements Session {
 	 * @param params - access_token="token_here"
 	 */
 	public HTTPSessionApache(URI endpoint, String params) {
-		this.endpoint = endpoint;
-		this.params = params;
-		init();
+		this(endpoint, params, null, null);
 	}
 
 	public HTTPSessionApache(URI uri, String params, ClientProxy clientProxy) {
-		this(uri, params);
+		this(uri, params, clientProxy, null);
+	}
+
+	/**
+	 * @param endpoint - a saplo api endpoint
+	 * @param params - access_token="token_here"
+	 * @param clientProxy - a proxy to use, or null
+	 * @param config - the pool and timeout settings, or null for the defaults
+	 */
+	public HTTPSessionApache(URI endpoint, String params, ClientProxy clientProxy, TransportConfig config) {
+		this.endpoint = endpoint;
+		this.params = params;
+		this.config = (config != null ? config : new TransportConfig());
+		init();
 		this.setProxy(clientProxy);
 	}
 
@@ -79,18 +103,48 @@ public class HTTPSessionApache implements Session {
 	 */
 	protected void init() {
 
-		PoolingClientConnectionManager cm = new PoolingClientConnectionManager(registerScheme());
+		final PoolingClientConnectionManager cm = new PoolingClientConnectionManager(registerScheme());
 		
 		// increase max total connection
-		cm.setMaxTotal(50);
-		cm.setDefaultMaxPerRoute(20);
+		cm.setMaxTotal(config.getMaxTotalConnections());
+		cm.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
 		// increase max connections for our endpoint
-		HttpHost saploHost = new HttpHost(endpoint.getHost(), (endpoint.getPort() > 0 ? endpoint.getPort() : 80));
-		cm.setMaxPerRoute(new HttpRoute(saploHost), 40);
+		HttpHost saploHost = new HttpHost(endpoint.getHost(), getPort(), endpoint.getScheme());
+		// the same route the client plans for the requests, so the limit applies to them
+		endpointRoute = new HttpRoute(saploHost, null, "https".equals(endpoint.getScheme()));
+		cm.setMaxPerRoute(endpointRoute, config.getMaxEndpointConnections());
+		connectionManager = cm;
 	
-		this.httpClient = new DefaultHttpClient(cm);
+		DefaultHttpClient client = new DefaultHttpClient(cm);
+		HttpConnectionParams.setConnectionTimeout(client.getParams(), config.getConnectTimeout());
+		HttpConnectionParams.setSoTimeout(client.getParams(), config.getSocketTimeout());
+		client.setKeepAliveStrategy(IdleConnectionEvictor.keepAliveStrategy(config));
+		if (config.isAcceptCompressedResponses()) {
+			// ask for gzip/deflate, and unwrap the compressed entities into streams that inflate as they are read
+			client.addRequestInterceptor(new RequestAcceptEncoding());
+			client.addResponseInterceptor(new ResponseContentEncoding());
+		}
+		this.httpClient = client;
+
+		// drop the connections the server is done with before they are handed out again
+		evictor = IdleConnectionEvictor.schedule(new Runnable() {
+			public void run() {
+				cm.closeExpiredConnections();
+				if (config.getMaxIdleTime() > 0)
+					cm.closeIdleConnections(config.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+			}
+		}, config);
 	}
 	
+	/*
+	 * the port of the endpoint, or the default one of its scheme
+	 */
+	private int getPort() {
+		if (endpoint.getPort() > 0)
+			return endpoint.getPort();
+		return "https".equals(endpoint.getScheme()) ? 443 : 80;
+	}
+
 	/*
 	 * This method will be overridden by the SSL implementation to register an SSL socket factory
 	 */
@@ -113,32 +167,111 @@ public class HTTPSessionApache implements Session {
 	 */
 	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message)
 			throws SaploClientException {
+		return sendAndReceive(message, null);
+	}
 
-		HttpPost httpost = new HttpPost(String.format("%s?%s",endpoint.toString(), params));
+	/**
+	 * Sends a given request to the Saplo API and decodes the response straight 
+	 * off the connection stream, binding the result with the given reader
+	 * 
+	 * @param message - a message to send
+	 * @param reader - the reader to bind the result with, or null for a plain JSON result
+	 * @return response object got back from the API
+	 * @throws SaploClientException
+	 */
+	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message, final ResultReader<?> reader)
+			throws SaploClientException {
+
+		return post(message.getMethod(), new JSONRPCRequestEntity(message), new EntityDecoder<JSONRPCResponseObject>() {
+			public JSONRPCResponseObject decode(InputStream content) throws SaploClientException {
+				return JSONRPCResponseDecoder.decode(content, reader, keepRawMessages);
+			}
+		});
+	}
+
+	/**
+	 * Sends all the given requests to the Saplo API in a single JSON-RPC batch
+	 * and matches the responses back to the requests by id
+	 * 
+	 * @param messages - the messages to send
+	 * @return response objects got back from the API, in the same order as the messages
+	 * @throws SaploClientException
+	 */
+	public List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> messages)
+			throws SaploClientException {
 
-		ByteArrayEntity ent = new ByteArrayEntity(message.toString().getBytes(Charset.forName(encoding)));
-		ent.setContentEncoding(encoding);
-		ent.setContentType("application/json");
-		httpost.setEntity(ent);
+		if (messages.isEmpty())
+			return new ArrayList<JSONRPCResponseObject>();
+
+		Object rawResponseMessage = post(ClientMetrics.BATCH, new JSONRPCRequestEntity(messages), new EntityDecoder<Object>() {
+			public Object decode(InputStream content) throws SaploClientException {
+				return JSONRPCResponseDecoder.decodeValue(content);
+			}
+		});
+		return JSONRPCResponseObject.fromBatch(messages, rawResponseMessage);
+	}
 
+	/*
+	 * count the bytes of the request body if there are metrics, and gzip it if it is big enough to be worth it
+	 */
+	private HttpEntity prepare(JSONRPCRequestEntity body, String method, ClientMetrics metrics) {
+		HttpEntity entity = (metrics != null ? new MeteredRequestEntity(body, metrics, method) : body);
+		int threshold = config.getCompressionThreshold();
+		if (threshold < 0 || body.getEstimatedLength() < threshold)
+			return entity;
+		return new GzipRequestEntity(entity, config.getCompressionLevel());
+	}
+
+	/*
+	 * post the given JSON entity to the API and decode the response entity with the given decoder
+	 */
+	private <T> T post(String method, JSONRPCRequestEntity body, EntityDecoder<T> decoder) throws SaploClientException {
+
+		CircuitBreaker breaker = config.getCircuitBreaker();
+		if (breaker != null && !breaker.tryAcquire())
+			throw new SaploClientException(ResponseCodes.MSG_CIRCUIT_OPEN, ResponseCodes.CODE_CIRCUIT_OPEN);
+
+		ClientMetrics metrics = config.getMetrics();
+		HttpPost httpost = new HttpPost(String.format("%s?%s",endpoint.toString(), params));
+		httpost.setEntity(prepare(body, method, metrics));
+
+		long start = System.nanoTime();
+		boolean counted = (breaker == null);
 		try {
 			// the main call that sends the request to the client
 			HttpResponse response = httpClient.execute(httpost);
 			HttpEntity entity = response.getEntity();
 			int statusCode = response.getStatusLine().getStatusCode();
 
-			// first we "consume" the entity so that the connection is returned to the pool
-			String responseStr = "";
-			if (entity != null) {
-				responseStr = EntityUtils.toString(entity, "UTF-8");
+			if (breaker != null) {
+				if (statusCode == HttpStatus.SC_OK)
+					breaker.onSuccess(System.nanoTime() - start);
+				else
+					breaker.onFailure(System.nanoTime() - start);
+				counted = true;
 			}
-			
-			if (statusCode != HttpStatus.SC_OK) {
-				// probably the API is down..
-				throw new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, statusCode);
+
+			try {
+				if (statusCode != HttpStatus.SC_OK) {
+					// probably the API is down..
+					throw new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, statusCode);
+				}
+				if (entity == null)
+					throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE);
+
+				if (null == metrics)
+					return decoder.decode(entity.getContent());
+
+				CountingInputStream content = new CountingInputStream(entity.getContent());
+				try {
+					return decoder.decode(content);
+				} finally {
+					metrics.responseReceived(method, content.getCount());
+				}
+			} finally {
+				// "consume" whatever is left of the entity so that the connection is returned to the pool
+				EntityUtils.consume(entity);
 			}
-			
-			return processResponse(responseStr);
 
 		} catch (ClientProtocolException e) {
 			httpost.abort();
@@ -150,31 +283,28 @@ public class HTTPSessionApache implements Session {
 		} catch (IOException e) {
 			httpost.abort();
 			throw new SaploClientException(e);
+		} finally {
+			// no response at all
+			if (!counted)
+				breaker.onFailure(System.nanoTime() - start);
 		}
 	}
 
 	/*
-	 * parse the response string received from the API
+	 * decodes a response entity straight off its content stream
 	 */
-	private JSONRPCResponseObject processResponse(String response) throws SaploClientException {
-		JSONTokener tokener = new JSONTokener(response);
-		Object rawResponseMessage;
-		try {
-			rawResponseMessage = tokener.nextValue();
-		} catch (JSONException e) {
-			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE);
-		}
-		JSONObject responseMessage = (JSONObject) rawResponseMessage;
-		if (null == responseMessage)
-			throw new SaploClientException("Got invalid response type - " + rawResponseMessage);
-		
-		return new JSONRPCResponseObject(responseMessage);
+	private interface EntityDecoder<T> {
+		T decode(InputStream content) throws SaploClientException;
 	}
-	
-	public synchronized void setParams(String params) {
+
+	public void setParams(String params) {
 		this.params = params;
 	}
 
+	public void setKeepRawMessages(boolean keepRawMessages) {
+		this.keepRawMessages = keepRawMessages;
+	}
+
 	/**
 	 * Set a proxy of type ClientProxy to use for this transport connections
 	 * 
@@ -197,31 +327,66 @@ public class HTTPSessionApache implements Session {
 		httpClient.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
 	}
 
+	public int getLeasedConnections() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	public int getAvailableConnections() {
+		return connectionManager.getTotalStats().getAvailable();
+	}
+
+	public int getPendingConnections() {
+		return connectionManager.getTotalStats().getPending();
+	}
+
+	public int getMaxTotalConnections() {
+		return connectionManager.getMaxTotal();
+	}
+
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		connectionManager.setMaxTotal(maxTotalConnections);
+	}
+
+	public int getMaxEndpointConnections() {
+		return connectionManager.getMaxPerRoute(endpointRoute);
+	}
+
+	public void setMaxEndpointConnections(int maxEndpointConnections) {
+		connectionManager.setMaxPerRoute(endpointRoute, maxEndpointConnections);
+	}
+
+	public int getConnectTimeout() {
+		return HttpConnectionParams.getConnectionTimeout(httpClient.getParams());
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeout);
+	}
+
+	public int getSocketTimeout() {
+		return HttpConnectionParams.getSoTimeout(httpClient.getParams());
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeout);
+	}
+
 	/**
 	 * Close all the clients and clear the pool.
 	 */
 	public synchronized void close() {
+		IdleConnectionEvictor.cancel(evictor);
 		httpClient.getConnectionManager().shutdown();
 	}
 
-	static class SessionFactoryImpl implements SessionFactory {
-		volatile HashMap<URI, Session> sessionMap = new HashMap<URI, Session>();
-
+	static class SessionFactoryImpl implements ConfigurableSessionFactory {
 		public Session newSession(URI uri, String params, ClientProxy proxy) {
-			Session session = sessionMap.get(uri);
-			if (session == null) {
-				synchronized (sessionMap) {
-					session = sessionMap.get(uri);
-					if(session == null) {
-						if(proxy != null)
-							session = new HTTPSessionApache(uri, params, proxy);
-						else
-							session = new HTTPSessionApache(uri, params);
-						sessionMap.put(uri, session);
-					}
-				}
-			}
-			return session;
+			return newSession(uri, params, proxy, null);
+		}
+
+		public Session newSession(URI uri, String params, ClientProxy proxy, TransportConfig config) {
+			// a new session, with its own connection pool and token, for every client
+			return new HTTPSessionApache(uri, params, proxy, config);
 		}
 	}
 
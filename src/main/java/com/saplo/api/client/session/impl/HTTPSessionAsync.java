@@ -0,0 +1,499 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.scheme.AsyncScheme;
+import org.apache.http.nio.conn.scheme.AsyncSchemeRegistry;
+import org.apache.http.nio.conn.ssl.SSLLayeringStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.saplo.api.client.ClientError;
+import com.saplo.api.client.ClientMetrics;
+import com.saplo.api.client.ClientProxy;
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.TransportConfig;
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploCallback;
+import com.saplo.api.client.entity.SaploFuture;
+import com.saplo.api.client.session.AsyncSession;
+import com.saplo.api.client.session.CircuitBreaker;
+import com.saplo.api.client.session.PooledSession;
+import com.saplo.api.client.session.Session;
+import com.saplo.api.client.session.TransportRegistry;
+import com.saplo.api.client.session.TransportRegistry.ConfigurableSessionFactory;
+import com.saplo.api.client.session.TransportRegistry.SessionFactory;
+
+/**
+ * A non-blocking {@link AsyncSession} built on top of an event-driven (NIO) http client.
+ * Requests are written and responses are read by a handful of I/O dispatcher threads,
+ * and the futures are completed from their callbacks.
+ *
+ * To use it instead of the default blocking transport, register it before creating the client:
+ * <pre>
+ *	HTTPSessionAsync.register(TransportRegistry.getTransportRegistryInstance());
+ *	SaploClient client = new SaploClient("API_KEY","SECRET_KEY");
+ * </pre>
+ *
+ * @author progre55
+ */
+public class HTTPSessionAsync implements AsyncSession, PooledSession {
+
+	private static final String encoding = "UTF-8";
+	protected URI endpoint;
+	protected volatile String params;
+	protected DefaultHttpAsyncClient httpClient;
+	protected HttpHost proxy;
+	protected ClientProxy clientProxy;
+	protected CredentialsProvider proxyCredentials;
+	protected TransportConfig config;
+	protected ScheduledFuture<?> evictor;
+	protected PoolingClientAsyncConnectionManager connectionManager;
+	protected HttpRoute endpointRoute;
+
+	/**
+	 * Main constructor
+	 *
+	 * @param endpoint - a saplo api endpoint
+	 * @param params - access_token="token_here"
+	 */
+	public HTTPSessionAsync(URI endpoint, String params) {
+		this(endpoint, params, null, null);
+	}
+
+	public HTTPSessionAsync(URI uri, String params, ClientProxy clientProxy) {
+		this(uri, params, clientProxy, null);
+	}
+
+	/**
+	 * @param endpoint - a saplo api endpoint
+	 * @param params - access_token="token_here"
+	 * @param clientProxy - a proxy to use, or null
+	 * @param config - the pool and timeout settings, or null for the defaults
+	 */
+	public HTTPSessionAsync(URI endpoint, String params, ClientProxy clientProxy, TransportConfig config) {
+		this.endpoint = endpoint;
+		this.params = params;
+		this.config = (config != null ? config : new TransportConfig());
+		init();
+		this.setProxy(clientProxy);
+	}
+
+	/*
+	 * Initialize the I/O reactor and the httpClient with a pooled connection manager
+	 */
+	protected void init() {
+		try {
+			IOReactorConfig reactorConfig = new IOReactorConfig();
+			reactorConfig.setIoThreadCount(Runtime.getRuntime().availableProcessors());
+			reactorConfig.setConnectTimeout(config.getConnectTimeout());
+			reactorConfig.setSoTimeout(config.getSocketTimeout());
+			DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(reactorConfig);
+
+			final PoolingClientAsyncConnectionManager cm = new PoolingClientAsyncConnectionManager(ioReactor, registerScheme());
+
+			// increase max total connection
+			cm.setMaxTotal(config.getMaxTotalConnections());
+			cm.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+			// increase max connections for our endpoint
+			HttpHost saploHost = new HttpHost(endpoint.getHost(), getPort(), endpoint.getScheme());
+			// the same route the client plans for the requests, so the limit applies to them
+			endpointRoute = new HttpRoute(saploHost, null, "https".equals(endpoint.getScheme()));
+			cm.setMaxPerRoute(endpointRoute, config.getMaxEndpointConnections());
+			connectionManager = cm;
+
+			this.httpClient = new DefaultHttpAsyncClient(cm);
+			HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), config.getConnectTimeout());
+			HttpConnectionParams.setSoTimeout(httpClient.getParams(), config.getSocketTimeout());
+			httpClient.setKeepAliveStrategy(IdleConnectionEvictor.keepAliveStrategy(config));
+
+			// drop the connections the server is done with before they are handed out again
+			evictor = IdleConnectionEvictor.schedule(new Runnable() {
+				public void run() {
+					cm.closeExpiredConnections();
+					if (config.getMaxIdleTime() > 0)
+						cm.closeIdleConnections(config.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+				}
+			}, config);
+		} catch (IOReactorException e) {
+			throw new ClientError(e);
+		}
+		httpClient.start();
+	}
+
+	/*
+	 * Register both plain and SSL schemes, the endpoint decides which one is used
+	 */
+	protected AsyncSchemeRegistry registerScheme() {
+		AsyncSchemeRegistry schemeRegistry = new AsyncSchemeRegistry();
+		schemeRegistry.register(new AsyncScheme("http", 80, null));
+		schemeRegistry.register(new AsyncScheme("https", 443, SSLLayeringStrategy.getDefaultStrategy()));
+
+		return schemeRegistry;
+	}
+
+	private int getPort() {
+		if (endpoint.getPort() > 0)
+			return endpoint.getPort();
+		return "https".equals(endpoint.getScheme()) ? 443 : 80;
+	}
+
+	/**
+	 * Sends a given request to the Saplo API and waits for the response.
+	 *
+	 * @param message - a message to send
+	 * @return response object got back from the API
+	 * @throws SaploClientException
+	 */
+	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message)
+			throws SaploClientException {
+		return sendAndReceiveAsync(message).get();
+	}
+
+	/**
+	 * Sends the given requests in a single JSON-RPC batch and waits for the responses.
+	 *
+	 * @param messages - the messages to send
+	 * @return response objects got back from the API, in the same order as the messages
+	 * @throws SaploClientException
+	 */
+	public List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> messages)
+			throws SaploClientException {
+		return sendAndReceiveBatchAsync(messages).get();
+	}
+
+	/**
+	 * Sends a given request to the Saplo API without blocking. The returned future is
+	 * completed by an I/O dispatcher thread once the response has been read.
+	 *
+	 * @param message - a message to send
+	 * @return a future of the response object got back from the API
+	 */
+	public SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(JSONRPCRequestObject message) {
+		return post(message.getMethod(), message.toString(), new ResponseHandler<JSONRPCResponseObject>() {
+			public JSONRPCResponseObject handle(Object rawResponseMessage) throws SaploClientException {
+				if (!(rawResponseMessage instanceof JSONObject))
+					throw new SaploClientException("Got invalid response type - " + rawResponseMessage);
+
+				return new JSONRPCResponseObject((JSONObject) rawResponseMessage);
+			}
+		});
+	}
+
+	/**
+	 * Sends the given requests in a single JSON-RPC batch without blocking.
+	 *
+	 * @param messages - the messages to send
+	 * @return a future of the response objects, in the same order as the messages
+	 */
+	public SaploFuture<List<JSONRPCResponseObject>> sendAndReceiveBatchAsync(final List<JSONRPCRequestObject> messages) {
+		if (messages.isEmpty())
+			return SaploFuture.completed((List<JSONRPCResponseObject>) new ArrayList<JSONRPCResponseObject>());
+
+		return post(ClientMetrics.BATCH, JSONRPCRequestObject.getJSONArray(messages).toString(), new ResponseHandler<List<JSONRPCResponseObject>>() {
+			public List<JSONRPCResponseObject> handle(Object rawResponseMessage) {
+				return JSONRPCResponseObject.fromBatch(messages, rawResponseMessage);
+			}
+		});
+	}
+
+	/*
+	 * post the given JSON body to the API, and complete the future from the http callback
+	 */
+	private <T> SaploFuture<T> post(final String method, String body, final ResponseHandler<T> handler) {
+
+		final CircuitBreaker breaker = config.getCircuitBreaker();
+		if (breaker != null && !breaker.tryAcquire())
+			return SaploFuture.failed(new SaploClientException(ResponseCodes.MSG_CIRCUIT_OPEN, ResponseCodes.CODE_CIRCUIT_OPEN));
+
+		final HttpPost httpost = new HttpPost(String.format("%s?%s", endpoint.toString(), params));
+
+		final ClientMetrics metrics = config.getMetrics();
+		byte[] bytes = body.getBytes(Charset.forName(encoding));
+		if (metrics != null)
+			metrics.requestSent(method, bytes.length);
+		// gzipped in memory like the rest of the body, as the async client sends it from a buffer
+		int threshold = config.getCompressionThreshold();
+		boolean compressed = (threshold >= 0 && body.length() >= threshold);
+		if (compressed) {
+			try {
+				bytes = gzip(bytes);
+			} catch (IOException e) {
+				return SaploFuture.failed(new SaploClientException(e));
+			}
+		}
+		ByteArrayEntity ent = new ByteArrayEntity(bytes);
+		ent.setContentEncoding(compressed ? "gzip" : encoding);
+		ent.setContentType("application/json");
+		httpost.setEntity(ent);
+		if (config.isAcceptCompressedResponses())
+			httpost.setHeader("Accept-Encoding", "gzip");
+
+		final SaploFuture<T> future = new SaploFuture<T>();
+		future.addCallback(new SaploCallback<T>() {
+			public void onSuccess(T result) {
+			}
+			public void onFailure(SaploClientException e) {
+				// the caller is not interested anymore, drop the connection
+				if (future.isCancelled())
+					httpost.abort();
+			}
+		});
+
+		final long start = System.nanoTime();
+		httpClient.execute(httpost, new FutureCallback<HttpResponse>() {
+			public void completed(HttpResponse response) {
+				try {
+					HttpEntity entity = response.getEntity();
+					int statusCode = response.getStatusLine().getStatusCode();
+
+					if (breaker != null) {
+						if (statusCode == HttpStatus.SC_OK)
+							breaker.onSuccess(System.nanoTime() - start);
+						else
+							breaker.onFailure(System.nanoTime() - start);
+					}
+
+					String responseStr = "";
+					if (entity != null) {
+						byte[] content = EntityUtils.toByteArray(entity);
+						if (metrics != null)
+							metrics.responseReceived(method, content.length);
+						Header contentEncoding = response.getFirstHeader("Content-Encoding");
+						if (contentEncoding != null && "gzip".equalsIgnoreCase(contentEncoding.getValue()))
+							content = gunzip(content);
+						responseStr = new String(content, encoding);
+					}
+
+					if (statusCode != HttpStatus.SC_OK) {
+						// probably the API is down..
+						throw new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, statusCode);
+					}
+
+					future.complete(handler.handle(parse(responseStr)));
+				} catch (SaploClientException e) {
+					future.fail(e);
+				} catch (IOException e) {
+					future.fail(new SaploClientException(e));
+				} catch (RuntimeException e) {
+					// a malformed batch or result, the caller should not wait for a future never completed
+					future.fail(new SaploClientException(e));
+				}
+			}
+
+			public void failed(Exception ex) {
+				if (breaker != null)
+					breaker.onFailure(System.nanoTime() - start);
+				if (ex instanceof IOException)
+					future.fail(new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, 777));
+				else
+					future.fail(new SaploClientException(ex));
+			}
+
+			public void cancelled() {
+				if (breaker != null)
+					breaker.onIgnored();
+				future.cancel(true);
+			}
+		});
+
+		return future;
+	}
+
+	/*
+	 * gzip a request body at the configured level
+	 */
+	private byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+		new GzipRequestEntity(new ByteArrayEntity(bytes), config.getCompressionLevel()).writeTo(out);
+		return out.toByteArray();
+	}
+
+	/*
+	 * inflate a gzipped response body
+	 */
+	private static byte[] gunzip(byte[] content) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 4);
+		try {
+			byte[] buffer = new byte[8 * 1024];
+			for (int read; (read = in.read(buffer)) != -1; )
+				out.write(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	/*
+	 * parse the response string received from the API
+	 */
+	private static Object parse(String response) throws SaploClientException {
+		JSONTokener tokener = new JSONTokener(response);
+		Object rawResponseMessage;
+		try {
+			rawResponseMessage = tokener.nextValue();
+		} catch (JSONException e) {
+			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE);
+		}
+		if (null == rawResponseMessage)
+			throw new SaploClientException("Got invalid response type - " + rawResponseMessage);
+
+		return rawResponseMessage;
+	}
+
+	/*
+	 * converts a raw response into the result of a future
+	 */
+	private interface ResponseHandler<T> {
+		T handle(Object rawResponseMessage) throws SaploClientException;
+	}
+
+	public void setParams(String params) {
+		this.params = params;
+	}
+
+	/**
+	 * Set a proxy of type ClientProxy to use for this transport connections
+	 *
+	 * @param proxy
+	 */
+	public void setProxy(ClientProxy proxy) {
+		if(null == proxy)
+			return;
+
+		this.clientProxy = proxy;
+		this.proxy = new HttpHost(clientProxy.getHost(), clientProxy.getPort());
+		if(clientProxy.isSecure()) {
+			proxyCredentials = new BasicCredentialsProvider();
+			proxyCredentials.setCredentials(
+					new AuthScope(clientProxy.getHost(), clientProxy.getPort()),
+					new UsernamePasswordCredentials(clientProxy.getUsername(), clientProxy.getPassword()));
+			httpClient.setCredentialsProvider(proxyCredentials);
+		}
+
+		httpClient.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, this.proxy);
+	}
+
+	public int getLeasedConnections() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	public int getAvailableConnections() {
+		return connectionManager.getTotalStats().getAvailable();
+	}
+
+	public int getPendingConnections() {
+		return connectionManager.getTotalStats().getPending();
+	}
+
+	public int getMaxTotalConnections() {
+		return connectionManager.getMaxTotal();
+	}
+
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		connectionManager.setMaxTotal(maxTotalConnections);
+	}
+
+	public int getMaxEndpointConnections() {
+		return connectionManager.getMaxPerRoute(endpointRoute);
+	}
+
+	public void setMaxEndpointConnections(int maxEndpointConnections) {
+		connectionManager.setMaxPerRoute(endpointRoute, maxEndpointConnections);
+	}
+
+	public int getConnectTimeout() {
+		return HttpConnectionParams.getConnectionTimeout(httpClient.getParams());
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeout);
+	}
+
+	public int getSocketTimeout() {
+		return HttpConnectionParams.getSoTimeout(httpClient.getParams());
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeout);
+	}
+
+	/**
+	 * Stop the I/O reactor, close all the connections and clear the pool.
+	 */
+	public synchronized void close() {
+		IdleConnectionEvictor.cancel(evictor);
+		try {
+			httpClient.shutdown();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static class SessionFactoryImpl implements ConfigurableSessionFactory {
+		public Session newSession(URI uri, String params, ClientProxy proxy) {
+			return newSession(uri, params, proxy, null);
+		}
+
+		public Session newSession(URI uri, String params, ClientProxy proxy, TransportConfig config) {
+			// a new session, with its own connection pool and token, for every client
+			return new HTTPSessionAsync(uri, params, proxy, config);
+		}
+	}
+
+	/**
+	 * Register this transport in 'registry', for both http and https
+	 */
+	public static void register(TransportRegistry registry) {
+		SessionFactory factory = new SessionFactoryImpl();
+		registry.registerTransport("http", factory);
+		registry.registerTransport("https", factory);
+	}
+
+	/**
+	 * De-register this transport from the 'registry'
+	 */
+	public static void deregister(TransportRegistry registry) {
+		registry.deregisterTransport("http");
+		registry.deregisterTransport("https");
+	}
+
+}
@@ -1,7 +1,9 @@
 package com.saplo.api.client.session.impl;
 
 import java.net.URI;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.http.HttpStatus;
 
 import org.apache.wink.client.ClientConfig;
@@ -43,6 +45,25 @@ public class HTTPSessionWink implements Session {
 	}
 
 	public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message) throws SaploClientException {
+		Object rawResponseMessage = post(message.toString());
+
+		if (!(rawResponseMessage instanceof JSONObject))
+			throw new ClientError("Invalid response type - " + rawResponseMessage);
+
+		return new JSONRPCResponseObject((JSONObject) rawResponseMessage);
+	}
+
+	public List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> messages)
+			throws SaploClientException {
+		if (messages.isEmpty())
+			return new ArrayList<JSONRPCResponseObject>();
+
+		Object rawResponseMessage = post(JSONRPCRequestObject.getJSONArray(messages).toString());
+
+		return JSONRPCResponseObject.fromBatch(messages, rawResponseMessage);
+	}
+
+	private Object post(String body) throws SaploClientException {
 		RestClient client = new RestClient();
 
 		if (clientProxy != null) {
@@ -60,7 +81,7 @@ public class HTTPSessionWink implements Session {
 		}
 
 		Resource resource = client.resource(uri + "?" + params);
-		ClientResponse response = resource.post(message.toString());
+		ClientResponse response = resource.post(body);
 
 		String responseString = response.getEntity(String.class);
 		int statusCode = response.getStatusCode();
@@ -77,12 +98,11 @@ public class HTTPSessionWink implements Session {
 		} catch (JSONException e) {
 			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE);
 		}
-		JSONObject responseMessage = (JSONObject) rawResponseMessage;
 
-		if (responseMessage == null)
+		if (rawResponseMessage == null)
 			throw new ClientError("Invalid response type - " + rawResponseMessage);
 
-		return new JSONRPCResponseObject(responseMessage);
+		return rawResponseMessage;
 	}
 
 	public void setParams(String params) {
@@ -105,23 +125,11 @@ public class HTTPSessionWink implements Session {
 	}
 
 	static class SessionFactoryImpl implements SessionFactory {
-		volatile HashMap<URI, Session> sessionMap = new HashMap<URI, Session>();
-
 		public Session newSession(URI uri, String params, ClientProxy proxy) {
-			Session session = sessionMap.get(uri);
-			if (session == null) {
-				synchronized (sessionMap) {
-					session = sessionMap.get(uri);
-					if (session == null) {
-						if (proxy != null)
-							session = new HTTPSessionApache(uri, params, proxy);
-						else
-							session = new HTTPSessionApache(uri, params);
-						sessionMap.put(uri, session);
-					}
-				}
-			}
-			return session;
+			// a new session, with its own connection pool and token, for every client
+			if(proxy != null)
+				return new HTTPSessionApache(uri, params, proxy);
+			return new HTTPSessionApache(uri, params);
 		}
 	}
 
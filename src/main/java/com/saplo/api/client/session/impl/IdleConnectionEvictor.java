@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package com.saplo.api.client.session.impl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import com.saplo.api.client.TransportConfig;
+
+/**
+ * Closes expired and idle pooled connections in the background, before a 
+ * request gets one that the server has already dropped. A single daemon thread 
+ * is shared by the sessions of all the clients, and ends once the last of them is closed.
+ * 
+ * @author progre55
+ */
+class IdleConnectionEvictor {
+
+	static final String THREAD_NAME = "saplo-connection-evictor";
+
+	// guarded by the class, null while no session is evicting
+	private static ScheduledExecutorService scheduler;
+	private static int scheduled = 0;
+
+	/**
+	 * Run the given eviction task every {@link TransportConfig#getEvictionInterval()} ms
+	 * 
+	 * @param task - closes the expired and idle connections of a pool
+	 * @param config - the transport config
+	 * @return the scheduled task, to be cancelled when the session is closed, or null if disabled
+	 */
+	static synchronized ScheduledFuture<?> schedule(final Runnable task, TransportConfig config) {
+		if (config.getEvictionInterval() <= 0)
+			return null;
+
+		if (scheduler == null) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, THREAD_NAME);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		scheduled++;
+		return scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// keep evicting on the next run
+				}
+			}
+		}, config.getEvictionInterval(), config.getEvictionInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop running an eviction task, and the thread with the last one
+	 * 
+	 * @param eviction - the task returned by {@link #schedule(Runnable, TransportConfig)}, or null
+	 */
+	static synchronized void cancel(ScheduledFuture<?> eviction) {
+		if (eviction == null || !eviction.cancel(false))
+			return;
+		if (--scheduled == 0) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * A keep-alive strategy that honours the server's Keep-Alive header, 
+	 * and falls back to {@link TransportConfig#getKeepAlive()}
+	 * 
+	 * @param config - the transport config
+	 * @return the keep-alive strategy
+	 */
+	static ConnectionKeepAliveStrategy keepAliveStrategy(final TransportConfig config) {
+		return new ConnectionKeepAliveStrategy() {
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+				while (it.hasNext()) {
+					HeaderElement he = it.nextElement();
+					if (he.getValue() != null && "timeout".equalsIgnoreCase(he.getName())) {
+						try {
+							return Long.parseLong(he.getValue()) * 1000;
+						} catch (NumberFormatException e) {
+							// fall back to the configured one
+						}
+					}
+				}
+				return config.getKeepAlive();
+			}
+		};
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * 
+ */
+package com.saplo.api.client.session.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.util.ClientUtil;
+
+/**
+ * An {@link org.apache.http.HttpEntity} that writes JSON-RPC requests straight to the 
+ * connection stream. The params are walked and escaped into the generator's recycled 
+ * buffers, so a text body is never copied into an intermediate JSON String or byte array.
+ * 
+ * The entity is sent chunked, as its length is not known before it is written.
+ * 
+ * @author progre55
+ */
+public class JSONRPCRequestEntity extends AbstractHttpEntity {
+
+	private static final JsonFactory factory = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	private static final String encoding = "UTF-8";
+
+	private final List<JSONRPCRequestObject> requests;
+	private final boolean batch;
+
+	/**
+	 * @param request - the request to write
+	 */
+	public JSONRPCRequestEntity(JSONRPCRequestObject request) {
+		this(Collections.singletonList(request), false);
+	}
+
+	/**
+	 * @param requests - the requests to write as a JSON-RPC batch
+	 */
+	public JSONRPCRequestEntity(List<JSONRPCRequestObject> requests) {
+		this(requests, true);
+	}
+
+	private JSONRPCRequestEntity(List<JSONRPCRequestObject> requests, boolean batch) {
+		this.requests = requests;
+		this.batch = batch;
+		setContentType("application/json");
+		setContentEncoding(encoding);
+		setChunked(true);
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public long getContentLength() {
+		return -1;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * A rough size of the entity in characters, before escaping, without writing it.
+	 * Good enough to decide whether a request is worth compressing.
+	 * 
+	 * @return the estimated length
+	 */
+	public long getEstimatedLength() {
+		long length = 0;
+		for (JSONRPCRequestObject request : requests)
+			length += 48 + ClientUtil.estimateJSONLength(request.getMethod()) + ClientUtil.estimateJSONLength(request.getParams());
+		return length;
+	}
+
+	/**
+	 * Only meant for retries and debugging, as it buffers the whole entity.
+	 */
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+
+		JsonGenerator generator = factory.createGenerator(outstream);
+		try {
+			if (batch)
+				generator.writeStartArray();
+			for (JSONRPCRequestObject request : requests)
+				writeRequest(generator, request);
+			if (batch)
+				generator.writeEndArray();
+		} finally {
+			// flushes to the stream and gives the buffers back for reuse
+			generator.close();
+		}
+	}
+
+	/*
+	 * write a single request envelope, the same fields as JSONRPCRequestObject.getJSONObject()
+	 */
+	private static void writeRequest(JsonGenerator generator, JSONRPCRequestObject request) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("jsonrpc", request.getVersion());
+		if (request.getMethod() != null)
+			generator.writeStringField("method", request.getMethod());
+		if (request.getParams() != null) {
+			generator.writeFieldName("params");
+			writeValue(generator, request.getParams());
+		}
+		if (request.getId() != null)
+			generator.writeNumberField("id", request.getId());
+		generator.writeEndObject();
+	}
+
+	/*
+	 * write an org.json value
+	 */
+	private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+		if (value == null || JSONObject.NULL.equals(value)) {
+			generator.writeNull();
+		} else if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject)value;
+			generator.writeStartObject();
+			Iterator<?> keys = object.keys();
+			while (keys.hasNext()) {
+				String key = keys.next().toString();
+				generator.writeFieldName(key);
+				writeValue(generator, object.opt(key));
+			}
+			generator.writeEndObject();
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray)value;
+			generator.writeStartArray();
+			for (int i = 0; i < array.length(); i++)
+				writeValue(generator, array.opt(i));
+			generator.writeEndArray();
+		} else if (value instanceof String) {
+			generator.writeString((String)value);
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean)value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			generator.writeNumber(((Number)value).intValue());
+		} else if (value instanceof Long) {
+			generator.writeNumber((Long)value);
+		} else if (value instanceof Double || value instanceof Float) {
+			generator.writeNumber(((Number)value).doubleValue());
+		} else if (value instanceof BigInteger) {
+			generator.writeNumber((BigInteger)value);
+		} else if (value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal)value);
+		} else {
+			// anything else is put as a string, like JSONObject does
+			generator.writeString(value.toString());
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * 
+ */
+package com.saplo.api.client.session.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.JSONRPCErrorObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.session.ResultReader;
+
+/**
+ * Decodes JSON-RPC responses token by token off a stream. The "result" is either 
+ * given to a {@link ResultReader} to be bound straight to entities, or built into 
+ * {@link JSONObject}/{@link JSONArray} the same as {@link org.json.JSONTokener} would.
+ * 
+ * @author progre55
+ */
+public class JSONRPCResponseDecoder {
+
+	private static final JsonFactory factory = new JsonFactory();
+	private static final String encoding = "UTF-8";
+
+	/**
+	 * Reads a result as a {@link JSONObject}, a {@link JSONArray} or a plain value, 
+	 * the same as when no reader is given
+	 */
+	public static final ResultReader<Object> JSON_READER = new ResultReader<Object>() {
+		public Object read(JsonParser parser) throws IOException {
+			return readValue(parser);
+		}
+	};
+
+	/**
+	 * Decode a single JSON-RPC response
+	 * 
+	 * @param in - the response stream, read as UTF-8
+	 * @param reader - the reader to bind the result with, or null to build a JSON tree
+	 * @param keepRaw - whether to keep the raw message for {@link JSONRPCResponseObject#toString()}
+	 * @return the response object
+	 * @throws SaploClientException - if the response is malformed or could not be read
+	 */
+	public static JSONRPCResponseObject decode(InputStream in, ResultReader<?> reader, boolean keepRaw)
+			throws SaploClientException {
+		JsonParser parser = null;
+		try {
+			String raw = null;
+			if (keepRaw) {
+				raw = readFully(in);
+				parser = factory.createParser(raw);
+			} else {
+				parser = factory.createParser(in);
+			}
+
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				throw new JsonParseException("Expected a response object", parser.getCurrentLocation());
+
+			return readEnvelope(parser, reader, raw);
+		} catch (JsonProcessingException e) {
+			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE, e);
+		} catch (IOException e) {
+			throw new SaploClientException(e);
+		} finally {
+			close(parser);
+		}
+	}
+
+	/**
+	 * Decode a whole JSON value, e.g. the response to a batch call
+	 * 
+	 * @param in - the response stream, read as UTF-8
+	 * @return a {@link JSONObject}, a {@link JSONArray} or a plain value
+	 * @throws SaploClientException - if the response is malformed or could not be read
+	 */
+	public static Object decodeValue(InputStream in) throws SaploClientException {
+		JsonParser parser = null;
+		try {
+			parser = factory.createParser(in);
+			if (parser.nextToken() == null)
+				throw new JsonParseException("Empty response", parser.getCurrentLocation());
+
+			return readValue(parser);
+		} catch (JsonProcessingException e) {
+			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE, e);
+		} catch (IOException e) {
+			throw new SaploClientException(e);
+		} finally {
+			close(parser);
+		}
+	}
+
+	/**
+	 * Bind an already parsed result with a reader, for transports that do not stream
+	 * 
+	 * @param result - the result as returned by {@link JSONRPCResponseObject#getResult()}
+	 * @param reader - the reader to bind the result with
+	 * @return the bound result
+	 * @throws SaploClientException - if the result does not look as the reader expects
+	 */
+	public static Object bind(Object result, ResultReader<?> reader) throws SaploClientException {
+		JsonParser parser = null;
+		try {
+			String json = (result instanceof String ? JSONObject.quote((String)result) : String.valueOf(result));
+			parser = factory.createParser(json);
+			parser.nextToken();
+			return reader.read(parser);
+		} catch (IOException e) {
+			throw new SaploClientException(ResponseCodes.MSG_MALFORMED_RESPONSE, ResponseCodes.CODE_MALFORMED_RESPONSE, e);
+		} finally {
+			close(parser);
+		}
+	}
+
+	/*
+	 * read the fields of a response object, the parser is on its START_OBJECT
+	 */
+	private static JSONRPCResponseObject readEnvelope(JsonParser parser, ResultReader<?> reader, String raw)
+			throws IOException {
+		Integer id = 0;
+		String version = "";
+		Object result = null;
+		JSONRPCErrorObject error = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+
+			if ("result".equals(name)) {
+				if (token != JsonToken.VALUE_NULL)
+					result = (reader != null ? reader.read(parser) : readValue(parser));
+			} else if ("error".equals(name)) {
+				Object err = readValue(parser);
+				if (err instanceof JSONObject)
+					error = new JSONRPCErrorObject((JSONObject)err);
+			} else if ("id".equals(name)) {
+				id = parser.getValueAsInt(0);
+			} else if ("jsonrpc".equals(name)) {
+				version = parser.getValueAsString("");
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		return new JSONRPCResponseObject(id, version, result, error, raw);
+	}
+
+	/*
+	 * build a JSON value the same way JSONTokener does, the parser is on its first token
+	 */
+	static Object readValue(JsonParser parser) throws IOException {
+		try {
+			switch (parser.getCurrentToken()) {
+			case START_OBJECT:
+				JSONObject object = new JSONObject();
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = parser.getCurrentName();
+					parser.nextToken();
+					object.put(name, readValue(parser));
+				}
+				return object;
+			case START_ARRAY:
+				JSONArray array = new JSONArray();
+				while (parser.nextToken() != JsonToken.END_ARRAY)
+					array.put(readValue(parser));
+				return array;
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_NUMBER_INT:
+				switch (parser.getNumberType()) {
+				case INT:
+					return parser.getIntValue();
+				case LONG:
+					return parser.getLongValue();
+				default:
+					return parser.getBigIntegerValue();
+				}
+			case VALUE_NUMBER_FLOAT:
+				return parser.getDoubleValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return JSONObject.NULL;
+			default:
+				throw new JsonParseException("Unexpected token " + parser.getCurrentToken(), parser.getCurrentLocation());
+			}
+		} catch (JSONException e) {
+			throw new JsonParseException(e.getMessage(), parser.getCurrentLocation());
+		}
+	}
+
+	private static String readFully(InputStream in) throws IOException {
+		Reader reader = new InputStreamReader(in, encoding);
+		StringWriter out = new StringWriter();
+		char[] buffer = new char[4096];
+		int n;
+		while ((n = reader.read(buffer)) != -1)
+			out.write(buffer, 0, n);
+		return out.toString();
+	}
+
+	private static void close(JsonParser parser) {
+		if (parser == null)
+			return;
+		try {
+			parser.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import com.saplo.api.client.ClientMetrics;
+import com.saplo.api.client.util.CountingOutputStream;
+
+/**
+ * An {@link HttpEntity} that tells the {@link ClientMetrics} how many bytes 
+ * the wrapped entity wrote, every time it is written to the connection.
+ * 
+ * @author progre55
+ */
+public class MeteredRequestEntity extends HttpEntityWrapper {
+
+	private final ClientMetrics metrics;
+	private final String method;
+
+	/**
+	 * @param entity - the entity to count the bytes of
+	 * @param metrics - the metrics to tell
+	 * @param method - the API method, or {@link ClientMetrics#BATCH}
+	 */
+	public MeteredRequestEntity(HttpEntity entity, ClientMetrics metrics, String method) {
+		super(entity);
+		this.metrics = metrics;
+		this.method = method;
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+
+		CountingOutputStream counted = new CountingOutputStream(outstream);
+		try {
+			wrappedEntity.writeTo(counted);
+		} finally {
+			metrics.requestSent(method, counted.getCount());
+		}
+	}
+}
@@ -3,8 +3,12 @@
  */
 package com.saplo.api.client.util;
 
+import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 /**
  * A utility class. Well, as the name says.
  * 
@@ -26,4 +30,36 @@ public class ClientUtil {
 	public static synchronized int getNextId() {
 		return idCounter.incrementAndGet();
 	}
+
+	/**
+	 * A rough size in characters of an org.json value, before escaping, 
+	 * without serializing it. Strings and keys are counted, anything else is a guess.
+	 * 
+	 * @param value - a JSONObject, JSONArray, String or a plain value
+	 * @return the estimated length
+	 */
+	public static long estimateJSONLength(Object value) {
+		if (value == null)
+			return 4;
+		if (value instanceof String)
+			return ((String)value).length() + 2;
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject)value;
+			long length = 2;
+			Iterator<?> keys = object.keys();
+			while (keys.hasNext()) {
+				String key = keys.next().toString();
+				length += key.length() + 4 + estimateJSONLength(object.opt(key));
+			}
+			return length;
+		}
+		if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray)value;
+			long length = 2;
+			for (int i = 0; i < array.length(); i++)
+				length += 1 + estimateJSONLength(array.opt(i));
+			return length;
+		}
+		return 8;
+	}
 }
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that counts the bytes read through it
+ *
+ * @author progre55
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private long count = 0;
+
+	/**
+	 * @param in - the stream to read from
+	 */
+	public CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	public int read() throws IOException {
+		int b = in.read();
+		if (b >= 0)
+			count++;
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0)
+			count += n;
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long getCount() {
+		return count;
+	}
+}
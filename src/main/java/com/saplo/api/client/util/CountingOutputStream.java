@@ -0,0 +1,42 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} that counts the bytes written through it
+ *
+ * @author progre55
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count = 0;
+
+	/**
+	 * @param out - the stream to write to
+	 */
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+}
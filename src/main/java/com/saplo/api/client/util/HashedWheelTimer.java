@@ -0,0 +1,235 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer for a large number of short tasks that do not need to run on time to the millisecond,
+ * such as re-polling results the API is still processing.
+ * The tasks are kept in a wheel of buckets, one per tick, and a single daemon thread
+ * moves over a bucket every tick and runs the tasks due in it, so a pending task costs
+ * a small object rather than a thread, and scheduling or cancelling one is O(1).
+ *
+ * The tasks run on the timer thread, so they should only hand the real work over
+ * to something else, e.g. send an async request or submit to an executor.
+ * A task runs up to one tick late, never early.
+ *
+ * @author progre55
+ */
+public class HashedWheelTimer {
+
+	private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	private final String name;
+	private final long tickNanos;
+	private final LinkedList<Timeout>[] wheel;
+	private final int mask;
+
+	// the timeouts scheduled since the last tick, moved onto the wheel by the timer thread
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private volatile Thread worker;
+	private volatile boolean stopped = false;
+	private long startTime;
+	private long tick = 0;
+
+	/**
+	 * @param name - the name of the timer thread
+	 * @param tickDuration - how often the timer moves to the next bucket
+	 * @param unit - the unit of tickDuration
+	 * @param wheelSize - the number of buckets, rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("tickDuration should be positive");
+		if (wheelSize <= 0 || wheelSize > (1 << 30))
+			throw new IllegalArgumentException("wheelSize should be between 1 and 2^30");
+
+		int size = 1;
+		while (size < wheelSize)
+			size <<= 1;
+
+		this.name = name;
+		this.tickNanos = unit.toNanos(tickDuration);
+		@SuppressWarnings("unchecked")
+		LinkedList<Timeout>[] buckets = (LinkedList<Timeout>[]) new LinkedList<?>[size];
+		for (int i = 0; i < size; i++)
+			buckets[i] = new LinkedList<Timeout>();
+		this.wheel = buckets;
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Run a task once, after the given delay. The timer thread is started on the first call.
+	 *
+	 * @param task - the task to run, on the timer thread
+	 * @param delay - how long to wait before running it
+	 * @param unit - the unit of delay
+	 * @return the scheduled timeout, to cancel the task with
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (stopped)
+			throw new IllegalStateException("the timer has been stopped");
+		start();
+
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+		pending.incrementAndGet();
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stop the timer thread. The tasks that have not run yet never will.
+	 */
+	public void stop() {
+		stopped = true;
+		Thread t = worker;
+		if (t != null)
+			t.interrupt();
+	}
+
+	/**
+	 * @return the number of tasks that have neither run nor been cancelled yet
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	private void start() {
+		if (worker != null)
+			return;
+		synchronized (this) {
+			if (worker != null)
+				return;
+			startTime = System.nanoTime();
+			Thread t = new Thread(new Worker(), name);
+			t.setDaemon(true);
+			t.start();
+			worker = t;
+		}
+	}
+
+	private class Worker implements Runnable {
+		public void run() {
+			while (!stopped) {
+				long deadline = startTime + (tick + 1) * tickNanos;
+				long sleep = deadline - System.nanoTime();
+				if (sleep > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(sleep);
+					} catch (InterruptedException e) {
+						continue;
+					}
+				}
+
+				transferAdded();
+				expire(wheel[(int)(tick & mask)]);
+				tick++;
+			}
+		}
+
+		/*
+		 * put the new timeouts into the bucket of the tick they are due on
+		 */
+		private void transferAdded() {
+			Timeout timeout;
+			while ((timeout = added.poll()) != null) {
+				if (timeout.isCancelled())
+					continue;
+
+				long ticks = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+				// a timeout already due goes into the current bucket
+				long due = Math.max(ticks, tick);
+				timeout.rounds = (due - tick) / wheel.length;
+				wheel[(int)(due & mask)].add(timeout);
+			}
+		}
+
+		/*
+		 * run the timeouts of a bucket that are in this round, the later ones wait for the next
+		 */
+		private void expire(LinkedList<Timeout> bucket) {
+			Iterator<Timeout> it = bucket.iterator();
+			while (it.hasNext()) {
+				Timeout timeout = it.next();
+				if (timeout.isCancelled()) {
+					it.remove();
+				} else if (timeout.rounds > 0) {
+					timeout.rounds--;
+				} else {
+					it.remove();
+					timeout.expire();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A task scheduled with {@link HashedWheelTimer#newTimeout(Runnable, long, TimeUnit)}
+	 */
+	public final class Timeout {
+		private static final int WAITING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		// only touched by the timer thread
+		private long rounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel the task, if it has not run yet. It is dropped from the wheel on its tick.
+		 *
+		 * @return true if this call cancelled the task
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(WAITING, CANCELLED))
+				return false;
+			pending.decrementAndGet();
+			return true;
+		}
+
+		/**
+		 * @return whether the task has been cancelled
+		 */
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		/**
+		 * @return whether the task has run, or is running
+		 */
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(WAITING, EXPIRED))
+				return;
+			pending.decrementAndGet();
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.warn("A task of the timer {} failed", name, e);
+			}
+		}
+	}
+}
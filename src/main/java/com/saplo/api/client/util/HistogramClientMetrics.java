@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.saplo.api.client.ClientMetrics;
+
+/**
+ * A {@link ClientMetrics} that keeps, for every API method, a {@link LatencyHistogram} of its calls,
+ * the number of calls in flight, the bytes sent and received, and the number of errors by code.
+ * Read them with {@link #getMethodMetrics(String)}, e.g. from a reporter that polls them every minute.
+ *
+ * @author progre55
+ */
+public class HistogramClientMetrics implements ClientMetrics {
+
+	private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+	public void callStarted(String method) {
+		metricsOf(method).inFlight.incrementAndGet();
+	}
+
+	public void callFinished(String method, long latency, int code) {
+		MethodMetrics metrics = metricsOf(method);
+		metrics.inFlight.decrementAndGet();
+		metrics.latency.record(latency);
+		if (code != OK)
+			metrics.countError(code);
+	}
+
+	public void requestSent(String method, long bytes) {
+		metricsOf(method).bytesSent.addAndGet(bytes);
+	}
+
+	public void responseReceived(String method, long bytes) {
+		metricsOf(method).bytesReceived.addAndGet(bytes);
+	}
+
+	/**
+	 * @return the methods that have been called so far
+	 */
+	public Set<String> getMethods() {
+		return Collections.unmodifiableSet(methods.keySet());
+	}
+
+	/**
+	 * @param method - the API method, or {@link ClientMetrics#BATCH} for the bytes of the batches
+	 * @return the metrics of the method, or null if it has not been called
+	 */
+	public MethodMetrics getMethodMetrics(String method) {
+		return methods.get(method);
+	}
+
+	private MethodMetrics metricsOf(String method) {
+		MethodMetrics metrics = methods.get(method);
+		if (metrics == null) {
+			MethodMetrics created = new MethodMetrics();
+			metrics = methods.putIfAbsent(method, created);
+			if (metrics == null)
+				metrics = created;
+		}
+		return metrics;
+	}
+
+	/**
+	 * The metrics of the calls of one API method
+	 */
+	public static class MethodMetrics {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicLong bytesSent = new AtomicLong();
+		private final AtomicLong bytesReceived = new AtomicLong();
+		private final AtomicLong errorCount = new AtomicLong();
+		private final ConcurrentHashMap<Integer, AtomicLong> errors = new ConcurrentHashMap<Integer, AtomicLong>();
+
+		/**
+		 * @return the latencies of the finished calls, in nano seconds
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return the number of finished calls
+		 */
+		public long getCallCount() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return the number of calls in flight right now
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * @return the bytes of the request bodies sent
+		 */
+		public long getBytesSent() {
+			return bytesSent.get();
+		}
+
+		/**
+		 * @return the bytes of the response bodies received
+		 */
+		public long getBytesReceived() {
+			return bytesReceived.get();
+		}
+
+		/**
+		 * @return the number of calls that finished with an error
+		 */
+		public long getErrorCount() {
+			return errorCount.get();
+		}
+
+		/**
+		 * @return the number of calls that finished with an error, by the code of the error
+		 */
+		public Map<Integer, Long> getErrorCounts() {
+			Map<Integer, Long> counts = new HashMap<Integer, Long>();
+			for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet())
+				counts.put(entry.getKey(), entry.getValue().get());
+			return counts;
+		}
+
+		private void countError(int code) {
+			errorCount.incrementAndGet();
+			AtomicLong counter = errors.get(code);
+			if (counter == null) {
+				AtomicLong created = new AtomicLong();
+				counter = errors.putIfAbsent(code, created);
+				if (counter == null)
+					counter = created;
+			}
+			counter.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in the style of HdrHistogram: the values are counted in buckets
+ * that double in width with every power of two, each split into 64 equal sub-buckets,
+ * so any value is kept to within 1.6% of itself whatever its magnitude.
+ * A value is recorded with a couple of bit operations and one atomic increment, without locks
+ * or allocation, so it can be done on every call.
+ *
+ * The values are nano seconds, up to an hour, the longer ones are counted as an hour.
+ * The percentiles are read while values are still being recorded, so they are a close
+ * estimate rather than an exact snapshot.
+ *
+ * @author progre55
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+	private static final long HIGHEST_VALUE = TimeUnit.HOURS.toNanos(1);
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(HIGHEST_VALUE) + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Count a value
+	 *
+	 * @param latency - the value, in nano seconds
+	 */
+	public void record(long latency) {
+		long value = Math.min(Math.max(0, latency), HIGHEST_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+			;
+	}
+
+	/**
+	 * @return the number of values counted
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean of the values in nano seconds, 0 if there are none
+	 */
+	public double getMean() {
+		long n = count.get();
+		return (n > 0 ? (double)sum.get() / n : 0);
+	}
+
+	/**
+	 * @return the highest value in nano seconds, 0 if there are none
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile - between 0 and 1, e.g. 0.99 for the p99
+	 * @return the value that the given share of the values are at or below, in nano seconds, 0 if there are none
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 1)
+			throw new IllegalArgumentException("percentile should be between 0 and 1");
+
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++)
+			total += counts.get(i);
+		if (total == 0)
+			return 0;
+
+		long wanted = Math.max(1, (long)Math.ceil(percentile * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= wanted)
+				return Math.min(highestValueAt(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Drop all the values counted so far
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/*
+	 * the bucket of a value: the values below SUB_BUCKETS each have their own, the higher ones
+	 * go by their top SUB_BUCKET_BITS - 1 bits after the leading one
+	 */
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int)value;
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int)((value >> shift) - HALF_SUB_BUCKETS);
+	}
+
+	/*
+	 * the highest value that goes into a bucket
+	 */
+	private static long highestValueAt(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
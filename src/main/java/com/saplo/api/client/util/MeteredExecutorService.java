@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ExecutorService} that runs its tasks on a given executor and
+ * keeps count of them, so the queue depth and the active count can be
+ * monitored whatever kind of executor is behind it.
+ *
+ * @author progre55
+ */
+public class MeteredExecutorService extends AbstractExecutorService {
+
+	private final ExecutorService delegate;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param delegate - the executor to run the tasks on
+	 */
+	public MeteredExecutorService(ExecutorService delegate) {
+		this.delegate = delegate;
+	}
+
+	public void execute(final Runnable command) {
+		queued.incrementAndGet();
+		try {
+			delegate.execute(new Runnable() {
+				public void run() {
+					queued.decrementAndGet();
+					active.incrementAndGet();
+					try {
+						command.run();
+					} finally {
+						active.decrementAndGet();
+						completed.incrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queued.decrementAndGet();
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of tasks submitted but not started yet
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of tasks running right now
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return the number of tasks finished so far
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * @return the number of tasks the executor has refused so far
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the executor the tasks run on
+	 */
+	public ExecutorService getDelegate() {
+		return delegate;
+	}
+
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	public List<Runnable> shutdownNow() {
+		List<Runnable> neverRun = delegate.shutdownNow();
+		queued.addAndGet(-neverRun.size());
+		return neverRun;
+	}
+
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+}
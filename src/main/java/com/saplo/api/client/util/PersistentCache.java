@@ -0,0 +1,492 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of API results on disk, that outlives the JVM.
+ *
+ * The results are appended to memory-mapped segment files in a directory. When a segment
+ * is full, a new one is started, and the oldest segments are compacted once most of what
+ * they hold has been replaced, invalidated or has expired: the results still valid are
+ * copied to the newest segment and the old file is deleted.
+ *
+ * Only an index from a 64-bit hash of each key to where its result is stored is kept
+ * on the heap. The keys are stored with the results and checked on every read.
+ * The segments are scanned to rebuild the index on first use, not when the cache is created,
+ * and a record torn by a crash is found by its checksum and dropped with the rest of its segment.
+ *
+ * Record layout: length (int), CRC32 of the rest (int), expiry time (long, 0 for a removal),
+ * key length (short), key (UTF-8), value.
+ *
+ * @author progre55
+ */
+public class PersistentCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistentCache.class);
+
+	private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 2;
+	// compact the oldest segment once less than this share of it is live
+	private static final double COMPACTION_THRESHOLD = 0.5;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+
+	private final File directory;
+	private final long ttl;
+	private final int segmentSize;
+
+	// by segment number, the last one is the one appended to
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	// key hash -> segment number << 32 | offset
+	private final Map<Long, Long> index = new HashMap<Long, Long>();
+	private boolean open = false;
+	private boolean compacting = false;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * @param directory - the directory to keep the segment files in, created if missing
+	 * @param ttl - how long a result is valid after it is put
+	 * @param unit - the unit of ttl
+	 */
+	public PersistentCache(File directory, long ttl, TimeUnit unit) {
+		this(directory, ttl, unit, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param directory - the directory to keep the segment files in, created if missing
+	 * @param ttl - how long a result is valid after it is put
+	 * @param unit - the unit of ttl
+	 * @param segmentSize - the size of a segment file in bytes, which is also the max size of a result
+	 */
+	public PersistentCache(File directory, long ttl, TimeUnit unit, int segmentSize) {
+		if (ttl <= 0)
+			throw new IllegalArgumentException("ttl should be positive");
+		if (segmentSize < 1024)
+			throw new IllegalArgumentException("segmentSize should be at least 1024 bytes");
+
+		this.directory = directory;
+		this.ttl = unit.toMillis(ttl);
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * @param key - the key to look up
+	 * @return the cached result, or null if there is none or it has expired
+	 */
+	public synchronized byte[] get(String key) {
+		ensureOpen();
+
+		byte[] keyBytes = utf8(key);
+		Long location = index.get(hash(keyBytes));
+		if (location == null) {
+			missCount++;
+			return null;
+		}
+
+		Segment segment = segments.get(segmentOf(location));
+		ByteBuffer record = segment.record(offsetOf(location));
+		long expires = record.getLong(8);
+		if (expires <= System.currentTimeMillis()) {
+			index.remove(hash(keyBytes));
+			segment.liveBytes -= record.limit();
+			missCount++;
+			return null;
+		}
+		if (!Arrays.equals(keyBytes, keyOf(record))) {
+			// another key with the same hash
+			missCount++;
+			return null;
+		}
+
+		byte[] value = new byte[record.limit() - HEADER_SIZE - keyBytes.length];
+		record.position(HEADER_SIZE + keyBytes.length);
+		record.get(value);
+		hitCount++;
+		return value;
+	}
+
+	/**
+	 * Cache a result, replacing the previous one with the same key.
+	 * A result too big for a segment is not cached.
+	 *
+	 * @param key - the key to cache the result with
+	 * @param value - the result to cache
+	 */
+	public synchronized void put(String key, byte[] value) {
+		ensureOpen();
+		append(utf8(key), value, System.currentTimeMillis() + ttl);
+	}
+
+	/**
+	 * @param key - the key of the result to drop
+	 */
+	public synchronized void invalidate(String key) {
+		ensureOpen();
+
+		byte[] keyBytes = utf8(key);
+		if (index.containsKey(hash(keyBytes)))
+			append(keyBytes, new byte[0], 0);
+	}
+
+	/**
+	 * Drop all the cached results and delete the segment files
+	 */
+	public synchronized void clear() {
+		ensureOpen();
+
+		for (Segment segment : segments.values())
+			segment.delete();
+		segments.clear();
+		index.clear();
+	}
+
+	/**
+	 * Compact the oldest segments, as long as less than half of what they hold is live.
+	 * This is done on its own whenever a segment gets full.
+	 */
+	public synchronized void compact() {
+		ensureOpen();
+
+		compacting = true;
+		try {
+			compactOldest();
+		} finally {
+			compacting = false;
+		}
+	}
+
+	/*
+	 * copy the live records of the oldest segments to the newest one and delete them
+	 */
+	private void compactOldest() {
+		while (segments.size() > 1) {
+			Segment oldest = segments.firstEntry().getValue();
+			if (oldest.liveBytes >= oldest.writePosition * COMPACTION_THRESHOLD)
+				return;
+
+			long now = System.currentTimeMillis();
+			int offset = 0;
+			ByteBuffer record;
+			while ((record = oldest.next(offset)) != null) {
+				long location = location(oldest.number, offset);
+				offset += record.limit();
+
+				byte[] keyBytes = keyOf(record);
+				Long indexed = index.get(hash(keyBytes));
+				// only what is still live is copied, removals are not needed any more as nothing is older
+				if (indexed == null || indexed.longValue() != location)
+					continue;
+				long expires = record.getLong(8);
+				if (expires <= now) {
+					index.remove(hash(keyBytes));
+					continue;
+				}
+
+				byte[] value = new byte[record.limit() - HEADER_SIZE - keyBytes.length];
+				record.position(HEADER_SIZE + keyBytes.length);
+				record.get(value);
+				append(keyBytes, value, expires);
+			}
+
+			segments.remove(oldest.number);
+			oldest.delete();
+		}
+	}
+
+	/**
+	 * Write what is cached to the disk and close the segment files.
+	 * The cache is opened again on its next use.
+	 */
+	public synchronized void close() {
+		for (Segment segment : segments.values())
+			segment.close();
+		segments.clear();
+		index.clear();
+		open = false;
+	}
+
+	/**
+	 * @return the number of lookups that found a valid result
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing, or an expired result
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of cached results, including the expired ones not dropped yet
+	 */
+	public synchronized int getSize() {
+		ensureOpen();
+		return index.size();
+	}
+
+	/**
+	 * @return the number of segment files
+	 */
+	public synchronized int getSegmentCount() {
+		ensureOpen();
+		return segments.size();
+	}
+
+	/*
+	 * scan the segment files and build the index, on first use
+	 */
+	private void ensureOpen() {
+		if (open)
+			return;
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IllegalStateException("Could not create the cache directory " + directory);
+
+		File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		for (File file : files) {
+			String number = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+			try {
+				segments.put(Integer.valueOf(number), null);
+			} catch (NumberFormatException e) {
+				logger.warn("Skipping {}, not a cache segment", file);
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		for (Integer number : new ArrayList<Integer>(segments.keySet())) {
+			Segment segment = new Segment(number);
+			segments.put(number, segment);
+
+			int offset = 0;
+			ByteBuffer record;
+			while ((record = segment.next(offset)) != null) {
+				CRC32 crc = new CRC32();
+				byte[] checked = new byte[record.limit() - 8];
+				record.position(8);
+				record.get(checked);
+				crc.update(checked);
+				if ((int)crc.getValue() != record.getInt(4)) {
+					logger.warn("Dropping the torn end of cache segment {} at {}", number, offset);
+					segment.erase(offset);
+					break;
+				}
+
+				long hash = hash(keyOf(record));
+				Long previous = index.remove(hash);
+				if (previous != null)
+					released(previous);
+				long expires = record.getLong(8);
+				if (expires > now) {
+					index.put(hash, location(number, offset));
+					segment.liveBytes += record.limit();
+				}
+				offset += record.limit();
+			}
+			segment.writePosition = offset;
+		}
+
+		open = true;
+	}
+
+	/*
+	 * append a record to the newest segment and point the index to it, 0 expiry for a removal
+	 */
+	private void append(byte[] keyBytes, byte[] value, long expires) {
+		int length = HEADER_SIZE + keyBytes.length + value.length;
+		if (length > segmentSize)
+			return;
+
+		Segment segment = (segments.isEmpty() ? null : segments.lastEntry().getValue());
+		boolean full = (segment != null && segment.writePosition + length > segmentSize);
+		if (segment == null || full) {
+			int number = (segment == null ? 0 : segment.number + 1);
+			segment = new Segment(number);
+			segments.put(number, segment);
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(length).putInt(0).putLong(expires).putShort((short)keyBytes.length).put(keyBytes).put(value);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, length - 8);
+		record.putInt(4, (int)crc.getValue());
+		record.flip();
+
+		int offset = segment.writePosition;
+		segment.append(record);
+
+		long hash = hash(keyBytes);
+		Long previous = index.remove(hash);
+		if (previous != null)
+			released(previous);
+		if (expires > 0) {
+			index.put(hash, location(segment.number, offset));
+			segment.liveBytes += length;
+		}
+
+		if (full && !compacting)
+			compact();
+	}
+
+	/*
+	 * take a replaced record off the live bytes of its segment
+	 */
+	private void released(long location) {
+		Segment segment = segments.get(segmentOf(location));
+		segment.liveBytes -= segment.record(offsetOf(location)).limit();
+	}
+
+	private static byte[] keyOf(ByteBuffer record) {
+		byte[] keyBytes = new byte[record.getShort(16)];
+		record.position(HEADER_SIZE);
+		record.get(keyBytes);
+		return keyBytes;
+	}
+
+	private static long location(int segment, int offset) {
+		return ((long)segment << 32) | (offset & 0xFFFFFFFFL);
+	}
+
+	private static int segmentOf(long location) {
+		return (int)(location >>> 32);
+	}
+
+	private static int offsetOf(long location) {
+		return (int)location;
+	}
+
+	/*
+	 * 64-bit FNV-1a of the key bytes
+	 */
+	private static long hash(byte[] keyBytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : keyBytes) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static byte[] utf8(String key) {
+		try {
+			byte[] keyBytes = key.getBytes("UTF-8");
+			if (keyBytes.length > Short.MAX_VALUE)
+				throw new IllegalArgumentException("Key too long");
+			return keyBytes;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * a segment file, mapped as a whole
+	 */
+	private class Segment {
+		final int number;
+		final File file;
+		RandomAccessFile raf;
+		MappedByteBuffer buffer;
+		int writePosition = 0;
+		long liveBytes = 0;
+
+		Segment(int number) {
+			this.number = number;
+			this.file = new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+			try {
+				raf = new RandomAccessFile(file, "rw");
+				// a new file is grown to the full size, and reads as zeros past the last record
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("Could not map the cache segment " + file, e);
+			}
+		}
+
+		/*
+		 * the record at the given offset, as a buffer of its own length
+		 */
+		ByteBuffer record(int offset) {
+			ByteBuffer record = buffer.duplicate();
+			record.position(offset);
+			record.limit(offset + record.getInt(offset));
+			return record.slice();
+		}
+
+		/*
+		 * the record at the given offset, or null past the last one
+		 */
+		ByteBuffer next(int offset) {
+			if (offset + HEADER_SIZE > segmentSize)
+				return null;
+			int length = buffer.getInt(offset);
+			if (length < HEADER_SIZE || offset + length > segmentSize)
+				return null;
+			return record(offset);
+		}
+
+		/*
+		 * zero everything from the given offset on, so what is appended there is not mixed up with old bytes
+		 */
+		void erase(int offset) {
+			ByteBuffer target = buffer.duplicate();
+			target.position(offset);
+			byte[] zeros = new byte[Math.min(8192, segmentSize - offset)];
+			while (target.hasRemaining())
+				target.put(zeros, 0, Math.min(zeros.length, target.remaining()));
+		}
+
+		void append(ByteBuffer record) {
+			ByteBuffer target = buffer.duplicate();
+			target.position(writePosition);
+			target.put(record);
+			writePosition = target.position();
+		}
+
+		void close() {
+			if (buffer != null)
+				buffer.force();
+			buffer = null;
+			try {
+				if (raf != null)
+					raf.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the cache segment " + file, e);
+			}
+			raf = null;
+		}
+
+		void delete() {
+			close();
+			if (!file.delete())
+				logger.warn("Could not delete the cache segment {}", file);
+		}
+	}
+}
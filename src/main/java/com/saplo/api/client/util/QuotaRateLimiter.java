@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.saplo.api.client.entity.SaploAccount;
+import com.saplo.api.client.entity.SaploAccount.ApiCalls;
+
+/**
+ * A token bucket that keeps the API calls of an account within its quota.
+ * Once updated with the {@link ApiCalls} of the account, the calls left are spread evenly
+ * over the time left until the quota resets, so a long batch job slows down rather
+ * than running into {@link com.saplo.api.client.ResponseCodes#CODE_API_LIMIT_REACHED}.
+ * Until then, the rate given to the constructor is used.
+ *
+ * Each method costs 1 permit by default, see {@link #setWeight(String, int)}.
+ * The permits can be waited for with {@link #acquire(int)}, or just tried with {@link #tryAcquire(int)}.
+ * A caller that waits reserves its permits right away, so the callers are served in order.
+ *
+ * @author progre55
+ */
+public class QuotaRateLimiter {
+
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long MONTH = 30 * 24 * HOUR;
+
+	private final double burstSeconds;
+	private final Map<String, Integer> weights = new ConcurrentHashMap<String, Integer>();
+
+	// permits per nano second
+	private double rate;
+	private double capacity;
+	// may go below zero, for the permits reserved by the waiting callers
+	private double permits;
+	private long lastRefill;
+
+	private volatile long lastUpdate = 0;
+	private volatile boolean stale = true;
+
+	/**
+	 * @param permitsPerSecond - the rate to use until the limiter is updated from the account
+	 * @param burstSeconds - how many seconds worth of permits can be saved up for a burst
+	 */
+	public QuotaRateLimiter(double permitsPerSecond, double burstSeconds) {
+		if (permitsPerSecond <= 0)
+			throw new IllegalArgumentException("permitsPerSecond should be positive");
+		if (burstSeconds <= 0)
+			throw new IllegalArgumentException("burstSeconds should be positive");
+
+		this.burstSeconds = burstSeconds;
+		this.lastRefill = System.nanoTime();
+		setRate(permitsPerSecond, Double.MAX_VALUE);
+		this.permits = capacity;
+	}
+
+	/**
+	 * Set the rate from the calls the account has left: the lower of the rate that would use
+	 * up the hourly calls by the end of the hour and the monthly ones by the end of the month.
+	 *
+	 * @param apiCalls - the API calls of the account, see {@link SaploAccount#getApiCalls()}
+	 */
+	public void update(ApiCalls apiCalls) {
+		long now = System.currentTimeMillis();
+		double perSecond = Double.MAX_VALUE;
+		int left = Integer.MAX_VALUE;
+		if (apiCalls.getLimitHour() > 0) {
+			perSecond = Math.min(perSecond, spread(apiCalls.getLeftHour(), apiCalls.getResetHour(), HOUR, now));
+			left = Math.min(left, apiCalls.getLeftHour());
+		}
+		if (apiCalls.getLimitMonth() > 0) {
+			perSecond = Math.min(perSecond, spread(apiCalls.getLeftMonth(), apiCalls.getResetMonth(), MONTH, now));
+			left = Math.min(left, apiCalls.getLeftMonth());
+		}
+
+		synchronized (this) {
+			refill(System.nanoTime());
+			if (perSecond != Double.MAX_VALUE)
+				setRate(perSecond, Math.max(1, left));
+			// the calls made since the quota was read are not counted in it
+			permits = Math.min(Math.min(permits, capacity), Math.max(0, left));
+		}
+		lastUpdate = now;
+		stale = false;
+	}
+
+	/**
+	 * Take all the saved permits, e.g. when the API says the limit has been reached
+	 * although the limiter did not know. The limiter is marked to be updated again.
+	 */
+	public synchronized void drain() {
+		refill(System.nanoTime());
+		permits = Math.min(permits, 0);
+		stale = true;
+	}
+
+	/**
+	 * @param maxAge - how long an update is good for
+	 * @param unit - the unit of maxAge
+	 * @return whether the limiter has not been updated within maxAge, or has been drained since
+	 */
+	public boolean needsUpdate(long maxAge, TimeUnit unit) {
+		return stale || System.currentTimeMillis() - lastUpdate > unit.toMillis(maxAge);
+	}
+
+	/**
+	 * Set how many permits a method costs, e.g. 0 for the ones that are not counted
+	 *
+	 * @param method - the API method, e.g. text.tags
+	 * @param weight - the permits it costs
+	 */
+	public void setWeight(String method, int weight) {
+		if (weight < 0)
+			throw new IllegalArgumentException("weight should not be negative");
+		weights.put(method, weight);
+	}
+
+	/**
+	 * @param method - the API method
+	 * @return the permits it costs, 1 unless set otherwise
+	 */
+	public int getWeight(String method) {
+		Integer weight = weights.get(method);
+		return (weight != null ? weight : 1);
+	}
+
+	/**
+	 * Take the given permits, waiting for them as long as needed
+	 *
+	 * @param count - the number of permits
+	 * @throws InterruptedException
+	 */
+	public void acquire(int count) throws InterruptedException {
+		TimeUnit.NANOSECONDS.sleep(reserve(count));
+	}
+
+	/**
+	 * Take the given permits if they are available right away
+	 *
+	 * @param count - the number of permits
+	 * @return whether they were taken
+	 */
+	public boolean tryAcquire(int count) {
+		if (count <= 0)
+			return true;
+		synchronized (this) {
+			refill(System.nanoTime());
+			if (permits < count)
+				return false;
+			permits -= count;
+			return true;
+		}
+	}
+
+	/**
+	 * Take the given permits if they are available within the timeout, waiting for them if needed
+	 *
+	 * @param count - the number of permits
+	 * @param timeout - the longest time to wait
+	 * @param unit - the unit of timeout
+	 * @return whether they were taken
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquire(int count, long timeout, TimeUnit unit) throws InterruptedException {
+		if (count <= 0)
+			return true;
+		long wait;
+		synchronized (this) {
+			refill(System.nanoTime());
+			wait = waitFor(count);
+			if (wait > unit.toNanos(timeout))
+				return false;
+			permits -= count;
+		}
+		TimeUnit.NANOSECONDS.sleep(wait);
+		return true;
+	}
+
+	/**
+	 * Take the given permits now, even if they are not there yet, for a caller that
+	 * waits for them without blocking a thread, e.g. on a timer.
+	 *
+	 * @param count - the number of permits
+	 * @return how long to wait before using them, in nano seconds
+	 */
+	public long reserve(int count) {
+		if (count <= 0)
+			return 0;
+		synchronized (this) {
+			refill(System.nanoTime());
+			long wait = waitFor(count);
+			permits -= count;
+			return wait;
+		}
+	}
+
+	/**
+	 * @return the current rate, in permits per second
+	 */
+	public synchronized double getRate() {
+		return rate * TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return the permits that can be taken right away, below zero if some have been reserved ahead
+	 */
+	public synchronized double getAvailablePermits() {
+		refill(System.nanoTime());
+		return permits;
+	}
+
+	/*
+	 * the calls left per second until the quota resets, or at least one call for the rest of the window
+	 */
+	private static double spread(int left, Date reset, long window, long now) {
+		long millisLeft = (reset != null ? reset.getTime() - now : window);
+		if (millisLeft <= 0)
+			millisLeft = 1000;
+		return Math.max(left, 1) * 1000.0 / millisLeft;
+	}
+
+	private void setRate(double permitsPerSecond, double maxCapacity) {
+		rate = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		capacity = Math.min(maxCapacity, Math.max(1, permitsPerSecond * burstSeconds));
+	}
+
+	private void refill(long now) {
+		if (now > lastRefill) {
+			permits = Math.min(capacity, permits + (now - lastRefill) * rate);
+			lastRefill = now;
+		}
+	}
+
+	/*
+	 * how long until the permits are there, in nano seconds
+	 */
+	private long waitFor(int count) {
+		if (permits >= count)
+			return 0;
+		return (long)Math.ceil((count - permits) / rate);
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * A read-through cache for API results, such as the ones of text.get and collection.get.
+ * Entries live for a fixed time after they are put, and the least recently used ones
+ * are evicted when the total weight, i.e. the estimated size of the cached JSON in characters,
+ * goes over the limit. A single entry heavier than the limit is not cached at all.
+ *
+ * The cached JSON objects are shared between the callers, so they should only be read.
+ *
+ * A result read while an update is in flight could be put after the update has dropped
+ * the stale one. To keep it out, take the {@link #getGeneration()} before sending the read,
+ * and put the result with {@link #put(String, JSONObject, long)}, which skips it if anything
+ * has been dropped since.
+ *
+ * @author progre55
+ */
+public class ResponseCache {
+
+	private final long ttl;
+	private final long maxWeight;
+
+	// access ordered, so the eldest entry is the least recently used one
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long weight = 0;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	// bumped whenever results are dropped by the callers
+	private long generation = 0;
+
+	/**
+	 * @param ttl - how long an entry is valid after it is put
+	 * @param unit - the unit of ttl
+	 * @param maxWeight - the max estimated size of all the cached results, in characters
+	 */
+	public ResponseCache(long ttl, TimeUnit unit, long maxWeight) {
+		if (ttl <= 0)
+			throw new IllegalArgumentException("ttl should be positive");
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight should be positive");
+
+		this.ttl = unit.toMillis(ttl);
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @param key - the key to look up
+	 * @return the cached result, or null if there is none or it has expired
+	 */
+	public synchronized JSONObject get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expires <= System.currentTimeMillis()) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.value;
+	}
+
+	/**
+	 * Cache a result, replacing the previous one with the same key.
+	 *
+	 * @param key - the key to cache the result with
+	 * @param value - the result to cache
+	 */
+	public synchronized void put(String key, JSONObject value) {
+		long entryWeight = ClientUtil.estimateJSONLength(value);
+
+		remove(key);
+		if (entryWeight > maxWeight)
+			return;
+
+		entries.put(key, new Entry(value, entryWeight, System.currentTimeMillis() + ttl));
+		weight += entryWeight;
+
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (weight > maxWeight && eldest.hasNext()) {
+			weight -= eldest.next().getValue().weight;
+			eldest.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Cache a result read through the cache, unless any result has been dropped since
+	 * the given generation, as the result may then be older than the drop.
+	 *
+	 * @param key - the key to cache the result with
+	 * @param value - the result to cache
+	 * @param generation - the {@link #getGeneration()} taken before the result was read
+	 * @return whether the result was put
+	 */
+	public synchronized boolean put(String key, JSONObject value, long generation) {
+		if (generation != this.generation)
+			return false;
+		put(key, value);
+		return true;
+	}
+
+	/**
+	 * @return the current generation, bumped whenever results are dropped by the callers
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @param key - the key of the result to drop
+	 * @return the dropped result, or null if there was none
+	 */
+	public synchronized JSONObject invalidate(String key) {
+		generation++;
+		Entry entry = remove(key);
+		return (entry != null ? entry.value : null);
+	}
+
+	/**
+	 * Drop all the results whose keys start with the given prefix
+	 *
+	 * @param keyPrefix - the prefix of the keys to drop
+	 */
+	public synchronized void invalidateAll(String keyPrefix) {
+		generation++;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> entry = it.next();
+			if (entry.getKey().startsWith(keyPrefix)) {
+				weight -= entry.getValue().weight;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop all the cached results
+	 */
+	public synchronized void clear() {
+		generation++;
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * @return the number of lookups that found a valid result
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing, or an expired result
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of results dropped to stay under the max weight
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of cached results, including the expired ones not dropped yet
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the estimated size of all the cached results, in characters
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/*
+	 * remove an entry and take its weight off
+	 */
+	private Entry remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			weight -= entry.weight;
+		return entry;
+	}
+
+	private static class Entry {
+		final JSONObject value;
+		final long weight;
+		final long expires;
+
+		Entry(JSONObject value, long weight, long expires) {
+			this.value = value;
+			this.weight = weight;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.saplo.api.client.entity.SaploTag;
+import com.saplo.api.client.entity.SaploTag.TagCategory;
+
+/**
+ * A cache for text.tags results, addressed by the content of the text rather than its id:
+ * the key is a SHA-1 of the body plus the skipCategorization flag, so the same body
+ * is tagged only once, whichever text it is in.
+ *
+ * The tags are packed into a single byte array per entry, and the least recently
+ * used entries are evicted when the packed size goes over the memory budget.
+ * Every get returns new {@link SaploTag} objects, so the callers may change them.
+ *
+ * The ids of the texts an entry was got for are kept too, so the entry can be dropped
+ * when one of those texts gets a tag added, even if the body is not known then.
+ *
+ * @author progre55
+ */
+public class TagCache {
+
+	// a rough size of an entry besides its packed tags: the key, the map entry and the arrays' headers
+	private static final int ENTRY_OVERHEAD = 128;
+	private static final TagCategory[] CATEGORIES = TagCategory.values();
+
+	private final long maxBytes;
+
+	// access ordered, so the eldest entry is the least recently used one
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	// the keys cached for each text id
+	private final Map<String, Set<Key>> textKeys = new HashMap<String, Set<Key>>();
+	private long bytes = 0;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * @param maxBytes - the memory budget of the cached tags, in bytes
+	 */
+	public TagCache(long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes should be positive");
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Make the key of a text body, to look the tags up with
+	 *
+	 * @param body - the body of the text
+	 * @param skipCategorization - whether the tags are not categorized
+	 * @return the key
+	 */
+	public static Key key(String body, boolean skipCategorization) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-1");
+			return new Key(sha.digest(body.getBytes("UTF-8")), skipCategorization);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param key - the key of the text body
+	 * @return a new list of the cached tags, or null if there are none
+	 */
+	public List<SaploTag> get(Key key) {
+		byte[] packed;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			packed = entry.tags;
+		}
+		return unpack(packed);
+	}
+
+	/**
+	 * Cache the tags of a text body
+	 *
+	 * @param key - the key of the text body
+	 * @param textIds - the ids of the text the tags were got for, see {@link #invalidateText(String)}
+	 * @param tags - the tags to cache
+	 */
+	public void put(Key key, List<String> textIds, List<SaploTag> tags) {
+		byte[] packed = pack(tags);
+		long entryBytes = packed.length + ENTRY_OVERHEAD;
+
+		synchronized (this) {
+			Entry old = remove(key);
+			if (entryBytes > maxBytes)
+				return;
+
+			Entry entry = new Entry(packed);
+			if (old != null)
+				entry.textIds.addAll(old.textIds);
+			entry.textIds.addAll(textIds);
+			for (String textId : entry.textIds) {
+				Set<Key> keys = textKeys.get(textId);
+				if (keys == null) {
+					keys = new HashSet<Key>(2);
+					textKeys.put(textId, keys);
+				}
+				keys.add(key);
+			}
+
+			entries.put(key, entry);
+			bytes += entryBytes;
+
+			Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+			while (bytes > maxBytes && eldest.hasNext()) {
+				Map.Entry<Key, Entry> evicted = eldest.next();
+				eldest.remove();
+				forget(evicted.getKey(), evicted.getValue());
+				evictionCount++;
+			}
+		}
+	}
+
+	/**
+	 * Drop the tags of a text body, both the categorized and the uncategorized ones
+	 *
+	 * @param body - the body of the text
+	 */
+	public void invalidate(String body) {
+		Key categorized = key(body, false);
+		Key uncategorized = new Key(categorized.digest, true);
+		synchronized (this) {
+			remove(categorized);
+			remove(uncategorized);
+		}
+	}
+
+	/**
+	 * Drop the tags cached for a text, whatever its body was
+	 *
+	 * @param textId - an id of the text, as given to {@link #put(Key, List, List)}
+	 */
+	public synchronized void invalidateText(String textId) {
+		Set<Key> keys = textKeys.get(textId);
+		if (keys == null)
+			return;
+		for (Key key : new ArrayList<Key>(keys))
+			remove(key);
+	}
+
+	/**
+	 * Drop all the cached tags
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		textKeys.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return the number of lookups that found the tags
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of entries dropped to stay in the memory budget
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of cached entries
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the estimated memory used by the cached entries, in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/*
+	 * remove an entry, with its size and text ids
+	 */
+	private Entry remove(Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			forget(key, entry);
+		return entry;
+	}
+
+	/*
+	 * take a removed entry's size and text ids off
+	 */
+	private void forget(Key key, Entry entry) {
+		bytes -= entry.tags.length + ENTRY_OVERHEAD;
+		for (String textId : entry.textIds) {
+			Set<Key> keys = textKeys.get(textId);
+			if (keys != null && keys.remove(key) && keys.isEmpty())
+				textKeys.remove(textId);
+		}
+	}
+
+	/*
+	 * pack the tags as: count, then word (modified UTF-8), category ordinal and relevance of each
+	 */
+	private static byte[] pack(List<SaploTag> tags) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + tags.size() * 24);
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeInt(tags.size());
+			for (SaploTag tag : tags) {
+				out.writeUTF(tag.getTagWord() != null ? tag.getTagWord() : ClientUtil.NULL_STRING);
+				out.writeByte(tag.getCategory() != null ? tag.getCategory().ordinal() : TagCategory.UNKNOWN.ordinal());
+				out.writeDouble(tag.getRelevance());
+			}
+		} catch (IOException e) {
+			// can not happen with a byte array
+			throw new IllegalStateException(e);
+		}
+		return buffer.toByteArray();
+	}
+
+	private static List<SaploTag> unpack(byte[] packed) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(packed));
+		try {
+			int count = in.readInt();
+			List<SaploTag> tags = new ArrayList<SaploTag>(count);
+			for (int i = 0; i < count; i++) {
+				SaploTag tag = new SaploTag();
+				tag.setTagWord(in.readUTF());
+				tag.setCategory(CATEGORIES[in.readByte()]);
+				tag.setRelevance(in.readDouble());
+				tags.add(tag);
+			}
+			return tags;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The key of a text body: its SHA-1 and the skipCategorization flag
+	 */
+	public static final class Key {
+		private final byte[] digest;
+		private final boolean skipCategorization;
+		private final int hash;
+
+		private Key(byte[] digest, boolean skipCategorization) {
+			this.digest = digest;
+			this.skipCategorization = skipCategorization;
+			this.hash = 31 * Arrays.hashCode(digest) + (skipCategorization ? 1 : 0);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key)obj;
+			return skipCategorization == other.skipCategorization && Arrays.equals(digest, other.digest);
+		}
+
+		/**
+		 * @return the hex digest and the flag, e.g. to key the tags in a {@link PersistentCache}
+		 */
+		public String toString() {
+			StringBuilder hex = new StringBuilder(digest.length * 2 + 6);
+			for (byte b : digest)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return hex.append(skipCategorization ? "/skip" : "/all").toString();
+		}
+	}
+
+	private static class Entry {
+		final byte[] tags;
+		final Set<String> textIds = new HashSet<String>(2);
+
+		Entry(byte[] tags) {
+			this.tags = tags;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package com.saplo.api.client;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author progre55
+ *
+ */
+public class RetryPolicyTest {
+
+	private static final List<String> READ = Arrays.asList("text.get");
+	private static final List<String> WRITE = Arrays.asList("text.create");
+
+	@Test
+	public void retriesTransportFailuresWithJitteredBackoff() {
+		RetryPolicy policy = new RetryPolicy();
+		policy.setMaxAttempts(4);
+		policy.setBaseDelay(100);
+		policy.setMaxDelay(250);
+		SaploClientException down = new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, 503);
+
+		for(int i = 0; i < 20; i++) {
+			long first = policy.retryDelay(READ, down, 1);
+			assertTrue(first >= 0 && first < 100);
+			long third = policy.retryDelay(READ, down, 3);
+			assertTrue(third >= 0 && third < 250);
+			for(int j = 0; j < 20; j++)
+				policy.onCall();
+		}
+		assertEquals(-1, policy.retryDelay(READ, down, 4));
+
+		// the API answered, or a write might have been sent
+		assertEquals(-1, policy.retryDelay(READ, new SaploClientException(ResponseCodes.MSG_NO_RESULTS, ResponseCodes.CODE_NO_RESULTS), 1));
+		assertEquals(-1, policy.retryDelay(WRITE, down, 1));
+		assertEquals(-1, policy.retryDelay(WRITE, new SaploClientException(new IOException("reset")), 1));
+		assertTrue(policy.retryDelay(WRITE, new SaploClientException(new ConnectException("refused")), 1) >= 0);
+	}
+
+	@Test
+	public void budgetCapsRetriesToAShareOfCalls() {
+		RetryPolicy policy = new RetryPolicy();
+		policy.setMaxBudget(2);
+		policy.setBudgetRatio(0.5);
+		SaploClientException down = new SaploClientException(new IOException("timed out"));
+
+		assertTrue(policy.retryDelay(READ, down, 1) >= 0);
+		assertTrue(policy.retryDelay(READ, down, 1) >= 0);
+		assertEquals(-1, policy.retryDelay(READ, down, 1));
+		assertEquals(1, policy.getBudgetExhaustedCount());
+
+		// two calls make up for one retry
+		policy.onCall();
+		assertEquals(-1, policy.retryDelay(READ, down, 1));
+		policy.onCall();
+		assertTrue(policy.retryDelay(READ, down, 1) >= 0);
+		assertEquals(3, policy.getRetryCount());
+	}
+}
@@ -0,0 +1,623 @@
+/**
+ *
+ */
+package com.saplo.api.client;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploFuture;
+import com.saplo.api.client.session.AsyncSession;
+import com.saplo.api.client.session.Session;
+import com.saplo.api.client.session.TransportRegistry;
+import com.saplo.api.client.session.TransportRegistry.SessionFactory;
+import com.saplo.api.client.util.HistogramClientMetrics;
+import com.saplo.api.client.util.MeteredExecutorService;
+import com.saplo.api.client.util.QuotaRateLimiter;
+
+/**
+ * @author progre55
+ *
+ */
+public class SaploClientTest {
+
+	private final TransportRegistry registry = TransportRegistry.getTransportRegistryInstance();
+
+	@After
+	public void deregister() {
+		registry.deregisterTransport("http");
+	}
+
+	@Test
+	public void clientsHaveTheirOwnSessionsAndTokens() throws Exception {
+		final List<TokenSession> sessions = new ArrayList<TokenSession>();
+		registry.registerTransport("http", new SessionFactory() {
+			public Session newSession(URI uri, String params, ClientProxy proxy) {
+				TokenSession session = new TokenSession("AT" + sessions.size());
+				sessions.add(session);
+				return session;
+			}
+		});
+
+		SaploClient first = new SaploClient("key", "secret", "http://localhost/rpc");
+		SaploClient second = new SaploClient("key", "secret", "http://localhost/rpc");
+
+		assertEquals(2, sessions.size());
+		assertEquals("AT0", first.getAccessToken());
+		assertEquals("AT1", second.getAccessToken());
+
+		first.shutdown();
+		assertTrue(sessions.get(0).closed);
+		assertFalse(sessions.get(1).closed);
+		int firstCalls = sessions.get(0).calls.get();
+		int secondCalls = sessions.get(1).calls.get();
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		Object collection = second.parseResponse(second.sendAndReceive(new JSONRPCRequestObject(second.getNextId(), "collection.get", params)));
+		assertEquals(1, ((JSONObject)collection).getInt("collection_id"));
+		assertEquals(firstCalls, sessions.get(0).calls.get());
+		assertEquals(secondCalls + 1, sessions.get(1).calls.get());
+	}
+
+	@Test
+	public void expiredTokenIsRefreshedOnceAndRequestsRetried() throws Exception {
+		ExpiringSession session = new ExpiringSession();
+		final SaploClient client = clientWith(session, "expired", null, null);
+
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for(int i = 0; i < 8; i++) {
+				results.add(callers.submit(new Callable<Object>() {
+					public Object call() throws SaploClientException {
+						JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.get", new JSONObject());
+						return client.parseResponse(client.sendAndReceive(request));
+					}
+				}));
+			}
+			for(Future<Object> result : results)
+				assertNotNull(result.get());
+		} finally {
+			callers.shutdownNow();
+		}
+
+		assertEquals(1, session.authCalls.get());
+		assertEquals("fresh", client.getAccessToken());
+	}
+
+	@Test
+	public void apiDownErrorGetsANewTokenLikeAnExpiredOne() throws Exception {
+		ExpiringSession session = new ExpiringSession(ResponseCodes.CODE_API_DOWN_EXCEPTION);
+		SaploClient client = clientWith(session, "expired", null, null);
+
+		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.get", new JSONObject());
+		assertNotNull(client.parseResponse(client.sendAndReceive(request)));
+
+		assertEquals(1, session.authCalls.get());
+		assertEquals("fresh", client.getAccessToken());
+	}
+
+	@Test
+	public void asyncCallIsSentAgainLikeTheFirstOnceTheTokenIsRefreshed() throws Exception {
+		AsyncExpiringSession session = new AsyncExpiringSession();
+		SaploClient client = clientWith(session, "expired", null, null);
+		RetryPolicy policy = new RetryPolicy();
+		policy.setBaseDelay(10);
+		client.setRetryPolicy(policy);
+
+		// the call sent again with the new token fails in the transport, and is retried
+		session.failures.set(1);
+		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "collection.get", new JSONObject());
+		JSONRPCResponseObject response = client.sendAndReceiveAsync(request).get(5, TimeUnit.SECONDS);
+
+		assertTrue(response.isSuccess());
+		assertEquals(1, session.authCalls.get());
+		assertEquals(1, policy.getRetryCount());
+	}
+
+	@Test
+	public void identicalReadsShareOneCall() throws Exception {
+		CountingSession session = new CountingSession(200);
+		SaploClient client = clientWith(session);
+		client.setCoalesceReads(true);
+
+		assertEquals(8, callConcurrently(client, "collection.get").size());
+		assertEquals(1, session.calls.get());
+		assertEquals(7, client.getCoalescedCount());
+
+		session.calls.set(0);
+		List<Object> created = callConcurrently(client, "text.create");
+		assertEquals(8, session.calls.get());
+		assertNotSame(created.get(0), created.get(1));
+	}
+
+	@Test
+	public void readAfterWriteDoesNotShareAnEarlierRead() throws Exception {
+		VersionedSession session = new VersionedSession();
+		final SaploClient client = clientWith(session);
+		client.setCoalesceReads(true);
+		final JSONObject params = new JSONObject().put("collection_id", 1);
+
+		ExecutorService callers = Executors.newSingleThreadExecutor();
+		try {
+			Future<Object> before = callers.submit(new Callable<Object>() {
+				public Object call() throws SaploClientException {
+					return client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params)));
+				}
+			});
+			session.readSent.await();
+
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.update", params));
+			Object after = client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params)));
+
+			assertEquals(0, ((JSONObject)before.get()).getInt("version"));
+			assertEquals(1, ((JSONObject)after).getInt("version"));
+			assertEquals(0, client.getCoalescedCount());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void processingResultIsPolledUntilReady() throws Exception {
+		ProcessingSession session = new ProcessingSession(2);
+		SaploClient client = clientWith(session);
+
+		JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), "text.tags", new JSONObject().put("wait", 0));
+		SaploFuture<JSONRPCResponseObject> future = client.sendAndPoll(request, null);
+
+		JSONRPCResponseObject response = future.get(10, TimeUnit.SECONDS);
+		assertTrue(response.isSuccess());
+		assertEquals(3, session.calls.get());
+		assertEquals(0, client.getPendingPollCount());
+	}
+
+	@Test
+	public void callsOverTheRateFailWhenNotBlocking() throws Exception {
+		SaploClient client = clientWith(new CountingSession(0));
+		client.setRateLimiter(new QuotaRateLimiter(1, 1), false);
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params)));
+		try {
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params));
+			fail("the second call should be over the rate");
+		} catch(SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_API_LIMIT_REACHED, e.getErrorCode());
+		}
+	}
+
+	@Test
+	public void transportFailuresOfReadsAreRetried() throws Exception {
+		FailingSession session = new FailingSession(0);
+		SaploClient client = clientWith(session);
+		RetryPolicy policy = new RetryPolicy();
+		policy.setBaseDelay(10);
+		client.setRetryPolicy(policy);
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		session.failures.set(2);
+		assertNotNull(client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params))));
+		assertEquals(2, policy.getRetryCount());
+
+		// not idempotent, and the request might have been sent
+		session.failures.set(1);
+		try {
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.create", params));
+			fail("the create should not be retried");
+		} catch(SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_API_DOWN_EXCEPTION, e.getErrorCode());
+		}
+		assertEquals(2, policy.getRetryCount());
+	}
+
+	@Test
+	public void slowReadIsHedged() throws Exception {
+		AsyncStallingSession session = new AsyncStallingSession();
+		SaploClient client = clientWith(session);
+		HedgePolicy policy = new HedgePolicy();
+		policy.setMinSamples(5);
+		client.setHedgePolicy(policy);
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		for(int i = 0; i < 5; i++)
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params));
+		assertTrue(policy.getDelay("collection.get") >= 200);
+		assertEquals(0, policy.getHedgeCount());
+
+		session.stalls.set(1);
+		long start = System.currentTimeMillis();
+		assertNotNull(client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params))));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertEquals(1, policy.getHedgeCount());
+		assertEquals(1, policy.getHedgeWinCount());
+		// the call that lost is stopped
+		assertTrue(session.interrupted.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void blockingSessionIsNotHedged() throws Exception {
+		StallingSession session = new StallingSession(600);
+		SaploClient client = clientWith(session);
+		HedgePolicy policy = new HedgePolicy();
+		policy.setMinSamples(5);
+		client.setHedgePolicy(policy);
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		for(int i = 0; i < 5; i++)
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params));
+
+		session.stalls.set(1);
+		int calls = session.calls.get();
+		assertNotNull(client.parseResponse(client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params))));
+		assertEquals(calls + 1, session.calls.get());
+		assertEquals(0, policy.getHedgeCount());
+	}
+
+	@Test
+	public void callsAreCountedByMethodAndCode() throws Exception {
+		FailingSession session = new FailingSession(200);
+		TransportConfig config = new TransportConfig();
+		HistogramClientMetrics metrics = new HistogramClientMetrics();
+		config.setMetrics(metrics);
+		SaploClient client = clientWith(session, "fresh", null, config);
+
+		JSONObject params = new JSONObject().put("collection_id", 1);
+		client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params));
+		session.failures.set(1);
+		try {
+			client.sendAndReceive(new JSONRPCRequestObject(client.getNextId(), "collection.get", params));
+			fail("the call should fail");
+		} catch(SaploClientException e) {
+		}
+
+		HistogramClientMetrics.MethodMetrics collectionGet = metrics.getMethodMetrics("collection.get");
+		assertEquals(2, collectionGet.getCallCount());
+		assertEquals(0, collectionGet.getInFlight());
+		assertEquals(1, collectionGet.getErrorCount());
+		assertEquals(Long.valueOf(1), collectionGet.getErrorCounts().get(ResponseCodes.CODE_API_DOWN_EXCEPTION));
+		assertTrue(collectionGet.getLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(200));
+	}
+
+	@Test
+	public void clientStateIsShownInJmx() throws Exception {
+		SaploClient client = clientWith(new CountingSession(0));
+		client.registerMBeans("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("com.saplo.api.client:type=SaploClient,name=\"test\"");
+			assertEquals(0L, server.getAttribute(name, "ReconnectCount"));
+			assertEquals(20, server.getAttribute(name, "AsyncThreads"));
+
+			server.setAttribute(name, new Attribute("AsyncThreads", 4));
+			assertEquals(4, ((ThreadPoolExecutor)((MeteredExecutorService)client.getAsyncExecutor()).getDelegate()).getCorePoolSize());
+		} finally {
+			client.unregisterMBeans();
+		}
+		assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("com.saplo.api.client:*"), null).isEmpty());
+	}
+
+	/*
+	 * a client with a valid token, whose "http" calls all go to the given session
+	 */
+	private SaploClient clientWith(Session session) throws SaploClientException {
+		return clientWith(session, "fresh", null, null);
+	}
+
+	private SaploClient clientWith(final Session session, String accessToken, ExecutorService executor, 
+			TransportConfig config) throws SaploClientException {
+		registry.registerTransport("http", new SessionFactory() {
+			public Session newSession(URI uri, String params, ClientProxy proxy) {
+				session.setParams(params);
+				return session;
+			}
+		});
+		return new SaploClient("key", "secret", accessToken, "http://localhost/rpc", false, null, executor, config);
+	}
+
+	/*
+	 * make the same call from 8 threads at once, and return the distinct results
+	 */
+	private static List<Object> callConcurrently(final SaploClient client, final String method) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for(int i = 0; i < 8; i++) {
+				futures.add(callers.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						start.await();
+						JSONObject params = new JSONObject().put("collection_id", 1).put("text_id", 2);
+						JSONRPCRequestObject request = new JSONRPCRequestObject(client.getNextId(), method, params);
+						return client.parseResponse(client.sendAndReceive(request));
+					}
+				}));
+			}
+			start.countDown();
+
+			List<Object> results = new ArrayList<Object>();
+			for(Future<Object> future : futures) {
+				Object result = future.get();
+				for(Object other : results)
+					assertNotSame(other, result);
+				results.add(result);
+			}
+			return results;
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	/*
+	 * answers every call it is not told otherwise about with a collection,
+	 * and the batches call by call
+	 */
+	private static abstract class StubSession implements Session {
+		final AtomicInteger calls = new AtomicInteger();
+		volatile String params;
+
+		public JSONRPCResponseObject sendAndReceive(JSONRPCRequestObject message) throws SaploClientException {
+			calls.incrementAndGet();
+			try {
+				return answer(message, new JSONObject().put("jsonrpc", "2.0").put("id", message.getId()));
+			} catch(JSONException e) {
+				throw new IllegalStateException(e);
+			} catch(InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		abstract JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) 
+				throws SaploClientException, JSONException, InterruptedException;
+
+		static JSONRPCResponseObject result(JSONObject response) throws JSONException {
+			return new JSONRPCResponseObject(response.put("result", new JSONObject().put("collection_id", 1)));
+		}
+
+		static JSONRPCResponseObject error(JSONObject response, int code, String msg) throws JSONException {
+			return new JSONRPCResponseObject(response.put("error", new JSONObject().put("code", code).put("msg", msg)));
+		}
+
+		public List<JSONRPCResponseObject> sendAndReceiveBatch(List<JSONRPCRequestObject> messages) throws SaploClientException {
+			List<JSONRPCResponseObject> responses = new ArrayList<JSONRPCResponseObject>();
+			for(JSONRPCRequestObject message : messages)
+				responses.add(sendAndReceive(message));
+			return responses;
+		}
+
+		public void setParams(String params) {
+			this.params = params;
+		}
+
+		public void setProxy(ClientProxy proxy) {
+		}
+
+		public void close() {
+		}
+	}
+
+	/*
+	 * hands out the given token, answers every other call with a collection, and remembers being closed
+	 */
+	private static class TokenSession extends StubSession {
+		private final String token;
+		volatile boolean closed;
+
+		TokenSession(String token) {
+			this.token = token;
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException {
+			if("auth.accessToken".equals(message.getMethod()))
+				return new JSONRPCResponseObject(response.put("result", new JSONObject().put("access_token", token)));
+			return result(response);
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/*
+	 * answers every call after the given time
+	 */
+	private static class CountingSession extends StubSession {
+		private final long delay;
+
+		CountingSession(long delay) {
+			this.delay = delay;
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException, InterruptedException {
+			Thread.sleep(delay);
+			return result(response);
+		}
+	}
+
+	/*
+	 * counts the updates, and answers the reads in 300 ms with the count seen when they arrived
+	 */
+	private static class VersionedSession extends StubSession {
+		final AtomicInteger version = new AtomicInteger();
+		final CountDownLatch readSent = new CountDownLatch(1);
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException, InterruptedException {
+			if(message.getMethod().endsWith(".update")) {
+				version.incrementAndGet();
+				return result(response);
+			}
+			int seen = version.get();
+			readSent.countDown();
+			Thread.sleep(300);
+			return new JSONRPCResponseObject(response.put("result", new JSONObject().put("version", seen)));
+		}
+	}
+
+	/*
+	 * refuses every call until it has been given the "fresh" token, which auth.accessToken hands out
+	 */
+	private static class ExpiringSession extends StubSession {
+		final AtomicInteger authCalls = new AtomicInteger();
+		private final int refusal;
+
+		ExpiringSession() {
+			this(ResponseCodes.CODE_ERR_NOSESSION);
+		}
+
+		ExpiringSession(int refusal) {
+			this.refusal = refusal;
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException, InterruptedException {
+			if("auth.accessToken".equals(message.getMethod())) {
+				authCalls.incrementAndGet();
+				Thread.sleep(100);
+				return new JSONRPCResponseObject(response.put("result", new JSONObject().put("access_token", "fresh")));
+			}
+			if(params.endsWith("fresh"))
+				return result(response);
+			return error(response, refusal, "expired");
+		}
+	}
+
+	/*
+	 * an expiring session answering async, that fails the set number of calls made with the fresh token
+	 */
+	private static class AsyncExpiringSession extends ExpiringSession implements AsyncSession {
+		final AtomicInteger failures = new AtomicInteger();
+
+		public SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(JSONRPCRequestObject message) {
+			if(params.endsWith("fresh") && failures.getAndDecrement() > 0)
+				return SaploFuture.failed(new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, 503));
+			try {
+				return SaploFuture.completed(sendAndReceive(message));
+			} catch(SaploClientException e) {
+				return SaploFuture.failed(e);
+			}
+		}
+
+		public SaploFuture<List<JSONRPCResponseObject>> sendAndReceiveBatchAsync(List<JSONRPCRequestObject> messages) {
+			try {
+				return SaploFuture.completed(sendAndReceiveBatch(messages));
+			} catch(SaploClientException e) {
+				return SaploFuture.failed(e);
+			}
+		}
+	}
+
+	/*
+	 * answers the given number of calls with "processing" before the result
+	 */
+	private static class ProcessingSession extends StubSession {
+		private final AtomicInteger processing;
+
+		ProcessingSession(int processing) {
+			this.processing = new AtomicInteger(processing);
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException {
+			if(processing.getAndDecrement() > 0)
+				return error(response, ResponseCodes.CODE_PROCESSING, ResponseCodes.MSG_PROCESSING);
+			return result(response);
+		}
+	}
+
+	/*
+	 * fails the set number of calls in the transport, and answers the others after the given time
+	 */
+	private static class FailingSession extends StubSession {
+		final AtomicInteger failures = new AtomicInteger();
+		private final long delay;
+
+		FailingSession(long delay) {
+			this.delay = delay;
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) 
+				throws SaploClientException, JSONException, InterruptedException {
+			if(failures.getAndDecrement() > 0)
+				throw new SaploClientException(ResponseCodes.MSG_API_DOWN_EXCEPTION, ResponseCodes.CODE_API_DOWN_EXCEPTION, 503);
+			Thread.sleep(delay);
+			return result(response);
+		}
+	}
+
+	/*
+	 * answers in 200 ms, except for the set number of calls, which take 5 seconds or the given time
+	 */
+	private static class StallingSession extends StubSession {
+		final AtomicInteger stalls = new AtomicInteger();
+		private final long stall;
+
+		StallingSession() {
+			this(5000);
+		}
+
+		StallingSession(long stall) {
+			this.stall = stall;
+		}
+
+		JSONRPCResponseObject answer(JSONRPCRequestObject message, JSONObject response) throws JSONException, InterruptedException {
+			Thread.sleep(stalls.getAndDecrement() > 0 ? stall : 200);
+			return result(response);
+		}
+	}
+
+	/*
+	 * a stalling session answering async, each call on a thread of its own, that counts down 
+	 * the latch once a call is interrupted
+	 */
+	private static class AsyncStallingSession extends StallingSession implements AsyncSession {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		private final ExecutorService executor = Executors.newCachedThreadPool();
+
+		public SaploFuture<JSONRPCResponseObject> sendAndReceiveAsync(final JSONRPCRequestObject message) {
+			return SaploFuture.submit(executor, new Callable<JSONRPCResponseObject>() {
+				public JSONRPCResponseObject call() throws SaploClientException {
+					try {
+						return sendAndReceive(message);
+					} catch(IllegalStateException e) {
+						if(e.getCause() instanceof InterruptedException)
+							interrupted.countDown();
+						throw e;
+					}
+				}
+			});
+		}
+
+		public SaploFuture<List<JSONRPCResponseObject>> sendAndReceiveBatchAsync(final List<JSONRPCRequestObject> messages) {
+			return SaploFuture.submit(executor, new Callable<List<JSONRPCResponseObject>>() {
+				public List<JSONRPCResponseObject> call() throws SaploClientException {
+					return sendAndReceiveBatch(messages);
+				}
+			});
+		}
+
+		public void close() {
+			executor.shutdownNow();
+		}
+	}
+}
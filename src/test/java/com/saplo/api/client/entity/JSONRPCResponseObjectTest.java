@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package com.saplo.api.client.entity;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.saplo.api.client.ResponseCodes;
+
+/**
+ * @author progre55
+ *
+ */
+public class JSONRPCResponseObjectTest {
+
+	@Test
+	public void batchIsMatchedById() throws JSONException {
+		List<JSONRPCRequestObject> requests = requests(1, 2, 3);
+
+		JSONArray raw = new JSONArray("[" +
+				"{\"jsonrpc\":\"2.0\",\"id\":3,\"result\":{\"collection_id\":3}}," +
+				"{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"collection_id\":1}}," +
+				"{\"jsonrpc\":\"2.0\",\"id\":2,\"error\":{\"code\":1202,\"msg\":\"No corpus\"}}]");
+
+		List<JSONRPCResponseObject> responses = JSONRPCResponseObject.fromBatch(requests, raw);
+
+		assertEquals(3, responses.size());
+		assertTrue(responses.get(0).isSuccess());
+		assertEquals(1, ((JSONObject)responses.get(0).getResult()).getInt("collection_id"));
+		assertFalse(responses.get(1).isSuccess());
+		assertEquals(1202, responses.get(1).getError().getCode());
+		assertTrue(responses.get(2).isSuccess());
+		assertEquals(3, ((JSONObject)responses.get(2).getResult()).getInt("collection_id"));
+	}
+
+	@Test
+	public void missingEntriesBecomeErrors() throws JSONException {
+		List<JSONRPCRequestObject> requests = requests(1, 2);
+
+		JSONArray raw = new JSONArray("[{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":true}]");
+
+		List<JSONRPCResponseObject> responses = JSONRPCResponseObject.fromBatch(requests, raw);
+
+		assertTrue(responses.get(0).isSuccess());
+		assertFalse(responses.get(1).isSuccess());
+		assertEquals(Integer.valueOf(2), responses.get(1).getId());
+		assertEquals(ResponseCodes.CODE_MALFORMED_RESPONSE, responses.get(1).getError().getCode());
+	}
+
+	@Test
+	public void singleErrorAppliesToWholeBatch() throws JSONException {
+		List<JSONRPCRequestObject> requests = requests(1, 2);
+
+		JSONObject raw = new JSONObject("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":595,\"msg\":\"expired\"}}");
+
+		List<JSONRPCResponseObject> responses = JSONRPCResponseObject.fromBatch(requests, raw);
+
+		for(JSONRPCResponseObject response : responses) {
+			assertFalse(response.isSuccess());
+			assertEquals(ResponseCodes.CODE_ERR_NOSESSION, response.getError().getCode());
+		}
+	}
+
+	private static List<JSONRPCRequestObject> requests(int... ids) {
+		List<JSONRPCRequestObject> requests = new ArrayList<JSONRPCRequestObject>();
+		for(int id : ids)
+			requests.add(new JSONRPCRequestObject(id, "collection.get", new JSONObject()));
+		return requests;
+	}
+}
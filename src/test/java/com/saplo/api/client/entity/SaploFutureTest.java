@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package com.saplo.api.client.entity;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClientException;
+
+/**
+ * @author progre55
+ *
+ */
+public class SaploFutureTest {
+
+	@Test
+	public void chainsWithoutBlocking() throws SaploClientException {
+		SaploFuture<Integer> first = new SaploFuture<Integer>();
+
+		SaploFuture<String> chained = first
+				.thenApply(new SaploFunction<Integer, Integer>() {
+					public Integer apply(Integer input) {
+						return input * 2;
+					}
+				})
+				.thenCompose(new SaploFunction<Integer, SaploFuture<String>>() {
+					public SaploFuture<String> apply(Integer input) {
+						return SaploFuture.completed("value " + input);
+					}
+				});
+
+		assertFalse(chained.isDone());
+		first.complete(21);
+		assertTrue(chained.isDone());
+		assertEquals("value 42", chained.get());
+	}
+
+	@Test
+	public void cancellingADependentLeavesTheSourceAlone() throws SaploClientException {
+		SaploFuture<Integer> first = new SaploFuture<Integer>();
+		SaploFunction<Integer, Integer> twice = new SaploFunction<Integer, Integer>() {
+			public Integer apply(Integer input) {
+				return input * 2;
+			}
+		};
+		SaploFuture<Integer> cancelled = first.thenApply(twice);
+		SaploFuture<Integer> other = first.thenApply(twice);
+
+		cancelled.cancel(true);
+		assertTrue(cancelled.isCancelled());
+		assertFalse(first.isDone());
+
+		first.complete(21);
+		assertEquals(Integer.valueOf(42), other.get());
+	}
+
+	@Test
+	public void failurePropagatesToCallbacks() {
+		SaploFuture<Integer> first = new SaploFuture<Integer>();
+		final SaploClientException[] seen = new SaploClientException[1];
+
+		first.thenApply(new SaploFunction<Integer, Integer>() {
+			public Integer apply(Integer input) {
+				return input + 1;
+			}
+		}).addCallback(new SaploCallback<Integer>() {
+			public void onSuccess(Integer result) {
+				fail("should not succeed");
+			}
+			public void onFailure(SaploClientException e) {
+				seen[0] = e;
+			}
+		});
+
+		first.fail(new SaploClientException(ResponseCodes.MSG_NO_RESULTS, ResponseCodes.CODE_NO_RESULTS));
+		assertNotNull(seen[0]);
+		assertEquals(ResponseCodes.CODE_NO_RESULTS, seen[0].getErrorCode());
+	}
+
+	@Test
+	public void submitKeepsExceptionMapping() {
+		ExecutorService es = Executors.newSingleThreadExecutor();
+		try {
+			SaploFuture<Boolean> saploError = SaploFuture.submit(es, new Callable<Boolean>() {
+				public Boolean call() throws SaploClientException {
+					throw new SaploClientException(ResponseCodes.MSG_NO_API_CALLS, ResponseCodes.CODE_NO_API_CALLS);
+				}
+			});
+			SaploFuture<Boolean> otherError = SaploFuture.submit(es, new Callable<Boolean>() {
+				public Boolean call() {
+					throw new IllegalStateException();
+				}
+			});
+
+			try {
+				saploError.get();
+				fail();
+			} catch (SaploClientException e) {
+				assertEquals(ResponseCodes.CODE_NO_API_CALLS, e.getErrorCode());
+			}
+			try {
+				otherError.get();
+				fail();
+			} catch (SaploClientException e) {
+				assertEquals(ResponseCodes.CODE_UNKNOWN_EXCEPTION, e.getErrorCode());
+			}
+		} finally {
+			es.shutdownNow();
+		}
+	}
+
+	@Test
+	public void allOfKeepsOrder() throws SaploClientException {
+		SaploFuture<Integer> a = new SaploFuture<Integer>();
+		SaploFuture<Integer> b = new SaploFuture<Integer>();
+
+		List<SaploFuture<Integer>> futures = new ArrayList<SaploFuture<Integer>>();
+		futures.add(a);
+		futures.add(b);
+		SaploFuture<List<Integer>> all = SaploFuture.allOf(futures);
+
+		b.complete(2);
+		assertFalse(all.isDone());
+		a.complete(1);
+		assertEquals(2, all.get().size());
+		assertEquals(Integer.valueOf(1), all.get().get(0));
+		assertEquals(Integer.valueOf(2), all.get().get(1));
+	}
+}
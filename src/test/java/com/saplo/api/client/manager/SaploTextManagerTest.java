@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.saplo.api.client.manager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.SaploBulkResult;
+import com.saplo.api.client.entity.SaploCollection;
+import com.saplo.api.client.entity.SaploCollection.Language;
+import com.saplo.api.client.entity.SaploText;
+import com.saplo.api.client.server.FakeSaploServer;
+
+/**
+ * @author progre55
+ *
+ */
+public class SaploTextManagerTest {
+
+	private FakeSaploServer server;
+	private SaploClient client;
+
+	@Before
+	public void start() throws Exception {
+		server = new FakeSaploServer("key", "secret");
+		server.setLatency(10, 20);
+		server.start();
+		client = new SaploClient("key", "secret", server.getEndpoint());
+	}
+
+	@After
+	public void stop() throws Exception {
+		client.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void createAllSendsTheTextsInBatchesAndReportsTheFailures() throws Exception {
+		SaploCollection collection = new SaploCollection("news", Language.en);
+		client.getCollectionManager().create(collection);
+
+		// every fifth text is for a collection the server does not have
+		List<SaploText> texts = new ArrayList<SaploText>();
+		for(int i = 0; i < 23; i++) {
+			SaploCollection target = (i % 5 == 4 ? new SaploCollection(9999) : collection);
+			texts.add(new SaploText(target, "Volvo builds trucks in Gothenburg, part " + i));
+		}
+		long requests = server.getRequestCount();
+
+		SaploBulkResult<SaploText> result = client.getTextManager().createAll(texts.iterator(), 5, 3);
+
+		assertEquals(5, server.getRequestCount() - requests);
+		assertEquals(23, server.getCallCount("text.create"));
+		assertEquals(19, result.getSucceededCount());
+		assertEquals(4, result.getFailedCount());
+		for(int i = 0; i < texts.size(); i++) {
+			SaploText text = texts.get(i);
+			if(i % 5 == 4) {
+				assertEquals(ResponseCodes.CODE_CORPUS_NO_EXISTS, result.getFailures().get(text).getErrorCode());
+			} else {
+				assertFalse(result.getFailures().containsKey(text));
+				assertTrue(text.getId() > 0);
+			}
+		}
+	}
+
+	@Test
+	public void createAllAsyncRunsOnASingleThreadExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		SaploClient single = new SaploClient("key", "secret", "", server.getEndpoint(), false, null, executor);
+		try {
+			SaploCollection collection = new SaploCollection("news", Language.en);
+			single.getCollectionManager().create(collection);
+			List<SaploText> texts = new ArrayList<SaploText>();
+			for(int i = 0; i < 9; i++)
+				texts.add(new SaploText(collection, "Saab builds planes in Linkoping, part " + i));
+
+			SaploBulkResult<SaploText> result = single.getTextManager().createAllAsync(texts.iterator(), 2, 2).get(10, TimeUnit.SECONDS);
+
+			assertEquals(9, result.getSucceededCount());
+			assertEquals(0, result.getFailedCount());
+		} finally {
+			single.shutdown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void createAllFailsTheBatchesTheExecutorRefuses() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		SaploClient refused = new SaploClient("key", "secret", "", server.getEndpoint(), false, null, executor);
+		executor.shutdown();
+
+		SaploCollection collection = new SaploCollection("news", Language.en);
+		refused.getCollectionManager().create(collection);
+		List<SaploText> texts = new ArrayList<SaploText>();
+		for(int i = 0; i < 7; i++)
+			texts.add(new SaploText(collection, "Ericsson opened new offices in Stockholm, part " + i));
+
+		SaploBulkResult<SaploText> result = refused.getTextManager().createAll(texts.iterator(), 2, 2);
+		refused.shutdown();
+
+		assertEquals(0, result.getSucceededCount());
+		assertEquals(7, result.getFailedCount());
+		for(SaploClientException e : result.getFailures().values())
+			assertEquals(ResponseCodes.CODE_UNKNOWN_EXCEPTION, e.getErrorCode());
+		assertEquals(0, server.getCallCount("text.create"));
+	}
+}
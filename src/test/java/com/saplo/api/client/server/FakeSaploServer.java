@@ -0,0 +1,1033 @@
+/**
+ *
+ */
+package com.saplo.api.client.server;
+
+import static com.saplo.api.client.ResponseCodes.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.saplo.api.client.SaploClientException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the Saplo API, to load test the client end-to-end on one box
+ * without using up any quota. It speaks JSON-RPC over HTTP, with batches and gzip, and answers
+ * the methods the managers call: auth.accessToken, account.get, collection.*, text.* and group.*.
+ * The collections, texts and groups are kept in memory, the tags are made up from the capitalized
+ * words of a text and the related texts and groups are ranked by the words they share.
+ *
+ * Each request can be made to take longer with {@link #setLatency(long, long)}, to fail in the
+ * transport with {@link #setErrorRate(double)}, and the calculated results (text.tags, text.relatedTexts,
+ * text.relatedGroups, group.relatedTexts and group.relatedGroups) to answer
+ * {@link com.saplo.api.client.ResponseCodes#CODE_PROCESSING} a few times with {@link #setProcessingCount(int)}
+ * before they are ready.
+ *
+ * <pre>
+ * FakeSaploServer server = new FakeSaploServer("key", "secret");
+ * server.start();
+ * SaploClient client = new SaploClient("key", "secret", server.getEndpoint());
+ * ...
+ * server.stop();
+ * </pre>
+ *
+ * @author progre55
+ */
+public class FakeSaploServer {
+
+	private static final List<String> METHODS = Arrays.asList(
+			"auth.accessToken", "auth.invalidateToken", "account.get", "saplo.listMethods",
+			"collection.create", "collection.get", "collection.update", "collection.delete", "collection.reset", "collection.list",
+			"text.create", "text.get", "text.update", "text.delete", "text.addTag", "text.tags", "text.relatedTexts", "text.relatedGroups",
+			"group.create", "group.get", "group.update", "group.delete", "group.reset", "group.list", "group.listTexts",
+			"group.addText", "group.deleteText", "group.relatedGroups", "group.relatedTexts");
+
+	private static final Set<String> CALCULATED = new HashSet<String>(Arrays.asList(
+			"text.tags", "text.relatedTexts", "text.relatedGroups", "group.relatedTexts", "group.relatedGroups"));
+
+	private static final int DEFAULT_LIMIT = 10;
+	private static final int MAX_TAGS = 20;
+	private static final int HOUR_LIMIT = 10000;
+	private static final int MONTH_LIMIT = 1000000;
+	private static final int COLLECTION_LIMIT = 1000;
+	private static final int GROUP_LIMIT = 1000;
+
+	private final String apiKey;
+	private final String secretKey;
+	private final Random random = new Random();
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private volatile long minLatency = 0;
+	private volatile long maxLatency = 0;
+	private volatile double errorRate = 0;
+	private volatile int errorStatus = 503;
+	private volatile int processingCount = 0;
+
+	// the state, guarded by this
+	private final Set<String> tokens = new HashSet<String>();
+	private final Map<Integer, Collection> collections = new TreeMap<Integer, Collection>();
+	private final Map<Integer, Group> groups = new TreeMap<Integer, Group>();
+	private final Map<String, Integer> processing = new HashMap<String, Integer>();
+	private int nextCollectionId = 1;
+	private int nextGroupId = 1;
+	private long nextToken = 1;
+
+	private final ConcurrentHashMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong injectedErrorCount = new AtomicLong();
+	private final AtomicLong processingAnswerCount = new AtomicLong();
+	private final AtomicLong gzippedRequestCount = new AtomicLong();
+	private final AtomicLong gzippedResponseCount = new AtomicLong();
+
+	/**
+	 * A server that hands out access tokens for the given keys only
+	 *
+	 * @param apiKey - the API-KEY the clients should use
+	 * @param secretKey - the SECRET-KEY the clients should use
+	 */
+	public FakeSaploServer(String apiKey, String secretKey) {
+		this.apiKey = apiKey;
+		this.secretKey = secretKey;
+	}
+
+	/**
+	 * Start listening on a free port of the loopback interface
+	 *
+	 * @throws IOException if it could not bind
+	 */
+	public synchronized void start() throws IOException {
+		if (server != null)
+			throw new IllegalStateException("already started");
+		// a thread per request in flight, so the injected latency does not queue the others up
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fake-saplo-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// without it the headers and the body of a response go out in separate packets
+		// and wait on the client's delayed ACK, adding some 40 ms to every call
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 1024);
+		server.createContext("/", new RpcHandler());
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stop listening and drop the requests in flight
+	 */
+	public synchronized void stop() {
+		if (server == null)
+			return;
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+		executor = null;
+	}
+
+	/**
+	 * @return the endpoint to give the clients, e.g. http://127.0.0.1:50123/rpc/json
+	 */
+	public synchronized String getEndpoint() {
+		if (server == null)
+			throw new IllegalStateException("not started");
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/rpc/json";
+	}
+
+	/**
+	 * @param minLatency the least time a request takes to set, in milliseconds
+	 * @param maxLatency the most time a request takes to set, in milliseconds, each one takes a random time in between
+	 */
+	public void setLatency(long minLatency, long maxLatency) {
+		if (minLatency < 0 || maxLatency < minLatency)
+			throw new IllegalArgumentException("the latency should be 0 <= min <= max");
+		this.minLatency = minLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * @param errorRate the share of the requests that fail with the error status to set, between 0 and 1, default 0
+	 */
+	public void setErrorRate(double errorRate) {
+		if (errorRate < 0 || errorRate > 1)
+			throw new IllegalArgumentException("errorRate should be between 0 and 1");
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param errorStatus the HTTP status the failed requests get to set, default 503
+	 */
+	public void setErrorStatus(int errorStatus) {
+		this.errorStatus = errorStatus;
+	}
+
+	/**
+	 * @param processingCount the number of times a calculated result answers
+	 * {@link com.saplo.api.client.ResponseCodes#CODE_PROCESSING} or
+	 * {@link com.saplo.api.client.ResponseCodes#CODE_STILL_PROCESSING} before it is ready to set, default 0
+	 */
+	public void setProcessingCount(int processingCount) {
+		this.processingCount = processingCount;
+	}
+
+	/**
+	 * Drop all the access tokens handed out, so the clients have to get new ones
+	 */
+	public synchronized void expireTokens() {
+		tokens.clear();
+	}
+
+	/**
+	 * @return the number of HTTP requests received, a batch counts once
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @param method - the API method, e.g. text.tags
+	 * @return the number of calls of the method received, including the ones in batches
+	 */
+	public long getCallCount(String method) {
+		AtomicLong count = calls.get(method);
+		return (count != null ? count.get() : 0);
+	}
+
+	/**
+	 * @return the number of requests failed on purpose, see {@link #setErrorRate(double)}
+	 */
+	public long getInjectedErrorCount() {
+		return injectedErrorCount.get();
+	}
+
+	/**
+	 * @return the number of processing answers sent, see {@link #setProcessingCount(int)}
+	 */
+	public long getProcessingAnswerCount() {
+		return processingAnswerCount.get();
+	}
+
+	/**
+	 * @return the number of requests received with a gzipped body
+	 */
+	public long getGzippedRequestCount() {
+		return gzippedRequestCount.get();
+	}
+
+	/**
+	 * @return the number of responses sent gzipped, as the client accepted it
+	 */
+	public long getGzippedResponseCount() {
+		return gzippedResponseCount.get();
+	}
+
+	private class RpcHandler implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				requestCount.incrementAndGet();
+				long latency = latency();
+				if (latency > 0)
+					Thread.sleep(latency);
+
+				if (!"POST".equals(exchange.getRequestMethod())) {
+					send(exchange, 405, null);
+					return;
+				}
+				if (errorRate > 0 && random.nextDouble() < errorRate) {
+					injectedErrorCount.incrementAndGet();
+					send(exchange, errorStatus, null);
+					return;
+				}
+
+				String token = accessToken(exchange.getRequestURI().getRawQuery());
+				String body = read(exchange).trim();
+				Object response;
+				if (body.startsWith("[")) {
+					JSONArray requests = new JSONArray(body);
+					JSONArray responses = new JSONArray();
+					for (int i = 0; i < requests.length(); i++)
+						responses.put(call(requests.getJSONObject(i), token));
+					response = responses;
+				} else {
+					response = call(new JSONObject(body), token);
+				}
+				send(exchange, 200, response.toString());
+			} catch (JSONException e) {
+				send(exchange, 400, null);
+			} catch (InterruptedException e) {
+				// stopped
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private String read(HttpExchange exchange) throws IOException {
+			InputStream in = exchange.getRequestBody();
+			if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+				gzippedRequestCount.incrementAndGet();
+				in = new GZIPInputStream(in);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toString("UTF-8");
+		}
+
+		private void send(HttpExchange exchange, int status, String body) throws IOException {
+			if (body == null) {
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			byte[] bytes = body.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (accepted != null && accepted.contains("gzip")) {
+				gzippedResponseCount.incrementAndGet();
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(status, 0);
+				OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+				out.write(bytes);
+				out.close();
+			} else {
+				exchange.sendResponseHeaders(status, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		}
+	}
+
+	/*
+	 * answer a single JSON-RPC request
+	 */
+	private JSONObject call(JSONObject request, String token) throws JSONException {
+		String method = request.optString("method");
+		countCall(method);
+		JSONObject params = request.optJSONObject("params");
+		if (params == null)
+			params = new JSONObject();
+
+		JSONObject response = new JSONObject();
+		response.put("jsonrpc", "2.0");
+		response.put("id", request.opt("id"));
+		try {
+			response.put("result", dispatch(method, params, token));
+		} catch (SaploClientException e) {
+			JSONObject error = new JSONObject();
+			error.put("code", e.getErrorCode());
+			error.put("msg", e.getMessage());
+			response.put("error", error);
+		}
+		return response;
+	}
+
+	private synchronized Object dispatch(String method, JSONObject params, String token)
+			throws SaploClientException, JSONException {
+		if ("auth.accessToken".equals(method))
+			return accessToken(params);
+		if (token == null || !tokens.contains(token))
+			throw new SaploClientException(MSG_ERR_NOSESSION, CODE_ERR_NOSESSION);
+		if ("auth.invalidateToken".equals(method)) {
+			tokens.remove(token);
+			return true;
+		}
+
+		if (CALCULATED.contains(method))
+			checkProcessing(method, params);
+
+		if ("account.get".equals(method))
+			return account();
+		if ("saplo.listMethods".equals(method))
+			return new JSONArray(METHODS);
+
+		if ("collection.create".equals(method))
+			return createCollection(params);
+		if ("collection.get".equals(method))
+			return collection(params).toJSON();
+		if ("collection.update".equals(method))
+			return updateCollection(params);
+		if ("collection.delete".equals(method))
+			return deleteCollection(params);
+		if ("collection.reset".equals(method))
+			return resetCollection(params);
+		if ("collection.list".equals(method))
+			return listCollections();
+
+		if ("text.create".equals(method))
+			return createText(params);
+		if ("text.get".equals(method))
+			return text(params).toJSON();
+		if ("text.update".equals(method))
+			return updateText(params);
+		if ("text.delete".equals(method))
+			return deleteText(params);
+		if ("text.addTag".equals(method))
+			return addTag(params);
+		if ("text.tags".equals(method))
+			return new JSONObject().put("tags", tags(text(params)));
+		if ("text.relatedTexts".equals(method))
+			return textRelatedTexts(params);
+		if ("text.relatedGroups".equals(method))
+			return textRelatedGroups(params);
+
+		if ("group.create".equals(method))
+			return createGroup(params);
+		if ("group.get".equals(method))
+			return group(params).toJSON();
+		if ("group.update".equals(method))
+			return updateGroup(params);
+		if ("group.delete".equals(method))
+			return deleteGroup(params);
+		if ("group.reset".equals(method))
+			return resetGroup(params);
+		if ("group.list".equals(method))
+			return listGroups();
+		if ("group.listTexts".equals(method))
+			return listGroupTexts(params);
+		if ("group.addText".equals(method))
+			return addGroupText(params);
+		if ("group.deleteText".equals(method))
+			return deleteGroupText(params);
+		if ("group.relatedGroups".equals(method))
+			return groupRelatedGroups(params);
+		if ("group.relatedTexts".equals(method))
+			return groupRelatedTexts(params);
+
+		throw new SaploClientException("Method not found: " + method, -32601);
+	}
+
+	/*
+	 * answer processing for the first calls of a calculation, if asked to
+	 */
+	private void checkProcessing(String method, JSONObject params) throws SaploClientException {
+		int count = processingCount;
+		if (count <= 0)
+			return;
+		String key = method + "/" + params.optString("collection_id") + "/" + params.optString("text_id")
+				+ "/" + params.optString("ext_text_id") + "/" + params.optString("group_id");
+		Integer left = processing.get(key);
+		if (left == null)
+			left = count;
+		if (left <= 0)
+			return;
+		processing.put(key, left - 1);
+		processingAnswerCount.incrementAndGet();
+		if (left == count)
+			throw new SaploClientException(MSG_PROCESSING, CODE_PROCESSING);
+		throw new SaploClientException(MSG_STILL_PROCESSING, CODE_STILL_PROCESSING);
+	}
+
+	private JSONObject accessToken(JSONObject params) throws SaploClientException, JSONException {
+		if (!apiKey.equals(params.optString("api_key")) || !secretKey.equals(params.optString("secret_key")))
+			throw new SaploClientException(MSG_LOGIN_INCORRECT, CODE_LOGIN_INCORRECT);
+		String token = "AT" + (nextToken++) + Math.abs(random.nextLong());
+		tokens.add(token);
+		return new JSONObject().put("access_token", token);
+	}
+
+	private JSONObject account() throws JSONException {
+		long used = 0;
+		for (AtomicLong count : calls.values())
+			used += count.get();
+
+		JSONObject apiCalls = new JSONObject();
+		apiCalls.put("limit_month", MONTH_LIMIT);
+		apiCalls.put("left_month", Math.max(0, MONTH_LIMIT - used));
+		apiCalls.put("limit_hour", HOUR_LIMIT);
+		apiCalls.put("left_hour", Math.max(0, HOUR_LIMIT - used));
+		apiCalls.put("reset_hour", date(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1))));
+		apiCalls.put("reset_month", date(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30))));
+
+		JSONObject account = new JSONObject();
+		account.put("account_id", 1);
+		account.put("expiration_date", date(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365))));
+		account.put("api_calls", apiCalls);
+		account.put("collections", new JSONObject().put("limit", COLLECTION_LIMIT).put("left", COLLECTION_LIMIT - collections.size()));
+		account.put("groups", new JSONObject().put("limit", GROUP_LIMIT).put("left", GROUP_LIMIT - groups.size()));
+		return account;
+	}
+
+	/*
+	 * collections
+	 */
+
+	private JSONObject createCollection(JSONObject params) throws SaploClientException, JSONException {
+		if (collections.size() >= COLLECTION_LIMIT)
+			throw new SaploClientException(MSG_MAX_CORPUS, CODE_MAX_CORPUS);
+		Collection collection = new Collection(nextCollectionId++);
+		collection.name = required(params, "name");
+		collection.language = language(required(params, "language"));
+		collection.description = params.optString("description", "");
+		collections.put(collection.id, collection);
+		return collection.toJSON();
+	}
+
+	private JSONObject updateCollection(JSONObject params) throws SaploClientException, JSONException {
+		Collection collection = collection(params);
+		if (params.has("name"))
+			collection.name = params.optString("name");
+		if (params.has("description"))
+			collection.description = params.optString("description");
+		return collection.toJSON();
+	}
+
+	private JSONObject deleteCollection(JSONObject params) throws SaploClientException, JSONException {
+		Collection collection = collection(params);
+		collections.remove(collection.id);
+		for (Group group : groups.values())
+			group.removeCollection(collection.id);
+		return collection.toJSON();
+	}
+
+	private JSONObject resetCollection(JSONObject params) throws SaploClientException, JSONException {
+		Collection collection = collection(params);
+		collection.texts.clear();
+		for (Group group : groups.values())
+			group.removeCollection(collection.id);
+		return collection.toJSON();
+	}
+
+	private JSONObject listCollections() throws JSONException {
+		JSONArray list = new JSONArray();
+		for (Collection collection : collections.values())
+			list.put(collection.toJSON());
+		return new JSONObject().put("collections", list);
+	}
+
+	private Collection collection(JSONObject params) throws SaploClientException {
+		int id = requiredInt(params, "collection_id");
+		Collection collection = collections.get(id);
+		if (collection == null)
+			throw new SaploClientException(MSG_CORPUS_NO_EXISTS, CODE_CORPUS_NO_EXISTS, id);
+		return collection;
+	}
+
+	/*
+	 * texts
+	 */
+
+	private JSONObject createText(JSONObject params) throws SaploClientException, JSONException {
+		Collection collection = collection(params);
+		if (params.optString("body", "").length() == 0)
+			throw new SaploClientException(MSG_CORPUS_NO_TEXT, CODE_CORPUS_NO_TEXT);
+		Text text = new Text(collection.id, collection.nextId++);
+		text.update(params);
+		collection.texts.put(text.id, text);
+		return text.toJSON();
+	}
+
+	private JSONObject updateText(JSONObject params) throws SaploClientException, JSONException {
+		Text text = text(params);
+		text.update(params);
+		return text.toJSON();
+	}
+
+	private JSONObject deleteText(JSONObject params) throws SaploClientException, JSONException {
+		Text text = text(params);
+		collections.get(text.collectionId).texts.remove(text.id);
+		for (Group group : groups.values())
+			group.texts.remove(text.key());
+		return new JSONObject().put("success", true);
+	}
+
+	private JSONObject addTag(JSONObject params) throws SaploClientException, JSONException {
+		Text text = text(params);
+		String word = required(params, "tag");
+		JSONObject tag = new JSONObject();
+		tag.put("tag", word);
+		tag.put("category", params.optString("category", "unknown").toLowerCase());
+		tag.put("relevance", params.optDouble("relevance", 1.0));
+		text.addedTags.add(tag);
+		return tag;
+	}
+
+	private JSONObject textRelatedTexts(JSONObject params) throws SaploClientException, JSONException {
+		Text text = text(params);
+		Set<Integer> scope = new HashSet<Integer>();
+		JSONArray collectionScope = params.optJSONArray("collection_scope");
+		if (collectionScope != null) {
+			for (int i = 0; i < collectionScope.length(); i++)
+				scope.add(collectionScope.optInt(i));
+		} else {
+			scope.add(text.collectionId);
+		}
+
+		List<Text> candidates = new ArrayList<Text>();
+		for (Integer collectionId : scope) {
+			Collection collection = collections.get(collectionId);
+			if (collection != null)
+				candidates.addAll(collection.texts.values());
+		}
+		candidates.remove(text);
+		return new JSONObject().put("related_texts", relatedTexts(text.words, candidates, params));
+	}
+
+	private JSONObject textRelatedGroups(JSONObject params) throws SaploClientException, JSONException {
+		Text text = text(params);
+		return new JSONObject().put("related_groups", relatedGroups(text.words, scopedGroups(params), params));
+	}
+
+	private Text text(JSONObject params) throws SaploClientException {
+		Collection collection = collection(params);
+		if (params.has("text_id")) {
+			int id = params.optInt("text_id");
+			Text text = collection.texts.get(id);
+			if (text == null)
+				throw new SaploClientException(MSG_CORPUS_NO_ARTICLE_PARAMS, CODE_CORPUS_NO_ARTICLE, id, collection.id);
+			return text;
+		}
+		String extId = params.optString("ext_text_id", "");
+		if (extId.length() == 0)
+			throw new SaploClientException(MSG_MISSING_REQ_FIELD, CODE_MISSING_REQ_FIELD);
+		for (Text text : collection.texts.values()) {
+			if (extId.equals(text.extId))
+				return text;
+		}
+		throw new SaploClientException(MSG_CORPUS_NO_ARTICLE, CODE_CORPUS_NO_ARTICLE);
+	}
+
+	/*
+	 * the capitalized words of the text, the ones that start the most sentences first, and the tags added to it
+	 */
+	private JSONArray tags(Text text) throws JSONException {
+		JSONArray tags = new JSONArray();
+		int i = 0;
+		for (String word : text.names) {
+			if (i >= MAX_TAGS)
+				break;
+			JSONObject tag = new JSONObject();
+			tag.put("tag", word);
+			tag.put("category", category(word));
+			tag.put("relevance", Math.max(0.05, 1.0 - i * 0.045));
+			tags.put(tag);
+			i++;
+		}
+		for (JSONObject tag : text.addedTags)
+			tags.put(tag);
+		return tags;
+	}
+
+	private static String category(String word) {
+		if (word.startsWith("http") || word.startsWith("www."))
+			return "url";
+		switch ((word.hashCode() & 0x7fffffff) % 4) {
+		case 0:
+			return "person";
+		case 1:
+			return "organization";
+		case 2:
+			return "location";
+		default:
+			return "unknown";
+		}
+	}
+
+	/*
+	 * groups
+	 */
+
+	private JSONObject createGroup(JSONObject params) throws SaploClientException, JSONException {
+		if (groups.size() >= GROUP_LIMIT)
+			throw new SaploClientException(MSG_CONTEXT_MAX_LIMIT, CODE_CONTEXT_MAX_LIMIT);
+		String name = params.optString("name", "");
+		if (name.length() == 0)
+			throw new SaploClientException(MSG_CONTEXT_NO_NAME, CODE_CONTEXT_NO_NAME);
+		Group group = new Group(nextGroupId++);
+		group.name = name;
+		group.description = params.optString("description", "");
+		group.language = language(params.optString("language", "en"));
+		groups.put(group.id, group);
+		return group.toJSON();
+	}
+
+	private JSONObject updateGroup(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		if (params.has("name"))
+			group.name = params.optString("name");
+		if (params.has("description"))
+			group.description = params.optString("description");
+		group.updated = new Date();
+		return group.toJSON();
+	}
+
+	private JSONObject deleteGroup(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		groups.remove(group.id);
+		return new JSONObject().put("success", true);
+	}
+
+	private JSONObject resetGroup(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		group.texts.clear();
+		group.updated = new Date();
+		return group.toJSON();
+	}
+
+	private JSONObject listGroups() throws JSONException {
+		JSONArray list = new JSONArray();
+		for (Group group : groups.values())
+			list.put(group.toJSON());
+		return new JSONObject().put("groups", list);
+	}
+
+	private JSONObject listGroupTexts(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		JSONArray list = new JSONArray();
+		for (Text text : group.texts.values())
+			list.put(text.toJSON());
+		return new JSONObject().put("texts", list);
+	}
+
+	private JSONObject addGroupText(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		Text text = text(params);
+		group.texts.put(text.key(), text);
+		group.updated = new Date();
+		return new JSONObject().put("success", true);
+	}
+
+	private Boolean deleteGroupText(JSONObject params) throws SaploClientException {
+		Group group = group(params);
+		Text text = text(params);
+		group.updated = new Date();
+		return (group.texts.remove(text.key()) != null);
+	}
+
+	private JSONObject groupRelatedGroups(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		List<Group> candidates = scopedGroups(params);
+		candidates.remove(group);
+		return new JSONObject().put("related_groups", relatedGroups(group.words(), candidates, params));
+	}
+
+	private JSONObject groupRelatedTexts(JSONObject params) throws SaploClientException, JSONException {
+		Group group = group(params);
+		List<Text> candidates = new ArrayList<Text>();
+		if (params.has("collection_scope")) {
+			Collection collection = collections.get(params.optInt("collection_scope"));
+			if (collection != null)
+				candidates.addAll(collection.texts.values());
+		} else {
+			for (Collection collection : collections.values())
+				candidates.addAll(collection.texts.values());
+		}
+		candidates.removeAll(group.texts.values());
+		return new JSONObject().put("related_texts", relatedTexts(group.words(), candidates, params));
+	}
+
+	private Group group(JSONObject params) throws SaploClientException {
+		int id = requiredInt(params, "group_id");
+		Group group = groups.get(id);
+		if (group == null)
+			throw new SaploClientException(MSG_CONTEXT_NO_CONTEXT_EXISTS, CODE_CONTEXT_NO_CONTEXT_EXISTS, id);
+		return group;
+	}
+
+	private List<Group> scopedGroups(JSONObject params) {
+		JSONArray groupScope = params.optJSONArray("group_scope");
+		if (groupScope == null)
+			return new ArrayList<Group>(groups.values());
+		List<Group> scoped = new ArrayList<Group>();
+		for (int i = 0; i < groupScope.length(); i++) {
+			Group group = groups.get(groupScope.optInt(i));
+			if (group != null)
+				scoped.add(group);
+		}
+		return scoped;
+	}
+
+	/*
+	 * relatedness, by the share of the words two texts have in common
+	 */
+
+	private JSONArray relatedTexts(Set<String> words, List<Text> candidates, JSONObject params) throws JSONException {
+		final Map<Text, Double> relevance = new HashMap<Text, Double>();
+		for (Text candidate : candidates) {
+			double r = similarity(words, candidate.words);
+			if (inThreshold(r, params))
+				relevance.put(candidate, r);
+		}
+		List<Text> ranked = new ArrayList<Text>(relevance.keySet());
+		Collections.sort(ranked, new Comparator<Text>() {
+			public int compare(Text a, Text b) {
+				return Double.compare(relevance.get(b), relevance.get(a));
+			}
+		});
+
+		JSONArray related = new JSONArray();
+		for (Text text : ranked.subList(0, Math.min(ranked.size(), params.optInt("limit", DEFAULT_LIMIT)))) {
+			JSONObject json = new JSONObject();
+			json.put("collection_id", text.collectionId);
+			json.put("text_id", text.id);
+			json.put("headline", text.headline);
+			json.put("relevance", relevance.get(text));
+			related.put(json);
+		}
+		return related;
+	}
+
+	private JSONArray relatedGroups(Set<String> words, List<Group> candidates, JSONObject params) throws JSONException {
+		final Map<Group, Double> relevance = new HashMap<Group, Double>();
+		for (Group candidate : candidates) {
+			double r = similarity(words, candidate.words());
+			if (inThreshold(r, params))
+				relevance.put(candidate, r);
+		}
+		List<Group> ranked = new ArrayList<Group>(relevance.keySet());
+		Collections.sort(ranked, new Comparator<Group>() {
+			public int compare(Group a, Group b) {
+				return Double.compare(relevance.get(b), relevance.get(a));
+			}
+		});
+
+		JSONArray related = new JSONArray();
+		for (Group group : ranked.subList(0, Math.min(ranked.size(), params.optInt("limit", DEFAULT_LIMIT)))) {
+			JSONObject json = group.toJSON();
+			json.put("relevance", relevance.get(group));
+			related.put(json);
+		}
+		return related;
+	}
+
+	private static double similarity(Set<String> a, Set<String> b) {
+		if (a.isEmpty() || b.isEmpty())
+			return 0;
+		int shared = 0;
+		for (String word : a) {
+			if (b.contains(word))
+				shared++;
+		}
+		return (double)shared / (a.size() + b.size() - shared);
+	}
+
+	private static boolean inThreshold(double relevance, JSONObject params) {
+		return relevance > 0 && relevance >= params.optDouble("min_threshold", 0)
+				&& relevance <= params.optDouble("max_threshold", 1);
+	}
+
+	/*
+	 * helpers
+	 */
+
+	private long latency() {
+		long min = minLatency;
+		long max = maxLatency;
+		if (max <= min)
+			return min;
+		return min + (long)(random.nextDouble() * (max - min + 1));
+	}
+
+	private void countCall(String method) {
+		AtomicLong count = calls.get(method);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = calls.putIfAbsent(method, created);
+			if (count == null)
+				count = created;
+		}
+		count.incrementAndGet();
+	}
+
+	private static String accessToken(String query) {
+		if (query == null)
+			return null;
+		for (String param : query.split("&")) {
+			if (param.startsWith("access_token="))
+				return param.substring("access_token=".length());
+		}
+		return null;
+	}
+
+	private static String required(JSONObject params, String field) throws SaploClientException {
+		String value = params.optString(field, "");
+		if (value.length() == 0)
+			throw new SaploClientException(MSG_MISSING_REQ_FIELD, CODE_MISSING_REQ_FIELD);
+		return value;
+	}
+
+	private static int requiredInt(JSONObject params, String field) throws SaploClientException {
+		if (!params.has(field))
+			throw new SaploClientException(MSG_MISSING_REQ_FIELD, CODE_MISSING_REQ_FIELD);
+		return params.optInt(field);
+	}
+
+	private static String language(String language) throws SaploClientException {
+		if (!"en".equals(language) && !"sv".equals(language))
+			throw new SaploClientException(MSG_LANG_UNSUPPORT, CODE_LANG_UNSUPPORT);
+		return language;
+	}
+
+	private static String date(Date date) {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(date);
+	}
+
+	private static class Collection {
+		final int id;
+		String name;
+		String language;
+		String description;
+		int nextId = 1;
+		final Map<Integer, Text> texts = new TreeMap<Integer, Text>();
+
+		Collection(int id) {
+			this.id = id;
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("collection_id", id);
+			json.put("name", name);
+			json.put("language", language);
+			json.put("description", description);
+			json.put("permission", "write");
+			json.put("next_id", nextId);
+			return json;
+		}
+	}
+
+	private static class Text {
+		final int collectionId;
+		final int id;
+		String headline = "";
+		String body = "";
+		String publishDate;
+		String url;
+		String authors;
+		String extId;
+		Set<String> words = Collections.emptySet();
+		Set<String> names = Collections.emptySet();
+		final List<JSONObject> addedTags = new ArrayList<JSONObject>();
+
+		Text(int collectionId, int id) {
+			this.collectionId = collectionId;
+			this.id = id;
+		}
+
+		String key() {
+			return collectionId + ":" + id;
+		}
+
+		void update(JSONObject params) {
+			if (params.has("headline"))
+				headline = params.optString("headline");
+			if (params.has("body"))
+				body = params.optString("body");
+			if (params.has("publish_date"))
+				publishDate = params.optString("publish_date");
+			if (params.has("url"))
+				url = params.optString("url");
+			if (params.has("authors"))
+				authors = params.optString("authors");
+			if (params.has("ext_text_id"))
+				extId = params.optString("ext_text_id");
+
+			words = new HashSet<String>();
+			names = new LinkedHashSet<String>();
+			for (String word : (headline + " " + body).split("[^\\p{L}\\p{N}]+")) {
+				if (word.length() < 3)
+					continue;
+				words.add(word.toLowerCase());
+				if (Character.isUpperCase(word.charAt(0)))
+					names.add(word);
+			}
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("collection_id", collectionId);
+			json.put("text_id", id);
+			json.put("headline", headline);
+			json.put("body", body);
+			if (publishDate != null)
+				json.put("publish_date", publishDate);
+			if (url != null)
+				json.put("url", url);
+			if (authors != null)
+				json.put("authors", authors);
+			if (extId != null)
+				json.put("ext_text_id", extId);
+			return json;
+		}
+	}
+
+	private static class Group {
+		final int id;
+		String name;
+		String description;
+		String language;
+		final Date created = new Date();
+		Date updated = created;
+		final TreeMap<String, Text> texts = new TreeMap<String, Text>();
+
+		Group(int id) {
+			this.id = id;
+		}
+
+		Set<String> words() {
+			Set<String> words = new HashSet<String>();
+			for (Text text : texts.values())
+				words.addAll(text.words);
+			return words;
+		}
+
+		void removeCollection(int collectionId) {
+			String prefix = collectionId + ":";
+			texts.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("group_id", id);
+			json.put("name", name);
+			json.put("description", description);
+			json.put("language", language);
+			json.put("date_created", date(created));
+			json.put("date_updated", date(updated));
+			return json;
+		}
+	}
+}
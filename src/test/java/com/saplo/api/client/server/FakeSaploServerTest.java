@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package com.saplo.api.client.server;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.SaploCollection;
+import com.saplo.api.client.entity.SaploCollection.Language;
+import com.saplo.api.client.entity.SaploGroup;
+import com.saplo.api.client.entity.SaploTag;
+import com.saplo.api.client.entity.SaploText;
+
+/**
+ * @author progre55
+ *
+ */
+public class FakeSaploServerTest {
+
+	private FakeSaploServer server;
+	private SaploClient client;
+
+	@Before
+	public void start() throws Exception {
+		server = new FakeSaploServer("key", "secret");
+		server.start();
+		client = new SaploClient("key", "secret", server.getEndpoint());
+	}
+
+	@After
+	public void stop() throws Exception {
+		client.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void managersWorkAgainstTheServer() throws Exception {
+		SaploCollection collection = new SaploCollection("news", Language.en);
+		client.getCollectionManager().create(collection);
+		assertTrue(collection.getId() > 0);
+
+		SaploText first = new SaploText(collection, "Ericsson and Volvo opened new offices in Gothenburg and Stockholm");
+		SaploText second = new SaploText(collection, "Volvo builds trucks in Gothenburg");
+		client.getTextManager().create(first);
+		client.getTextManager().create(second);
+
+		SaploText read = client.getTextManager().get(collection.getId(), first.getId());
+		assertEquals(first.getBody(), read.getBody());
+
+		List<SaploTag> tags = client.getTextManager().tags(first);
+		assertEquals("Ericsson", tags.get(0).getTagWord());
+
+		client.getTextManager().relatedTexts(first);
+		assertEquals(second.getId(), first.getRelatedTexts().get(0).getId());
+
+		SaploGroup group = new SaploGroup("cars", Language.en);
+		client.getGroupManager().create(group);
+		assertTrue(client.getGroupManager().addText(group, second));
+		assertEquals(1, client.getGroupManager().listTexts(group).size());
+
+		assertEquals(1, server.getCallCount("auth.accessToken"));
+	}
+
+	@Test
+	public void processingIsAnsweredUntilTheResultIsReady() throws Exception {
+		SaploText text = client.getTextManager().create(collectionId(), "Saplo tags the texts of Malmo and Lund");
+		server.setProcessingCount(2);
+
+		List<SaploTag> tags = client.getTextManager().tagsWhenReady(text, false).get(10, TimeUnit.SECONDS);
+		assertFalse(tags.isEmpty());
+		assertEquals(2, server.getProcessingAnswerCount());
+		assertEquals(3, server.getCallCount("text.tags"));
+	}
+
+	@Test
+	public void injectedErrorsFailTheCalls() throws Exception {
+		int collectionId = collectionId();
+		server.setErrorRate(1);
+		try {
+			client.getTextManager().create(collectionId, "a text that never gets there");
+			fail("the server fails every request");
+		} catch (SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_API_DOWN_EXCEPTION, e.getErrorCode());
+		}
+		assertTrue(server.getInjectedErrorCount() > 0);
+
+		server.setErrorRate(0);
+		server.expireTokens();
+		assertTrue(client.getTextManager().create(collectionId, "a text after a new token").getId() > 0);
+		assertEquals(2, server.getCallCount("auth.accessToken"));
+	}
+
+	private int collectionId() throws SaploClientException {
+		SaploCollection collection = new SaploCollection("test", Language.en);
+		client.getCollectionManager().create(collection);
+		return collection.getId();
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package com.saplo.api.client.session;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.saplo.api.client.session.CircuitBreaker.State;
+
+/**
+ * @author progre55
+ *
+ */
+public class CircuitBreakerTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+
+	@Test
+	public void opensOnFailureRateAndClosesAfterProbes() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker();
+		breaker.setMinimumCalls(4);
+		breaker.setOpenDuration(100);
+		breaker.setProbeCalls(2);
+
+		for(int i = 0; i < 2; i++) {
+			assertTrue(breaker.tryAcquire());
+			breaker.onSuccess(FAST);
+		}
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure(FAST);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure(FAST);
+
+		// half of 4 calls failed
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(0.5, breaker.getFailureRate(), 0.001);
+		assertFalse(breaker.tryAcquire());
+		assertEquals(1, breaker.getRejectedCount());
+
+		Thread.sleep(150);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+		assertTrue(breaker.tryAcquire());
+		assertFalse(breaker.tryAcquire());
+
+		breaker.onSuccess(FAST);
+		breaker.onIgnored();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+		breaker.onSuccess(FAST);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getCallCount());
+		assertEquals(1, breaker.getOpenCount());
+	}
+
+	@Test
+	public void opensOnSlowCallsAndAFailedProbeOpensAgain() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker();
+		breaker.setMinimumCalls(2);
+		breaker.setSlowCallDuration(50);
+		breaker.setSlowCallRateThreshold(1.0);
+		breaker.setOpenDuration(50);
+
+		long slow = TimeUnit.MILLISECONDS.toNanos(60);
+		for(int i = 0; i < 2; i++) {
+			assertTrue(breaker.tryAcquire());
+			breaker.onSuccess(slow);
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(1.0, breaker.getSlowCallRate(), 0.001);
+
+		Thread.sleep(80);
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure(FAST);
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		assertEquals(2, breaker.getOpenCount());
+	}
+}
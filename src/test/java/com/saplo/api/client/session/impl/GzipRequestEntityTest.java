@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+
+/**
+ * @author progre55
+ *
+ */
+public class GzipRequestEntityTest {
+
+	@Test
+	public void compressesWithoutClosingTheStream() throws IOException, JSONException {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 2000; i++)
+			body.append("a rather repetitive text body, ");
+		JSONObject params = new JSONObject();
+		params.put("collection_id", 12);
+		params.put("body", body.toString());
+		JSONRPCRequestEntity plain = new JSONRPCRequestEntity(new JSONRPCRequestObject(7, "text.create", params));
+		assertTrue(plain.getEstimatedLength() > body.length());
+
+		GzipRequestEntity gzip = new GzipRequestEntity(plain, Deflater.BEST_SPEED);
+		assertEquals("gzip", gzip.getContentEncoding().getValue());
+		assertEquals("application/json", gzip.getContentType().getValue());
+
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		gzip.writeTo(out);
+		assertFalse(closed[0]);
+		assertTrue(out.size() < body.length() / 10);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		plain.writeTo(expected);
+		assertEquals(expected.toString("UTF-8"), gunzip(out.toByteArray()));
+	}
+
+	private static String gunzip(byte[] compressed) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		return out.toString("UTF-8");
+	}
+}
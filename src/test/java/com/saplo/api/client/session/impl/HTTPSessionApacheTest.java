@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+
+import org.apache.http.HttpHost;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saplo.api.client.ClientProxy;
+import com.saplo.api.client.SaploClient;
+import com.saplo.api.client.TransportConfig;
+import com.saplo.api.client.server.FakeSaploServer;
+import com.saplo.api.client.session.Session;
+import com.saplo.api.client.session.TransportRegistry;
+import com.saplo.api.client.session.TransportRegistry.ConfigurableSessionFactory;
+
+/**
+ * @author progre55
+ *
+ */
+public class HTTPSessionApacheTest {
+
+	private final TransportRegistry registry = TransportRegistry.getTransportRegistryInstance();
+	private FakeSaploServer server;
+	// the last session the registry has opened
+	private volatile HTTPSessionApache session;
+
+	@Before
+	public void start() throws Exception {
+		server = new FakeSaploServer("key", "secret");
+		server.start();
+		registry.registerTransport("http", new ConfigurableSessionFactory() {
+			public Session newSession(URI uri, String params, ClientProxy proxy) {
+				return newSession(uri, params, proxy, null);
+			}
+			public Session newSession(URI uri, String params, ClientProxy proxy, TransportConfig config) {
+				session = new HTTPSessionApache(uri, params, proxy, config);
+				return session;
+			}
+		});
+	}
+
+	@After
+	public void stop() {
+		registry.deregisterTransport("http");
+		server.stop();
+	}
+
+	@Test
+	public void configReachesTheHttpClient() throws Exception {
+		TransportConfig config = new TransportConfig();
+		config.setConnectTimeout(1234);
+		config.setSocketTimeout(5678);
+		config.setMaxTotalConnections(42);
+		config.setMaxConnectionsPerRoute(7);
+		config.setMaxEndpointConnections(21);
+		SaploClient client = new SaploClient("key", "secret", "", server.getEndpoint(), false, null, null, config);
+		try {
+			HttpParams params = session.httpClient.getParams();
+			assertEquals(1234, HttpConnectionParams.getConnectionTimeout(params));
+			assertEquals(5678, HttpConnectionParams.getSoTimeout(params));
+			assertEquals(42, session.connectionManager.getMaxTotal());
+			assertEquals(7, session.connectionManager.getDefaultMaxPerRoute());
+			assertEquals(21, session.connectionManager.getMaxPerRoute(session.endpointRoute));
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void endpointRouteHasTheSchemeAndPortOfTheEndpoint() throws Exception {
+		HTTPSessionApache plain = new HTTPSessionApache(new URI("http://api.saplo.com/rpc/json"), "");
+		HTTPSessionApache secure = new HTTPSSession(new URI("https://api.saplo.com/rpc/json"), "");
+		try {
+			assertEquals(new HttpHost("api.saplo.com", 80, "http"), plain.endpointRoute.getTargetHost());
+			assertEquals(new HttpHost("api.saplo.com", 443, "https"), secure.endpointRoute.getTargetHost());
+			assertTrue(secure.endpointRoute.isSecure());
+		} finally {
+			plain.close();
+			secure.close();
+		}
+	}
+
+	@Test
+	public void connectionsArePooledOnTheEndpointRoute() throws Exception {
+		SaploClient client = new SaploClient("key", "secret", "", server.getEndpoint(), false, null, null, null);
+		try {
+			assertEquals(1, session.connectionManager.getStats(session.endpointRoute).getAvailable());
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void evictorStopsOnShutdown() throws Exception {
+		TransportConfig config = new TransportConfig();
+		config.setEvictionInterval(50);
+		SaploClient client = new SaploClient("key", "secret", "", server.getEndpoint(), false, null, null, config);
+		assertNotNull(session.evictor);
+		assertFalse(session.evictor.isDone());
+
+		client.shutdown();
+		assertTrue(session.evictor.isCancelled());
+
+		// no other session is evicting, so the thread is not needed anymore
+		long deadline = System.currentTimeMillis() + 2000;
+		while (evictorThreadAlive()) {
+			assertTrue("the evictor thread should end", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static boolean evictorThreadAlive() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (IdleConnectionEvictor.THREAD_NAME.equals(thread.getName()) && thread.isAlive())
+				return true;
+		}
+		return false;
+	}
+}
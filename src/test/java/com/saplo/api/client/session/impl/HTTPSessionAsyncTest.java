@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.TransportConfig;
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploFuture;
+import com.saplo.api.client.server.FakeSaploServer;
+
+/**
+ * @author progre55
+ *
+ */
+public class HTTPSessionAsyncTest {
+
+	private FakeSaploServer server;
+	private HTTPSessionAsync session;
+
+	@Before
+	public void start() throws Exception {
+		server = new FakeSaploServer("key", "secret");
+		server.start();
+		session = new HTTPSessionAsync(new URI(server.getEndpoint()), "access_token=");
+	}
+
+	@After
+	public void stop() {
+		session.close();
+		server.stop();
+	}
+
+	@Test
+	public void responseCompletesTheFuture() throws Exception {
+		JSONRPCResponseObject response = session.sendAndReceiveAsync(accessTokenRequest()).get(5, TimeUnit.SECONDS);
+
+		assertTrue(response.isSuccess());
+		assertTrue(((JSONObject)response.getResult()).getString("access_token").length() > 0);
+		assertEquals(0, session.getLeasedConnections());
+	}
+
+	@Test
+	public void bodiesAreGzippedBothWays() throws Exception {
+		TransportConfig config = new TransportConfig();
+		config.setCompressionThreshold(0);
+		HTTPSessionAsync gzipped = new HTTPSessionAsync(new URI(server.getEndpoint()), "access_token=", null, config);
+		try {
+			JSONRPCResponseObject response = gzipped.sendAndReceiveAsync(accessTokenRequest()).get(5, TimeUnit.SECONDS);
+
+			assertTrue(((JSONObject)response.getResult()).getString("access_token").length() > 0);
+			assertEquals(1, server.getGzippedRequestCount());
+			assertEquals(1, server.getGzippedResponseCount());
+		} finally {
+			gzipped.close();
+		}
+	}
+
+	@Test
+	public void errorStatusFailsTheFuture() throws Exception {
+		server.setErrorRate(1);
+		try {
+			session.sendAndReceiveAsync(accessTokenRequest()).get(5, TimeUnit.SECONDS);
+			fail("a 503 should fail the call");
+		} catch (SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_API_DOWN_EXCEPTION, e.getErrorCode());
+		}
+	}
+
+	@Test
+	public void connectionFailureFailsTheFuture() throws Exception {
+		String endpoint = server.getEndpoint();
+		server.stop();
+		HTTPSessionAsync refused = new HTTPSessionAsync(new URI(endpoint), "access_token=");
+		try {
+			refused.sendAndReceiveAsync(accessTokenRequest()).get(5, TimeUnit.SECONDS);
+			fail("the call should not connect");
+		} catch (SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_API_DOWN_EXCEPTION, e.getErrorCode());
+		} finally {
+			refused.close();
+		}
+	}
+
+	@Test
+	public void cancelAbortsTheRequest() throws Exception {
+		server.setLatency(3000, 3000);
+		SaploFuture<JSONRPCResponseObject> future = session.sendAndReceiveAsync(accessTokenRequest());
+		waitFor(1, 2000);
+		future.cancel(true);
+
+		assertTrue(future.isCancelled());
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail("a cancelled call has no result");
+		} catch (CancellationException e) {
+		}
+		// the aborted connection is not kept for the 3 seconds the server takes
+		waitFor(0, 1000);
+	}
+
+	private static JSONRPCRequestObject accessTokenRequest() throws Exception {
+		return new JSONRPCRequestObject(1, "auth.accessToken", new JSONObject().put("api_key", "key").put("secret_key", "secret"));
+	}
+
+	/*
+	 * wait until the session has the given number of connections leased
+	 */
+	private void waitFor(int leased, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (session.getLeasedConnections() != leased) {
+			assertTrue("expected " + leased + " leased connections", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.saplo.api.client.entity.JSONRPCRequestObject;
+
+/**
+ * @author progre55
+ *
+ */
+public class JSONRPCRequestEntityTest {
+
+	@Test
+	public void writesTheSameJSONAsTheRequestObject() throws IOException, JSONException {
+		JSONObject params = new JSONObject();
+		params.put("collection_id", 12);
+		params.put("body", "a \"quoted\"\nåäö body \\ </script>");
+		params.put("relevance", 0.25);
+		params.put("scope", new JSONArray().put(1).put(JSONObject.NULL).put(true));
+		JSONRPCRequestObject request = new JSONRPCRequestObject(7, "text.create", params);
+
+		JSONObject written = new JSONObject(write(new JSONRPCRequestEntity(request)));
+		JSONObject expected = request.getJSONObject();
+
+		assertEquals("2.0", written.getString("jsonrpc"));
+		assertEquals(expected.getInt("id"), written.getInt("id"));
+		assertEquals(expected.getString("method"), written.getString("method"));
+		assertEquals(params.getString("body"), written.getJSONObject("params").getString("body"));
+		assertEquals(0.25, written.getJSONObject("params").getDouble("relevance"), 0);
+		assertEquals(params.getJSONArray("scope").toString(), written.getJSONObject("params").getJSONArray("scope").toString());
+	}
+
+	@Test
+	public void writesBatchesAsArrays() throws IOException, JSONException {
+		List<JSONRPCRequestObject> requests = new ArrayList<JSONRPCRequestObject>();
+		requests.add(new JSONRPCRequestObject(1, "collection.get", new JSONObject()));
+		requests.add(new JSONRPCRequestObject(2, "collection.get", new JSONObject()));
+
+		JSONArray written = new JSONArray(write(new JSONRPCRequestEntity(requests)));
+
+		assertEquals(2, written.length());
+		assertEquals(2, written.getJSONObject(1).getInt("id"));
+	}
+
+	private static String write(JSONRPCRequestEntity entity) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toString("UTF-8");
+	}
+}
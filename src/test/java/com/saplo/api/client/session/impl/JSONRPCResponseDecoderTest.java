@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package com.saplo.api.client.session.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.saplo.api.client.ResponseCodes;
+import com.saplo.api.client.SaploClientException;
+import com.saplo.api.client.entity.JSONRPCResponseObject;
+import com.saplo.api.client.entity.SaploTag;
+import com.saplo.api.client.session.ListResultReader;
+
+/**
+ * @author progre55
+ *
+ */
+public class JSONRPCResponseDecoderTest {
+
+	private static final ListResultReader<SaploTag> TAGS_READER = new ListResultReader<SaploTag>("tags") {
+		protected SaploTag readItem(JsonParser parser) throws IOException {
+			return SaploTag.readFromJSON(parser);
+		}
+	};
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void bindsResultWithReader() throws SaploClientException {
+		JSONRPCResponseObject response = JSONRPCResponseDecoder.decode(stream(
+				"{\"jsonrpc\":\"2.0\",\"result\":{\"tags\":[" +
+				"{\"tag\":\"Saplo\",\"category\":\"organization\",\"relevance\":0.9,\"extra\":[1,{}]}," +
+				"{\"tag\":\"Stockholm\",\"category\":\"location\"}],\"count\":2},\"id\":7}"), TAGS_READER, false);
+
+		assertTrue(response.isSuccess());
+		assertEquals(Integer.valueOf(7), response.getId());
+
+		List<SaploTag> tags = (List<SaploTag>)response.getResult();
+		assertEquals(2, tags.size());
+		assertEquals("Saplo", tags.get(0).getTagWord());
+		assertEquals(SaploTag.TagCategory.ORGANIZATION, tags.get(0).getCategory());
+		assertEquals(0.9, tags.get(0).getRelevance(), 0.0001);
+		assertEquals(SaploTag.TagCategory.LOCATION, tags.get(1).getCategory());
+	}
+
+	@Test
+	public void decodesErrorsAndKeepsRawOnlyOnRequest() throws SaploClientException {
+		String raw = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":595,\"msg\":\"expired\"},\"id\":3}";
+
+		JSONRPCResponseObject response = JSONRPCResponseDecoder.decode(stream(raw), TAGS_READER, true);
+		assertFalse(response.isSuccess());
+		assertEquals(ResponseCodes.CODE_ERR_NOSESSION, response.getError().getCode());
+		assertEquals(raw, response.toString());
+
+		response = JSONRPCResponseDecoder.decode(stream("{\"jsonrpc\":\"2.0\",\"result\":{\"a\":[1,2.5,null]},\"id\":4}"), null, false);
+		assertTrue(response.isSuccess());
+		assertEquals(3, ((JSONObject)response.getResult()).optJSONArray("a").length());
+	}
+
+	@Test
+	public void malformedResponse() {
+		try {
+			JSONRPCResponseDecoder.decode(stream("{\"result\":{\"tags\":"), TAGS_READER, false);
+			fail();
+		} catch (SaploClientException e) {
+			assertEquals(ResponseCodes.CODE_MALFORMED_RESPONSE, e.getErrorCode());
+		}
+	}
+
+	private static InputStream stream(String json) {
+		try {
+			return new ByteArrayInputStream(json.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
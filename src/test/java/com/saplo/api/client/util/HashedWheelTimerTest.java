@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author progre55
+ *
+ */
+public class HashedWheelTimerTest {
+
+	@Test
+	public void runsDueTasksInOrderAndSkipsCancelledOnes() throws InterruptedException {
+		// a small wheel, so the later task goes around it a few times
+		HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 4);
+		final List<String> ran = new CopyOnWriteArrayList<String>();
+		final CountDownLatch done = new CountDownLatch(2);
+		try {
+			long start = System.nanoTime();
+			timer.newTimeout(record(ran, "late", done), 150, TimeUnit.MILLISECONDS);
+			timer.newTimeout(record(ran, "early", done), 20, TimeUnit.MILLISECONDS);
+			HashedWheelTimer.Timeout cancelled = timer.newTimeout(record(ran, "cancelled", done), 50, TimeUnit.MILLISECONDS);
+			assertTrue(cancelled.cancel());
+			assertEquals(2, timer.getPendingCount());
+
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+			Thread.sleep(50);
+			assertEquals(2, ran.size());
+			assertEquals("early", ran.get(0));
+			assertEquals("late", ran.get(1));
+			assertEquals(0, timer.getPendingCount());
+			assertFalse(cancelled.cancel());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private static Runnable record(final List<String> ran, final String name, final CountDownLatch done) {
+		return new Runnable() {
+			public void run() {
+				ran.add(name);
+				done.countDown();
+			}
+		};
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author progre55
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesAreWithinTheBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long micros = 1; micros <= 10000; micros++)
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+
+		assertEquals(10000, histogram.getCount());
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(10000), histogram.getMax());
+		assertClose(TimeUnit.MICROSECONDS.toNanos(5000), histogram.getValueAtPercentile(0.5));
+		assertClose(TimeUnit.MICROSECONDS.toNanos(9900), histogram.getValueAtPercentile(0.99));
+		assertClose(TimeUnit.MICROSECONDS.toNanos(9990), histogram.getValueAtPercentile(0.999));
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(10000), histogram.getValueAtPercentile(1));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 0; i < 100; i++)
+			histogram.record(i);
+		assertEquals(49, histogram.getValueAtPercentile(0.5));
+		assertEquals(99, histogram.getValueAtPercentile(1));
+		assertEquals(49.5, histogram.getMean(), 0.001);
+	}
+
+	@Test
+	public void longValuesAreCappedAndResetDropsAll() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(TimeUnit.DAYS.toNanos(1));
+		histogram.record(-1);
+		assertEquals(TimeUnit.HOURS.toNanos(1), histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(0.5));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(0.99));
+	}
+
+	private static void assertClose(long expected, long actual) {
+		assertTrue(actual + " is not within 1.6% of " + expected, Math.abs(actual - expected) <= expected * 0.016);
+	}
+}
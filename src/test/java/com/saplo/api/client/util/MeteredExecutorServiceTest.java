@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author progre55
+ *
+ */
+public class MeteredExecutorServiceTest {
+
+	@Test
+	public void countsQueuedActiveAndCompletedTasks() throws Exception {
+		MeteredExecutorService executor = new MeteredExecutorService(Executors.newFixedThreadPool(1));
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			executor.execute(blocking(started, release));
+			executor.execute(blocking(new CountDownLatch(1), release));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			assertEquals(1, executor.getActiveCount());
+			assertEquals(1, executor.getQueueDepth());
+			assertEquals(0, executor.getCompletedCount());
+
+			release.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+			assertEquals(0, executor.getActiveCount());
+			assertEquals(0, executor.getQueueDepth());
+			assertEquals(2, executor.getCompletedCount());
+			assertEquals(0, executor.getRejectedCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void rejectedTasksAreCountedAndNotQueued() throws Exception {
+		MeteredExecutorService executor = new MeteredExecutorService(
+				new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>()));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(blocking(started, release));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			try {
+				executor.execute(blocking(new CountDownLatch(1), release));
+				fail("the only thread is busy and there is no queue");
+			} catch (RejectedExecutionException e) {
+			}
+			assertEquals(1, executor.getRejectedCount());
+			assertEquals(0, executor.getQueueDepth());
+			assertEquals(1, executor.getActiveCount());
+
+			release.countDown();
+			executor.shutdown();
+			try {
+				executor.execute(blocking(new CountDownLatch(1), release));
+				fail("a shut down executor takes no tasks");
+			} catch (RejectedExecutionException e) {
+			}
+			assertEquals(2, executor.getRejectedCount());
+			assertEquals(0, executor.getQueueDepth());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void shutdownNowTakesTheQueuedTasksOffTheDepth() throws Exception {
+		MeteredExecutorService executor = new MeteredExecutorService(Executors.newFixedThreadPool(1));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(blocking(started, release));
+		for (int i = 0; i < 3; i++)
+			executor.execute(blocking(new CountDownLatch(1), release));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(3, executor.getQueueDepth());
+
+		assertEquals(3, executor.shutdownNow().size());
+		assertEquals(0, executor.getQueueDepth());
+
+		// the running task is interrupted, and still counted as completed
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(0, executor.getActiveCount());
+		assertEquals(1, executor.getCompletedCount());
+		assertEquals(0, executor.getRejectedCount());
+	}
+
+	/*
+	 * a task that tells it has started, and runs until released or interrupted
+	 */
+	private static Runnable blocking(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author progre55
+ *
+ */
+public class PersistentCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void survivesRestart() throws Exception {
+		File dir = folder.newFolder("cache");
+		PersistentCache cache = new PersistentCache(dir, 1, TimeUnit.HOURS, 4096);
+		cache.put("text.tags/abc/all", "{\"tags\":[]}".getBytes("UTF-8"));
+		cache.put("text.relatedTexts/1/2", "first".getBytes("UTF-8"));
+		cache.put("text.relatedTexts/1/2", "second".getBytes("UTF-8"));
+		cache.put("text.relatedTexts/1/3", "gone".getBytes("UTF-8"));
+		cache.invalidate("text.relatedTexts/1/3");
+		cache.close();
+
+		PersistentCache reopened = new PersistentCache(dir, 1, TimeUnit.HOURS, 4096);
+		assertEquals("{\"tags\":[]}", new String(reopened.get("text.tags/abc/all"), "UTF-8"));
+		assertEquals("second", new String(reopened.get("text.relatedTexts/1/2"), "UTF-8"));
+		assertNull(reopened.get("text.relatedTexts/1/3"));
+		assertEquals(2, reopened.getSize());
+		reopened.close();
+	}
+
+	@Test
+	public void compactsReplacedSegments() throws Exception {
+		File dir = folder.newFolder("cache");
+		PersistentCache cache = new PersistentCache(dir, 1, TimeUnit.HOURS, 1024);
+		byte[] value = new byte[100];
+		for (int i = 0; i < 200; i++)
+			cache.put("key" + (i % 3), value);
+
+		// 3 live results fit in one segment, the rest is garbage
+		assertTrue(cache.getSegmentCount() <= 2);
+		assertEquals(3, cache.getSize());
+		for (int i = 0; i < 3; i++)
+			assertEquals(100, cache.get("key" + i).length);
+		cache.close();
+
+		assertEquals(3, new PersistentCache(dir, 1, TimeUnit.HOURS, 1024).getSize());
+	}
+
+	@Test
+	public void dropsTornRecords() throws Exception {
+		File dir = folder.newFolder("cache");
+		PersistentCache cache = new PersistentCache(dir, 1, TimeUnit.HOURS, 4096);
+		cache.put("whole", "whole".getBytes("UTF-8"));
+		cache.put("torn", "torn".getBytes("UTF-8"));
+		cache.close();
+
+		// flip the last byte of the second record
+		RandomAccessFile raf = new RandomAccessFile(dir.listFiles()[0], "rw");
+		int first = raf.readInt();
+		raf.seek(first);
+		int second = raf.readInt();
+		raf.seek(first + second - 1);
+		raf.write('x');
+		raf.close();
+
+		PersistentCache reopened = new PersistentCache(dir, 1, TimeUnit.HOURS, 4096);
+		assertNotNull(reopened.get("whole"));
+		assertNull(reopened.get("torn"));
+		reopened.put("after", "after".getBytes("UTF-8"));
+		reopened.close();
+		assertNotNull(new PersistentCache(dir, 1, TimeUnit.HOURS, 4096).get("after"));
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.saplo.api.client.entity.SaploAccount;
+
+/**
+ * @author progre55
+ *
+ */
+public class QuotaRateLimiterTest {
+
+	@Test
+	public void spreadsTheCallsLeftUntilTheReset() throws Exception {
+		QuotaRateLimiter limiter = new QuotaRateLimiter(1000, 1);
+		assertTrue(limiter.needsUpdate(1, TimeUnit.MINUTES));
+		assertTrue(limiter.tryAcquire(500));
+
+		// 100 calls left for the next 100 seconds
+		String reset = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(System.currentTimeMillis() + 100 * 1000));
+		JSONObject apiCalls = new JSONObject().put("limit_hour", 1000).put("left_hour", 100).put("reset_hour", reset);
+		limiter.update(SaploAccount.convertFromJSONToAccount(new JSONObject().put("api_calls", apiCalls)).getApiCalls());
+
+		assertEquals(1.0, limiter.getRate(), 0.05);
+		assertFalse(limiter.needsUpdate(1, TimeUnit.MINUTES));
+
+		// only a second's worth of calls is saved up
+		assertTrue(limiter.tryAcquire(1));
+		assertFalse(limiter.tryAcquire(1));
+		assertFalse(limiter.tryAcquire(1, 100, TimeUnit.MILLISECONDS));
+
+		long wait = limiter.reserve(2);
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(1500));
+		assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(2100));
+		assertTrue(limiter.getAvailablePermits() < -1);
+
+		limiter.drain();
+		assertTrue(limiter.needsUpdate(1, TimeUnit.MINUTES));
+	}
+
+	@Test
+	public void weighsTheMethods() {
+		QuotaRateLimiter limiter = new QuotaRateLimiter(10, 1);
+		limiter.setWeight("text.relatedTexts", 5);
+		limiter.setWeight("ping.ping", 0);
+
+		assertEquals(1, limiter.getWeight("text.get"));
+		assertEquals(5, limiter.getWeight("text.relatedTexts"));
+		assertTrue(limiter.tryAcquire(limiter.getWeight("text.relatedTexts")));
+		assertTrue(limiter.tryAcquire(limiter.getWeight("text.relatedTexts")));
+		assertFalse(limiter.tryAcquire(limiter.getWeight("text.get")));
+		assertTrue(limiter.tryAcquire(limiter.getWeight("ping.ping")));
+	}
+}
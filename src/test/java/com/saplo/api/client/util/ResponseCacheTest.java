@@ -0,0 +1,77 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author progre55
+ *
+ */
+public class ResponseCacheTest {
+
+	@Test
+	public void evictsLeastRecentlyUsedByWeight() throws JSONException {
+		JSONObject text = new JSONObject().put("body", "0123456789012345678901234567890123456789");
+		long weight = ClientUtil.estimateJSONLength(text);
+		ResponseCache cache = new ResponseCache(1, TimeUnit.HOURS, weight * 2);
+
+		cache.put("a", text);
+		cache.put("b", text);
+		assertSame(text, cache.get("a"));
+		cache.put("c", text);
+
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(weight * 2, cache.getWeight());
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		String body = text.getString("body");
+		cache.put("huge", new JSONObject().put("body", body + body + body));
+		assertNull(cache.get("huge"));
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void readDoesNotPutBackWhatWasDroppedMeanwhile() throws JSONException {
+		ResponseCache cache = new ResponseCache(1, TimeUnit.HOURS, 1000);
+		// a read is sent, and an update drops the collection while the read is in flight
+		long generation = cache.getGeneration();
+		cache.invalidate("collection.get/1");
+
+		assertFalse(cache.put("collection.get/1", new JSONObject().put("name", "old"), generation));
+		assertNull(cache.get("collection.get/1"));
+
+		generation = cache.getGeneration();
+		assertTrue(cache.put("collection.get/1", new JSONObject().put("name", "new"), generation));
+		assertEquals("new", cache.get("collection.get/1").getString("name"));
+	}
+
+	@Test
+	public void expiresAndInvalidates() throws JSONException, InterruptedException {
+		ResponseCache cache = new ResponseCache(50, TimeUnit.MILLISECONDS, 1000);
+		cache.put("text.get/1/2", new JSONObject().put("text_id", 2));
+		cache.put("text.get/1/3", new JSONObject().put("text_id", 3));
+		cache.put("text.get/10/2", new JSONObject().put("text_id", 2));
+
+		cache.invalidateAll("text.get/1/");
+		assertNull(cache.get("text.get/1/2"));
+		assertNull(cache.get("text.get/1/3"));
+		assertNotNull(cache.get("text.get/10/2"));
+
+		Thread.sleep(80);
+		assertNull(cache.get("text.get/10/2"));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getWeight());
+	}
+}
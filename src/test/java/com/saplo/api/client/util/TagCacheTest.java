@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package com.saplo.api.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.saplo.api.client.entity.SaploTag;
+import com.saplo.api.client.entity.SaploTag.TagCategory;
+
+/**
+ * @author progre55
+ *
+ */
+public class TagCacheTest {
+
+	@Test
+	public void sameBodyHitsWhicheverText() {
+		TagCache cache = new TagCache(1024 * 1024);
+		cache.put(TagCache.key("Stockholm is in Sweden", false), Arrays.asList("1/1"), tags("Stockholm", "Sweden"));
+
+		List<SaploTag> cached = cache.get(TagCache.key("Stockholm is in Sweden", false));
+		assertEquals(2, cached.size());
+		assertEquals("Sweden", cached.get(1).getTagWord());
+		assertEquals(TagCategory.LOCATION, cached.get(1).getCategory());
+		assertEquals(0.5, cached.get(1).getRelevance(), 0);
+		assertNotSame(cached.get(0), cache.get(TagCache.key("Stockholm is in Sweden", false)).get(0));
+
+		assertNull(cache.get(TagCache.key("Stockholm is in Sweden", true)));
+		assertNull(cache.get(TagCache.key("Stockholm is in Norway", false)));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		cache.invalidateText("1/1");
+		assertNull(cache.get(TagCache.key("Stockholm is in Sweden", false)));
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void staysInBudget() {
+		TagCache cache = new TagCache(400);
+		for (int i = 0; i < 10; i++)
+			cache.put(TagCache.key("body " + i, false), Arrays.asList("1/" + i), tags("word" + i));
+
+		assertTrue(cache.getBytes() <= 400);
+		assertTrue(cache.getEvictionCount() > 0);
+		assertNotNull(cache.get(TagCache.key("body 9", false)));
+		assertNull(cache.get(TagCache.key("body 0", false)));
+	}
+
+	private static List<SaploTag> tags(String... words) {
+		List<SaploTag> tags = new ArrayList<SaploTag>();
+		for (String word : words) {
+			SaploTag tag = new SaploTag();
+			tag.setTagWord(word);
+			tag.setCategory(TagCategory.LOCATION);
+			tag.setRelevance(0.5);
+			tags.add(tag);
+		}
+		return tags;
+	}
+}